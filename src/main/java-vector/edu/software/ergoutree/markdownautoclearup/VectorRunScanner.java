@@ -0,0 +1,101 @@
+package edu.software.ergoutree.markdownautoclearup;
+
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * 基于 jdk.incubator.vector 的惰性字符段扫描器
+ * 每次把一个向量宽度（通常为 16 或 32 个）的字符与各类别的区间边界比较，
+ * 再把整个向量右移一个通道得到每个字符前一个字符的类别，从而一次判断一组字符对。
+ *
+ * 本类只由 RunScanner 通过反射加载，运行时缺少该模块时加载失败，自动退回逐字符实现。
+ * 主模块不依赖孵化模块，本类单独编译到同一输出目录（见 pom.xml 中的 compile-vector-scanner）。
+ */
+final class VectorRunScanner extends RunScanner {
+
+    private static final VectorSpecies<Short> SPECIES = ShortVector.SPECIES_PREFERRED;
+    private static final int LANES = SPECIES.length();
+
+    // 进入向量循环之前逐字符检查的字符数
+    private static final int SCALAR_PREFIX = 8;
+
+    private static final short HAN_LENGTH = (short) (HAN_LAST - HAN_FIRST + 1);
+    private static final short KANA_LENGTH = (short) (KANA_LAST - KANA_FIRST + 1);
+    private static final short HANGUL_LENGTH = (short) (HANGUL_LAST - HANGUL_FIRST + 1);
+
+    // STOP 与任何类别按位或的结果都在 STOP 到 STOP | BOUNDARY_MASK 之间，把这几位并入字符对位集合后只需一次移位判断
+    private static final int STOP_PAIRS = ((1 << (CharClassTable.BOUNDARY_MASK + 1)) - 1) << STOP;
+
+    @Override
+    int skip(char[] chars, int from, int to, int prevType, int pairs, boolean stopPunctuation) {
+        // 交界和标点密集的文本中下一个停止位置通常很近，先逐字符检查几个字符，省去准备向量的开销
+        int i = Math.min(to, from + SCALAR_PREFIX);
+        int stop = super.skip(chars, from, i, prevType, pairs, stopPunctuation);
+        if (stop < i || i == to) {
+            return stop;
+        }
+        // 此时前一个字符一定在数组中且能快速分类
+        int type = classify(chars[i - 1], stopPunctuation);
+        if (to - i < LANES) {
+            return super.skip(chars, i, to, type, pairs, stopPunctuation);
+        }
+        return skipVectors(chars, i, to, type, pairs, stopPunctuation);
+    }
+
+    /**
+     * 按向量宽度查找下一个需要逐字符处理的位置
+     * @param chars 字符数组
+     * @param from 起点，其前一个字符在数组中
+     * @param to 终点（不含），与起点至少相距一个向量宽度
+     * @param prevType 起点前一个字符的快速分类结果
+     * @param pairs 启用的交界规则字符对
+     * @param stopPunctuation 是否在 ASCII 标点处停止
+     * @return 第一个需要逐字符处理的位置，没有时为终点
+     */
+    private int skipVectors(char[] chars, int from, int to, int prevType, int pairs, boolean stopPunctuation) {
+        ShortVector stopBits = ShortVector.broadcast(SPECIES, (short) (pairs | STOP_PAIRS));
+        ShortVector previous = ShortVector.broadcast(SPECIES, (short) prevType);
+        int i = from;
+        for (; i <= to - LANES; i += LANES) {
+            ShortVector types = classify(ShortVector.fromCharArray(SPECIES, chars, i), stopPunctuation);
+            // 每个通道与前一个通道的类别按位或，得到字符对的种类
+            ShortVector combined = previous.slice(LANES - 1, types).or(types);
+            VectorMask<Short> stops = stopBits.lanewise(VectorOperators.LSHR, combined)
+                    .and((short) 1)
+                    .compare(VectorOperators.NE, (short) 0);
+            if (stops.anyTrue()) {
+                return i + stops.firstTrue();
+            }
+            previous = types;
+        }
+        return super.skip(chars, i, to, classify(chars[i - 1], stopPunctuation), pairs, stopPunctuation);
+    }
+
+    /**
+     * 快速分类一组字符
+     * @param c 字符
+     * @param stopPunctuation 是否在 ASCII 标点处停止
+     * @return 各通道的交界规则类别，需要逐字符处理时为 STOP
+     */
+    private static ShortVector classify(ShortVector c, boolean stopPunctuation) {
+        // 与 0x20 按位或把大写字母映射到小写字母，无符号比较把区间判断合并为一次比较
+        VectorMask<Short> latin = c.or((short) 0x20).sub((short) 'a')
+                .compare(VectorOperators.UNSIGNED_LT, (short) 26);
+        VectorMask<Short> digit = c.sub((short) '0').compare(VectorOperators.UNSIGNED_LT, (short) 10);
+        VectorMask<Short> han = c.sub((short) HAN_FIRST).compare(VectorOperators.UNSIGNED_LT, HAN_LENGTH)
+                .or(c.sub((short) KANA_FIRST).compare(VectorOperators.UNSIGNED_LT, KANA_LENGTH))
+                .or(c.sub((short) HANGUL_FIRST).compare(VectorOperators.UNSIGNED_LT, HANGUL_LENGTH));
+        VectorMask<Short> stop = c.compare(VectorOperators.UNSIGNED_GE, (short) 0x80).andNot(han);
+        if (stopPunctuation) {
+            VectorMask<Short> printable = c.sub((short) 0x21).compare(VectorOperators.UNSIGNED_LT, (short) 0x5E);
+            stop = stop.or(printable.andNot(latin).andNot(digit));
+        }
+        return ShortVector.zero(SPECIES)
+                .blend((short) CharClassTable.LATIN, latin)
+                .blend((short) CharClassTable.DIGIT, digit)
+                .blend((short) CharClassTable.HAN, han)
+                .blend((short) STOP, stop);
+    }
+}
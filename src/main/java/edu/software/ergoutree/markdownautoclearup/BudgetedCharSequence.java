@@ -0,0 +1,91 @@
+package edu.software.ergoutree.markdownautoclearup;
+
+/**
+ * 限制匹配步数的文本
+ * 用户输入的正则表达式可能发生灾难性回溯，如 (a+)+$ 在一长串 a 之后不匹配时要尝试指数多种拆分，
+ * 一条规则就能让处理线程永远停在 replaceAll 中。java.util.regex 通过 charAt 读取文本，
+ * 所以把文本包装为本类的对象交给 Matcher，每次读取一个字符计为一步，步数用完时抛出异常中止匹配。
+ *
+ * 步数上限与文本长度成正比，正常的规则每个字符只读取有限的几次，远达不到上限；
+ * 按步数而不是时间计算，同一条规则在同一段文本上是否中止与机器快慢无关。
+ * 每个对象只能用于一次匹配，不是线程安全的。
+ */
+final class BudgetedCharSequence implements CharSequence {
+
+    // 每个字符允许的步数，以及文本很短时的最低步数
+    private static final long STEPS_PER_CHAR = 256;
+    private static final long MIN_STEPS = 1L << 24;
+
+    private final String text;
+    private long remaining;
+
+    /**
+     * 构造函数，步数上限按文本长度计算
+     * @param text 文本
+     */
+    BudgetedCharSequence(String text) {
+        this(text, budget(text.length()));
+    }
+
+    /**
+     * 构造函数
+     * @param text 文本
+     * @param budget 步数上限
+     */
+    BudgetedCharSequence(String text, long budget) {
+        this.text = text;
+        this.remaining = budget;
+    }
+
+    /**
+     * 计算一次匹配的步数上限
+     * @param length 文本长度，同时尝试多个匹配模式时乘以模式的数量
+     * @return 步数上限
+     */
+    static long budget(long length) {
+        return MIN_STEPS + STEPS_PER_CHAR * length;
+    }
+
+    @Override
+    public int length() {
+        return text.length();
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (--remaining < 0) {
+            throw new BudgetExceededException();
+        }
+        return text.charAt(index);
+    }
+
+    /**
+     * 只用于取出分组等已经匹配的部分，不计步数
+     */
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return text.substring(start, end);
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+
+    /**
+     * 匹配步数超出上限，不记录调用栈
+     */
+    static final class BudgetExceededException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        BudgetExceededException() {
+            super("匹配步数超出上限");
+        }
+
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+    }
+}
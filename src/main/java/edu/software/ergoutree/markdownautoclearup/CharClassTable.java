@@ -0,0 +1,143 @@
+package edu.software.ergoutree.markdownautoclearup;
+
+import java.util.Arrays;
+
+/**
+ * 字符类别表
+ * 在类加载时为全部 65536 个 char 预先生成类别标志，处理文本时每个字符只需一次数组读取即可分类，
+ * 不再需要正则表达式引擎或对标点字符串做线性查找。
+ *
+ * 类别以位标志表示，同一个字符可以同时属于多个类别（例如"。"既属于中文也属于中文标点）。
+ * HAN、LATIN、DIGIT 三者互斥，交界规则把两个字符的这三位按位或后即可判断字符对的种类。
+ *
+ * 增补平面中的中日韩文字（CJK 扩展 B 及以后的汉字、假名补充等）以有序的码点区间表给出，
+ * 只有遇到代理对时才按码点二分查找，BMP 字符始终只查一次数组。
+ */
+final class CharClassTable {
+
+    // 中日韩文字：汉字、假名、谚文，以及 CJK 符号和标点
+    static final int HAN = 1;
+
+    // 英文字母：[a-zA-Z] 和全角字母
+    static final int LATIN = 2;
+
+    // 数字：[0-9] 和全角数字
+    static final int DIGIT = 4;
+
+    // 中文标点：在其前后添加空格的全角标点
+    static final int CHINESE_PUNCTUATION = 8;
+
+    // 英文标点：在其前后添加空格的半角标点
+    static final int ENGLISH_PUNCTUATION = 16;
+
+    // 交界规则使用的类别位
+    static final int BOUNDARY_MASK = HAN | LATIN | DIGIT;
+
+    // 中文标点符号
+    private static final String CHINESE_PUNCTUATION_CHARS = "，。！？；：“”【】《》……";
+
+    // 英文标点符号
+    private static final String ENGLISH_PUNCTUATION_CHARS = ",.!?;:\"\"[]()''\\-_";
+
+    private static final byte[] TABLE = new byte[Character.MAX_VALUE + 1];
+
+    // 增补平面中日韩文字区间的起点和终点（含），按码点升序排列。
+    // 由 isCjkCodePoint 在 U+10000 至 U+3FFFF 上逐个码点生成（Unicode 13.0），类加载时不再逐个判断
+    private static final int[] SUPPLEMENTARY_STARTS = {
+            0x16FF0, // 表意符号和标点中的越南文读音标记
+            0x1B000, // 假名补充、假名扩展 A
+            0x1B150, // 小型假名扩展：平假名
+            0x1B164, // 小型假名扩展：片假名
+            0x1F200, // 带圈表意文字补充：平假名“ほか”
+            0x20000, // CJK 扩展 B
+            0x2A700, // CJK 扩展 C
+            0x2B740, // CJK 扩展 D
+            0x2B820, // CJK 扩展 E
+            0x2CEB0, // CJK 扩展 F
+            0x2F800, // CJK 兼容表意文字补充
+            0x30000, // CJK 扩展 G
+    };
+    private static final int[] SUPPLEMENTARY_ENDS = {
+            0x16FF1,
+            0x1B11E,
+            0x1B152,
+            0x1B167,
+            0x1F200,
+            0x2A6DD,
+            0x2B734,
+            0x2B81D,
+            0x2CEA1,
+            0x2EBE0,
+            0x2FA1D,
+            0x3134A,
+    };
+
+    static {
+        // 生成字符类别表
+        for (int c = 0; c <= Character.MAX_VALUE; c++) {
+            int flags = 0;
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')
+                    || (c >= 'Ａ' && c <= 'Ｚ') || (c >= 'ａ' && c <= 'ｚ')) {
+                flags |= LATIN;
+            } else if ((c >= '0' && c <= '9') || (c >= '０' && c <= '９')) {
+                flags |= DIGIT;
+            } else if (c >= 0x80 && !Character.isSurrogate((char) c) && isCjkCodePoint(c)) {
+                flags |= HAN;
+            }
+            if (CHINESE_PUNCTUATION_CHARS.indexOf(c) >= 0) {
+                flags |= CHINESE_PUNCTUATION;
+            }
+            if (ENGLISH_PUNCTUATION_CHARS.indexOf(c) >= 0) {
+                flags |= ENGLISH_PUNCTUATION;
+            }
+            TABLE[c] = (byte) flags;
+        }
+    }
+
+    private CharClassTable() {
+    }
+
+    /**
+     * 获取字符的类别标志
+     * @param c 字符
+     * @return 类别标志
+     */
+    static int flags(char c) {
+        return TABLE[c];
+    }
+
+    /**
+     * 获取码点的类别标志，BMP 字符直接查表，增补平面字符在区间表中二分查找
+     * @param codePoint 码点
+     * @return 类别标志
+     */
+    static int flags(int codePoint) {
+        if (codePoint <= Character.MAX_VALUE) {
+            return TABLE[codePoint];
+        }
+        int index = Arrays.binarySearch(SUPPLEMENTARY_STARTS, codePoint);
+        if (index < 0) {
+            // 取起点不大于该码点的区间
+            index = -index - 2;
+        }
+        return index >= 0 && codePoint <= SUPPLEMENTARY_ENDS[index] ? HAN : 0;
+    }
+
+    /**
+     * 判断码点是否属于中日韩文字：汉字、平假名、片假名、谚文，
+     * 以及 CJK 符号和标点、平假名、片假名区块中的其他字符（如长音符“ー”）
+     * @param codePoint 码点
+     * @return 是否属于中日韩文字
+     */
+    static boolean isCjkCodePoint(int codePoint) {
+        Character.UnicodeScript script = Character.UnicodeScript.of(codePoint);
+        if (script == Character.UnicodeScript.HAN || script == Character.UnicodeScript.HIRAGANA
+                || script == Character.UnicodeScript.KATAKANA || script == Character.UnicodeScript.HANGUL) {
+            return true;
+        }
+        Character.UnicodeBlock block = Character.UnicodeBlock.of(codePoint);
+        return block == Character.UnicodeBlock.CJK_SYMBOLS_AND_PUNCTUATION
+                || block == Character.UnicodeBlock.HIRAGANA
+                || block == Character.UnicodeBlock.KATAKANA;
+    }
+}
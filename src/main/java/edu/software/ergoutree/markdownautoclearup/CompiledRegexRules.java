@@ -0,0 +1,232 @@
+package edu.software.ergoutree.markdownautoclearup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * 预编译的自定义正则表达式规则
+ * 创建时按顺序编译所有启用的规则，之后不再随原规则的修改而变化。
+ * 连续的按字面匹配的规则合并为一个词典，一次扫描同时替换，不再逐条扫描文本。
+ * 正则表达式规则编译时提取匹配必须包含的字面文本，文本中没有这段字面文本时跳过该规则。
+ * 选择单次扫描时，连续的可以合并的正则表达式规则合并为一个选择，一次扫描同时替换。
+ * 正则表达式的匹配限制步数，见 {@link BudgetedCharSequence}。规则超出上限时这一步保持这段文本不变，
+ * 并把规则名称交给创建时指定的接收者；合并的规则超出上限时这段文本改为逐条应用其中的规则，找出具体是哪一条。
+ * 步数上限只取决于规则和文本，是否中止不受其他文本和线程的影响，所以整篇、分块和并行处理的结果相同。
+ * Pattern 可以在多个线程之间共享，每次应用时各自创建 Matcher，所以本类的对象可以被多个线程同时使用。
+ */
+final class CompiledRegexRules {
+
+    // 按顺序应用的各步，每步是一个正则表达式、一个词典或一组合并的正则表达式
+    private final Pattern[] patterns;
+    private final String[] replacements;
+    private final LiteralDictionary[] dictionaries;
+    private final RegexUnion[] unions;
+    // 正则表达式的匹配必须包含的字面文本，无法确定时为空
+    private final String[] requiredLiterals;
+    // 正则表达式所属规则的名称
+    private final String[] ruleNames;
+    // 合并的规则之后紧跟着逐条应用其中各规则的步，合并的规则正常应用时跳过这些步
+    private final int[] memberCounts;
+    // 规则配置：是否合并扫描，之后每条规则依次为类型、模式和替换内容
+    private final List<String> configuration;
+    // 接收匹配超出步数上限的规则名称，可能被多个线程同时调用
+    private final Consumer<String> abortListener;
+
+    private CompiledRegexRules(Steps steps, List<String> configuration, Consumer<String> abortListener) {
+        this.patterns = steps.patterns.toArray(new Pattern[0]);
+        this.replacements = steps.replacements.toArray(new String[0]);
+        this.dictionaries = steps.dictionaries.toArray(new LiteralDictionary[0]);
+        this.unions = steps.unions.toArray(new RegexUnion[0]);
+        this.requiredLiterals = steps.requiredLiterals.toArray(new String[0]);
+        this.ruleNames = steps.ruleNames.toArray(new String[0]);
+        this.memberCounts = steps.memberCounts.stream().mapToInt(Integer::intValue).toArray();
+        this.configuration = List.copyOf(configuration);
+        this.abortListener = abortListener;
+    }
+
+    /**
+     * 编译一组规则中所有启用的规则，无效的规则被忽略
+     * 各规则已经编译过的匹配模式直接使用，不重复编译
+     * @param rules 规则列表
+     * @param singleScan 是否把可以合并的正则表达式规则合并为一次扫描
+     * @return 编译后的规则，没有可以应用的规则时为空
+     */
+    static CompiledRegexRules compile(List<CustomRegexRule> rules, boolean singleScan) {
+        return compile(rules, singleScan, name -> { });
+    }
+
+    /**
+     * 编译一组规则中所有启用的规则，无效的规则被忽略
+     * 各规则已经编译过的匹配模式直接使用，不重复编译
+     * @param rules 规则列表
+     * @param singleScan 是否把可以合并的正则表达式规则合并为一次扫描
+     * @param abortListener 接收匹配超出步数上限的规则名称，可能被多个线程同时调用
+     * @return 编译后的规则，没有可以应用的规则时为空
+     */
+    static CompiledRegexRules compile(List<CustomRegexRule> rules, boolean singleScan,
+                                      Consumer<String> abortListener) {
+        Steps steps = new Steps();
+        List<String> literalKeys = new ArrayList<>();
+        List<String> literalReplacements = new ArrayList<>();
+        RegexUnion.Builder union = new RegexUnion.Builder();
+        List<String> configuration = new ArrayList<>();
+        configuration.add(singleScan ? "singleScan" : "chained");
+        for (CustomRegexRule rule : rules) {
+            if (!rule.isEnabled()) {
+                continue;
+            }
+            if (rule.isLiteral()) {
+                // 连续的字面规则收集到同一个词典中，遇到正则表达式规则或结束时再编译
+                steps.addUnion(union);
+                literalKeys.add(rule.getPattern());
+                literalReplacements.add(rule.getReplacement());
+                addConfiguration(configuration, "literal", rule);
+                continue;
+            }
+            if (!rule.isValid()) {
+                // 忽略无效的正则表达式和引用了不存在的分组的替换内容，规则管理器加载规则时已经停用并报告
+                continue;
+            }
+            Pattern pattern = rule.getCompiledPattern();
+            steps.addDictionary(literalKeys, literalReplacements);
+            addConfiguration(configuration, "regex", rule);
+            if (singleScan) {
+                // 不能加入当前合并规则时，先结束当前的，再尝试开始一个新的
+                if (union.add(rule.getName(), rule.getPattern(), pattern, rule.getReplacement())) {
+                    continue;
+                }
+                steps.addUnion(union);
+                if (union.add(rule.getName(), rule.getPattern(), pattern, rule.getReplacement())) {
+                    continue;
+                }
+            }
+            steps.addPattern(rule.getName(), rule.getPattern(), pattern, rule.getReplacement());
+        }
+        steps.addDictionary(literalKeys, literalReplacements);
+        steps.addUnion(union);
+        if (steps.patterns.isEmpty()) {
+            return null;
+        }
+        return new CompiledRegexRules(steps, configuration, abortListener);
+    }
+
+    private static void addConfiguration(List<String> configuration, String type, CustomRegexRule rule) {
+        configuration.add(type);
+        configuration.add(rule.getPattern());
+        configuration.add(rule.getReplacement());
+    }
+
+    /**
+     * 按顺序应用所有规则
+     * @param text 要处理的文本
+     * @return 处理后的文本
+     */
+    String apply(String text) {
+        if (text == null || text.isEmpty()) {
+            return text;
+        }
+        String result = text;
+        for (int i = 0; i < patterns.length; i++) {
+            if (dictionaries[i] != null) {
+                result = dictionaries[i].apply(result);
+                continue;
+            }
+            if (unions[i] != null) {
+                try {
+                    result = unions[i].apply(result);
+                    i += memberCounts[i];
+                } catch (BudgetedCharSequence.BudgetExceededException e) {
+                    // 这段文本改为逐条应用之后的各规则，结果相同
+                }
+                continue;
+            }
+            if (requiredLiterals[i] != null && !result.contains(requiredLiterals[i])) {
+                continue;
+            }
+            try {
+                result = patterns[i].matcher(new BudgetedCharSequence(result)).replaceAll(replacements[i]);
+            } catch (BudgetedCharSequence.BudgetExceededException e) {
+                // 这段文本保持不变
+                abortListener.accept(ruleNames[i]);
+            } catch (Exception e) {
+                // 编译时已经检查过替换内容，只有转义的括号被当作命名分组等少见情况才会出错
+                System.err.println("应用规则时出错: " + e.getMessage());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 获取规则配置，由是否合并扫描和各条应用的规则的类型、模式和替换内容按顺序组成，
+     * 两组编译结果的配置相等时对任何文本的处理结果相同，可以作为缓存键的一部分
+     * @return 不可修改的规则配置
+     */
+    List<String> configuration() {
+        return configuration;
+    }
+
+    /**
+     * 编译过程中收集的各步
+     */
+    private static final class Steps {
+
+        final List<Pattern> patterns = new ArrayList<>();
+        final List<String> replacements = new ArrayList<>();
+        final List<LiteralDictionary> dictionaries = new ArrayList<>();
+        final List<RegexUnion> unions = new ArrayList<>();
+        final List<String> requiredLiterals = new ArrayList<>();
+        final List<String> ruleNames = new ArrayList<>();
+        final List<Integer> memberCounts = new ArrayList<>();
+
+        /**
+         * 加入一个逐条应用的正则表达式
+         */
+        void addPattern(String name, String regex, Pattern pattern, String replacement) {
+            add(name, pattern, replacement, null, null, RequiredLiteral.of(regex));
+        }
+
+        /**
+         * 把收集到的字面规则编译为一个词典并加入，之后清空收集的规则
+         */
+        void addDictionary(List<String> literalKeys, List<String> literalReplacements) {
+            if (literalKeys.isEmpty()) {
+                return;
+            }
+            add(null, null, null, new LiteralDictionary(literalKeys, literalReplacements), null, null);
+            literalKeys.clear();
+            literalReplacements.clear();
+        }
+
+        /**
+         * 把合并的规则加入，之后是逐条应用其中各规则的步，只有一条时只逐条应用；之后清空构建器
+         */
+        void addUnion(RegexUnion.Builder union) {
+            if (union.size() > 1) {
+                try {
+                    add(null, null, null, null, union.build(), null);
+                    memberCounts.set(memberCounts.size() - 1, union.size());
+                } catch (PatternSyntaxException e) {
+                    // 合并后无效时只逐条应用
+                }
+            }
+            for (int i = 0; i < union.size(); i++) {
+                addPattern(union.name(i), union.regex(i), union.pattern(i), union.replacement(i));
+            }
+            union.clear();
+        }
+
+        private void add(String name, Pattern pattern, String replacement, LiteralDictionary dictionary,
+                         RegexUnion union, String requiredLiteral) {
+            patterns.add(pattern);
+            replacements.add(replacement);
+            dictionaries.add(dictionary);
+            unions.add(union);
+            requiredLiterals.add(requiredLiteral);
+            ruleNames.add(name);
+            memberCounts.add(0);
+        }
+    }
+}
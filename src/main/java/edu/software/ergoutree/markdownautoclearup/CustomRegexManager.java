@@ -7,9 +7,8 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-import java.util.regex.PatternSyntaxException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * 自定义正则表达式规则管理器
@@ -17,6 +16,13 @@ import java.util.regex.PatternSyntaxException;
  */
 public class CustomRegexManager {
     private List<CustomRegexRule> rules;
+    // 编译后的启用规则，增加、修改、删除和加载规则时清除，之后第一次使用时重新编译
+    private CompiledRegexRules compiledRules;
+    private boolean compiledRulesValid;
+    // 是否把可以合并的正则表达式规则合并为一次扫描，与规则一起保存
+    private boolean singleScan;
+    // 匹配超出步数上限、还没有报告给用户的规则名称
+    private final Set<String> abortedRules = ConcurrentHashMap.newKeySet();
     private static final String CONFIG_FILE_NAME = "custom_regex_rules.dat";
     private static final String CONFIG_DIR = System.getProperty("user.home") + File.separator + ".markdown_auto_clearup";
 
@@ -34,11 +40,29 @@ public class CustomRegexManager {
      * @return 是否添加成功
      */
     public boolean addRule(CustomRegexRule rule) {
-        // 验证正则表达式是否有效
-        if (!isValidRegex(rule.getPattern())) {
+        // 验证正则表达式和替换内容是否有效
+        if (!rule.isValid()) {
             return false;
         }
         rules.add(rule);
+        invalidateCompiledRules();
+        saveRules();
+        return true;
+    }
+
+    /**
+     * 一次添加多条规则，只保存一次，适合导入大量词条
+     * @param newRules 规则列表
+     * @return 是否添加成功，有无效的正则表达式时不添加任何规则
+     */
+    public boolean addRules(List<CustomRegexRule> newRules) {
+        for (CustomRegexRule rule : newRules) {
+            if (!rule.isValid()) {
+                return false;
+            }
+        }
+        rules.addAll(newRules);
+        invalidateCompiledRules();
         saveRules();
         return true;
     }
@@ -53,11 +77,12 @@ public class CustomRegexManager {
         if (index < 0 || index >= rules.size()) {
             return false;
         }
-        // 验证正则表达式是否有效
-        if (!isValidRegex(rule.getPattern())) {
+        // 验证正则表达式和替换内容是否有效
+        if (!rule.isValid()) {
             return false;
         }
         rules.set(index, rule);
+        invalidateCompiledRules();
         saveRules();
         return true;
     }
@@ -72,6 +97,7 @@ public class CustomRegexManager {
             return false;
         }
         rules.remove(index);
+        invalidateCompiledRules();
         saveRules();
         return true;
     }
@@ -84,6 +110,44 @@ public class CustomRegexManager {
         return new ArrayList<>(rules);
     }
 
+    /**
+     * 是否把可以合并的正则表达式规则合并为一次扫描
+     * @return 是否合并
+     */
+    public synchronized boolean isSingleScan() {
+        return singleScan;
+    }
+
+    /**
+     * 设置是否把可以合并的正则表达式规则合并为一次扫描，设置与规则一起保存
+     * 只合并结果与逐条应用相同的规则：各规则的匹配不会重叠，也不会匹配前面规则的替换内容。
+     * 可能匹配空文本、使用反向引用、向前向后查找等依赖匹配之外文本的写法，或者与前面规则相关的规则仍然逐条应用
+     * @param singleScan 是否合并
+     */
+    public void setSingleScan(boolean singleScan) {
+        synchronized (this) {
+            if (this.singleScan == singleScan) {
+                return;
+            }
+            this.singleScan = singleScan;
+        }
+        invalidateCompiledRules();
+        saveRules();
+    }
+
+    /**
+     * 判断是否有启用的规则
+     * @return 是否有启用的规则
+     */
+    public boolean hasEnabledRules() {
+        for (CustomRegexRule rule : rules) {
+            if (rule.isEnabled()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * 应用所有启用的规则
      * @param text 要处理的文本
@@ -93,39 +157,61 @@ public class CustomRegexManager {
         if (text == null || text.isEmpty()) {
             return text;
         }
+        CompiledRegexRules compiled = compileRules();
+        return compiled != null ? compiled.apply(text) : text;
+    }
 
-        String result = text;
-        for (CustomRegexRule rule : rules) {
-            if (rule.isEnabled()) {
-                try {
-                    Pattern pattern = Pattern.compile(rule.getPattern());
-                    Matcher matcher = pattern.matcher(result);
-                    result = matcher.replaceAll(rule.getReplacement());
-                } catch (Exception e) {
-                    // 忽略无效的正则表达式
-                    System.err.println("应用规则时出错: " + e.getMessage());
-                }
+    /**
+     * 取出上次取出之后因匹配超出步数上限而在一部分文本上没有应用的规则
+     * 超出上限的只是那一段文本，规则在其他文本上照常应用
+     * @return 规则名称列表，每条规则只出现一次
+     */
+    public List<String> pollAbortedRules() {
+        List<String> names = new ArrayList<>();
+        for (String name : abortedRules) {
+            if (abortedRules.remove(name)) {
+                names.add(name);
             }
         }
-        return result;
+        return names;
     }
 
     /**
-     * 验证正则表达式是否有效
-     * @param regex 正则表达式
-     * @return 是否有效
+     * 编译当前所有启用的规则，之后对规则的修改不影响编译结果
+     * 规则没有变化时返回上次的编译结果，规则只能通过本类的方法修改
+     * @return 编译后的规则，没有可以应用的规则时为空
      */
-    private boolean isValidRegex(String regex) {
-        try {
-            Pattern.compile(regex);
-            return true;
-        } catch (PatternSyntaxException e) {
-            return false;
+    synchronized CompiledRegexRules compileRules() {
+        if (!compiledRulesValid) {
+            compiledRules = CompiledRegexRules.compile(rules, singleScan, abortedRules::add);
+            compiledRulesValid = true;
         }
+        return compiledRules;
     }
 
     /**
-     * 保存规则到文件
+     * 清除编译后的规则
+     */
+    private synchronized void invalidateCompiledRules() {
+        compiledRules = null;
+        compiledRulesValid = false;
+    }
+
+    /**
+     * 验证加载的规则，正则表达式或替换内容无效的规则被停用并报告，不再在每次应用时出错
+     */
+    private void validateRules() {
+        for (CustomRegexRule rule : rules) {
+            if (rule.isEnabled() && !rule.isValid()) {
+                System.err.println("规则 " + rule.getName() + " 的正则表达式或替换内容无效，已停用: "
+                        + rule.getPattern() + " -> " + rule.getReplacement());
+                rule.setEnabled(false);
+            }
+        }
+    }
+
+    /**
+     * 保存规则到文件，规则列表之后写入单次扫描选项
      */
     private void saveRules() {
         try {
@@ -139,6 +225,7 @@ public class CustomRegexManager {
             try (ObjectOutputStream oos = new ObjectOutputStream(
                     new FileOutputStream(configFile.toFile()))) {
                 oos.writeObject(rules);
+                oos.writeBoolean(isSingleScan());
             }
         } catch (IOException e) {
             System.err.println("保存规则失败: " + e.getMessage());
@@ -146,7 +233,7 @@ public class CustomRegexManager {
     }
 
     /**
-     * 从文件加载规则
+     * 从文件加载规则，旧版本保存的文件中没有单次扫描选项，此时不合并
      */
     @SuppressWarnings("unchecked")
     private void loadRules() {
@@ -155,6 +242,11 @@ public class CustomRegexManager {
             try (ObjectInputStream ois = new ObjectInputStream(
                     new FileInputStream(configFile.toFile()))) {
                 rules = (List<CustomRegexRule>) ois.readObject();
+                try {
+                    singleScan = ois.readBoolean();
+                } catch (EOFException e) {
+                    singleScan = false;
+                }
             } catch (IOException | ClassNotFoundException e) {
                 System.err.println("加载规则失败: " + e.getMessage());
                 // 加载失败时使用默认规则
@@ -164,16 +256,27 @@ public class CustomRegexManager {
             // 文件不存在时使用默认规则
             initDefaultRules();
         }
+        validateRules();
+        invalidateCompiledRules();
     }
 
     /**
      * 初始化默认规则
      */
     private void initDefaultRules() {
-        rules = new ArrayList<>();
-        // 添加一些默认规则
-        rules.add(new CustomRegexRule("C++语言", "C\\+\\+语言", "C++ 语言", true));
-        rules.add(new CustomRegexRule("Java语言", "Java语言", "Java 语言", true));
-        rules.add(new CustomRegexRule("Python语言", "Python语言", "Python 语言", true));
+        rules = defaultRules();
+    }
+
+    /**
+     * 创建默认规则，都是按字面替换的词条，合并为一个词典一次扫描完成
+     * 词条之间没有重叠，替换结果也不含其他词条，所以与逐条按正则表达式替换的结果相同
+     * @return 新的默认规则列表
+     */
+    static List<CustomRegexRule> defaultRules() {
+        List<CustomRegexRule> rules = new ArrayList<>();
+        rules.add(new CustomRegexRule("C++语言", "C++语言", "C++ 语言", true, true));
+        rules.add(new CustomRegexRule("Java语言", "Java语言", "Java 语言", true, true));
+        rules.add(new CustomRegexRule("Python语言", "Python语言", "Python 语言", true, true));
+        return rules;
     }
 }
@@ -1,14 +1,25 @@
 package edu.software.ergoutree.markdownautoclearup;
 
+import java.io.Serializable;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
 /**
  * 自定义正则表达式规则类
  * 用于存储用户定义的正则表达式规则
+ * 编译后的正则表达式随规则保存，匹配模式修改前不再重新编译，不参与序列化
  */
-public class CustomRegexRule {
+public class CustomRegexRule implements Serializable {
+    private static final long serialVersionUID = 1L;
+
     private String name;        // 规则名称
     private String pattern;     // 匹配模式（正则表达式）
     private String replacement; // 替换内容
     private boolean enabled;    // 是否启用
+    private boolean literal;    // 是否按字面匹配，匹配模式和替换内容都不作为正则表达式解释
+
+    // 编译后的匹配模式，第一次使用时编译，修改匹配模式时清除
+    private transient volatile Pattern compiledPattern;
 
     /**
      * 构造函数
@@ -18,10 +29,25 @@ public class CustomRegexRule {
      * @param enabled 是否启用
      */
     public CustomRegexRule(String name, String pattern, String replacement, boolean enabled) {
+        this(name, pattern, replacement, enabled, false);
+    }
+
+    /**
+     * 构造函数
+     * 按字面匹配的规则相当于词典中的一个词条，连续的字面规则在一次扫描中同时替换，
+     * 按最左最长匹配，一条规则的替换结果不会再被之后连续的字面规则匹配
+     * @param name 规则名称
+     * @param pattern 匹配模式，按字面匹配时为要查找的文本
+     * @param replacement 替换内容
+     * @param enabled 是否启用
+     * @param literal 是否按字面匹配
+     */
+    public CustomRegexRule(String name, String pattern, String replacement, boolean enabled, boolean literal) {
         this.name = name;
         this.pattern = pattern;
         this.replacement = replacement;
         this.enabled = enabled;
+        this.literal = literal;
     }
 
     /**
@@ -61,6 +87,52 @@ public class CustomRegexRule {
      */
     public void setPattern(String pattern) {
         this.pattern = pattern;
+        this.compiledPattern = null;
+    }
+
+    /**
+     * 是否按字面匹配
+     * @return 是否按字面匹配
+     */
+    public boolean isLiteral() {
+        return literal;
+    }
+
+    /**
+     * 设置是否按字面匹配
+     * @param literal 是否按字面匹配
+     */
+    public void setLiteral(boolean literal) {
+        this.literal = literal;
+        this.compiledPattern = null;
+    }
+
+    /**
+     * 获取编译后的匹配模式，只在第一次调用或修改匹配模式后编译
+     * @return 编译后的匹配模式，按字面匹配时为引用后的匹配模式
+     * @throws PatternSyntaxException 匹配模式不是有效的正则表达式
+     */
+    Pattern getCompiledPattern() {
+        Pattern compiled = compiledPattern;
+        if (compiled == null) {
+            compiled = Pattern.compile(literal ? Pattern.quote(pattern) : pattern);
+            compiledPattern = compiled;
+        }
+        return compiled;
+    }
+
+    /**
+     * 判断规则能否应用：匹配模式是有效的正则表达式，替换内容引用的分组都存在
+     * 按字面匹配时替换内容按字面插入，总是有效
+     * @return 是否有效
+     */
+    boolean isValid() {
+        try {
+            Pattern compiled = getCompiledPattern();
+            return literal || RegexUnion.isValidReplacement(compiled, replacement);
+        } catch (PatternSyntaxException e) {
+            return false;
+        }
     }
 
     /**
@@ -97,6 +169,6 @@ public class CustomRegexRule {
 
     @Override
     public String toString() {
-        return name + " (" + (enabled ? "启用" : "禁用") + ")";
+        return name + " (" + (enabled ? "启用" : "禁用") + (literal ? "，按字面匹配" : "") + ")";
     }
 }
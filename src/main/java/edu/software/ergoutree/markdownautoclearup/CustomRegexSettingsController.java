@@ -25,6 +25,12 @@ public class CustomRegexSettingsController {
     @FXML
     private CheckBox enabledCheckBox;
     
+    @FXML
+    private CheckBox literalCheckBox;
+    
+    @FXML
+    private CheckBox singleScanCheckBox;
+    
     @FXML
     private Button addButton;
     
@@ -52,6 +58,7 @@ public class CustomRegexSettingsController {
         regexManager = new CustomRegexManager();
         rulesList = FXCollections.observableArrayList(regexManager.getRules());
         rulesListView.setItems(rulesList);
+        singleScanCheckBox.setSelected(regexManager.isSingleScan());
         
         // 设置列表选择监听器
         rulesListView.getSelectionModel().selectedItemProperty().addListener(
@@ -61,6 +68,7 @@ public class CustomRegexSettingsController {
                     patternTextField.setText(newValue.getPattern());
                     replacementTextField.setText(newValue.getReplacement());
                     enabledCheckBox.setSelected(newValue.isEnabled());
+                    literalCheckBox.setSelected(newValue.isLiteral());
                 } else {
                     clearFields();
                 }
@@ -90,19 +98,20 @@ public class CustomRegexSettingsController {
         String pattern = patternTextField.getText().trim();
         String replacement = replacementTextField.getText();
         boolean enabled = enabledCheckBox.isSelected();
+        boolean literal = literalCheckBox.isSelected();
         
         if (name.isEmpty() || pattern.isEmpty()) {
             showAlert("错误", "规则名称和匹配模式不能为空");
             return;
         }
         
-        CustomRegexRule rule = new CustomRegexRule(name, pattern, replacement, enabled);
+        CustomRegexRule rule = new CustomRegexRule(name, pattern, replacement, enabled, literal);
         if (regexManager.addRule(rule)) {
             rulesList.add(rule);
             clearFields();
             showAlert("成功", "规则添加成功");
         } else {
-            showAlert("错误", "无效的正则表达式");
+            showAlert("错误", "无效的正则表达式或替换内容");
         }
     }
     
@@ -121,18 +130,19 @@ public class CustomRegexSettingsController {
         String pattern = patternTextField.getText().trim();
         String replacement = replacementTextField.getText();
         boolean enabled = enabledCheckBox.isSelected();
+        boolean literal = literalCheckBox.isSelected();
         
         if (name.isEmpty() || pattern.isEmpty()) {
             showAlert("错误", "规则名称和匹配模式不能为空");
             return;
         }
         
-        CustomRegexRule rule = new CustomRegexRule(name, pattern, replacement, enabled);
+        CustomRegexRule rule = new CustomRegexRule(name, pattern, replacement, enabled, literal);
         if (regexManager.editRule(selectedIndex, rule)) {
             rulesList.set(selectedIndex, rule);
             showAlert("成功", "规则修改成功");
         } else {
-            showAlert("错误", "无效的正则表达式");
+            showAlert("错误", "无效的正则表达式或替换内容");
         }
     }
     
@@ -163,6 +173,15 @@ public class CustomRegexSettingsController {
         });
     }
     
+    /**
+     * 单次扫描选项切换事件
+     * 选项直接设置到规则管理器，与规则的增删改一样立即生效并保存
+     */
+    @FXML
+    protected void onSingleScanToggle() {
+        regexManager.setSingleScan(singleScanCheckBox.isSelected());
+    }
+    
     /**
      * 应用按钮点击事件
      */
@@ -189,6 +208,7 @@ public class CustomRegexSettingsController {
         patternTextField.clear();
         replacementTextField.clear();
         enabledCheckBox.setSelected(true);
+        literalCheckBox.setSelected(false);
     }
     
     /**
@@ -237,6 +257,7 @@ public class CustomRegexSettingsController {
             this.regexManager = manager;
             this.rulesList = FXCollections.observableArrayList(manager.getRules());
             rulesListView.setItems(rulesList);
+            singleScanCheckBox.setSelected(manager.isSingleScan());
         }
     }
 }
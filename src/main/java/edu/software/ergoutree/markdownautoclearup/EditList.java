@@ -0,0 +1,216 @@
+package edu.software.ergoutree.markdownautoclearup;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * 编辑列表
+ * 描述把原文变为处理结果所需的全部修改，每处修改由原文中的位置、删除的字符数和插入的文本组成。
+ * 修改按位置升序排列且互不重叠，位置都是原文中的偏移，依次应用即可得到处理结果。
+ *
+ * 修改以基本类型数组保存，插入的文本连续存放在一个共享的字符串池中，不为每处修改创建对象。
+ * 通常只有很少的字符需要改动，编辑器和其他集成只需应用这份小补丁，不必替换整个文本。
+ * 对象创建后不可修改，可以被多个线程同时读取。
+ */
+public final class EditList {
+
+    private static final EditList EMPTY = new EditList(new int[0], new int[0], new int[1], "", 0);
+
+    private final int[] positions;
+    private final int[] deletedLengths;
+    // 第 i 处修改插入的文本为 pool[poolBounds[i], poolBounds[i + 1])
+    private final int[] poolBounds;
+    private final String pool;
+    private final int count;
+
+    /**
+     * 构造函数
+     * @param positions 各处修改在原文中的位置
+     * @param deletedLengths 各处修改删除的字符数
+     * @param poolBounds 各处修改插入的文本在字符串池中的边界，长度至少为 count + 1
+     * @param pool 字符串池
+     * @param count 修改数量
+     */
+    EditList(int[] positions, int[] deletedLengths, int[] poolBounds, String pool, int count) {
+        this.positions = positions;
+        this.deletedLengths = deletedLengths;
+        this.poolBounds = poolBounds;
+        this.pool = pool;
+        this.count = count;
+    }
+
+    /**
+     * 获取不含任何修改的编辑列表
+     * @return 空编辑列表
+     */
+    public static EditList empty() {
+        return EMPTY;
+    }
+
+    /**
+     * 获取修改数量
+     * @return 修改数量
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * 判断是否没有任何修改
+     * @return 是否没有修改
+     */
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    /**
+     * 获取修改在原文中的位置
+     * @param index 修改索引
+     * @return 位置
+     */
+    public int position(int index) {
+        checkIndex(index);
+        return positions[index];
+    }
+
+    /**
+     * 获取修改删除的原文字符数
+     * @param index 修改索引
+     * @return 删除的字符数
+     */
+    public int deletedLength(int index) {
+        checkIndex(index);
+        return deletedLengths[index];
+    }
+
+    /**
+     * 获取修改插入的字符数
+     * @param index 修改索引
+     * @return 插入的字符数
+     */
+    public int insertedLength(int index) {
+        checkIndex(index);
+        return poolBounds[index + 1] - poolBounds[index];
+    }
+
+    /**
+     * 获取修改插入的文本在字符串池中的起点
+     * @param index 修改索引
+     * @return 起点
+     */
+    public int insertedStart(int index) {
+        checkIndex(index);
+        return poolBounds[index];
+    }
+
+    /**
+     * 获取修改插入的文本
+     * @param index 修改索引
+     * @return 插入的文本
+     */
+    public String insertedText(int index) {
+        checkIndex(index);
+        return pool.substring(poolBounds[index], poolBounds[index + 1]);
+    }
+
+    /**
+     * 获取字符串池，所有修改插入的文本按顺序连续存放在其中
+     * @return 字符串池
+     */
+    public String pool() {
+        return pool;
+    }
+
+    /**
+     * 获取应用修改后文本长度的变化量
+     * @return 插入字符数与删除字符数之差
+     */
+    public long lengthDelta() {
+        long deleted = 0;
+        for (int i = 0; i < count; i++) {
+            deleted += deletedLengths[i];
+        }
+        return poolBounds[count] - poolBounds[0] - deleted;
+    }
+
+    /**
+     * 把修改应用到原文
+     * @param original 生成本编辑列表时的原文
+     * @return 处理后的文本
+     */
+    public String applyTo(CharSequence original) {
+        StringBuilder result = new StringBuilder((int) Math.min(Integer.MAX_VALUE - 8,
+                                                                original.length() + lengthDelta()));
+        try {
+            applyTo(original, result);
+        } catch (IOException e) {
+            // 写入 StringBuilder 不会发生 IO 异常
+            throw new UncheckedIOException(e);
+        }
+        return result.toString();
+    }
+
+    /**
+     * 把修改应用到原文，并将结果写入输出目标
+     * @param original 生成本编辑列表时的原文
+     * @param out 输出目标
+     * @throws IOException 写入输出目标失败
+     */
+    public void applyTo(CharSequence original, Appendable out) throws IOException {
+        int position = 0;
+        for (int i = 0; i < count; i++) {
+            out.append(original, position, positions[i]);
+            out.append(pool, poolBounds[i], poolBounds[i + 1]);
+            position = positions[i] + deletedLengths[i];
+        }
+        out.append(original, position, original.length());
+    }
+
+    /**
+     * 选出完全位于 [from, to) 内的修改，并把位置平移
+     * 位置恰好为 to 的插入属于之后的文本，只有 includeInsertionsAtEnd 为真时才选出
+     * @param from 起点
+     * @param to 终点（不含）
+     * @param includeInsertionsAtEnd 是否选出位置为 to 的插入
+     * @param shift 加到选出的修改位置上的偏移
+     * @return 选出的修改
+     */
+    EditList select(int from, int to, boolean includeInsertionsAtEnd, int shift) {
+        int[] selectedPositions = new int[count];
+        int[] selectedDeleted = new int[count];
+        int[] selectedBounds = new int[count + 1];
+        StringBuilder selectedPool = new StringBuilder();
+        int selected = 0;
+        for (int i = 0; i < count; i++) {
+            int position = positions[i];
+            if (position < from || position + deletedLengths[i] > to
+                    || position == to && !includeInsertionsAtEnd) {
+                continue;
+            }
+            selectedPositions[selected] = position + shift;
+            selectedDeleted[selected] = deletedLengths[i];
+            selectedPool.append(pool, poolBounds[i], poolBounds[i + 1]);
+            selected++;
+            selectedBounds[selected] = selectedPool.length();
+        }
+        if (selected == 0) {
+            return EMPTY;
+        }
+        return new EditList(selectedPositions, selectedDeleted, selectedBounds, selectedPool.toString(), selected);
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("修改索引越界: " + index + "，修改数量: " + count);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "EditList{" +
+                "size=" + count +
+                ", pool=" + pool.length() +
+                ", lengthDelta=" + lengthDelta() +
+                '}';
+    }
+}
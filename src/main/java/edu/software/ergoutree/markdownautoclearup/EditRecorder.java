@@ -0,0 +1,297 @@
+package edu.software.ergoutree.markdownautoclearup;
+
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.util.Arrays;
+
+/**
+ * 编辑记录器
+ * 作为空格处理引擎的输出目标，把引擎按顺序写出的处理结果与原文逐字符对齐，只记录不同之处，不保存处理结果。
+ *
+ * 空格规则只在原文字符之间插入空格，标点转换只把一个字符替换为另一个非空格字符，
+ * 所以对齐时输出字符与当前原文字符相同即为原样复制，不同时输出空格为插入，其他字符为替换。
+ * 相邻的插入和替换合并为一处修改。引擎直接从原文复制的受保护区域和原样复制区间不逐字符比较。
+ *
+ * 自定义正则表达式规则可以任意改写文本，引擎通过 {@link #replace} 把规则作用的每段文本整段交给记录器，
+ * 记录为去掉首尾相同部分后的一处修改。
+ *
+ * 可以限制记录的修改数量：达到上限后记录器抛出 {@link LimitReachedException} 中止引擎的扫描，
+ * 只需判断文本是否会被改变时，第一处修改之后不再扫描剩余的文本。
+ */
+final class EditRecorder implements Appendable {
+
+    // 批量比较时每次复制的原文字符数
+    private static final int COMPARE_SIZE = 8192;
+
+    private final CharSequence original;
+    private final int limit;
+
+    // 达到修改数量上限后停止记录
+    private boolean stopped;
+
+    // 原文中已对齐到的位置
+    private int position;
+
+    // 当前块在原文中的起点，引擎处理整个原文时为 0
+    private int blockStart;
+
+    // 正在累积的修改：起点和删除的字符数，start 为 -1 时没有
+    private int editStart = -1;
+    private int editDeleted;
+
+    private int[] positions = new int[16];
+    private int[] deletedLengths = new int[16];
+    private int[] poolBounds = new int[17];
+    private final StringBuilder pool = new StringBuilder();
+    private int count;
+
+    // 批量比较时复制原文和非数组输出的缓冲区
+    private char[] compare;
+    private char[] output;
+
+    /**
+     * 构造函数
+     * @param original 原文
+     */
+    EditRecorder(CharSequence original) {
+        this(original, Integer.MAX_VALUE);
+    }
+
+    /**
+     * 构造函数
+     * @param original 原文
+     * @param limit 最多记录的修改数量
+     */
+    EditRecorder(CharSequence original, int limit) {
+        this.original = original;
+        this.limit = limit;
+    }
+
+    @Override
+    public Appendable append(CharSequence csq) throws IOException {
+        return append(csq, 0, csq.length());
+    }
+
+    @Override
+    public Appendable append(CharSequence csq, int start, int end) throws IOException {
+        // 直接从原文当前位置复制的一段
+        if (csq == original && start == position) {
+            closeEdit();
+            checkLimit();
+            position = end;
+            return this;
+        }
+        if (csq instanceof CharBuffer && ((CharBuffer) csq).hasArray()) {
+            CharBuffer chars = (CharBuffer) csq;
+            int offset = chars.arrayOffset() + chars.position();
+            append(chars.array(), offset + start, offset + end);
+            return this;
+        }
+        // 其他输入分段复制到字符数组后比较
+        if (output == null) {
+            output = new char[COMPARE_SIZE];
+        }
+        int index = start;
+        while (index < end) {
+            int count = Math.min(end - index, COMPARE_SIZE);
+            getChars(csq, index, index + count, output);
+            append(output, 0, count);
+            index += count;
+        }
+        return this;
+    }
+
+    /**
+     * 对齐字符数组中的一段输出
+     * @param chars 输出字符数组
+     * @param from 起点
+     * @param to 终点（不含）
+     * @throws IOException 达到修改数量上限
+     */
+    private void append(char[] chars, int from, int to) throws IOException {
+        int i = from;
+        while (i < to) {
+            // 没有未结束的修改时先整段比较，跳过与原文相同的部分
+            if (editStart < 0) {
+                int matched = matchLength(chars, i, to);
+                position += matched;
+                i += matched;
+                if (i == to) {
+                    break;
+                }
+            }
+            append(chars[i++]);
+        }
+    }
+
+    @Override
+    public Appendable append(char c) throws IOException {
+        if (position < original.length() && original.charAt(position) == c) {
+            closeEdit();
+            checkLimit();
+            position++;
+            return this;
+        }
+        openEdit();
+        if (c != ' ' && position < original.length()) {
+            // 替换当前原文字符
+            editDeleted++;
+            position++;
+        }
+        pool.append(c);
+        return this;
+    }
+
+    /**
+     * 开始接收原文中一块文本的处理结果，之后 {@link #replace} 的位置相对于这块文本的起点
+     * @param start 块起点，必须是当前对齐位置
+     */
+    void startBlock(int start) {
+        blockStart = start;
+    }
+
+    /**
+     * 记录一段被整体改写的文本
+     * @param segmentEnd 被改写的原文终点（不含），相对于当前块的起点；起点为当前对齐位置
+     * @param replacement 改写后的文本
+     * @throws LimitReachedException 达到修改数量上限
+     */
+    void replace(int segmentEnd, CharSequence replacement) throws LimitReachedException {
+        int end = blockStart + segmentEnd;
+        closeEdit();
+        int prefix = 0;
+        int common = Math.min(end - position, replacement.length());
+        while (prefix < common && original.charAt(position + prefix) == replacement.charAt(prefix)) {
+            prefix++;
+        }
+        int suffix = 0;
+        common -= prefix;
+        while (suffix < common
+                && original.charAt(end - 1 - suffix) == replacement.charAt(replacement.length() - 1 - suffix)) {
+            suffix++;
+        }
+        position += prefix;
+        if (position < end - suffix || prefix + suffix < replacement.length()) {
+            openEdit();
+            editDeleted = end - suffix - position;
+            pool.append(replacement, prefix, replacement.length() - suffix);
+            closeEdit();
+        }
+        position = end;
+        checkLimit();
+    }
+
+    /**
+     * 结束记录，原文中剩余未对齐的字符视为被删除；因达到上限而中止时只返回已记录的修改
+     * @return 编辑列表
+     */
+    EditList finish() {
+        if (!stopped && position < original.length()) {
+            openEdit();
+            editDeleted += original.length() - position;
+            position = original.length();
+        }
+        closeEdit();
+        if (count == 0) {
+            return EditList.empty();
+        }
+        return new EditList(positions, deletedLengths, poolBounds, pool.toString(), count);
+    }
+
+    /**
+     * 计算输出与原文当前位置起相同的字符数，原文分段复制到比较缓冲区后批量比较
+     * @param chars 输出字符数组
+     * @param from 起点
+     * @param to 终点（不含）
+     * @return 相同的字符数
+     */
+    private int matchLength(char[] chars, int from, int to) {
+        if (compare == null) {
+            compare = new char[COMPARE_SIZE];
+        }
+        int matched = 0;
+        while (from + matched < to && position + matched < original.length()) {
+            int count = Math.min(Math.min(to - from - matched, original.length() - position - matched), COMPARE_SIZE);
+            int start = position + matched;
+            getChars(original, start, start + count, compare);
+            int mismatch = Arrays.mismatch(compare, 0, count, chars, from + matched, from + matched + count);
+            if (mismatch >= 0) {
+                return matched + mismatch;
+            }
+            matched += count;
+        }
+        return matched;
+    }
+
+    /**
+     * 复制一段文本到字符数组
+     * @param text 文本
+     * @param start 起点
+     * @param end 终点（不含）
+     * @param target 目标数组，从下标 0 开始写入
+     */
+    private static void getChars(CharSequence text, int start, int end, char[] target) {
+        if (text instanceof String) {
+            ((String) text).getChars(start, end, target, 0);
+        } else if (text instanceof StringBuilder) {
+            ((StringBuilder) text).getChars(start, end, target, 0);
+        } else if (text instanceof PieceTable) {
+            ((PieceTable) text).getChars(start, end, target, 0);
+        } else {
+            for (int i = start; i < end; i++) {
+                target[i - start] = text.charAt(i);
+            }
+        }
+    }
+
+    /**
+     * 达到修改数量上限时中止扫描
+     * @throws LimitReachedException 达到修改数量上限
+     */
+    private void checkLimit() throws LimitReachedException {
+        if (count >= limit) {
+            stopped = true;
+            throw new LimitReachedException();
+        }
+    }
+
+    private void openEdit() {
+        if (editStart < 0) {
+            editStart = position;
+            editDeleted = 0;
+        }
+    }
+
+    private void closeEdit() {
+        if (editStart < 0) {
+            return;
+        }
+        if (count == positions.length) {
+            positions = Arrays.copyOf(positions, count * 2);
+            deletedLengths = Arrays.copyOf(deletedLengths, count * 2);
+            poolBounds = Arrays.copyOf(poolBounds, count * 2 + 1);
+        }
+        positions[count] = editStart;
+        deletedLengths[count] = editDeleted;
+        count++;
+        poolBounds[count] = pool.length();
+        editStart = -1;
+    }
+
+    /**
+     * 达到修改数量上限，用于中止引擎的扫描，不记录调用栈
+     */
+    static final class LimitReachedException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        LimitReachedException() {
+            super("已达到修改数量上限");
+        }
+
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+    }
+}
@@ -0,0 +1,611 @@
+package edu.software.ergoutree.markdownautoclearup;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.constant.ConstantDescs;
+import java.lang.invoke.MethodHandles;
+import java.nio.CharBuffer;
+
+/**
+ * 融合空格处理引擎
+ * 在一次从左到右的扫描中应用所有启用的空格与标点规则，只使用一个输出缓冲区。
+ *
+ * 输出与依次执行以下各步的结果逐字节一致：
+ * 中英文空格、中文数字空格、英文数字空格、中文标点空格、英文标点空格、标点全角/半角转换。
+ * 之所以可以合并为一趟扫描，是因为：
+ * 1. 三条交界规则只会在原文的两个相邻字符之间插入空格，且它们匹配的字符对互不相交，
+ *    所以各自只需记录"上一对字符是否已被本规则匹配"，即可复现正则非重叠匹配的效果；
+ * 2. 两条标点规则依次作用在前一步的输出上，只依赖前后各一个字符，可以串成带一个字符延迟的流水线；
+ * 3. 标点转换是逐字符查表，放在流水线最后；成对引号的开闭只取决于原文中前面的同种引号和空行。
+ *
+ * 输入可以是任意 CharSequence，输出先写入一个固定大小的字符缓冲区，写满后批量追加到调用方提供的 Appendable，
+ * 处理过程中不会产生中间字符串。
+ *
+ * 扫描时由 RunScanner 查找下一个可能触发规则的位置，其间不会触发任何规则的字符整段复制到输出缓冲区，
+ * 只有交界处、标点和无法快速分类的字符逐字符经过各阶段。
+ *
+ * 受保护区域（代码块、公式、超链接等）在扫描时直接跳过并原样复制。对前后文本而言，
+ * 一个受保护区域相当于一个既不是空格、也不属于任何字符类别的字符。
+ *
+ * 本类同时是特化模板：SpacingEngine.create 以规则配置为类数据，把本类的字节码定义为隐藏类，
+ * 隐藏类的静态常量 CONFIGURATION 即为该配置，JIT 编译时未启用规则的分支整个消除。
+ * 直接加载的本类没有类数据，从实例字段读取配置，作为通用实现。
+ * 本类不能有嵌套类和 lambda，否则隐藏类副本无法访问它们。
+ */
+final class FusedSpacingEngine extends SpacingEngine {
+
+    // 交界规则的字符对种类：两个字符类别位按位或的结果
+    private static final int CHINESE_ENGLISH_PAIR = CharClassTable.HAN | CharClassTable.LATIN;
+    private static final int CHINESE_NUMBER_PAIR = CharClassTable.HAN | CharClassTable.DIGIT;
+    private static final int ENGLISH_NUMBER_PAIR = CharClassTable.LATIN | CharClassTable.DIGIT;
+
+    // 作为隐藏类定义时由类数据给出的规则配置，直接加载时为 -1
+    private static final int CONFIGURATION = classConfiguration();
+    private static final boolean SPECIALIZED = CONFIGURATION >= 0;
+    private static final int PAIRS = SPECIALIZED ? pairs(CONFIGURATION) : 0;
+
+    private final int configuration;
+    private final PunctuationProfile conversion;
+    private final char[] conversionTable;
+
+    // 输出缓冲区大小
+    private static final int BUFFER_SIZE = 8192;
+
+    // 输入不是字符数组时，每次复制到输入缓冲区的字符数
+    private static final int INPUT_SIZE = 8192;
+
+    // 标点阶段中代表受保护区域的字符，只用于判断前一个字符是否为空格
+    private static final char REGION = '\uFFFC';
+
+    private final int boundaryPairs;
+
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private char[] input;
+
+    // 处理计划给出的原样复制区间，格式与受保护区域相同
+    private int[] verbatim;
+    private int verbatimCount;
+    private int verbatimIndex;
+    private int buffered;
+    private Appendable out;
+
+    // 交界规则状态：上一个码点的类别，以及上一对字符是否已被对应规则匹配
+    private int prevType;
+    private boolean chineseEnglishMatched;
+    private boolean chineseNumberMatched;
+    private boolean englishNumberMatched;
+
+    // 中文标点阶段状态
+    private boolean chinesePunctHasPrev;
+    private char chinesePunctPrev;
+    private boolean chinesePunctAwaitNext;
+
+    // 英文标点阶段状态
+    private boolean englishPunctHasPrev;
+    private char englishPunctPrev;
+    private boolean englishPunctAwaitNext;
+
+    // 成对引号状态：每种引号是否等待闭合（按引号序号的位），以及上一个引号之后的原文是否出现过空行。
+    // 当前文本、已检查到的位置和当前行是否只含空白都以原文为准，受保护区域和整段复制的字符也要检查
+    private int openQuotes;
+    private CharSequence quoteText;
+    private int quoteCheckedTo;
+    private boolean quoteLineEmpty;
+    // 正在扫描的字符数组下标加上 scanBase 即为原文中的位置，current 为当前字符在原文中的位置
+    private int scanBase;
+    private int current;
+
+    /**
+     * 构造函数
+     * @param configuration 规则配置，由 SpacingEngine.configuration 生成
+     * @param conversion 标点转换配置，不转换时为空
+     */
+    FusedSpacingEngine(int configuration, PunctuationProfile conversion) {
+        this.configuration = configuration;
+        this.conversion = conversion;
+        this.conversionTable = conversion != null ? conversion.table() : null;
+        this.boundaryPairs = pairs(configuration);
+    }
+
+    /**
+     * 读取定义隐藏类时传入的类数据
+     * @return 规则配置，不是隐藏类时为 -1
+     */
+    private static int classConfiguration() {
+        try {
+            Integer data = MethodHandles.classData(MethodHandles.lookup(), ConstantDescs.DEFAULT_NAME, Integer.class);
+            return data != null ? data : -1;
+        } catch (IllegalAccessException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * 根据规则配置生成交界规则字符对的位集合
+     * @param configuration 规则配置
+     * @return 字符对位集合
+     */
+    private static int pairs(int configuration) {
+        return RunScanner.boundaryPairs((configuration & CHINESE_ENGLISH) != 0,
+                                        (configuration & CHINESE_NUMBER) != 0,
+                                        (configuration & ENGLISH_NUMBER) != 0);
+    }
+
+    /**
+     * 判断配置中是否含有指定的位，隐藏类中编译为常量
+     * @param bit 配置位
+     * @return 是否含有
+     */
+    private boolean enabled(int bit) {
+        return ((SPECIALIZED ? CONFIGURATION : configuration) & bit) != 0;
+    }
+
+    /**
+     * 获取交界规则字符对的位集合，隐藏类中编译为常量
+     * @return 字符对位集合
+     */
+    private int boundaryPairs() {
+        return SPECIALIZED ? PAIRS : boundaryPairs;
+    }
+
+    /**
+     * 设置原样复制的区间
+     * 区间内的字符不会被任何已启用的规则改变，只有第一个字符仍经过各阶段，以处理它与前文之间的交界和标点空格
+     * @param bounds 区间边界，bounds[2i] 为第 i 个区间的起点，bounds[2i+1] 为终点（不含）
+     * @param count 区间数量
+     */
+    @Override
+    void setVerbatim(int[] bounds, int count) {
+        this.verbatim = bounds;
+        this.verbatimCount = count;
+    }
+
+    /**
+     * 把状态设置为刚处理完一个换行符，用于单独处理从文档中间某一行开头开始的文本
+     */
+    @Override
+    void startAtLineStart() {
+        prevType = 0;
+        chineseEnglishMatched = false;
+        chineseNumberMatched = false;
+        englishNumberMatched = false;
+        chinesePunctAwaitNext = false;
+        chinesePunctPrev = '\n';
+        chinesePunctHasPrev = true;
+        englishPunctAwaitNext = false;
+        englishPunctPrev = '\n';
+        englishPunctHasPrev = true;
+        // 重置点之前是一个空行
+        openQuotes = 0;
+    }
+
+    /**
+     * 处理文本并写入指定的输出目标，跳过受保护区域
+     * 受保护区域之间的每段文本在应用空格规则后，再单独应用自定义正则表达式规则
+     * @param text 原始文本
+     * @param regions 受保护区域，可以为空
+     * @param target 输出目标
+     * @param customRules 预编译的自定义正则表达式规则，可以为空
+     * @throws IOException 写入输出目标失败
+     */
+    @Override
+    void process(CharSequence text, ProtectedRegions regions, Appendable target,
+                 CompiledRegexRules customRules) throws IOException {
+        // 有自定义规则时先把每段文本写入临时缓冲区，应用规则后再写入输出目标
+        StringBuilder segment = customRules != null ? new StringBuilder() : null;
+        out = segment != null ? segment : target;
+        quoteText = text;
+
+        int regionCount = regions != null ? regions.size() : 0;
+        int position = 0;
+        verbatimIndex = 0;
+        for (int r = 0; r <= regionCount; r++) {
+            boolean hasRegion = r < regionCount;
+            int segmentEnd = hasRegion ? regions.start(r) : text.length();
+            scanSegment(text, position, segmentEnd);
+            if (hasRegion) {
+                enterRegion();
+            }
+            flush();
+            if (segment != null) {
+                String result = customRules.apply(segment.toString());
+                if (target instanceof EditRecorder) {
+                    // 规则可以任意改写文本，整段交给记录器
+                    ((EditRecorder) target).replace(segmentEnd, result);
+                } else {
+                    target.append(result);
+                }
+                segment.setLength(0);
+            }
+            if (hasRegion) {
+                target.append(text, regions.start(r), regions.end(r));
+                position = regions.end(r);
+            }
+        }
+        if (enabled(PAIRED_QUOTES)) {
+            // 下一次处理的文本接在本次之后，未检查的部分在这里检查完
+            checkQuoteContext(text.length());
+            quoteCheckedTo = 0;
+        }
+        quoteText = null;
+        out = null;
+    }
+
+    /**
+     * 扫描两个受保护区域之间的一段文本，原样复制其中的原样复制区间
+     * @param text 原始文本
+     * @param start 起点
+     * @param end 终点（不含）
+     * @throws IOException 写入输出目标失败
+     */
+    private void scanSegment(CharSequence text, int start, int end) throws IOException {
+        int position = start;
+        while (position < end) {
+            while (verbatimIndex < verbatimCount && verbatim[2 * verbatimIndex + 1] <= position) {
+                verbatimIndex++;
+            }
+            int verbatimStart = verbatimIndex < verbatimCount ? Math.max(verbatim[2 * verbatimIndex], position) : end;
+            if (verbatimStart >= end) {
+                scan(text, position, end);
+                return;
+            }
+            scan(text, position, verbatimStart);
+            position = Math.min(verbatim[2 * verbatimIndex + 1], end);
+            copyVerbatim(text, verbatimStart, position);
+        }
+    }
+
+    /**
+     * 原样复制一段不会被任何已启用规则改变的文本
+     * @param text 原始文本
+     * @param start 起点
+     * @param end 终点（不含）
+     * @throws IOException 写入输出目标失败
+     */
+    private void copyVerbatim(CharSequence text, int start, int end) throws IOException {
+        // 第一个字符与前文之间仍可能需要空格
+        scan(text, start, start + 1);
+        if (end - start > 1) {
+            flush();
+            out.append(text, start + 1, end);
+            afterRun(text.charAt(end - 1));
+        }
+    }
+
+    /**
+     * 扫描一段文本，依次应用各条规则
+     * 字符数组支持的 CharBuffer 直接扫描其数组，其他输入分块复制到输入缓冲区后扫描
+     * @param text 原始文本
+     * @param start 起点
+     * @param end 终点（不含）
+     * @throws IOException 写入输出目标失败
+     */
+    private void scan(CharSequence text, int start, int end) throws IOException {
+        if (text instanceof CharBuffer && ((CharBuffer) text).hasArray()) {
+            CharBuffer chars = (CharBuffer) text;
+            int offset = chars.arrayOffset() + chars.position();
+            scanBase = -offset;
+            scan(chars.array(), offset + start, offset + end);
+            return;
+        }
+        if (input == null) {
+            input = new char[INPUT_SIZE];
+        }
+        int position = start;
+        while (position < end) {
+            int blockEnd = Math.min(end, position + INPUT_SIZE);
+            // 不把代理对拆到两块中
+            if (blockEnd < end && Character.isHighSurrogate(text.charAt(blockEnd - 1))) {
+                blockEnd--;
+            }
+            getChars(text, position, blockEnd, input);
+            scanBase = position;
+            scan(input, 0, blockEnd - position);
+            position = blockEnd;
+        }
+    }
+
+    /**
+     * 复制一段文本到字符数组
+     * @param text 原始文本
+     * @param start 起点
+     * @param end 终点（不含）
+     * @param target 目标数组，从下标 0 开始写入
+     */
+    private static void getChars(CharSequence text, int start, int end, char[] target) {
+        if (text instanceof String) {
+            ((String) text).getChars(start, end, target, 0);
+        } else if (text instanceof StringBuilder) {
+            ((StringBuilder) text).getChars(start, end, target, 0);
+        } else if (text instanceof CharBuffer) {
+            CharBuffer chars = (CharBuffer) text;
+            chars.get(chars.position() + start, target, 0, end - start);
+        } else if (text instanceof PieceTable) {
+            ((PieceTable) text).getChars(start, end, target, 0);
+        } else {
+            for (int i = start; i < end; i++) {
+                target[i - start] = text.charAt(i);
+            }
+        }
+    }
+
+    /**
+     * 扫描字符数组中的一段文本，依次应用各条规则
+     * @param chars 字符数组
+     * @param start 起点
+     * @param end 终点（不含）
+     * @throws IOException 写入输出目标失败
+     */
+    private void scan(char[] chars, int start, int end) throws IOException {
+        int i = start;
+        while (i < end) {
+            char c = chars[i];
+            int codePoint = c;
+            int next = i + 1;
+            if (Character.isHighSurrogate(c) && next < end && Character.isLowSurrogate(chars[next])) {
+                codePoint = Character.toCodePoint(c, chars[next]);
+                next++;
+            }
+
+            int type = CharClassTable.flags(codePoint) & CharClassTable.BOUNDARY_MASK;
+            if (boundaryMatches(type)) {
+                pushChinesePunctuation(' ');
+            }
+            prevType = type;
+
+            if (enabled(PAIRED_QUOTES)) {
+                current = scanBase + i;
+            }
+            for (int j = i; j < next; j++) {
+                pushChinesePunctuation(chars[j]);
+            }
+            i = next;
+
+            if (enabled(SCAN) && i < end) {
+                int stop = RunScanner.INSTANCE.skip(chars, i, end, prevType, boundaryPairs(), enabled(STOP_PUNCTUATION));
+                if (stop > i) {
+                    copyRun(chars, i, stop);
+                    i = stop;
+                }
+            }
+        }
+    }
+
+    /**
+     * 整段复制扫描器确认不会触发任何规则的字符
+     * 这些字符不构成已启用的交界字符对，也不是标点或被转换的字符，
+     * 所以除第一个字符外，各阶段对它们的处理都只是原样输出并记住最后一个字符
+     * @param chars 字符数组
+     * @param from 起点
+     * @param to 终点（不含）
+     * @throws IOException 写入输出目标失败
+     */
+    private void copyRun(char[] chars, int from, int to) throws IOException {
+        // 第一个字符可能紧跟在标点之后，由标点阶段决定是否先补一个空格
+        pushChinesePunctuation(chars[from]);
+
+        int position = from + 1;
+        while (position < to) {
+            int count = Math.min(to - position, BUFFER_SIZE - buffered);
+            System.arraycopy(chars, position, buffer, buffered, count);
+            buffered += count;
+            position += count;
+            if (buffered == BUFFER_SIZE) {
+                flush();
+            }
+        }
+
+        afterRun(chars[to - 1]);
+    }
+
+    /**
+     * 整段复制之后更新各阶段的状态：所有阶段都只需记住最后一个字符
+     * @param last 复制的最后一个字符，不是代理字符
+     */
+    private void afterRun(char last) {
+        prevType = CharClassTable.flags(last) & CharClassTable.BOUNDARY_MASK;
+        chineseEnglishMatched = false;
+        chineseNumberMatched = false;
+        englishNumberMatched = false;
+        chinesePunctPrev = last;
+        englishPunctPrev = last;
+    }
+
+    /**
+     * 遇到受保护区域：把它当作一个非空格、无类别的字符送入各阶段，但不写出任何字符
+     * @throws IOException 写入输出目标失败
+     */
+    private void enterRegion() throws IOException {
+        prevType = 0;
+        chineseEnglishMatched = false;
+        chineseNumberMatched = false;
+        englishNumberMatched = false;
+
+        if (enabled(CHINESE_PUNCTUATION)) {
+            if (chinesePunctAwaitNext) {
+                chinesePunctAwaitNext = false;
+                pushEnglishPunctuation(' ');
+            }
+            chinesePunctPrev = REGION;
+            chinesePunctHasPrev = true;
+        }
+        if (enabled(ENGLISH_PUNCTUATION)) {
+            if (englishPunctAwaitNext) {
+                englishPunctAwaitNext = false;
+                emit(' ');
+            }
+            englishPunctPrev = REGION;
+            englishPunctHasPrev = true;
+        }
+    }
+
+    /**
+     * 判断上一个码点与当前码点之间是否需要插入空格，并更新各交界规则的匹配状态
+     * @param type 当前码点的类别
+     * @return 是否插入空格
+     */
+    private boolean boundaryMatches(int type) {
+        boolean chineseEnglish = false;
+        boolean chineseNumber = false;
+        boolean englishNumber = false;
+
+        // 类别互斥，两个类别位按位或恰好为两位时才是不同类别的字符对
+        switch (prevType | type) {
+            case CHINESE_ENGLISH_PAIR:
+                chineseEnglish = enabled(CHINESE_ENGLISH) && !chineseEnglishMatched;
+                break;
+            case CHINESE_NUMBER_PAIR:
+                chineseNumber = enabled(CHINESE_NUMBER) && !chineseNumberMatched;
+                break;
+            case ENGLISH_NUMBER_PAIR:
+                englishNumber = enabled(ENGLISH_NUMBER) && !englishNumberMatched;
+                break;
+            default:
+                break;
+        }
+
+        // 被匹配的字符对会"消耗"第二个字符，下一对字符不能再被同一规则匹配
+        chineseEnglishMatched = chineseEnglish;
+        chineseNumberMatched = chineseNumber;
+        englishNumberMatched = englishNumber;
+        return chineseEnglish || chineseNumber || englishNumber;
+    }
+
+    /**
+     * 中文标点阶段：在中文标点前后添加空格
+     * @param c 交界规则阶段输出的字符
+     * @throws IOException 写入输出目标失败
+     */
+    private void pushChinesePunctuation(char c) throws IOException {
+        if (!enabled(CHINESE_PUNCTUATION)) {
+            pushEnglishPunctuation(c);
+            return;
+        }
+        // 上一个字符是中文标点时，它后面的空格取决于当前字符
+        if (chinesePunctAwaitNext) {
+            chinesePunctAwaitNext = false;
+            if (c != ' ') {
+                pushEnglishPunctuation(' ');
+            }
+        }
+        if ((CharClassTable.flags(c) & CharClassTable.CHINESE_PUNCTUATION) != 0) {
+            if (chinesePunctHasPrev && chinesePunctPrev != ' ') {
+                pushEnglishPunctuation(' ');
+            }
+            pushEnglishPunctuation(c);
+            chinesePunctAwaitNext = true;
+        } else {
+            pushEnglishPunctuation(c);
+        }
+        chinesePunctPrev = c;
+        chinesePunctHasPrev = true;
+    }
+
+    /**
+     * 英文标点阶段：在英文标点前后添加空格
+     * @param c 中文标点阶段输出的字符
+     * @throws IOException 写入输出目标失败
+     */
+    private void pushEnglishPunctuation(char c) throws IOException {
+        if (!enabled(ENGLISH_PUNCTUATION)) {
+            emit(c);
+            return;
+        }
+        if (englishPunctAwaitNext) {
+            englishPunctAwaitNext = false;
+            if (c != ' ') {
+                emit(' ');
+            }
+        }
+        if ((CharClassTable.flags(c) & CharClassTable.ENGLISH_PUNCTUATION) != 0) {
+            if (englishPunctHasPrev && englishPunctPrev != ' ') {
+                emit(' ');
+            }
+            emit(c);
+            englishPunctAwaitNext = true;
+        } else {
+            emit(c);
+        }
+        englishPunctPrev = c;
+        englishPunctHasPrev = true;
+    }
+
+    /**
+     * 标点转换阶段：写入输出缓冲区
+     * @param c 英文标点阶段输出的字符
+     * @throws IOException 写入输出目标失败
+     */
+    private void emit(char c) throws IOException {
+        if (enabled(CONVERSION)) {
+            char converted = conversionTable[c];
+            if (converted != c && enabled(PAIRED_QUOTES)) {
+                converted = pairQuote(c, converted);
+            }
+            c = converted;
+        }
+        buffer[buffered++] = c;
+        if (buffered == BUFFER_SIZE) {
+            flush();
+        }
+    }
+
+    /**
+     * 确定成对引号的开闭：同种引号在段落内交替为开引号和闭引号
+     * 插入的字符只有空格，所以转换的字符就是原文中位于 current 的字符
+     * @param c 原字符
+     * @param open 转换表给出的开引号
+     * @return 转换后的字符
+     */
+    private char pairQuote(char c, char open) {
+        int index = conversion.quoteIndex(c);
+        if (index < 0) {
+            return open;
+        }
+        checkQuoteContext(current);
+        quoteCheckedTo = current + 1;
+        quoteLineEmpty = false;
+        int bit = 1 << index;
+        openQuotes ^= bit;
+        return (openQuotes & bit) != 0 ? open : conversion.closeQuote(index);
+    }
+
+    /**
+     * 检查上一个引号之后到指定位置之间的原文，出现空行时所有引号重新从开引号开始
+     * 空行与词法分析器的定义一致：只含空格、制表符和引用标记的行
+     * @param end 检查的终点（不含）
+     */
+    private void checkQuoteContext(int end) {
+        for (int i = quoteCheckedTo; i < end && openQuotes != 0; i++) {
+            char c = quoteText.charAt(i);
+            if (c == '\n') {
+                if (quoteLineEmpty) {
+                    openQuotes = 0;
+                }
+                quoteLineEmpty = true;
+            } else if (c != ' ' && c != '\t' && c != '\r' && c != '>') {
+                quoteLineEmpty = false;
+            }
+        }
+        quoteCheckedTo = end;
+    }
+
+    /**
+     * 将缓冲区内容批量写入输出目标
+     * @throws IOException 写入输出目标失败
+     */
+    private void flush() throws IOException {
+        if (buffered == 0) {
+            return;
+        }
+        if (out instanceof StringBuilder) {
+            ((StringBuilder) out).append(buffer, 0, buffered);
+        } else if (out instanceof Writer) {
+            ((Writer) out).write(buffer, 0, buffered);
+        } else if (out instanceof CharBuffer) {
+            ((CharBuffer) out).put(buffer, 0, buffered);
+        } else {
+            out.append(CharBuffer.wrap(buffer, 0, buffered));
+        }
+        buffered = 0;
+    }
+}
@@ -17,6 +17,7 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.List;
 
 /**
  * 应用程序控制器，处理用户界面交互
@@ -71,13 +72,24 @@ public class HelloController {
     // 自定义正则表达式管理器
     private CustomRegexManager customRegexManager = new CustomRegexManager();
     
+    // 根据当前规则设置构建的处理流水线，规则变化时重新构建
+    private RulePipeline rulePipeline = buildRulePipeline();
+    
+    // 段落缓存：重新处理编辑后的文本时只处理改动过的段落；重新构建流水线时换成新的缓存
+    private ParagraphCache paragraphCache = new ParagraphCache();
+    
     @FXML
     private BorderPane mainBorderPane;
     
     private File selectedInputFile;
     private File selectedOutputFile;
-    private String originalContent;
-    private String processedContent;
+    // 原文和处理结果是同一份原文上的两个文档，处理结果只保存修改过的部分
+    private PieceTable originalDocument = PieceTable.of("");
+    private PieceTable processedDocument = originalDocument;
+    // 加载文件时先处理并显示的长度，约为几屏文本
+    private static final int PREVIEW_LENGTH = 1 << 14;
+    // 正在后台处理其余部分的预览，处理完成前加载了其他文件或修改了规则时丢弃结果
+    private ProcessedView pendingPreview;
     
     // 背景设置相关属性
     private Image backgroundImage;
@@ -273,17 +285,7 @@ public class HelloController {
                 
                 if (preserveSpecialElements) {
                     // 保留特殊元素（代码块、公式、超链接等）
-                    processedText = MarkdownSpacingProcessor.processText(
-                        contentToProcess,
-                        addSpaceBetweenChineseAndEnglish,
-                        addSpaceBetweenChineseAndNumber,
-                        addSpaceBetweenEnglishAndNumber,
-                        addSpaceAroundChinesePunctuation,
-                        addSpaceAroundEnglishPunctuation,
-                        convertToFullWidthPunctuation,
-                        convertToHalfWidthPunctuation,
-                        customRegexManager
-                    );
+                    processedText = rulePipeline.apply(contentToProcess, paragraphCache);
                     
                     // 更新进度 - 处理完成
                     updateProgress(totalSteps - 1, totalSteps);
@@ -345,6 +347,7 @@ public class HelloController {
                 javafx.application.Platform.runLater(() -> {
                     statusLabel.setText("处理成功！文件已保存到: " + selectedOutputFile.getAbsolutePath());
                     showAlert("成功", "文件处理成功！\n已保存到: " + selectedOutputFile.getAbsolutePath());
+                    reportAbortedRules();
                     // 隐藏进度条
                     showProgressBar(false);
                     // 重新启用处理按钮
@@ -376,25 +379,18 @@ public class HelloController {
     private void loadAndPreviewFile(File file) {
         try {
             // 读取原始内容
-            originalContent = Files.readString(file.toPath(), StandardCharsets.UTF_8);
+            String originalContent = Files.readString(file.toPath(), StandardCharsets.UTF_8);
+            originalDocument = PieceTable.of(originalContent);
             
             // 根据规则设置处理内容，添加空格
+            ProcessedView view = null;
             if (preserveSpecialElements) {
-                // 保留特殊元素（代码块、公式、超链接等）
-                processedContent = MarkdownSpacingProcessor.processText(
-                    originalContent,
-                    addSpaceBetweenChineseAndEnglish,
-                    addSpaceBetweenChineseAndNumber,
-                    addSpaceBetweenEnglishAndNumber,
-                    addSpaceAroundChinesePunctuation,
-                    addSpaceAroundEnglishPunctuation,
-                    convertToFullWidthPunctuation,
-                    convertToHalfWidthPunctuation,
-                    customRegexManager
-                );
+                // 保留特殊元素（代码块、公式、超链接等），先只处理开头的内容，其余部分在后台处理
+                view = rulePipeline.view(originalContent);
+                processedDocument = originalDocument;
             } else {
                 // 不保留特殊元素，直接处理整个文本
-                processedContent = originalContent;
+                String processedContent = originalContent;
                 
                 // 处理中英文之间的空格
                 if (addSpaceBetweenChineseAndEnglish) {
@@ -430,6 +426,7 @@ public class HelloController {
                 
                 // 应用自定义正则表达式规则
                 processedContent = customRegexManager.applyRules(processedContent);
+                processedDocument = PieceTable.of(processedContent);
             }
             
             // 在编辑区域显示原始内容
@@ -439,9 +436,14 @@ public class HelloController {
             applySpacingButton.setDisable(false);
             
             // 更新预览
-            updatePreview();
+            pendingPreview = null;
+            if (view != null) {
+                previewFirstScreen(view);
+            } else {
+                updatePreview();
+            }
             
-            statusLabel.setText("文件已加载，可以处理或编辑");
+            statusLabel.setText(pendingPreview != null ? "文件已加载，正在处理其余内容" : "文件已加载，可以处理或编辑");
         } catch (IOException e) {
             editTextArea.setText("无法加载文件: " + e.getMessage());
             statusLabel.setText("加载文件失败");
@@ -506,7 +508,7 @@ public class HelloController {
                 if (buttonType == ButtonType.YES) {
                     // 保存到原文件
                     saveToFile(selectedInputFile, currentContent);
-                    originalContent = currentContent; // 更新原始内容
+                    originalDocument = PieceTable.of(currentContent); // 更新原始内容
                 } else if (buttonType == ButtonType.NO) {
                     // 另存为新文件
                     saveAsNewFile(currentContent);
@@ -538,7 +540,7 @@ public class HelloController {
             saveToFile(newFile, content);
             selectedInputFile = newFile;
             inputFileTextField.setText(newFile.getAbsolutePath());
-            originalContent = content; // 更新原始内容
+            originalDocument = PieceTable.of(content); // 更新原始内容
         }
     }
     
@@ -570,21 +572,27 @@ public class HelloController {
             return;
         }
         
+        // 选中了文本时只格式化选中的行，逐处应用修改而不替换整个文本
+        IndexRange selection = editTextArea.getSelection();
+        if (preserveSpecialElements && selection.getLength() > 0) {
+            int start = currentText.lastIndexOf('\n', selection.getStart() - 1) + 1;
+            int end = currentText.indexOf('\n', selection.getEnd() - 1);
+            end = end < 0 ? currentText.length() : end + 1;
+            EditList edits = rulePipeline.editsInRange(currentText, start, end);
+            // 从后向前应用，前面修改的位置不受影响
+            for (int i = edits.size() - 1; i >= 0; i--) {
+                editTextArea.replaceText(edits.position(i), edits.position(i) + edits.deletedLength(i),
+                                         edits.insertedText(i));
+            }
+            statusLabel.setText("已对选中的行应用空格规则，共修改 " + edits.size() + " 处");
+            return;
+        }
+
         // 应用空格规则
         String processedText;
         if (preserveSpecialElements) {
             // 保留特殊元素（代码块、公式、超链接等）
-            processedText = MarkdownSpacingProcessor.processText(
-                currentText,
-                addSpaceBetweenChineseAndEnglish,
-                addSpaceBetweenChineseAndNumber,
-                addSpaceBetweenEnglishAndNumber,
-                addSpaceAroundChinesePunctuation,
-                addSpaceAroundEnglishPunctuation,
-                convertToFullWidthPunctuation,
-                convertToHalfWidthPunctuation,
-                customRegexManager
-            );
+            processedText = rulePipeline.apply(currentText, paragraphCache);
         } else {
             // 不保留特殊元素，直接处理整个文本
             processedText = currentText;
@@ -627,6 +635,7 @@ public class HelloController {
         
         editTextArea.setText(processedText);
         statusLabel.setText("已应用空格规则，可以继续编辑或保存");
+        reportAbortedRules();
     }
     
     /**
@@ -674,20 +683,13 @@ public class HelloController {
                 convertToFullWidthPunctuation = controller.isConvertToFullWidthPunctuation();
                 convertToHalfWidthPunctuation = controller.isConvertToHalfWidthPunctuation();
                 preserveSpecialElements = controller.isPreserveSpecialElements();
+                rebuildRulePipeline();
                 
                 // 如果有原始内容，重新处理并更新预览
-                if (originalContent != null && !originalContent.isEmpty()) {
-                    processedContent = MarkdownSpacingProcessor.processText(
-                        originalContent,
-                        addSpaceBetweenChineseAndEnglish,
-                        addSpaceBetweenChineseAndNumber,
-                        addSpaceBetweenEnglishAndNumber,
-                        addSpaceAroundChinesePunctuation,
-                        addSpaceAroundEnglishPunctuation,
-                        convertToFullWidthPunctuation,
-                        convertToHalfWidthPunctuation,
-                        customRegexManager
-                    );
+                pendingPreview = null;
+                if (originalDocument.length() > 0) {
+                    processedDocument = originalDocument.snapshot();
+                    rulePipeline.applyInPlace(processedDocument);
                     statusLabel.setText("规则设置已更新，点击\"应用空格规则\"按钮查看效果");
                 } else {
                     statusLabel.setText("规则设置已更新");
@@ -726,6 +728,9 @@ public class HelloController {
             // 显示对话框并等待关闭
             dialogStage.showAndWait();
             
+            // 规则在对话框中修改后立即保存，无论是否确认都重新构建流水线
+            rebuildRulePipeline();
+            
             // 如果用户确认了设置，更新自定义正则表达式管理器
             if (controller.isConfirmed()) {
                 // 自定义正则表达式管理器已经在控制器中更新，无需额外操作
@@ -737,18 +742,84 @@ public class HelloController {
         }
     }
     
+    /**
+     * 规则设置变化后重新构建处理流水线，并丢弃按之前的规则缓存的段落
+     * 缓存键按内容比较规则配置，不会取到其他规则的结果，换成新的缓存只是为了不再占用旧结果的内存
+     */
+    private void rebuildRulePipeline() {
+        rulePipeline = buildRulePipeline();
+        paragraphCache = new ParagraphCache();
+    }
+    
+    /**
+     * 根据当前规则设置构建处理流水线
+     * @return 处理流水线
+     */
+    private RulePipeline buildRulePipeline() {
+        return RulePipeline.of(
+            addSpaceBetweenChineseAndEnglish,
+            addSpaceBetweenChineseAndNumber,
+            addSpaceBetweenEnglishAndNumber,
+            addSpaceAroundChinesePunctuation,
+            addSpaceAroundEnglishPunctuation,
+            convertToFullWidthPunctuation,
+            convertToHalfWidthPunctuation,
+            customRegexManager
+        );
+    }
+    
+    /**
+     * 先显示文件开头的处理结果，其余部分在后台处理完成后再替换
+     * 编辑区域中已经是原始内容，开头的几块处理完后替换为处理结果，大文件加载后不必等待整个文件处理完
+     * @param view 原始内容的处理视图
+     */
+    private void previewFirstScreen(ProcessedView view) {
+        view.ensureProcessed(PREVIEW_LENGTH);
+        int shown = view.processedLength();
+        editTextArea.replaceText(0, view.processedSourceLength(), view.subSequence(0, shown).toString());
+        if (view.isComplete()) {
+            processedDocument = PieceTable.of(editTextArea.getText());
+            reportAbortedRules();
+            return;
+        }
+
+        pendingPreview = view;
+        PieceTable original = originalDocument;
+        RulePipeline pipeline = rulePipeline;
+        Thread previewThread = new Thread(() -> {
+            PieceTable processed = original.snapshot();
+            pipeline.applyInPlace(processed);
+            javafx.application.Platform.runLater(() -> {
+                if (pendingPreview != view) {
+                    return;
+                }
+                pendingPreview = null;
+                processedDocument = processed;
+                // 进入编辑模式后编辑区域的内容可能已被修改，不再替换
+                if (!editTextArea.isEditable()) {
+                    editTextArea.replaceText(shown, editTextArea.getLength(),
+                                             processed.subSequence(shown, processed.length()).toString());
+                }
+                statusLabel.setText("文件已加载，可以处理或编辑");
+                reportAbortedRules();
+            });
+        });
+        previewThread.setDaemon(true);
+        previewThread.start();
+    }
+    
     /**
      * 更新预览
      * 将处理后的内容显示在编辑区域
      */
     private void updatePreview() {
-        if (originalContent != null && !originalContent.isEmpty()) {
-            if (processedContent != null && !processedContent.isEmpty()) {
+        if (originalDocument.length() > 0) {
+            if (processedDocument.length() > 0) {
                 // 如果已经有处理后的内容，显示处理后的内容
-                editTextArea.setText(processedContent);
+                editTextArea.setText(processedDocument.toString());
             } else {
                 // 如果没有处理后的内容，显示原始内容
-                editTextArea.setText(originalContent);
+                editTextArea.setText(originalDocument.toString());
             }
         }
     }
@@ -760,7 +831,7 @@ public class HelloController {
     protected void onNewFileClick() {
         // 如果当前有未保存的编辑内容，则提示用户
         if (editTextArea.isEditable() && !editTextArea.getText().isEmpty() && 
-            (selectedInputFile == null || !editTextArea.getText().equals(originalContent))) {
+            (selectedInputFile == null || CharSequence.compare(editTextArea.getText(), originalDocument) != 0)) {
             
             Alert confirmAlert = new Alert(Alert.AlertType.CONFIRMATION);
             confirmAlert.setTitle("确认新建");
@@ -787,8 +858,9 @@ public class HelloController {
         selectedOutputFile = null;
         inputFileTextField.setText("");
         outputFileTextField.setText("");
-        originalContent = "";
-        processedContent = "";
+        originalDocument = PieceTable.of("");
+        processedDocument = originalDocument;
+        pendingPreview = null;
         
         // 清空编辑区并启用编辑
         editTextArea.setText("");
@@ -922,13 +994,13 @@ public class HelloController {
     protected void onDiffButtonClick() {
         System.out.println("差异报告按钮被点击");
         
-        if (originalContent == null || originalContent.isEmpty()) {
+        if (originalDocument.length() == 0) {
             System.out.println("原始内容为空");
             showAlert("错误", "没有原始内容可比较");
             return;
         }
         
-        System.out.println("原始内容长度: " + originalContent.length());
+        System.out.println("原始内容长度: " + originalDocument.length());
         
         // 获取当前编辑区域的内容
         String currentContent = editTextArea.getText();
@@ -954,7 +1026,7 @@ public class HelloController {
             DiffViewController controller = loader.getController();
             
             // 设置原始内容和当前内容
-            controller.setTexts(originalContent, currentContent);
+            controller.setTexts(originalDocument.toString(), currentContent);
             
             // 显示对话框
             dialogStage.showAndWait();
@@ -965,6 +1037,17 @@ public class HelloController {
         }
     }
     
+    /**
+     * 报告因匹配超出步数上限而在一部分文本上没有应用的自定义规则，每次取出的规则只报告一次
+     */
+    private void reportAbortedRules() {
+        List<String> aborted = customRegexManager.pollAbortedRules();
+        if (!aborted.isEmpty()) {
+            showAlert("警告", "以下自定义规则匹配耗时过长，在部分文本上没有应用：\n" + String.join("\n", aborted)
+                      + "\n请在自定义正则表达式设置中修改这些规则的正则表达式");
+        }
+    }
+    
     /**
      * 显示警告对话框
      * @param title 标题
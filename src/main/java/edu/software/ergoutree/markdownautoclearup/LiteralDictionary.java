@@ -0,0 +1,226 @@
+package edu.software.ergoutree.markdownautoclearup;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 按字面匹配的词典替换
+ * 把所有词条编译为一个 Aho-Corasick 自动机，一次扫描同时替换所有词条，耗时与词条数量基本无关。
+ *
+ * 匹配按最左最长的规则进行：在所有匹配中取起点最靠前的，起点相同时取最长的，
+ * 替换后从匹配的终点继续查找，替换结果不会再被匹配。同一个词条出现多次时使用第一次出现的替换内容。
+ *
+ * 自动机的转移保存在以 (状态, 字符) 为键的开放寻址散列表中，
+ * 另用一个位图记录可以作为词条开头的字符，扫描时大部分字符只查一次位图。
+ * 对象创建后不可修改，可以被多个线程同时使用。
+ */
+final class LiteralDictionary {
+
+    private static final int ROOT = 0;
+
+    // 词条及其替换内容，下标为词条序号
+    private final int[] keyLengths;
+    private final String[] replacements;
+
+    // 可以作为词条开头的字符
+    private final long[] firstChars = new long[(Character.MAX_VALUE + 1) >> 6];
+
+    // 转移表：键为 状态 << 16 | 字符，值为目标状态，值为 0 的槽位是空的（根状态不会是转移的目标）
+    private final long[] edgeKeys;
+    private final int[] edgeTargets;
+    private final int edgeMask;
+
+    // 各状态的深度、失败转移，以及以该状态结尾的最长词条序号（没有时为 -1）
+    private final int[] depth;
+    private final int[] fail;
+    private final int[] output;
+
+    /**
+     * 构造函数
+     * @param keys 词条，空词条被忽略
+     * @param replacements 各词条的替换内容
+     */
+    LiteralDictionary(List<String> keys, List<String> replacements) {
+        int totalLength = 0;
+        for (String key : keys) {
+            totalLength += key.length();
+        }
+        int capacity = Integer.highestOneBit(Math.max(totalLength, 1) * 2 + 1) << 1;
+        this.edgeKeys = new long[capacity];
+        this.edgeTargets = new int[capacity];
+        this.edgeMask = capacity - 1;
+        this.keyLengths = new int[keys.size()];
+        this.replacements = replacements.toArray(new String[0]);
+
+        // 建立字典树，各状态记录父状态和进入它的字符
+        int[] parent = new int[totalLength + 1];
+        char[] label = new char[totalLength + 1];
+        int[] depth = new int[totalLength + 1];
+        int[] output = new int[totalLength + 1];
+        Arrays.fill(output, -1);
+        int stateCount = 1;
+        for (int k = 0; k < keys.size(); k++) {
+            String key = keys.get(k);
+            keyLengths[k] = key.length();
+            if (key.isEmpty()) {
+                continue;
+            }
+            int state = ROOT;
+            for (int i = 0; i < key.length(); i++) {
+                char c = key.charAt(i);
+                int next = child(state, c);
+                if (next < 0) {
+                    next = stateCount++;
+                    parent[next] = state;
+                    label[next] = c;
+                    depth[next] = depth[state] + 1;
+                    addChild(state, c, next);
+                }
+                state = next;
+            }
+            if (output[state] < 0) {
+                output[state] = k;
+            }
+            firstChars[key.charAt(0) >> 6] |= 1L << key.charAt(0);
+        }
+
+        // 按深度从小到大计算失败转移，失败转移指向的状态总是更浅，计算时已经完成
+        int[] order = new int[stateCount];
+        int[] offsets = new int[totalLength + 2];
+        for (int state = 0; state < stateCount; state++) {
+            offsets[depth[state] + 1]++;
+        }
+        for (int d = 1; d < offsets.length; d++) {
+            offsets[d] += offsets[d - 1];
+        }
+        for (int state = 0; state < stateCount; state++) {
+            order[offsets[depth[state]]++] = state;
+        }
+        int[] fail = new int[stateCount];
+        for (int i = 1; i < stateCount; i++) {
+            int state = order[i];
+            int p = parent[state];
+            if (p != ROOT) {
+                int f = fail[p];
+                int next = child(f, label[state]);
+                while (next < 0 && f != ROOT) {
+                    f = fail[f];
+                    next = child(f, label[state]);
+                }
+                fail[state] = Math.max(next, ROOT);
+            }
+            // 不是词条终点时，以该状态结尾的最长词条就是失败转移状态的
+            if (output[state] < 0) {
+                output[state] = output[fail[state]];
+            }
+        }
+
+        this.depth = Arrays.copyOf(depth, stateCount);
+        this.fail = fail;
+        this.output = Arrays.copyOf(output, stateCount);
+    }
+
+    /**
+     * 替换文本中的所有词条
+     * @param text 要处理的文本
+     * @return 处理后的文本，没有匹配时为原字符串
+     */
+    String apply(String text) {
+        int length = text.length();
+        StringBuilder result = null;
+        int copied = 0;
+        int position = 0;
+        while (position < length) {
+            // 从 position 开始查找最左最长的匹配
+            int state = ROOT;
+            int matchStart = -1;
+            int matchEnd = 0;
+            int matchKey = -1;
+            for (int i = position; i < length; i++) {
+                char c = text.charAt(i);
+                if (state == ROOT && (firstChars[c >> 6] & 1L << c) == 0) {
+                    continue;
+                }
+                state = next(state, c);
+                int key = output[state];
+                if (key >= 0) {
+                    // 以该状态结尾的最长词条是其中起点最靠前的
+                    int start = i + 1 - keyLengths[key];
+                    if (matchKey < 0 || start <= matchStart) {
+                        matchStart = start;
+                        matchEnd = i + 1;
+                        matchKey = key;
+                    }
+                }
+                // 当前状态对应的文本已经从匹配起点之后开始，不会再有更靠前或更长的匹配
+                if (matchKey >= 0 && i + 1 - depth[state] > matchStart) {
+                    break;
+                }
+            }
+            if (matchKey < 0) {
+                break;
+            }
+            if (result == null) {
+                result = new StringBuilder(length + 16);
+            }
+            result.append(text, copied, matchStart).append(replacements[matchKey]);
+            copied = matchEnd;
+            position = matchEnd;
+        }
+        if (result == null) {
+            return text;
+        }
+        return result.append(text, copied, length).toString();
+    }
+
+    /**
+     * 读入一个字符后的状态，没有转移时沿失败转移回退
+     * @param state 当前状态
+     * @param c 字符
+     * @return 下一个状态
+     */
+    private int next(int state, char c) {
+        while (true) {
+            int next = child(state, c);
+            if (next >= 0) {
+                return next;
+            }
+            if (state == ROOT) {
+                return ROOT;
+            }
+            state = fail[state];
+        }
+    }
+
+    /**
+     * 查找字典树中的转移
+     * @param state 状态
+     * @param c 字符
+     * @return 目标状态，没有时为 -1
+     */
+    private int child(int state, char c) {
+        long key = (long) state << 16 | c;
+        int slot = slot(key);
+        while (edgeTargets[slot] != 0) {
+            if (edgeKeys[slot] == key) {
+                return edgeTargets[slot];
+            }
+            slot = (slot + 1) & edgeMask;
+        }
+        return -1;
+    }
+
+    private void addChild(int state, char c, int target) {
+        long key = (long) state << 16 | c;
+        int slot = slot(key);
+        while (edgeTargets[slot] != 0) {
+            slot = (slot + 1) & edgeMask;
+        }
+        edgeKeys[slot] = key;
+        edgeTargets[slot] = target;
+    }
+
+    private int slot(long key) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & edgeMask;
+    }
+}
@@ -0,0 +1,1581 @@
+package edu.software.ergoutree.markdownautoclearup;
+
+import java.util.Arrays;
+
+/**
+ * Markdown 受保护区域词法分析器
+ * 对文本做一次从前到后的扫描，找出所有不应参与空格处理的区域：
+ * YAML 头信息、围栏代码块（``` 和 ~~~）、缩进代码块、块级公式（$$）、HTML 块和注释、链接引用定义，
+ * 以及段落内的行内代码、行内公式、超链接和图片的标记与地址、自动链接和行内 HTML 标签。
+ *
+ * 块级结构逐行识别，每个段落结束时再对段落内容做行内扫描。所有查找都只向前推进，
+ * 失败的查找会被记住而不会重复进行，整体耗时与文本长度成线性关系，不会回溯。
+ * 超链接和图片只保护 "[" / "![" 与 "](地址)" 两部分，链接文字仍然按普通文本处理。
+ *
+ * 分块处理时，分析器会记录最后一个"重置点"：空行之后、从第 0 列开始的一行。
+ * 在重置点上分析器的状态与初始状态相同，之前的分析结果也不依赖之后的文本，
+ * 因此可以在这里切分文本，下一块从头重新分析。没有重置点时只能强制切分，
+ * 未结束的围栏代码块、HTML 块、块级公式、头信息、列表和段落状态会延续到下一块。
+ *
+ * 块级公式和头信息只有找到结束标记时才成立，结束标记不在本块中时无法确定。
+ * 此时从这个结构开始的一行强制切分；结构从块开头开始时由调用者用 {@link #lookAhead} 在之后的文本中查找结束标记，
+ * 再用 {@link #decide} 记录结论，下一块按结论重新分析，结果与整体分析时相同。
+ */
+final class MarkdownLexer {
+
+    // 可以识别的最长代码/公式分隔符
+    private static final int MAX_RUN = 32;
+
+    // 行内 HTML 标签的最大长度，超过时按普通文本处理
+    private static final int MAX_TAG_LENGTH = 4096;
+
+    // 以这些标签开头的行是 HTML 块（CommonMark 第 6 类），到空行结束
+    private static final String[] BLOCK_TAGS = {
+            "address", "article", "aside", "base", "basefont", "blockquote", "body", "caption", "center",
+            "col", "colgroup", "dd", "details", "dialog", "dir", "div", "dl", "dt", "fieldset", "figcaption",
+            "figure", "footer", "form", "frame", "frameset", "h1", "h2", "h3", "h4", "h5", "h6", "head",
+            "header", "hr", "html", "iframe", "legend", "li", "link", "main", "menu", "menuitem", "nav",
+            "noframes", "ol", "optgroup", "option", "p", "param", "search", "section", "summary", "table",
+            "tbody", "td", "tfoot", "th", "thead", "title", "tr", "track", "ul"
+    };
+
+    // 内容原样保留直到对应结束标签的 HTML 块（CommonMark 第 1 类）
+    private static final String[] RAW_TAGS = {"script", "pre", "style", "textarea"};
+
+    // 未结束的块：无、围栏代码块、以结束标记结束的 HTML 块、以空行结束的 HTML 块
+    private static final int OPEN_NONE = 0;
+    private static final int OPEN_FENCE = 1;
+    private static final int OPEN_HTML = 2;
+    private static final int OPEN_HTML_UNTIL_BLANK = 3;
+    // 已确定有结束标记的块级公式和头信息
+    private static final int OPEN_MATH = 4;
+    private static final int OPEN_FRONT_MATTER = 5;
+
+    // 结束标记无法确定的结构：无、块级公式、头信息
+    private static final int PENDING_NONE = 0;
+    private static final int PENDING_MATH = 1;
+    private static final int PENDING_FRONT_MATTER = 2;
+
+    // lookAhead 的结果：需要更多文本、有结束标记、没有结束标记
+    static final int AHEAD_UNKNOWN = 0;
+    static final int AHEAD_CLOSED = 1;
+    static final int AHEAD_MISSING = 2;
+
+    private final CharSequence text;
+    private final int length;
+    private final ProtectedRegions regions = new ProtectedRegions();
+
+    // 文本是否从文档开头开始
+    private final boolean documentStart;
+
+    // 是否做行内扫描，只需要重置点时跳过
+    private final boolean inline;
+
+    // 最后一个重置点，没有时为 0；文档开头的头信息未闭合时不记录重置点
+    private int safeCut;
+    private boolean cutsAllowed = true;
+
+    // 所有重置点，按位置排序
+    private int[] resets = new int[16];
+    private int resetCount;
+
+    // 扫描到文本末尾时仍未结束的块及其参数
+    private int openBlock = OPEN_NONE;
+    private char fenceChar;
+    private int fenceRun;
+    private int fenceColumn;
+    private String htmlEndMarker;
+
+    // 强制切分的位置，以及下一块需要延续的状态
+    private int forcedCut;
+    private int[] cutListIndents;
+    private int cutListDepth;
+    private boolean cutPreviousBlank;
+    private boolean cutInParagraph;
+
+    // 当前行开始时的状态：块级公式或头信息的结束标记直到文本末尾仍无法确定时，从这一行强制切分
+    private boolean undecided;
+    private int pending = PENDING_NONE;
+    private int lineStartPosition;
+    private int lineStartListDepth;
+    private boolean lineStartPreviousBlank;
+    private boolean lineStartInParagraph;
+
+    // 当前段落（行内扫描范围）
+    private boolean inParagraph;
+    private int paragraphStart;
+    private int paragraphEnd;
+
+    // 上一行是否为空行
+    private boolean previousBlank = true;
+
+    // 嵌套列表的内容缩进
+    private int[] listIndents = new int[8];
+    private int listDepth;
+
+    // 块级公式结束标记 "$$" 查找失败的范围 [起点, 终点)
+    private int mathBlockFailFrom = Integer.MAX_VALUE;
+    private int mathBlockFailEnd;
+
+    // 在之后的文本中查找得到的结论：从第 0 行开始的未确定结构是否有结束标记，没有结论时为 PENDING_NONE
+    private int decidedPending = PENDING_NONE;
+    private boolean decidedClosed;
+    // 向后查找时上一段文本末尾没有结束的行，已能确定结论的部分压缩为几个字符，与下一段文本拼接后继续判断
+    private String aheadCarry = "";
+
+    // 行内扫描：代码和公式区域
+    private int[] spans = new int[32];
+    private int spanCount;
+
+    // 行内扫描：方括号和圆括号的配对位置（相对段落起点）
+    private int[] bracketMatch = new int[0];
+    private int[] parenMatch = new int[0];
+    private int[] stack = new int[16];
+
+    // 行内扫描：分隔符查找失败的起点，按分隔符长度索引
+    private final int[] backtickFailFrom = new int[MAX_RUN + 1];
+    private final int[] dollarFailFrom = new int[MAX_RUN + 1];
+
+    // 行内扫描：HTML 注释结束标记和引号查找失败的范围 [起点, 终点)
+    private int commentFailFrom = Integer.MAX_VALUE;
+    private int commentFailEnd;
+    private int singleQuoteFailFrom = Integer.MAX_VALUE;
+    private int singleQuoteFailEnd;
+    private int doubleQuoteFailFrom = Integer.MAX_VALUE;
+    private int doubleQuoteFailEnd;
+
+    private MarkdownLexer(CharSequence text, boolean documentStart, boolean inline) {
+        this.text = text;
+        this.length = text.length();
+        this.documentStart = documentStart;
+        this.inline = inline;
+    }
+
+    /**
+     * 找出文本中的所有受保护区域
+     * @param text 文本
+     * @return 受保护区域表
+     */
+    static ProtectedRegions lex(CharSequence text) {
+        MarkdownLexer lexer = new MarkdownLexer(text, true, true);
+        lexer.run(null);
+        return lexer.regions;
+    }
+
+    /**
+     * 只识别文档的块级结构，不做行内扫描，用于查找重置点
+     * 相邻两个重置点之间的文本可以单独分析和处理，结果与整体处理时相同
+     * @param text 从文档开头开始的文本
+     * @return 分析器，其受保护区域表只含块级区域
+     */
+    static MarkdownLexer lexBlocks(CharSequence text) {
+        return lexBlocks(text, true);
+    }
+
+    /**
+     * 只识别一段文本的块级结构，不做行内扫描，用于查找重置点
+     * @param text 从文档开头或某个重置点开始的文本，除到达文档末尾外应以完整的行结束
+     * @param documentStart 文本是否从文档开头开始
+     * @return 分析器，其受保护区域表只含块级区域
+     */
+    static MarkdownLexer lexBlocks(CharSequence text, boolean documentStart) {
+        MarkdownLexer lexer = new MarkdownLexer(text, documentStart, false);
+        lexer.run(null);
+        return lexer;
+    }
+
+    /**
+     * 分块处理时分析一块文本
+     * @param text 文本块，除最后一块外应以完整的行结束
+     * @param documentStart 文本块是否从文档开头开始
+     * @param continued 上一块的分析器，上一块没有在重置点切分时用于延续其中未结束的块和列表状态，否则为空
+     * @return 分析器
+     */
+    static MarkdownLexer lexChunk(CharSequence text, boolean documentStart, MarkdownLexer continued) {
+        MarkdownLexer lexer = new MarkdownLexer(text, documentStart, true);
+        lexer.run(continued);
+        return lexer;
+    }
+
+    /**
+     * 获取受保护区域表
+     * @return 受保护区域表
+     */
+    ProtectedRegions regions() {
+        return regions;
+    }
+
+    /**
+     * 获取最后一个重置点：之前的分析结果与之后的文本无关，之后的文本可以从初始状态重新分析
+     * @return 重置点位置，没有时为 0
+     */
+    int safeCut() {
+        return safeCut;
+    }
+
+    /**
+     * 获取所有重置点
+     * @return 按位置排序的重置点，不含位置 0
+     */
+    int[] resetPoints() {
+        return Arrays.copyOf(resets, resetCount);
+    }
+
+    /**
+     * 获取块级受保护区域开始处的重置点
+     * 自定义正则表达式规则作用于两个受保护区域之间的整段文本，只有在这些位置切分才不会把一段文本拆开
+     * @return 按位置排序的重置点
+     */
+    int[] regionResetPoints() {
+        int[] points = new int[resetCount];
+        int count = 0;
+        int r = 0;
+        for (int i = 0; i < resetCount; i++) {
+            int reset = resets[i];
+            while (r < regions.size() && regions.start(r) < reset) {
+                r++;
+            }
+            if (r < regions.size() && regions.start(r) == reset) {
+                points[count++] = reset;
+            }
+        }
+        return Arrays.copyOf(points, count);
+    }
+
+    /**
+     * 获取没有重置点时强制切分的位置，之后的文本应使用本分析器延续状态重新分析
+     * @return 强制切分位置
+     */
+    int forcedCut() {
+        return forcedCut;
+    }
+
+    /**
+     * 判断是否因为块开头的块级公式或头信息无法确定而不能切分
+     * 此时强制切分位置为 0，调用者应先用 {@link #lookAhead} 查找结束标记
+     * @return 是否需要向后查找
+     */
+    boolean needsLookAhead() {
+        return undecided && forcedCut == 0;
+    }
+
+    /**
+     * 在本块之后的文本中查找块开头未确定的结构的结束标记，可以分多次传入之后的文本
+     * 一行超过调用者的缓冲区时可以在行中间分开传入，行的前一部分留到下一次与之后的文本一起判断
+     * @param following 紧接在本块或上一次传入的文本之后的文本
+     * @param end 是否到达文档末尾，此时最后一行即使没有换行符也是完整的
+     * @return AHEAD_CLOSED、AHEAD_MISSING，或者需要继续查找之后的文本时为 AHEAD_UNKNOWN
+     */
+    int lookAhead(CharSequence following, boolean end) {
+        CharSequence text = aheadCarry.isEmpty() ? following : aheadCarry + following;
+        aheadCarry = "";
+        MarkdownLexer scanner = new MarkdownLexer(text, false, false);
+        int position = 0;
+        while (position < scanner.length) {
+            int lineEnd = scanner.lineEnd(position);
+            int contentEnd = scanner.contentEnd(position, lineEnd);
+            if (lineEnd == scanner.length && !end) {
+                // 行没有结束：已出现的 $$ 仍是结束标记，其余的判断要等到行结束
+                if (pending == PENDING_MATH && scanner.indexOf("$$", position, contentEnd) >= 0) {
+                    return AHEAD_CLOSED;
+                }
+                aheadCarry = scanner.carry(position, contentEnd, pending);
+                return AHEAD_UNKNOWN;
+            }
+            if (pending == PENDING_FRONT_MATTER) {
+                if (scanner.isFenceLine(position, lineEnd, '-') || scanner.isFenceLine(position, lineEnd, '.')) {
+                    return AHEAD_CLOSED;
+                }
+            } else {
+                // 与 findMathBlockClose 相同：空行之前出现的第一个 $$ 是结束标记
+                if (scanner.isBlank(scanner.skipBlockQuote(position, contentEnd), contentEnd)) {
+                    return AHEAD_MISSING;
+                }
+                if (scanner.indexOf("$$", position, contentEnd) >= 0) {
+                    return AHEAD_CLOSED;
+                }
+            }
+            position = scanner.nextLine(lineEnd);
+        }
+        return AHEAD_UNKNOWN;
+    }
+
+    /**
+     * 记录向后查找的结论，之后把本分析器作为下一块的 continued 传入，下一块从同一位置按结论重新分析
+     * @param closed 块开头未确定的结构是否有结束标记，到达文档末尾仍未找到时为 false
+     */
+    void decide(boolean closed) {
+        decidedPending = pending;
+        decidedClosed = closed;
+        aheadCarry = "";
+    }
+
+    /**
+     * 压缩没有结束的行，压缩结果接上任何后续文本后，向后查找的判断与原行接上相同文本时相同
+     * 已能确定不是空行、不是头信息结束行的部分只保留末尾可能与后续文本组成 $$ 的字符；
+     * 仍可能成为空行或结束行的部分原样保留，只有含有大量空白的行才会较长
+     * @param start 行首位置
+     * @param contentEnd 行内容的终点，不含末尾的 \r
+     * @param pending 未确定的结构
+     * @return 压缩后的行
+     */
+    private String carry(int start, int contentEnd, int pending) {
+        String tail = text.subSequence(start, length).toString();
+        if (tail.length() <= 8) {
+            return tail;
+        }
+        if (pending == PENDING_FRONT_MATTER) {
+            char c = text.charAt(start);
+            if ((c == '-' || c == '.') && runLength(start, start + 3, c) == 3 && isBlank(start + 3, contentEnd)) {
+                return contentEnd < length ? tail.substring(0, 3) + "\r" : tail.substring(0, 3);
+            }
+            return "x";
+        }
+        if (isBlank(skipBlockQuote(start, contentEnd), contentEnd)) {
+            return tail;
+        }
+        return text.charAt(length - 1) == '$' ? "x$" : "x";
+    }
+
+    /**
+     * 逐行扫描整个文本
+     * @param continued 需要延续状态的上一块分析器，可以为空
+     */
+    private void run(MarkdownLexer continued) {
+        int position = 0;
+        if (continued != null) {
+            if (continued.needsLookAhead()) {
+                // 上一次分析的是同一块文本，结论只用于这次重新分析
+                decidedPending = continued.decidedPending;
+                decidedClosed = continued.decidedClosed;
+            }
+            listIndents = Arrays.copyOf(continued.cutListIndents, Math.max(continued.cutListDepth, 8));
+            listDepth = continued.cutListDepth;
+            previousBlank = continued.cutPreviousBlank;
+            if (continued.cutInParagraph) {
+                // 段落延续到本块，行内结构不会跨块识别
+                inParagraph = true;
+                paragraphStart = 0;
+                paragraphEnd = 0;
+            }
+            position = resumeOpenBlock(continued);
+        }
+        if (documentStart && (continued == null || decidedPending == PENDING_FRONT_MATTER)) {
+            position = lexFrontMatter();
+        }
+        while (position < length) {
+            position = lexLine(position);
+        }
+        boolean endsInParagraph = inParagraph;
+        endParagraph();
+        regions.normalize();
+
+        if (undecided) {
+            forcedCut = lineStartPosition;
+            cutListDepth = lineStartListDepth;
+            cutPreviousBlank = lineStartPreviousBlank;
+            cutInParagraph = lineStartInParagraph;
+            openBlock = OPEN_NONE;
+        } else {
+            forcedCut = length;
+            cutListIndents = listIndents;
+            cutListDepth = listDepth;
+            cutPreviousBlank = previousBlank;
+            cutInParagraph = endsInParagraph;
+        }
+    }
+
+    /**
+     * 继续上一块中未结束的块
+     * @param continued 上一块分析器
+     * @return 块之后的位置
+     */
+    private int resumeOpenBlock(MarkdownLexer continued) {
+        switch (continued.openBlock) {
+            case OPEN_FENCE:
+                fenceChar = continued.fenceChar;
+                fenceRun = continued.fenceRun;
+                fenceColumn = continued.fenceColumn;
+                return closeFence(0, 0);
+            case OPEN_HTML:
+                htmlEndMarker = continued.htmlEndMarker;
+                return closeHtmlBlock(0, 0);
+            case OPEN_HTML_UNTIL_BLANK:
+                return closeHtmlBlockAtBlankLine(0, 0, 0);
+            case OPEN_MATH:
+                return closeMathBlock(0, 0);
+            case OPEN_FRONT_MATTER:
+                return closeFrontMatter(0, true);
+            default:
+                return 0;
+        }
+    }
+
+    // ---------------------------------------------------------------- 块级结构
+
+    /**
+     * 识别文档开头的 YAML 头信息（--- 到 --- 或 ...）
+     * @return 头信息之后的位置，没有头信息时为 0
+     */
+    private int lexFrontMatter() {
+        int end = lineEnd(0);
+        if (!isFenceLine(0, end, '-')) {
+            return 0;
+        }
+        // 已经在之后的文本中查找过结束行时按结论处理：有结束行时头信息可以延续到下一块，没有时不是头信息
+        boolean decided = decidedPending == PENDING_FRONT_MATTER;
+        int close = closeFrontMatter(nextLine(end), decided && decidedClosed);
+        if (close >= 0 || decided) {
+            return Math.max(close, 0);
+        }
+        // 头信息可能在后续文本中闭合，此时不能切分，只能从文本开头强制切分
+        cutsAllowed = false;
+        undecided = true;
+        pending = PENDING_FRONT_MATTER;
+        lineStartPosition = 0;
+        lineStartListDepth = 0;
+        lineStartPreviousBlank = true;
+        lineStartInParagraph = false;
+        cutListIndents = new int[1];
+        return 0;
+    }
+
+    /**
+     * 查找头信息的结束行（--- 或 ...）
+     * @param position 开始查找的行首
+     * @param closedAhead 是否已知结束行在之后的文本中，此时本块中没有结束行的头信息延续到下一块
+     * @return 头信息之后的位置，本块中没有结束行且不延续时返回 -1
+     */
+    private int closeFrontMatter(int position, boolean closedAhead) {
+        while (position < length) {
+            int lineEnd = lineEnd(position);
+            if (isFenceLine(position, lineEnd, '-') || isFenceLine(position, lineEnd, '.')) {
+                regions.add(0, contentEnd(position, lineEnd));
+                return nextLine(lineEnd);
+            }
+            position = nextLine(lineEnd);
+        }
+        if (closedAhead) {
+            regions.add(0, length);
+            openBlock = OPEN_FRONT_MATTER;
+            return length;
+        }
+        return -1;
+    }
+
+    /**
+     * 判断一行是否恰好为三个指定字符（允许行尾空白）
+     */
+    private boolean isFenceLine(int start, int end, char c) {
+        end = contentEnd(start, end);
+        if (end - start < 3 || text.charAt(start) != c || text.charAt(start + 1) != c || text.charAt(start + 2) != c) {
+            return false;
+        }
+        return isBlank(start + 3, end);
+    }
+
+    /**
+     * 识别一行的块级结构
+     * @param lineStart 行首位置
+     * @return 下一个待处理的位置
+     */
+    private int lexLine(int lineStart) {
+        openBlock = OPEN_NONE;
+        if (!undecided) {
+            lineStartPosition = lineStart;
+            lineStartListDepth = listDepth;
+            lineStartPreviousBlank = previousBlank;
+            lineStartInParagraph = inParagraph;
+        }
+        int lineEnd = lineEnd(lineStart);
+        int contentEnd = contentEnd(lineStart, lineEnd);
+        int content = skipBlockQuote(lineStart, contentEnd);
+
+        // 计算缩进列数
+        int column = 0;
+        int first = content;
+        while (first < contentEnd && (text.charAt(first) == ' ' || text.charAt(first) == '\t')) {
+            column += text.charAt(first) == '\t' ? 4 - (column & 3) : 1;
+            first++;
+        }
+
+        if (first == contentEnd) {
+            endParagraph();
+            previousBlank = true;
+            return nextLine(lineEnd);
+        }
+
+        // 空行之后从第 0 列开始的行结束所有列表和段落，是重置点
+        if (previousBlank && first == lineStart && cutsAllowed && lineStart > 0) {
+            safeCut = lineStart;
+            if (resetCount == resets.length) {
+                resets = Arrays.copyOf(resets, resetCount * 2);
+            }
+            resets[resetCount++] = lineStart;
+        }
+
+        // 空行之后缩进不足的行结束对应的列表
+        if (previousBlank && !isListMarker(first, contentEnd)) {
+            while (listDepth > 0 && column < listIndents[listDepth - 1]) {
+                listDepth--;
+            }
+        }
+        previousBlank = false;
+        int base = listDepth > 0 ? listIndents[listDepth - 1] : 0;
+
+        if (column - base >= 4) {
+            if (!inParagraph) {
+                return lexIndentedCode(lineStart, base);
+            }
+        } else {
+            int next = lexBlockStart(first, column, contentEnd, lineEnd);
+            if (next >= 0) {
+                return next;
+            }
+        }
+
+        addParagraphLine(first, contentEnd);
+        return nextLine(lineEnd);
+    }
+
+    /**
+     * 识别从一行开头开始的块级结构
+     * @param first 行内第一个非空白字符的位置
+     * @param column 该字符所在的列
+     * @param contentEnd 行内容结束位置
+     * @param lineEnd 行结束位置
+     * @return 下一个待处理的位置，不是块级结构时返回 -1
+     */
+    private int lexBlockStart(int first, int column, int contentEnd, int lineEnd) {
+        char c = text.charAt(first);
+        switch (c) {
+            case '`':
+            case '~': {
+                int next = lexFence(first, column, contentEnd, lineEnd);
+                if (next >= 0) {
+                    return next;
+                }
+                break;
+            }
+            case '$': {
+                int next = lexMathBlock(first, contentEnd);
+                if (next >= 0) {
+                    return next;
+                }
+                break;
+            }
+            case '<': {
+                int next = lexHtmlBlock(first, contentEnd, lineEnd);
+                if (next >= 0) {
+                    return next;
+                }
+                break;
+            }
+            case '[':
+                if (!inParagraph && isLinkReferenceDefinition(first, contentEnd)) {
+                    regions.add(first, contentEnd);
+                    return nextLine(lineEnd);
+                }
+                break;
+            case '#':
+                if (isAtxHeading(first, contentEnd)) {
+                    // 标题单独作为一个行内扫描范围
+                    endParagraph();
+                    scanInline(first, contentEnd);
+                    return nextLine(lineEnd);
+                }
+                break;
+            default:
+                break;
+        }
+
+        if (isThematicBreakOrUnderline(first, contentEnd)) {
+            endParagraph();
+            return nextLine(lineEnd);
+        }
+
+        int markerEnd = listMarkerEnd(first, contentEnd);
+        if (markerEnd >= 0) {
+            endParagraph();
+            // 列表项内容的缩进
+            int itemContent = markerEnd;
+            while (itemContent < contentEnd && text.charAt(itemContent) == ' ') {
+                itemContent++;
+            }
+            int spaces = itemContent - markerEnd;
+            int contentColumn = column + (markerEnd - first) + (spaces >= 1 && spaces <= 4 ? spaces : 1);
+            while (listDepth > 0 && column < listIndents[listDepth - 1]) {
+                listDepth--;
+            }
+            if (listDepth == listIndents.length) {
+                listIndents = Arrays.copyOf(listIndents, listDepth * 2);
+            }
+            listIndents[listDepth++] = contentColumn;
+
+            if (itemContent < contentEnd) {
+                char itemFirst = text.charAt(itemContent);
+                if (itemFirst == '`' || itemFirst == '~') {
+                    int next = lexFence(itemContent, contentColumn, contentEnd, lineEnd);
+                    if (next >= 0) {
+                        return next;
+                    }
+                }
+                addParagraphLine(itemContent, contentEnd);
+            }
+            return nextLine(lineEnd);
+        }
+        return -1;
+    }
+
+    /**
+     * 识别围栏代码块，未闭合的代码块延续到文本末尾
+     * @param start 围栏起点
+     * @param column 围栏所在的列
+     * @param contentEnd 行内容结束位置
+     * @param lineEnd 行结束位置
+     * @return 代码块之后的位置，不是围栏时返回 -1
+     */
+    private int lexFence(int start, int column, int contentEnd, int lineEnd) {
+        char fence = text.charAt(start);
+        int run = runLength(start, contentEnd, fence);
+        if (run < 3) {
+            return -1;
+        }
+        // 反引号围栏的信息字符串中不能再出现反引号
+        if (fence == '`') {
+            for (int i = start + run; i < contentEnd; i++) {
+                if (text.charAt(i) == '`') {
+                    return -1;
+                }
+            }
+        }
+        endParagraph();
+        fenceChar = fence;
+        fenceRun = run;
+        fenceColumn = column;
+        return closeFence(start, nextLine(lineEnd));
+    }
+
+    /**
+     * 查找围栏代码块的结束行
+     * @param start 代码块起点
+     * @param position 开始查找的行首
+     * @return 代码块之后的位置
+     */
+    private int closeFence(int start, int position) {
+        while (position < length) {
+            int closeLineEnd = lineEnd(position);
+            int closeContentEnd = contentEnd(position, closeLineEnd);
+            int first = skipBlockQuote(position, closeContentEnd);
+            int closeColumn = 0;
+            while (first < closeContentEnd && (text.charAt(first) == ' ' || text.charAt(first) == '\t')) {
+                closeColumn += text.charAt(first) == '\t' ? 4 - (closeColumn & 3) : 1;
+                first++;
+            }
+            if (closeColumn <= fenceColumn + 3 && first < closeContentEnd && text.charAt(first) == fenceChar) {
+                int closeRun = runLength(first, closeContentEnd, fenceChar);
+                if (closeRun >= fenceRun && isBlank(first + closeRun, closeContentEnd)) {
+                    regions.add(start, closeContentEnd);
+                    return nextLine(closeLineEnd);
+                }
+            }
+            position = nextLine(closeLineEnd);
+        }
+        regions.add(start, length);
+        openBlock = OPEN_FENCE;
+        return length;
+    }
+
+    /**
+     * 识别缩进代码块，代码块之后的空行不计入
+     * @param lineStart 第一行行首
+     * @param base 列表内容缩进
+     * @return 代码块之后的位置
+     */
+    private int lexIndentedCode(int lineStart, int base) {
+        int start = -1;
+        int end = lineStart;
+        int next = lineStart;
+        int position = lineStart;
+        while (position < length) {
+            int lineEnd = lineEnd(position);
+            int contentEnd = contentEnd(position, lineEnd);
+            int first = skipBlockQuote(position, contentEnd);
+            int column = 0;
+            while (first < contentEnd && (text.charAt(first) == ' ' || text.charAt(first) == '\t')) {
+                column += text.charAt(first) == '\t' ? 4 - (column & 3) : 1;
+                first++;
+            }
+            if (first < contentEnd) {
+                if (column - base < 4) {
+                    break;
+                }
+                if (start < 0) {
+                    start = first;
+                }
+                end = contentEnd;
+                next = nextLine(lineEnd);
+            }
+            position = nextLine(lineEnd);
+        }
+        regions.add(start, end);
+        return next;
+    }
+
+    /**
+     * 识别块级公式（以 $$ 开头、结束标记在后续行中，中间不能有空行）
+     * @param start 起点
+     * @param contentEnd 行内容结束位置
+     * @return 公式之后的位置，不是块级公式时返回 -1
+     */
+    private int lexMathBlock(int start, int contentEnd) {
+        if (start + 1 >= contentEnd || text.charAt(start + 1) != '$') {
+            return -1;
+        }
+        int close = findMathBlockClose(start + 2);
+        if (close == length) {
+            // 结束标记在之后的文本中，公式延续到下一块
+            endParagraph();
+            return closeMathBlock(start, length);
+        }
+        if (close < 0) {
+            return -1;
+        }
+        if (close + 2 <= contentEnd) {
+            // 同一行内闭合，作为行内公式处理
+            return -1;
+        }
+        endParagraph();
+        regions.add(start, close + 2);
+        // 结束标记之后的内容按新的一行处理
+        return close + 2;
+    }
+
+    /**
+     * 查找已确定有结束标记的块级公式的结束标记，公式中没有空行
+     * @param start 公式起点
+     * @param position 开始查找的位置
+     * @return 公式之后的位置，结束标记不在本块中时为文本末尾
+     */
+    private int closeMathBlock(int start, int position) {
+        int close = indexOf("$$", position, length);
+        if (close < 0) {
+            regions.add(start, length);
+            openBlock = OPEN_MATH;
+            return length;
+        }
+        regions.add(start, close + 2);
+        return close + 2;
+    }
+
+    /**
+     * 查找块级公式的结束标记，遇到空行时停止，记住失败的查找范围
+     * @param from 开始查找的位置
+     * @return 结束标记位置，未找到时返回 -1；已知结束标记在之后的文本中时返回文本长度
+     */
+    private int findMathBlockClose(int from) {
+        if (from >= mathBlockFailFrom && from < mathBlockFailEnd) {
+            return -1;
+        }
+        int position = from;
+        while (position < length) {
+            int lineEnd = lineEnd(position);
+            int contentEnd = contentEnd(position, lineEnd);
+            if (position > from && isBlank(skipBlockQuote(position, contentEnd), contentEnd)) {
+                break;
+            }
+            int close = indexOf("$$", position, contentEnd);
+            if (close >= 0) {
+                return close;
+            }
+            position = nextLine(lineEnd);
+        }
+        if (position == length && decidedPending == PENDING_MATH && lineStartPosition == 0) {
+            // 块开头的公式已经在之后的文本中查找过结束标记
+            if (decidedClosed) {
+                return length;
+            }
+        } else if (position == length && !undecided) {
+            // 结束标记可能在后续文本中，记录当前行开始时的列表状态
+            undecided = true;
+            pending = PENDING_MATH;
+            cutListIndents = Arrays.copyOf(listIndents, Math.max(lineStartListDepth, 1));
+        }
+        mathBlockFailFrom = from;
+        mathBlockFailEnd = position;
+        return -1;
+    }
+
+    /**
+     * 识别 HTML 块
+     * @param start 起点（'<' 的位置）
+     * @param contentEnd 行内容结束位置
+     * @param lineEnd 行结束位置
+     * @return HTML 块之后的位置，不是 HTML 块时返回 -1
+     */
+    private int lexHtmlBlock(int start, int contentEnd, int lineEnd) {
+        String endMarker = null;
+        boolean rawTag = false;
+        if (startsWith(start, "<!--")) {
+            endMarker = "-->";
+        } else if (startsWith(start, "<?")) {
+            endMarker = "?>";
+        } else if (startsWith(start, "<![CDATA[")) {
+            endMarker = "]]>";
+        } else if (startsWith(start, "<!") && start + 2 < contentEnd && isAsciiLetter(text.charAt(start + 2))) {
+            endMarker = ">";
+        } else {
+            for (String tag : RAW_TAGS) {
+                if (matchesTagName(start + 1, contentEnd, tag)) {
+                    rawTag = true;
+                    break;
+                }
+            }
+        }
+
+        if (endMarker != null || rawTag) {
+            endParagraph();
+            htmlEndMarker = endMarker;
+            return closeHtmlBlock(start, start);
+        }
+
+        // 块级标签开头，或单独成行的完整标签（不能打断段落），到空行结束
+        int nameStart = start + 1 < contentEnd && text.charAt(start + 1) == '/' ? start + 2 : start + 1;
+        boolean blockTag = false;
+        for (String tag : BLOCK_TAGS) {
+            if (matchesTagName(nameStart, contentEnd, tag)) {
+                blockTag = true;
+                break;
+            }
+        }
+        if (!blockTag) {
+            if (inParagraph) {
+                return -1;
+            }
+            int tagEnd = scanTag(start, contentEnd);
+            if (tagEnd < 0 || !isBlank(tagEnd, contentEnd)) {
+                return -1;
+            }
+        }
+
+        endParagraph();
+        return closeHtmlBlockAtBlankLine(start, contentEnd, nextLine(lineEnd));
+    }
+
+    /**
+     * 查找包含结束标记的行，结束标记为空时查找原样保留标签的结束标签
+     * @param start HTML 块起点
+     * @param position 开始查找的位置
+     * @return HTML 块之后的位置
+     */
+    private int closeHtmlBlock(int start, int position) {
+        while (position < length) {
+            int end = lineEnd(position);
+            int lineContentEnd = contentEnd(position, end);
+            if (htmlEndMarker != null ? containsIgnoreCase(position, lineContentEnd, htmlEndMarker)
+                    : containsRawCloseTag(position, lineContentEnd)) {
+                regions.add(start, lineContentEnd);
+                return nextLine(end);
+            }
+            position = nextLine(end);
+        }
+        regions.add(start, length);
+        openBlock = OPEN_HTML;
+        return length;
+    }
+
+    /**
+     * 查找 HTML 块之后的空行
+     * @param start HTML 块起点
+     * @param end 已确定的 HTML 块终点
+     * @param position 开始查找的行首
+     * @return 空行的位置
+     */
+    private int closeHtmlBlockAtBlankLine(int start, int end, int position) {
+        while (position < length) {
+            int nextEnd = lineEnd(position);
+            int nextContentEnd = contentEnd(position, nextEnd);
+            if (isBlank(skipBlockQuote(position, nextContentEnd), nextContentEnd)) {
+                regions.add(start, end);
+                return position;
+            }
+            end = nextContentEnd;
+            position = nextLine(nextEnd);
+        }
+        regions.add(start, end);
+        openBlock = OPEN_HTML_UNTIL_BLANK;
+        return position;
+    }
+
+    /**
+     * 判断是否为链接引用定义 [label]: url
+     */
+    private boolean isLinkReferenceDefinition(int start, int contentEnd) {
+        int i = start + 1;
+        while (i < contentEnd) {
+            char c = text.charAt(i);
+            if (c == '\\') {
+                i += 2;
+                continue;
+            }
+            if (c == '[') {
+                return false;
+            }
+            if (c == ']') {
+                return i > start + 1 && i + 1 < contentEnd && text.charAt(i + 1) == ':';
+            }
+            i++;
+        }
+        return false;
+    }
+
+    /**
+     * 判断是否为 ATX 标题（1 到 6 个 # 之后跟空白或行尾）
+     */
+    private boolean isAtxHeading(int start, int contentEnd) {
+        int run = runLength(start, contentEnd, '#');
+        if (run > 6) {
+            return false;
+        }
+        int after = start + run;
+        return after == contentEnd || text.charAt(after) == ' ' || text.charAt(after) == '\t';
+    }
+
+    /**
+     * 判断是否为分隔线或 Setext 标题的下划线
+     */
+    private boolean isThematicBreakOrUnderline(int start, int contentEnd) {
+        char c = text.charAt(start);
+        if (c != '-' && c != '*' && c != '_' && c != '=') {
+            return false;
+        }
+        int count = 0;
+        boolean spaced = false;
+        for (int i = start; i < contentEnd; i++) {
+            char current = text.charAt(i);
+            if (current == c) {
+                count++;
+            } else if (current == ' ' || current == '\t') {
+                spaced = true;
+            } else {
+                return false;
+            }
+        }
+        // Setext 下划线只能由 = 或 - 组成且中间没有空白，分隔线至少三个字符
+        if (inParagraph && (c == '=' || c == '-') && !spaced) {
+            return true;
+        }
+        return c != '=' && count >= 3;
+    }
+
+    /**
+     * 判断是否为列表项标记
+     */
+    private boolean isListMarker(int start, int contentEnd) {
+        return listMarkerEnd(start, contentEnd) >= 0;
+    }
+
+    /**
+     * 获取列表项标记的结束位置
+     * @return 标记之后的位置，不是列表项时返回 -1
+     */
+    private int listMarkerEnd(int start, int contentEnd) {
+        char c = text.charAt(start);
+        int end;
+        if (c == '-' || c == '+' || c == '*') {
+            end = start + 1;
+        } else if (c >= '0' && c <= '9') {
+            end = start;
+            while (end < contentEnd && end - start < 9 && text.charAt(end) >= '0' && text.charAt(end) <= '9') {
+                end++;
+            }
+            if (end >= contentEnd || (text.charAt(end) != '.' && text.charAt(end) != ')')) {
+                return -1;
+            }
+            end++;
+        } else {
+            return -1;
+        }
+        if (end < contentEnd && text.charAt(end) != ' ' && text.charAt(end) != '\t') {
+            return -1;
+        }
+        return end;
+    }
+
+    /**
+     * 跳过行首的引用标记 "&gt;"
+     * @return 引用标记之后的位置
+     */
+    private int skipBlockQuote(int start, int end) {
+        int position = start;
+        while (true) {
+            int i = position;
+            int spaces = 0;
+            while (i < end && text.charAt(i) == ' ' && spaces < 3) {
+                i++;
+                spaces++;
+            }
+            if (i < end && text.charAt(i) == '>') {
+                i++;
+                if (i < end && text.charAt(i) == ' ') {
+                    i++;
+                }
+                position = i;
+            } else {
+                return position;
+            }
+        }
+    }
+
+    // ---------------------------------------------------------------- 段落与行内结构
+
+    /**
+     * 把一行加入当前段落
+     */
+    private void addParagraphLine(int start, int end) {
+        if (!inParagraph) {
+            inParagraph = true;
+            paragraphStart = start;
+        }
+        paragraphEnd = end;
+    }
+
+    /**
+     * 结束当前段落，对段落内容做行内扫描
+     */
+    private void endParagraph() {
+        if (inParagraph) {
+            inParagraph = false;
+            scanInline(paragraphStart, paragraphEnd);
+        }
+    }
+
+    /**
+     * 扫描段落内的行内结构
+     * 1. 行内代码和公式优先级最高，先找出来；
+     * 2. 在其余文本中配对方括号和圆括号；
+     * 3. 识别超链接、图片、自动链接和行内 HTML。
+     * @param start 段落起点
+     * @param end 段落终点（不含）
+     */
+    private void scanInline(int start, int end) {
+        if (!inline) {
+            return;
+        }
+        Arrays.fill(backtickFailFrom, Integer.MAX_VALUE);
+        Arrays.fill(dollarFailFrom, Integer.MAX_VALUE);
+
+        findCodeAndMathSpans(start, end);
+        matchBrackets(start, end);
+        findLinksAndHtml(start, end);
+    }
+
+    /**
+     * 找出行内代码（`...`）和行内公式（$...$ 与 $$...$$）
+     */
+    private void findCodeAndMathSpans(int start, int end) {
+        spanCount = 0;
+        int i = start;
+        while (i < end) {
+            char c = text.charAt(i);
+            if (c == '`' || c == '$') {
+                i = lexDelimiterRun(c, i, end);
+            } else if (c == '\\' && i + 1 < end && isAsciiPunctuation(text.charAt(i + 1))) {
+                i += 2;
+            } else {
+                i++;
+            }
+        }
+    }
+
+    /**
+     * 从一串分隔符开始查找对应的结束分隔符，找到时记录行内代码或公式区域
+     * @return 下一个待扫描的位置
+     */
+    private int lexDelimiterRun(char c, int start, int end) {
+        int run = runLength(start, end, c);
+        if (run <= MAX_RUN && (c == '`' || run <= 2)) {
+            int close = findClosingRun(c, run, start + run, end);
+            if (close >= 0) {
+                addSpan(start, close + run);
+                return close + run;
+            }
+        }
+        return start + run;
+    }
+
+    /**
+     * 查找长度恰好为 run 的结束分隔符
+     * @return 结束分隔符的位置，未找到时返回 -1
+     */
+    private int findClosingRun(char c, int run, int from, int end) {
+        int[] failFrom = c == '`' ? backtickFailFrom : dollarFailFrom;
+        if (from >= failFrom[run]) {
+            return -1;
+        }
+        int i = from;
+        while (i < end) {
+            char current = text.charAt(i);
+            if (current == '\\' && c == '$') {
+                // 公式中的 \$ 不是结束标记
+                i += 2;
+                continue;
+            }
+            if (current == c) {
+                int closeRun = runLength(i, end, c);
+                if (closeRun == run) {
+                    return i;
+                }
+                i += closeRun;
+                continue;
+            }
+            i++;
+        }
+        failFrom[run] = from;
+        return -1;
+    }
+
+    /**
+     * 记录行内代码或公式区域
+     */
+    private void addSpan(int start, int end) {
+        if (spanCount * 2 == spans.length) {
+            spans = Arrays.copyOf(spans, spans.length * 2);
+        }
+        spans[2 * spanCount] = start;
+        spans[2 * spanCount + 1] = end;
+        spanCount++;
+        regions.add(start, end);
+    }
+
+    /**
+     * 用栈配对段落中的方括号和圆括号，跳过转义字符和行内代码、公式
+     */
+    private void matchBrackets(int start, int end) {
+        int size = end - start;
+        if (bracketMatch.length < size) {
+            bracketMatch = new int[Math.max(size, bracketMatch.length * 2)];
+            parenMatch = new int[bracketMatch.length];
+        }
+        if (stack.length < size * 2) {
+            stack = new int[Math.max(size * 2, stack.length * 2)];
+        }
+        // 方括号使用栈的前半部分，圆括号使用后半部分
+        int brackets = 0;
+        int parens = size;
+
+        int span = 0;
+        int i = start;
+        while (i < end) {
+            if (span < spanCount && i >= spans[2 * span]) {
+                i = Math.max(i, spans[2 * span + 1]);
+                span++;
+                continue;
+            }
+            char c = text.charAt(i);
+            switch (c) {
+                case '\\':
+                    i += i + 1 < end && isAsciiPunctuation(text.charAt(i + 1)) ? 2 : 1;
+                    continue;
+                case '[':
+                    bracketMatch[i - start] = -1;
+                    stack[brackets++] = i;
+                    break;
+                case ']':
+                    if (brackets > 0) {
+                        bracketMatch[stack[--brackets] - start] = i;
+                    }
+                    break;
+                case '(':
+                    parenMatch[i - start] = -1;
+                    stack[parens++] = i;
+                    break;
+                case ')':
+                    if (parens > size) {
+                        parenMatch[stack[--parens] - start] = i;
+                    }
+                    break;
+                default:
+                    break;
+            }
+            i++;
+        }
+    }
+
+    /**
+     * 识别超链接、图片、自动链接和行内 HTML
+     */
+    private void findLinksAndHtml(int start, int end) {
+        // 已识别的链接地址部分，到达时整体跳过
+        int closers = 0;
+        int span = 0;
+        int i = start;
+        while (i < end) {
+            if (closers > 0 && i >= stack[2 * closers - 2]) {
+                i = Math.max(i, stack[2 * closers - 1]);
+                closers--;
+                continue;
+            }
+            if (span < spanCount && i >= spans[2 * span]) {
+                i = Math.max(i, spans[2 * span + 1]);
+                span++;
+                continue;
+            }
+            char c = text.charAt(i);
+            if (c == '\\') {
+                i += i + 1 < end && isAsciiPunctuation(text.charAt(i + 1)) ? 2 : 1;
+                continue;
+            }
+            if (c == '[') {
+                int close = bracketMatch[i - start];
+                if (close >= 0 && close + 1 < end && text.charAt(close + 1) == '(') {
+                    int destinationEnd = parenMatch[close + 1 - start];
+                    if (destinationEnd >= 0) {
+                        boolean image = i > start && text.charAt(i - 1) == '!'
+                                && !(i - 2 >= start && text.charAt(i - 2) == '\\');
+                        regions.add(image ? i - 1 : i, i + 1);
+                        regions.add(close, destinationEnd + 1);
+                        // 链接文字继续按行内内容扫描，到达地址部分时跳过
+                        stack[2 * closers] = close;
+                        stack[2 * closers + 1] = destinationEnd + 1;
+                        closers++;
+                    }
+                }
+            } else if (c == '<') {
+                int htmlEnd = scanInlineHtml(i, end);
+                if (htmlEnd > 0) {
+                    regions.add(i, htmlEnd);
+                    i = htmlEnd;
+                    continue;
+                }
+            }
+            i++;
+        }
+    }
+
+    /**
+     * 识别自动链接、HTML 注释或 HTML 标签
+     * @return 结束位置，不是这些结构时返回 -1
+     */
+    private int scanInlineHtml(int start, int end) {
+        int autolinkEnd = scanAutolink(start, end);
+        if (autolinkEnd > 0) {
+            return autolinkEnd;
+        }
+        if (startsWith(start, "<!--")) {
+            if (start + 4 >= commentFailFrom && end <= commentFailEnd) {
+                return -1;
+            }
+            int close = indexOf("-->", start + 4, end);
+            if (close < 0) {
+                commentFailFrom = start + 4;
+                commentFailEnd = end;
+                return -1;
+            }
+            return close + 3;
+        }
+        return scanTag(start, end);
+    }
+
+    /**
+     * 识别自动链接 &lt;scheme:...&gt; 或 &lt;邮箱地址&gt;
+     * @return 结束位置，不是自动链接时返回 -1
+     */
+    private int scanAutolink(int start, int end) {
+        int i = start + 1;
+        // URI 自动链接
+        if (i < end && isAsciiLetter(text.charAt(i))) {
+            int schemeEnd = i + 1;
+            while (schemeEnd < end && schemeEnd - i < 32) {
+                char c = text.charAt(schemeEnd);
+                if (isAsciiLetter(c) || (c >= '0' && c <= '9') || c == '+' || c == '.' || c == '-') {
+                    schemeEnd++;
+                } else {
+                    break;
+                }
+            }
+            if (schemeEnd - i >= 2 && schemeEnd < end && text.charAt(schemeEnd) == ':') {
+                for (int j = schemeEnd + 1; j < end; j++) {
+                    char c = text.charAt(j);
+                    if (c == '>') {
+                        return j + 1;
+                    }
+                    if (c <= ' ' || c == '<') {
+                        return -1;
+                    }
+                }
+                return -1;
+            }
+        }
+        // 邮箱自动链接
+        int j = i;
+        while (j < end && isEmailLocalChar(text.charAt(j))) {
+            j++;
+        }
+        if (j == i || j >= end || text.charAt(j) != '@') {
+            return -1;
+        }
+        int domainStart = ++j;
+        while (j < end) {
+            char c = text.charAt(j);
+            if (isAsciiLetter(c) || (c >= '0' && c <= '9') || c == '-' || c == '.') {
+                j++;
+            } else {
+                break;
+            }
+        }
+        if (j > domainStart && j < end && text.charAt(j) == '>') {
+            return j + 1;
+        }
+        return -1;
+    }
+
+    /**
+     * 识别完整的 HTML 开始标签或结束标签
+     * @return 标签结束位置（'&gt;' 之后），不是标签时返回 -1
+     */
+    private int scanTag(int start, int end) {
+        int limit = Math.min(end, start + MAX_TAG_LENGTH);
+        int i = start + 1;
+        boolean closing = i < limit && text.charAt(i) == '/';
+        if (closing) {
+            i++;
+        }
+        if (i >= limit || !isAsciiLetter(text.charAt(i))) {
+            return -1;
+        }
+        while (i < limit && (isAsciiLetter(text.charAt(i)) || isDigit(text.charAt(i)) || text.charAt(i) == '-')) {
+            i++;
+        }
+        if (closing) {
+            i = skipWhitespace(i, limit);
+            return i < limit && text.charAt(i) == '>' ? i + 1 : -1;
+        }
+        while (i < limit) {
+            int afterSpace = skipWhitespace(i, limit);
+            if (afterSpace >= limit) {
+                return -1;
+            }
+            char c = text.charAt(afterSpace);
+            if (c == '>') {
+                return afterSpace + 1;
+            }
+            if (c == '/') {
+                return afterSpace + 1 < limit && text.charAt(afterSpace + 1) == '>' ? afterSpace + 2 : -1;
+            }
+            // 属性之前必须有空白
+            if (afterSpace == i || !isAttributeNameStart(c)) {
+                return -1;
+            }
+            i = afterSpace + 1;
+            while (i < limit && isAttributeNameChar(text.charAt(i))) {
+                i++;
+            }
+            int beforeValue = skipWhitespace(i, limit);
+            if (beforeValue < limit && text.charAt(beforeValue) == '=') {
+                int value = skipWhitespace(beforeValue + 1, limit);
+                if (value >= limit) {
+                    return -1;
+                }
+                char quote = text.charAt(value);
+                if (quote == '"' || quote == '\'') {
+                    int close = findQuote(quote, value + 1, limit);
+                    if (close < 0) {
+                        return -1;
+                    }
+                    i = close + 1;
+                } else {
+                    int valueEnd = value;
+                    while (valueEnd < limit && !isUnquotedValueTerminator(text.charAt(valueEnd))) {
+                        valueEnd++;
+                    }
+                    if (valueEnd == value) {
+                        return -1;
+                    }
+                    i = valueEnd;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 查找属性值的结束引号，记住失败的查找范围
+     * @return 引号位置，未找到时返回 -1
+     */
+    private int findQuote(char quote, int from, int limit) {
+        boolean doubleQuote = quote == '"';
+        if (from >= (doubleQuote ? doubleQuoteFailFrom : singleQuoteFailFrom)
+                && limit <= (doubleQuote ? doubleQuoteFailEnd : singleQuoteFailEnd)) {
+            return -1;
+        }
+        for (int i = from; i < limit; i++) {
+            if (text.charAt(i) == quote) {
+                return i;
+            }
+        }
+        if (doubleQuote) {
+            doubleQuoteFailFrom = from;
+            doubleQuoteFailEnd = limit;
+        } else {
+            singleQuoteFailFrom = from;
+            singleQuoteFailEnd = limit;
+        }
+        return -1;
+    }
+
+    // ---------------------------------------------------------------- 工具方法
+
+    private int lineEnd(int position) {
+        int i = position;
+        while (i < length && text.charAt(i) != '\n') {
+            i++;
+        }
+        return i;
+    }
+
+    private int nextLine(int lineEnd) {
+        return lineEnd < length ? lineEnd + 1 : length;
+    }
+
+    private int contentEnd(int lineStart, int lineEnd) {
+        return lineEnd > lineStart && text.charAt(lineEnd - 1) == '\r' ? lineEnd - 1 : lineEnd;
+    }
+
+    private boolean isBlank(int start, int end) {
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c != ' ' && c != '\t') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int runLength(int start, int end, char c) {
+        int i = start;
+        while (i < end && text.charAt(i) == c) {
+            i++;
+        }
+        return i - start;
+    }
+
+    private int skipWhitespace(int start, int end) {
+        int i = start;
+        while (i < end && (text.charAt(i) == ' ' || text.charAt(i) == '\t' || text.charAt(i) == '\n'
+                || text.charAt(i) == '\r')) {
+            i++;
+        }
+        return i;
+    }
+
+    private boolean startsWith(int start, String prefix) {
+        if (start + prefix.length() > length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (text.charAt(start + i) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 在 [from, end) 中查找字符串
+     * @return 位置，未找到时返回 -1
+     */
+    private int indexOf(String target, int from, int end) {
+        int last = Math.min(end, length) - target.length();
+        char first = target.charAt(0);
+        for (int i = from; i <= last; i++) {
+            if (text.charAt(i) == first && startsWith(i, target)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private boolean containsIgnoreCase(int start, int end, String target) {
+        int last = end - target.length();
+        for (int i = start; i <= last; i++) {
+            if (regionMatchesIgnoreCase(i, target)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean containsRawCloseTag(int start, int end) {
+        for (String tag : RAW_TAGS) {
+            if (containsIgnoreCase(start, end, "</" + tag + ">")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 判断指定位置是否为给定的小写 ASCII 文本，只把 A-Z 当作对应的小写字母
+     * Character.toLowerCase 会把 'İ'（U+0130）、开尔文符号（U+212A）等非 ASCII 字符转为 ASCII 字母，
+     * 而 UTF-8 引擎把非 ASCII 字节看作 Latin-1 字符，两者的分析结果会不同
+     */
+    private boolean regionMatchesIgnoreCase(int start, String target) {
+        if (start + target.length() > length) {
+            return false;
+        }
+        for (int i = 0; i < target.length(); i++) {
+            char c = text.charAt(start + i);
+            if (c >= 'A' && c <= 'Z') {
+                c += 'a' - 'A';
+            }
+            if (c != target.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 判断指定位置是否为给定标签名（不区分大小写），且标签名之后是空白、'&gt;'、"/&gt;" 或行尾
+     */
+    private boolean matchesTagName(int start, int end, String tag) {
+        if (start + tag.length() > end || !regionMatchesIgnoreCase(start, tag)) {
+            return false;
+        }
+        int after = start + tag.length();
+        if (after == end) {
+            return true;
+        }
+        char c = text.charAt(after);
+        return c == ' ' || c == '\t' || c == '>' || (c == '/' && after + 1 < end && text.charAt(after + 1) == '>');
+    }
+
+    private static boolean isAsciiLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isAsciiPunctuation(char c) {
+        return (c >= '!' && c <= '/') || (c >= ':' && c <= '@') || (c >= '[' && c <= '`') || (c >= '{' && c <= '~');
+    }
+
+    private static boolean isEmailLocalChar(char c) {
+        return isAsciiLetter(c) || isDigit(c) || ".!#$%&'*+/=?^_`{|}~-".indexOf(c) >= 0;
+    }
+
+    private static boolean isAttributeNameStart(char c) {
+        return isAsciiLetter(c) || c == '_' || c == ':';
+    }
+
+    private static boolean isAttributeNameChar(char c) {
+        return isAsciiLetter(c) || isDigit(c) || c == '_' || c == ':' || c == '.' || c == '-';
+    }
+
+    private static boolean isUnquotedValueTerminator(char c) {
+        return c <= ' ' || c == '"' || c == '\'' || c == '=' || c == '<' || c == '>' || c == '`';
+    }
+}
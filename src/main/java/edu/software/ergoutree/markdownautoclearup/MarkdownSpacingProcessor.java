@@ -1,102 +1,19 @@
 package edu.software.ergoutree.markdownautoclearup;
 
 import java.io.*;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Markdown文件处理工具类，用于在中英文之间添加空格
+ * 以下带规则参数的方法每次调用都根据参数重新构建 RulePipeline，使用同一组规则处理多个文本时应构建一次流水线后复用
  */
 public class MarkdownSpacingProcessor {
 
-    // 匹配中英文交界的正则表达式
-    private static final Pattern CHINESE_ENGLISH_BOUNDARY = Pattern.compile(
-            "([\\p{script=Han}\\p{InCJK_Symbols_and_Punctuation}])([a-zA-Z])|" +
-            "([a-zA-Z])([\\p{script=Han}\\p{InCJK_Symbols_and_Punctuation}])"
-    );
-    
-    // 匹配中文与数字交界的正则表达式
-    private static final Pattern CHINESE_NUMBER_BOUNDARY = Pattern.compile(
-            "([\\p{script=Han}\\p{InCJK_Symbols_and_Punctuation}])([0-9])|" +
-            "([0-9])([\\p{script=Han}\\p{InCJK_Symbols_and_Punctuation}])"
-    );
-    
-    // 匹配英文与数字交界的正则表达式
-    private static final Pattern ENGLISH_NUMBER_BOUNDARY = Pattern.compile(
-            "([a-zA-Z])([0-9])|" +
-            "([0-9])([a-zA-Z])"
-    );
-    
-    // 中文标点符号
-    private static final String CHINESE_PUNCTUATION = "，。！？；：“”【】《》……";
-    
-    // 英文标点符号
-    private static final String ENGLISH_PUNCTUATION = ",.!?;:\"\"[]()''\\-_";
-    
-    // 全角标点到半角标点的映射
-    private static final Map<Character, Character> FULL_TO_HALF_PUNCTUATION = new HashMap<>();
-    
-    // 半角标点到全角标点的映射
-    private static final Map<Character, Character> HALF_TO_FULL_PUNCTUATION = new HashMap<>();
-    
-    // 特殊元素标记
-    private static final String CODE_BLOCK_MARKER = "```";
-    private static final String MATH_BLOCK_MARKER = "$$";
-    private static final String MATH_INLINE_MARKER = "$";
-    
-    // 超链接和图片模式
-    private static final Pattern LINK_PATTERN = Pattern.compile("\\[([^]]*)]\\(([^)]*)\\)");
-    private static final Pattern IMAGE_PATTERN = Pattern.compile("!\\[([^]]*)]\\(([^)]*)\\)");
-    
-    static {
-        // 初始化标点映射
-        initPunctuationMaps();
-    }
-    
-    /**
-     * 初始化标点映射
-     */
-    private static void initPunctuationMaps() {
-        // 全角到半角的映射
-        FULL_TO_HALF_PUNCTUATION.put('，', ',');
-        FULL_TO_HALF_PUNCTUATION.put('。', '.');
-        FULL_TO_HALF_PUNCTUATION.put('！', '!');
-        FULL_TO_HALF_PUNCTUATION.put('？', '?');
-        FULL_TO_HALF_PUNCTUATION.put('；', ';');
-        FULL_TO_HALF_PUNCTUATION.put('：', ':');
-        FULL_TO_HALF_PUNCTUATION.put('“', '"');
-        FULL_TO_HALF_PUNCTUATION.put('”', '"');
-        FULL_TO_HALF_PUNCTUATION.put('【', '[');
-        FULL_TO_HALF_PUNCTUATION.put('】', ']');
-        FULL_TO_HALF_PUNCTUATION.put('《', '<');
-        FULL_TO_HALF_PUNCTUATION.put('》', '>');
-        FULL_TO_HALF_PUNCTUATION.put('（', '(');
-        FULL_TO_HALF_PUNCTUATION.put('）', ')');
-        FULL_TO_HALF_PUNCTUATION.put('…', '.');
-        
-        // 半角到全角的映射
-        HALF_TO_FULL_PUNCTUATION.put(',', '，');
-        HALF_TO_FULL_PUNCTUATION.put('.', '。');
-        HALF_TO_FULL_PUNCTUATION.put('!', '！');
-        HALF_TO_FULL_PUNCTUATION.put('?', '？');
-        HALF_TO_FULL_PUNCTUATION.put(';', '；');
-        HALF_TO_FULL_PUNCTUATION.put(':', '：');
-        HALF_TO_FULL_PUNCTUATION.put('"', '“'); // 注意这里简化处理了，但是实际上开闭引号是不同的
-        HALF_TO_FULL_PUNCTUATION.put('[', '【');
-        HALF_TO_FULL_PUNCTUATION.put(']', '】');
-        HALF_TO_FULL_PUNCTUATION.put('<', '《');
-        HALF_TO_FULL_PUNCTUATION.put('>', '》');
-        HALF_TO_FULL_PUNCTUATION.put('(', '（');
-        HALF_TO_FULL_PUNCTUATION.put(')', '）');
-    }
-
     /**
      * 处理Markdown文件，根据规则添加空格
+     * 文件按块流式读写，内存占用与文件大小无关；只启用交界规则时直接在映射的 UTF-8 字节上处理，不解码为字符。
+     * 输入和输出为同一文件时先写入临时文件再替换
      * @param inputFile 输入文件路径
      * @param outputFile 输出文件路径
      * @param addSpaceBetweenChineseAndEnglish 是否在中英文之间添加空格
@@ -116,22 +33,48 @@ public class MarkdownSpacingProcessor {
                                             boolean addSpaceAroundEnglishPunctuation,
                                             boolean convertToFullWidthPunctuation,
                                             boolean convertToHalfWidthPunctuation) {
-        try {
-            String content = Files.readString(inputFile, StandardCharsets.UTF_8);
-            String processedContent = processText(content, 
-                                                addSpaceBetweenChineseAndEnglish,
-                                                addSpaceBetweenChineseAndNumber,
-                                                addSpaceBetweenEnglishAndNumber,
-                                                addSpaceAroundChinesePunctuation,
-                                                addSpaceAroundEnglishPunctuation,
-                                                convertToFullWidthPunctuation,
-                                                convertToHalfWidthPunctuation);
-            Files.writeString(outputFile, processedContent, StandardCharsets.UTF_8);
-            return true;
-        } catch (IOException e) {
-            e.printStackTrace();
-            return false;
-        }
+        return RulePipeline.of(addSpaceBetweenChineseAndEnglish,
+                               addSpaceBetweenChineseAndNumber,
+                               addSpaceBetweenEnglishAndNumber,
+                               addSpaceAroundChinesePunctuation,
+                               addSpaceAroundEnglishPunctuation,
+                               convertToFullWidthPunctuation,
+                               convertToHalfWidthPunctuation,
+                               null).applyToFile(inputFile, outputFile);
+    }
+    
+    /**
+     * 流式处理Markdown文本，从输入流分块读取并写入输出流，内存占用只取决于固定大小的缓冲区
+     * 跨块的代码块、公式、超链接和中英文交界与整体处理的结果一致，自定义正则表达式规则按块分别应用
+     * @param reader 输入流
+     * @param writer 输出流，处理完成后不会关闭
+     * @param addSpaceBetweenChineseAndEnglish 是否在中英文之间添加空格
+     * @param addSpaceBetweenChineseAndNumber 是否在中文和数字之间添加空格
+     * @param addSpaceBetweenEnglishAndNumber 是否在英文和数字之间添加空格
+     * @param addSpaceAroundChinesePunctuation 是否在中文标点前后添加空格
+     * @param addSpaceAroundEnglishPunctuation 是否在英文标点前后添加空格
+     * @param convertToFullWidthPunctuation 是否将标点转换为全角
+     * @param convertToHalfWidthPunctuation 是否将标点转换为半角
+     * @param customRegexManager 自定义正则表达式管理器，可以为空
+     * @throws IOException 读写失败
+     */
+    public static void processMarkdown(Reader reader, Writer writer,
+                                       boolean addSpaceBetweenChineseAndEnglish,
+                                       boolean addSpaceBetweenChineseAndNumber,
+                                       boolean addSpaceBetweenEnglishAndNumber,
+                                       boolean addSpaceAroundChinesePunctuation,
+                                       boolean addSpaceAroundEnglishPunctuation,
+                                       boolean convertToFullWidthPunctuation,
+                                       boolean convertToHalfWidthPunctuation,
+                                       CustomRegexManager customRegexManager) throws IOException {
+        RulePipeline.of(addSpaceBetweenChineseAndEnglish,
+                        addSpaceBetweenChineseAndNumber,
+                        addSpaceBetweenEnglishAndNumber,
+                        addSpaceAroundChinesePunctuation,
+                        addSpaceAroundEnglishPunctuation,
+                        convertToFullWidthPunctuation,
+                        convertToHalfWidthPunctuation,
+                        customRegexManager).apply(reader, writer);
     }
     
     /**
@@ -155,15 +98,15 @@ public class MarkdownSpacingProcessor {
      * @return 处理是否成功
      */
     public static boolean processMarkdownFile(Path inputFile, Path outputFile, 
-                                            boolean addSpaceBetweenChineseAndEnglish,
-                                            boolean addSpaceBetweenChineseAndNumber,
-                                            boolean addSpaceBetweenEnglishAndNumber) {
+                                     boolean addSpaceBetweenChineseAndEnglish,
+                                     boolean addSpaceBetweenChineseAndNumber,
+                                     boolean addSpaceBetweenEnglishAndNumber) {
         // 调用新的接口，但不启用新增的标点相关功能
         return processMarkdownFile(inputFile, outputFile, 
-                                  addSpaceBetweenChineseAndEnglish,
-                                  addSpaceBetweenChineseAndNumber,
-                                  addSpaceBetweenEnglishAndNumber,
-                                  false, false, false, false);
+                           addSpaceBetweenChineseAndEnglish,
+                           addSpaceBetweenChineseAndNumber,
+                           addSpaceBetweenEnglishAndNumber,
+                           false, false, false, false);
     }
 
     /**
@@ -180,76 +123,372 @@ public class MarkdownSpacingProcessor {
      * @return 处理后的文本
      */
     public static String processText(String text, 
-                                   boolean addSpaceBetweenChineseAndEnglish,
-                                   boolean addSpaceBetweenChineseAndNumber,
-                                   boolean addSpaceBetweenEnglishAndNumber,
-                                   boolean addSpaceAroundChinesePunctuation,
-                                   boolean addSpaceAroundEnglishPunctuation,
-                                   boolean convertToFullWidthPunctuation,
-                                   boolean convertToHalfWidthPunctuation,
-                                   CustomRegexManager customRegexManager) {
-        if (text == null || text.isEmpty()) {
-            return text;
-        }
-        
-        // 保存特殊元素（代码块、公式、超链接等）
-        Map<String, String> specialElements = new HashMap<>();
-        int placeholderCount = 0;
-        
-        // 先处理代码块
-        text = preserveCodeBlocks(text, specialElements, placeholderCount);
-        placeholderCount = specialElements.size();
-        
-        // 处理数学公式
-        text = preserveMathFormulas(text, specialElements, placeholderCount);
-        placeholderCount = specialElements.size();
-        
-        // 处理超链接和图片
-        text = preserveLinksAndImages(text, specialElements, placeholderCount);
-        
-        // 处理中英文之间的空格
-        if (addSpaceBetweenChineseAndEnglish) {
-            text = addSpaceBetweenChineseAndEnglish(text);
-        }
-        
-        // 处理中文和数字之间的空格
-        if (addSpaceBetweenChineseAndNumber) {
-            text = addSpaceBetweenChineseAndNumber(text);
-        }
-        
-        // 处理英文和数字之间的空格
-        if (addSpaceBetweenEnglishAndNumber) {
-            text = addSpaceBetweenEnglishAndNumber(text);
-        }
-        
-        // 处理中文标点前后的空格
-        if (addSpaceAroundChinesePunctuation) {
-            text = addSpaceAroundChinesePunctuation(text);
-        }
-        
-        // 处理英文标点前后的空格
-        if (addSpaceAroundEnglishPunctuation) {
-            text = addSpaceAroundEnglishPunctuation(text);
-        }
-        
-        // 处理标点转换
+                            boolean addSpaceBetweenChineseAndEnglish,
+                            boolean addSpaceBetweenChineseAndNumber,
+                            boolean addSpaceBetweenEnglishAndNumber,
+                            boolean addSpaceAroundChinesePunctuation,
+                            boolean addSpaceAroundEnglishPunctuation,
+                            boolean convertToFullWidthPunctuation,
+                            boolean convertToHalfWidthPunctuation,
+                            CustomRegexManager customRegexManager) {
+        return RulePipeline.of(addSpaceBetweenChineseAndEnglish,
+                        addSpaceBetweenChineseAndNumber,
+                        addSpaceBetweenEnglishAndNumber,
+                        addSpaceAroundChinesePunctuation,
+                        addSpaceAroundEnglishPunctuation,
+                        convertToFullWidthPunctuation,
+                        convertToHalfWidthPunctuation,
+                        customRegexManager).apply(text);
+    }
+    
+    /**
+     * 根据规则处理文本，并使用段落缓存跳过未改动的部分
+     * 文本在词法分析器的重置点处切分为块，每块的结果以（块内容，规则配置）为键缓存，
+     * 只有缓存中没有的块需要词法分析和空格处理，结果与不使用缓存时相同。
+     * 启用了自定义正则表达式规则时只在块级受保护区域开始处切分，规则作用的文本段不会跨越两块
+     * @param text 原始文本
+     * @param addSpaceBetweenChineseAndEnglish 是否在中英文之间添加空格
+     * @param addSpaceBetweenChineseAndNumber 是否在中文和数字之间添加空格
+     * @param addSpaceBetweenEnglishAndNumber 是否在英文和数字之间添加空格
+     * @param addSpaceAroundChinesePunctuation 是否在中文标点前后添加空格
+     * @param addSpaceAroundEnglishPunctuation 是否在英文标点前后添加空格
+     * @param convertToFullWidthPunctuation 是否将标点转换为全角
+     * @param convertToHalfWidthPunctuation 是否将标点转换为半角
+     * @param customRegexManager 自定义正则表达式管理器，可以为空
+     * @param cache 段落缓存，为空时不使用缓存
+     * @return 处理后的文本
+     */
+    public static String processText(String text,
+                              boolean addSpaceBetweenChineseAndEnglish,
+                              boolean addSpaceBetweenChineseAndNumber,
+                              boolean addSpaceBetweenEnglishAndNumber,
+                              boolean addSpaceAroundChinesePunctuation,
+                              boolean addSpaceAroundEnglishPunctuation,
+                              boolean convertToFullWidthPunctuation,
+                              boolean convertToHalfWidthPunctuation,
+                              CustomRegexManager customRegexManager,
+                              ParagraphCache cache) {
+        return RulePipeline.of(addSpaceBetweenChineseAndEnglish,
+                        addSpaceBetweenChineseAndNumber,
+                        addSpaceBetweenEnglishAndNumber,
+                        addSpaceAroundChinesePunctuation,
+                        addSpaceAroundEnglishPunctuation,
+                        convertToFullWidthPunctuation,
+                        convertToHalfWidthPunctuation,
+                        customRegexManager).apply(text, cache);
+    }
+    
+    /**
+     * 根据规则并行处理文本，使用公共 ForkJoinPool
+     * @param text 原始文本
+     * @param addSpaceBetweenChineseAndEnglish 是否在中英文之间添加空格
+     * @param addSpaceBetweenChineseAndNumber 是否在中文和数字之间添加空格
+     * @param addSpaceBetweenEnglishAndNumber 是否在英文和数字之间添加空格
+     * @param addSpaceAroundChinesePunctuation 是否在中文标点前后添加空格
+     * @param addSpaceAroundEnglishPunctuation 是否在英文标点前后添加空格
+     * @param convertToFullWidthPunctuation 是否将标点转换为全角
+     * @param convertToHalfWidthPunctuation 是否将标点转换为半角
+     * @param customRegexManager 自定义正则表达式管理器，可以为空
+     * @return 处理后的文本
+     */
+    public static String processTextParallel(String text,
+                                      boolean addSpaceBetweenChineseAndEnglish,
+                                      boolean addSpaceBetweenChineseAndNumber,
+                                      boolean addSpaceBetweenEnglishAndNumber,
+                                      boolean addSpaceAroundChinesePunctuation,
+                                      boolean addSpaceAroundEnglishPunctuation,
+                                      boolean convertToFullWidthPunctuation,
+                                      boolean convertToHalfWidthPunctuation,
+                                      CustomRegexManager customRegexManager) {
+        return processTextParallel(text,
+                            addSpaceBetweenChineseAndEnglish,
+                            addSpaceBetweenChineseAndNumber,
+                            addSpaceBetweenEnglishAndNumber,
+                            addSpaceAroundChinesePunctuation,
+                            addSpaceAroundEnglishPunctuation,
+                            convertToFullWidthPunctuation,
+                            convertToHalfWidthPunctuation,
+                            customRegexManager,
+                            ForkJoinPool.commonPool());
+    }
+    
+    /**
+     * 根据规则并行处理文本
+     * 文本在词法分析器的重置点处切分为若干段，各段在线程池中同时进行词法分析和空格处理后按顺序拼接，
+     * 结果与 processText 完全相同。启用了自定义正则表达式规则时，只在块级受保护区域（代码块、公式块等）
+     * 开始的重置点切分，保证规则作用的文本段不会跨越两段。
+     * 文本较短或线程池只有一个线程时直接顺序处理
+     * @param text 原始文本
+     * @param addSpaceBetweenChineseAndEnglish 是否在中英文之间添加空格
+     * @param addSpaceBetweenChineseAndNumber 是否在中文和数字之间添加空格
+     * @param addSpaceBetweenEnglishAndNumber 是否在英文和数字之间添加空格
+     * @param addSpaceAroundChinesePunctuation 是否在中文标点前后添加空格
+     * @param addSpaceAroundEnglishPunctuation 是否在英文标点前后添加空格
+     * @param convertToFullWidthPunctuation 是否将标点转换为全角
+     * @param convertToHalfWidthPunctuation 是否将标点转换为半角
+     * @param customRegexManager 自定义正则表达式管理器，可以为空
+     * @param pool 执行处理任务的线程池
+     * @return 处理后的文本
+     */
+    public static String processTextParallel(String text,
+                                      boolean addSpaceBetweenChineseAndEnglish,
+                                      boolean addSpaceBetweenChineseAndNumber,
+                                      boolean addSpaceBetweenEnglishAndNumber,
+                                      boolean addSpaceAroundChinesePunctuation,
+                                      boolean addSpaceAroundEnglishPunctuation,
+                                      boolean convertToFullWidthPunctuation,
+                                      boolean convertToHalfWidthPunctuation,
+                                      CustomRegexManager customRegexManager,
+                                      ForkJoinPool pool) {
+        return RulePipeline.of(addSpaceBetweenChineseAndEnglish,
+                        addSpaceBetweenChineseAndNumber,
+                        addSpaceBetweenEnglishAndNumber,
+                        addSpaceAroundChinesePunctuation,
+                        addSpaceAroundEnglishPunctuation,
+                        convertToFullWidthPunctuation,
+                        convertToHalfWidthPunctuation,
+                        customRegexManager).applyParallel(text, pool);
+    }
+    
+    /**
+     * 根据规则处理文本，并将结果写入调用方提供的输出目标
+     * 输入可以是 String、StringBuilder、CharBuffer 等任意 CharSequence，
+     * 输出可以是 StringBuilder、Writer 或可复用的 CharBuffer（空间不足时抛出 BufferOverflowException）
+     * @param text 原始文本
+     * @param out 输出目标
+     * @param addSpaceBetweenChineseAndEnglish 是否在中英文之间添加空格
+     * @param addSpaceBetweenChineseAndNumber 是否在中文和数字之间添加空格
+     * @param addSpaceBetweenEnglishAndNumber 是否在英文和数字之间添加空格
+     * @param addSpaceAroundChinesePunctuation 是否在中文标点前后添加空格
+     * @param addSpaceAroundEnglishPunctuation 是否在英文标点前后添加空格
+     * @param convertToFullWidthPunctuation 是否将标点转换为全角
+     * @param convertToHalfWidthPunctuation 是否将标点转换为半角
+     * @param customRegexManager 自定义正则表达式管理器，可以为空
+     * @throws IOException 写入输出目标失败
+     */
+    public static void processText(CharSequence text, Appendable out,
+                            boolean addSpaceBetweenChineseAndEnglish,
+                            boolean addSpaceBetweenChineseAndNumber,
+                            boolean addSpaceBetweenEnglishAndNumber,
+                            boolean addSpaceAroundChinesePunctuation,
+                            boolean addSpaceAroundEnglishPunctuation,
+                            boolean convertToFullWidthPunctuation,
+                            boolean convertToHalfWidthPunctuation,
+                            CustomRegexManager customRegexManager) throws IOException {
+        RulePipeline.of(addSpaceBetweenChineseAndEnglish,
+                        addSpaceBetweenChineseAndNumber,
+                        addSpaceBetweenEnglishAndNumber,
+                        addSpaceAroundChinesePunctuation,
+                        addSpaceAroundEnglishPunctuation,
+                        convertToFullWidthPunctuation,
+                        convertToHalfWidthPunctuation,
+                        customRegexManager).apply(text, out);
+    }
+    
+    /**
+     * 根据规则计算处理文本所需的修改，不生成处理后的文本
+     * 编辑器和其他集成可以只应用这些修改，不必替换整个文本
+     * @param text 原始文本
+     * @param addSpaceBetweenChineseAndEnglish 是否在中英文之间添加空格
+     * @param addSpaceBetweenChineseAndNumber 是否在中文和数字之间添加空格
+     * @param addSpaceBetweenEnglishAndNumber 是否在英文和数字之间添加空格
+     * @param addSpaceAroundChinesePunctuation 是否在中文标点前后添加空格
+     * @param addSpaceAroundEnglishPunctuation 是否在英文标点前后添加空格
+     * @param convertToFullWidthPunctuation 是否将标点转换为全角
+     * @param convertToHalfWidthPunctuation 是否将标点转换为半角
+     * @param customRegexManager 自定义正则表达式管理器，可以为空
+     * @return 编辑列表，对原文应用后与 processText 的结果相同
+     */
+    public static EditList computeEdits(CharSequence text,
+                            boolean addSpaceBetweenChineseAndEnglish,
+                            boolean addSpaceBetweenChineseAndNumber,
+                            boolean addSpaceBetweenEnglishAndNumber,
+                            boolean addSpaceAroundChinesePunctuation,
+                            boolean addSpaceAroundEnglishPunctuation,
+                            boolean convertToFullWidthPunctuation,
+                            boolean convertToHalfWidthPunctuation,
+                            CustomRegexManager customRegexManager) {
+        return RulePipeline.of(addSpaceBetweenChineseAndEnglish,
+                        addSpaceBetweenChineseAndNumber,
+                        addSpaceBetweenEnglishAndNumber,
+                        addSpaceAroundChinesePunctuation,
+                        addSpaceAroundEnglishPunctuation,
+                        convertToFullWidthPunctuation,
+                        convertToHalfWidthPunctuation,
+                        customRegexManager).edits(text);
+    }
+    
+    /**
+     * 根据规则检查文本是否会被改变，不生成处理后的文本，发现第一处需要修改的位置后立即停止
+     * 用于持续集成等批量检查大量已经格式化过的文件的场景
+     * @param text 原始文本
+     * @param addSpaceBetweenChineseAndEnglish 是否在中英文之间添加空格
+     * @param addSpaceBetweenChineseAndNumber 是否在中文和数字之间添加空格
+     * @param addSpaceBetweenEnglishAndNumber 是否在英文和数字之间添加空格
+     * @param addSpaceAroundChinesePunctuation 是否在中文标点前后添加空格
+     * @param addSpaceAroundEnglishPunctuation 是否在英文标点前后添加空格
+     * @param convertToFullWidthPunctuation 是否将标点转换为全角
+     * @param convertToHalfWidthPunctuation 是否将标点转换为半角
+     * @param customRegexManager 自定义正则表达式管理器，可以为空
+     * @return 应用规则后文本是否会改变
+     */
+    public static boolean checkText(CharSequence text,
+                            boolean addSpaceBetweenChineseAndEnglish,
+                            boolean addSpaceBetweenChineseAndNumber,
+                            boolean addSpaceBetweenEnglishAndNumber,
+                            boolean addSpaceAroundChinesePunctuation,
+                            boolean addSpaceAroundEnglishPunctuation,
+                            boolean convertToFullWidthPunctuation,
+                            boolean convertToHalfWidthPunctuation,
+                            CustomRegexManager customRegexManager) {
+        return RulePipeline.of(addSpaceBetweenChineseAndEnglish,
+                        addSpaceBetweenChineseAndNumber,
+                        addSpaceBetweenEnglishAndNumber,
+                        addSpaceAroundChinesePunctuation,
+                        addSpaceAroundEnglishPunctuation,
+                        convertToFullWidthPunctuation,
+                        convertToHalfWidthPunctuation,
+                        customRegexManager).wouldChange(text);
+    }
+    
+    /**
+     * 根据规则找出文本中不符合规则的位置，不生成处理后的文本，找到指定数量后停止
+     * @param text 原始文本
+     * @param maxCount 最多找出的数量
+     * @param addSpaceBetweenChineseAndEnglish 是否在中英文之间添加空格
+     * @param addSpaceBetweenChineseAndNumber 是否在中文和数字之间添加空格
+     * @param addSpaceBetweenEnglishAndNumber 是否在英文和数字之间添加空格
+     * @param addSpaceAroundChinesePunctuation 是否在中文标点前后添加空格
+     * @param addSpaceAroundEnglishPunctuation 是否在英文标点前后添加空格
+     * @param convertToFullWidthPunctuation 是否将标点转换为全角
+     * @param convertToHalfWidthPunctuation 是否将标点转换为半角
+     * @param customRegexManager 自定义正则表达式管理器，可以为空
+     * @return 按位置排序的修改，每处修改的位置即一处违反规则的位置
+     */
+    public static EditList findViolations(CharSequence text, int maxCount,
+                            boolean addSpaceBetweenChineseAndEnglish,
+                            boolean addSpaceBetweenChineseAndNumber,
+                            boolean addSpaceBetweenEnglishAndNumber,
+                            boolean addSpaceAroundChinesePunctuation,
+                            boolean addSpaceAroundEnglishPunctuation,
+                            boolean convertToFullWidthPunctuation,
+                            boolean convertToHalfWidthPunctuation,
+                            CustomRegexManager customRegexManager) {
+        return RulePipeline.of(addSpaceBetweenChineseAndEnglish,
+                        addSpaceBetweenChineseAndNumber,
+                        addSpaceBetweenEnglishAndNumber,
+                        addSpaceAroundChinesePunctuation,
+                        addSpaceAroundEnglishPunctuation,
+                        convertToFullWidthPunctuation,
+                        convertToHalfWidthPunctuation,
+                        customRegexManager).violations(text, maxCount);
+    }
+    
+    /**
+     * 根据规则只处理文本中的若干行，其他行保持不变
+     * 处理前只对这些行之前的文本做块级扫描，以确定它们是否位于代码块、公式块等结构中，不处理文档的其余部分
+     * @param text 原始文本
+     * @param fromLine 第一行的行号，从 0 开始
+     * @param toLine 最后一行之后的行号（不含），超过总行数时处理到文本末尾
+     * @param addSpaceBetweenChineseAndEnglish 是否在中英文之间添加空格
+     * @param addSpaceBetweenChineseAndNumber 是否在中文和数字之间添加空格
+     * @param addSpaceBetweenEnglishAndNumber 是否在英文和数字之间添加空格
+     * @param addSpaceAroundChinesePunctuation 是否在中文标点前后添加空格
+     * @param addSpaceAroundEnglishPunctuation 是否在英文标点前后添加空格
+     * @param convertToFullWidthPunctuation 是否将标点转换为全角
+     * @param convertToHalfWidthPunctuation 是否将标点转换为半角
+     * @param customRegexManager 自定义正则表达式管理器，可以为空
+     * @return 处理后的文本
+     */
+    public static String processTextLines(String text, int fromLine, int toLine,
+                            boolean addSpaceBetweenChineseAndEnglish,
+                            boolean addSpaceBetweenChineseAndNumber,
+                            boolean addSpaceBetweenEnglishAndNumber,
+                            boolean addSpaceAroundChinesePunctuation,
+                            boolean addSpaceAroundEnglishPunctuation,
+                            boolean convertToFullWidthPunctuation,
+                            boolean convertToHalfWidthPunctuation,
+                            CustomRegexManager customRegexManager) {
+        return RulePipeline.of(addSpaceBetweenChineseAndEnglish,
+                        addSpaceBetweenChineseAndNumber,
+                        addSpaceBetweenEnglishAndNumber,
+                        addSpaceAroundChinesePunctuation,
+                        addSpaceAroundEnglishPunctuation,
+                        convertToFullWidthPunctuation,
+                        convertToHalfWidthPunctuation,
+                        customRegexManager).applyToLines(text, fromLine, toLine);
+    }
+    
+    /**
+     * 普查文本并生成处理计划，用于查看哪些规则会实际执行、哪些行会被原样复制
+     * @param text 原始文本
+     * @param addSpaceBetweenChineseAndEnglish 是否在中英文之间添加空格
+     * @param addSpaceBetweenChineseAndNumber 是否在中文和数字之间添加空格
+     * @param addSpaceBetweenEnglishAndNumber 是否在英文和数字之间添加空格
+     * @param addSpaceAroundChinesePunctuation 是否在中文标点前后添加空格
+     * @param addSpaceAroundEnglishPunctuation 是否在英文标点前后添加空格
+     * @param convertToFullWidthPunctuation 是否将标点转换为全角
+     * @param convertToHalfWidthPunctuation 是否将标点转换为半角
+     * @return 处理计划
+     */
+    public static SpacingPlan planText(CharSequence text,
+                                       boolean addSpaceBetweenChineseAndEnglish,
+                                       boolean addSpaceBetweenChineseAndNumber,
+                                       boolean addSpaceBetweenEnglishAndNumber,
+                                       boolean addSpaceAroundChinesePunctuation,
+                                       boolean addSpaceAroundEnglishPunctuation,
+                                       boolean convertToFullWidthPunctuation,
+                                       boolean convertToHalfWidthPunctuation) {
+        return SpacingPlan.of(text,
+                              addSpaceBetweenChineseAndEnglish,
+                              addSpaceBetweenChineseAndNumber,
+                              addSpaceBetweenEnglishAndNumber,
+                              addSpaceAroundChinesePunctuation,
+                              addSpaceAroundEnglishPunctuation,
+                              conversion(convertToFullWidthPunctuation, convertToHalfWidthPunctuation));
+    }
+    
+    /**
+     * 根据规则创建空格处理引擎
+     * @param addSpaceBetweenChineseAndEnglish 是否在中英文之间添加空格
+     * @param addSpaceBetweenChineseAndNumber 是否在中文和数字之间添加空格
+     * @param addSpaceBetweenEnglishAndNumber 是否在英文和数字之间添加空格
+     * @param addSpaceAroundChinesePunctuation 是否在中文标点前后添加空格
+     * @param addSpaceAroundEnglishPunctuation 是否在英文标点前后添加空格
+     * @param convertToFullWidthPunctuation 是否将标点转换为全角
+     * @param convertToHalfWidthPunctuation 是否将标点转换为半角
+     * @return 空格处理引擎
+     */
+    private static SpacingEngine createEngine(boolean addSpaceBetweenChineseAndEnglish,
+                                              boolean addSpaceBetweenChineseAndNumber,
+                                              boolean addSpaceBetweenEnglishAndNumber,
+                                              boolean addSpaceAroundChinesePunctuation,
+                                              boolean addSpaceAroundEnglishPunctuation,
+                                              boolean convertToFullWidthPunctuation,
+                                              boolean convertToHalfWidthPunctuation) {
+        return SpacingEngine.create(addSpaceBetweenChineseAndEnglish,
+                                    addSpaceBetweenChineseAndNumber,
+                                    addSpaceBetweenEnglishAndNumber,
+                                    addSpaceAroundChinesePunctuation,
+                                    addSpaceAroundEnglishPunctuation,
+                                    conversion(convertToFullWidthPunctuation, convertToHalfWidthPunctuation));
+    }
+    
+    /**
+     * 获取标点转换配置，同时选择两种转换时转换为全角
+     * @param convertToFullWidthPunctuation 是否将标点转换为全角
+     * @param convertToHalfWidthPunctuation 是否将标点转换为半角
+     * @return 标点转换配置，不转换时为空
+     */
+    static PunctuationProfile conversion(boolean convertToFullWidthPunctuation,
+                                         boolean convertToHalfWidthPunctuation) {
         if (convertToFullWidthPunctuation) {
-            text = convertToFullWidthPunctuation(text);
-        } else if (convertToHalfWidthPunctuation) {
-            text = convertToHalfWidthPunctuation(text);
-        }
-        
-        // 应用自定义正则表达式规则
-        if (customRegexManager != null) {
-            text = customRegexManager.applyRules(text);
+            return PunctuationProfile.FULL_WIDTH;
         }
-        
-        // 恢复特殊元素
-        for (Map.Entry<String, String> entry : specialElements.entrySet()) {
-            text = text.replace(entry.getKey(), entry.getValue());
+        if (convertToHalfWidthPunctuation) {
+            return PunctuationProfile.HALF_WIDTH;
         }
-        
-        return text;
+        return null;
     }
     
     /**
@@ -312,25 +551,17 @@ public class MarkdownSpacingProcessor {
         if (text == null || text.isEmpty()) {
             return text;
         }
-
-        // 使用正则表达式在中英文交界处添加空格
-        Matcher matcher = CHINESE_ENGLISH_BOUNDARY.matcher(text);
-        StringBuffer result = new StringBuffer();
-
-        while (matcher.find()) {
-            String replacement;
-            if (matcher.group(1) != null && matcher.group(2) != null) {
-                // 中文后面跟英文
-                replacement = matcher.group(1) + " " + matcher.group(2);
-            } else {
-                // 英文后面跟中文
-                replacement = matcher.group(3) + " " + matcher.group(4);
-            }
-            matcher.appendReplacement(result, Matcher.quoteReplacement(replacement));
-        }
-        matcher.appendTail(result);
-
-        return result.toString();
+        return SpacingEngine.create(true, false, false, false, false, null).process(text);
+    }
+    
+    /**
+     * 在中英文之间添加空格，并将结果写入输出目标
+     * @param text 原始文本
+     * @param out 输出目标
+     * @throws IOException 写入输出目标失败
+     */
+    public static void addSpaceBetweenChineseAndEnglish(CharSequence text, Appendable out) throws IOException {
+        applyRules(text, out, true, false, false, false, false, false, false);
     }
     
     /**
@@ -342,25 +573,17 @@ public class MarkdownSpacingProcessor {
         if (text == null || text.isEmpty()) {
             return text;
         }
-
-        // 使用正则表达式在中文和数字交界处添加空格
-        Matcher matcher = CHINESE_NUMBER_BOUNDARY.matcher(text);
-        StringBuffer result = new StringBuffer();
-
-        while (matcher.find()) {
-            String replacement;
-            if (matcher.group(1) != null && matcher.group(2) != null) {
-                // 中文后面跟数字
-                replacement = matcher.group(1) + " " + matcher.group(2);
-            } else {
-                // 数字后面跟中文
-                replacement = matcher.group(3) + " " + matcher.group(4);
-            }
-            matcher.appendReplacement(result, Matcher.quoteReplacement(replacement));
-        }
-        matcher.appendTail(result);
-
-        return result.toString();
+        return SpacingEngine.create(false, true, false, false, false, null).process(text);
+    }
+    
+    /**
+     * 在中文和数字之间添加空格，并将结果写入输出目标
+     * @param text 原始文本
+     * @param out 输出目标
+     * @throws IOException 写入输出目标失败
+     */
+    public static void addSpaceBetweenChineseAndNumber(CharSequence text, Appendable out) throws IOException {
+        applyRules(text, out, false, true, false, false, false, false, false);
     }
     
     /**
@@ -372,25 +595,17 @@ public class MarkdownSpacingProcessor {
         if (text == null || text.isEmpty()) {
             return text;
         }
-
-        // 使用正则表达式在英文和数字交界处添加空格
-        Matcher matcher = ENGLISH_NUMBER_BOUNDARY.matcher(text);
-        StringBuffer result = new StringBuffer();
-
-        while (matcher.find()) {
-            String replacement;
-            if (matcher.group(1) != null && matcher.group(2) != null) {
-                // 英文后面跟数字
-                replacement = matcher.group(1) + " " + matcher.group(2);
-            } else {
-                // 数字后面跟英文
-                replacement = matcher.group(3) + " " + matcher.group(4);
-            }
-            matcher.appendReplacement(result, Matcher.quoteReplacement(replacement));
-        }
-        matcher.appendTail(result);
-
-        return result.toString();
+        return SpacingEngine.create(false, false, true, false, false, null).process(text);
+    }
+    
+    /**
+     * 在英文和数字之间添加空格，并将结果写入输出目标
+     * @param text 原始文本
+     * @param out 输出目标
+     * @throws IOException 写入输出目标失败
+     */
+    public static void addSpaceBetweenEnglishAndNumber(CharSequence text, Appendable out) throws IOException {
+        applyRules(text, out, false, false, true, false, false, false, false);
     }
 
     /**
@@ -402,26 +617,17 @@ public class MarkdownSpacingProcessor {
         if (text == null || text.isEmpty()) {
             return text;
         }
-        
-        StringBuilder result = new StringBuilder();
-        for (int i = 0; i < text.length(); i++) {
-            char c = text.charAt(i);
-            if (CHINESE_PUNCTUATION.indexOf(c) >= 0) {
-                // 如果前面不是空格，则添加空格
-                if (i > 0 && text.charAt(i-1) != ' ') {
-                    result.append(' ');
-                }
-                result.append(c);
-                // 如果后面不是空格，则添加空格
-                if (i < text.length() - 1 && text.charAt(i+1) != ' ') {
-                    result.append(' ');
-                }
-            } else {
-                result.append(c);
-            }
-        }
-        
-        return result.toString();
+        return SpacingEngine.create(false, false, false, true, false, null).process(text);
+    }
+    
+    /**
+     * 在中文标点前后添加空格，并将结果写入输出目标
+     * @param text 原始文本
+     * @param out 输出目标
+     * @throws IOException 写入输出目标失败
+     */
+    public static void addSpaceAroundChinesePunctuation(CharSequence text, Appendable out) throws IOException {
+        applyRules(text, out, false, false, false, true, false, false, false);
     }
     
     /**
@@ -433,26 +639,17 @@ public class MarkdownSpacingProcessor {
         if (text == null || text.isEmpty()) {
             return text;
         }
-        
-        StringBuilder result = new StringBuilder();
-        for (int i = 0; i < text.length(); i++) {
-            char c = text.charAt(i);
-            if (ENGLISH_PUNCTUATION.indexOf(c) >= 0) {
-                // 如果前面不是空格，则添加空格
-                if (i > 0 && text.charAt(i-1) != ' ') {
-                    result.append(' ');
-                }
-                result.append(c);
-                // 如果后面不是空格，则添加空格
-                if (i < text.length() - 1 && text.charAt(i+1) != ' ') {
-                    result.append(' ');
-                }
-            } else {
-                result.append(c);
-            }
-        }
-        
-        return result.toString();
+        return SpacingEngine.create(false, false, false, false, true, null).process(text);
+    }
+    
+    /**
+     * 在英文标点前后添加空格，并将结果写入输出目标
+     * @param text 原始文本
+     * @param out 输出目标
+     * @throws IOException 写入输出目标失败
+     */
+    public static void addSpaceAroundEnglishPunctuation(CharSequence text, Appendable out) throws IOException {
+        applyRules(text, out, false, false, false, false, true, false, false);
     }
     
     /**
@@ -464,18 +661,17 @@ public class MarkdownSpacingProcessor {
         if (text == null || text.isEmpty()) {
             return text;
         }
-        
-        StringBuilder result = new StringBuilder();
-        for (int i = 0; i < text.length(); i++) {
-            char c = text.charAt(i);
-            if (HALF_TO_FULL_PUNCTUATION.containsKey(c)) {
-                result.append(HALF_TO_FULL_PUNCTUATION.get(c));
-            } else {
-                result.append(c);
-            }
-        }
-        
-        return result.toString();
+        return SpacingEngine.create(false, false, false, false, false, PunctuationProfile.FULL_WIDTH).process(text);
+    }
+    
+    /**
+     * 将标点转换为全角，并将结果写入输出目标
+     * @param text 原始文本
+     * @param out 输出目标
+     * @throws IOException 写入输出目标失败
+     */
+    public static void convertToFullWidthPunctuation(CharSequence text, Appendable out) throws IOException {
+        applyRules(text, out, false, false, false, false, false, true, false);
     }
     
     /**
@@ -487,209 +683,63 @@ public class MarkdownSpacingProcessor {
         if (text == null || text.isEmpty()) {
             return text;
         }
-        
-        StringBuilder result = new StringBuilder();
-        for (int i = 0; i < text.length(); i++) {
-            char c = text.charAt(i);
-            if (FULL_TO_HALF_PUNCTUATION.containsKey(c)) {
-                result.append(FULL_TO_HALF_PUNCTUATION.get(c));
-            } else {
-                result.append(c);
-            }
-        }
-        
-        return result.toString();
+        return SpacingEngine.create(false, false, false, false, false, PunctuationProfile.HALF_WIDTH).process(text);
     }
     
     /**
-     * 保留代码块内容，不进行空格处理
+     * 将标点转换为半角，并将结果写入输出目标
      * @param text 原始文本
-     * @param specialElements 特殊元素映射
-     * @param startIndex 占位符起始索引
-     * @return 处理后的文本
+     * @param out 输出目标
+     * @throws IOException 写入输出目标失败
      */
-    private static String preserveCodeBlocks(String text, Map<String, String> specialElements, int startIndex) {
-        StringBuilder result = new StringBuilder();
-        int index = 0;
-        int placeholderCount = startIndex;
-        
-        // 分割文本，处理代码块
-        while (index < text.length()) {
-            int codeBlockStart = text.indexOf(CODE_BLOCK_MARKER, index);
-            if (codeBlockStart == -1) {
-                // 没有更多代码块，添加剩余文本
-                result.append(text.substring(index));
-                break;
-            }
-            
-            // 添加代码块前的文本
-            result.append(text.substring(index, codeBlockStart));
-            
-            // 查找代码块结束位置
-            int codeBlockEnd = text.indexOf(CODE_BLOCK_MARKER, codeBlockStart + CODE_BLOCK_MARKER.length());
-            if (codeBlockEnd == -1) {
-                // 没有找到结束标记，添加剩余文本
-                result.append(text.substring(codeBlockStart));
-                break;
-            }
-            
-            // 提取完整的代码块（包括标记）
-            String codeBlock = text.substring(codeBlockStart, codeBlockEnd + CODE_BLOCK_MARKER.length());
-            
-            // 创建占位符并保存映射
-            String placeholder = "__CODE_BLOCK_" + placeholderCount + "__";
-            specialElements.put(placeholder, codeBlock);
-            result.append(placeholder);
-            
-            // 更新索引和计数器
-            index = codeBlockEnd + CODE_BLOCK_MARKER.length();
-            placeholderCount++;
-        }
-        
-        return result.toString();
+    public static void convertToHalfWidthPunctuation(CharSequence text, Appendable out) throws IOException {
+        applyRules(text, out, false, false, false, false, false, false, true);
     }
     
     /**
-     * 保留数学公式内容，不进行空格处理
+     * 按自定义的转换配置转换标点
      * @param text 原始文本
-     * @param specialElements 特殊元素映射
-     * @param startIndex 占位符起始索引
+     * @param profile 标点转换配置
      * @return 处理后的文本
      */
-    private static String preserveMathFormulas(String text, Map<String, String> specialElements, int startIndex) {
-        // 先处理块级公式（$$...$$）
-        StringBuilder result = new StringBuilder();
-        int index = 0;
-        int placeholderCount = startIndex;
-        
-        // 分割文本，处理块级公式
-        while (index < text.length()) {
-            int mathBlockStart = text.indexOf(MATH_BLOCK_MARKER, index);
-            if (mathBlockStart == -1) {
-                // 没有更多块级公式，添加剩余文本
-                result.append(text.substring(index));
-                break;
-            }
-            
-            // 添加公式前的文本
-            result.append(text.substring(index, mathBlockStart));
-            
-            // 查找公式结束位置
-            int mathBlockEnd = text.indexOf(MATH_BLOCK_MARKER, mathBlockStart + MATH_BLOCK_MARKER.length());
-            if (mathBlockEnd == -1) {
-                // 没有找到结束标记，添加剩余文本
-                result.append(text.substring(mathBlockStart));
-                break;
-            }
-            
-            // 提取完整的公式（包括标记）
-            String mathBlock = text.substring(mathBlockStart, mathBlockEnd + MATH_BLOCK_MARKER.length());
-            
-            // 创建占位符并保存映射
-            String placeholder = "__MATH_BLOCK_" + placeholderCount + "__";
-            specialElements.put(placeholder, mathBlock);
-            result.append(placeholder);
-            
-            // 更新索引和计数器
-            index = mathBlockEnd + MATH_BLOCK_MARKER.length();
-            placeholderCount++;
-        }
-        
-        // 然后处理行内公式（$...$）
-        text = result.toString();
-        result = new StringBuilder();
-        index = 0;
-        
-        // 分割文本，处理行内公式
-        while (index < text.length()) {
-            int mathInlineStart = text.indexOf(MATH_INLINE_MARKER, index);
-            if (mathInlineStart == -1) {
-                // 没有更多行内公式，添加剩余文本
-                result.append(text.substring(index));
-                break;
-            }
-            
-            // 检查是否为块级公式的开始（$$）
-            if (mathInlineStart + 1 < text.length() && text.charAt(mathInlineStart + 1) == '$') {
-                // 这是块级公式的开始，跳过
-                result.append(text.substring(index, mathInlineStart + 2));
-                index = mathInlineStart + 2;
-                continue;
-            }
-            
-            // 添加公式前的文本
-            result.append(text.substring(index, mathInlineStart));
-            
-            // 查找公式结束位置
-            int mathInlineEnd = text.indexOf(MATH_INLINE_MARKER, mathInlineStart + MATH_INLINE_MARKER.length());
-            if (mathInlineEnd == -1) {
-                // 没有找到结束标记，添加剩余文本
-                result.append(text.substring(mathInlineStart));
-                break;
-            }
-            
-            // 提取完整的公式（包括标记）
-            String mathInline = text.substring(mathInlineStart, mathInlineEnd + MATH_INLINE_MARKER.length());
-            
-            // 创建占位符并保存映射
-            String placeholder = "__MATH_INLINE_" + placeholderCount + "__";
-            specialElements.put(placeholder, mathInline);
-            result.append(placeholder);
-            
-            // 更新索引和计数器
-            index = mathInlineEnd + MATH_INLINE_MARKER.length();
-            placeholderCount++;
+    public static String convertPunctuation(String text, PunctuationProfile profile) {
+        if (text == null || text.isEmpty()) {
+            return text;
         }
-        
-        return result.toString();
+        return SpacingEngine.create(false, false, false, false, false, profile).process(text);
     }
     
     /**
-     * 保留超链接和图片内容，不进行空格处理
+     * 对文本应用指定的规则（不保护特殊元素），并将结果写入输出目标
      * @param text 原始文本
-     * @param specialElements 特殊元素映射
-     * @param startIndex 占位符起始索引
-     * @return 处理后的文本
+     * @param out 输出目标
+     * @param addSpaceBetweenChineseAndEnglish 是否在中英文之间添加空格
+     * @param addSpaceBetweenChineseAndNumber 是否在中文和数字之间添加空格
+     * @param addSpaceBetweenEnglishAndNumber 是否在英文和数字之间添加空格
+     * @param addSpaceAroundChinesePunctuation 是否在中文标点前后添加空格
+     * @param addSpaceAroundEnglishPunctuation 是否在英文标点前后添加空格
+     * @param convertToFullWidthPunctuation 是否将标点转换为全角
+     * @param convertToHalfWidthPunctuation 是否将标点转换为半角
+     * @throws IOException 写入输出目标失败
      */
-    private static String preserveLinksAndImages(String text, Map<String, String> specialElements, int startIndex) {
-        // 先处理图片（![...](...))
-        int placeholderCount = startIndex;
-        StringBuilder result = new StringBuilder(text);
-        
-        // 处理图片
-        Matcher imageMatcher = IMAGE_PATTERN.matcher(text);
-        while (imageMatcher.find()) {
-            String imageTag = imageMatcher.group(0);
-            String placeholder = "__IMAGE_" + placeholderCount + "__";
-            specialElements.put(placeholder, imageTag);
-            placeholderCount++;
-            
-            // 替换文本中的图片标签
-            int startPos = result.indexOf(imageTag);
-            if (startPos != -1) {
-                result.replace(startPos, startPos + imageTag.length(), placeholder);
-            }
-        }
-        
-        // 处理超链接（[...](...))
-        text = result.toString();
-        result = new StringBuilder(text);
-        
-        Matcher linkMatcher = LINK_PATTERN.matcher(text);
-        while (linkMatcher.find()) {
-            String linkTag = linkMatcher.group(0);
-            String placeholder = "__LINK_" + placeholderCount + "__";
-            specialElements.put(placeholder, linkTag);
-            placeholderCount++;
-            
-            // 替换文本中的超链接标签
-            int startPos = result.indexOf(linkTag);
-            if (startPos != -1) {
-                result.replace(startPos, startPos + linkTag.length(), placeholder);
-            }
+    private static void applyRules(CharSequence text, Appendable out,
+                                   boolean addSpaceBetweenChineseAndEnglish,
+                                   boolean addSpaceBetweenChineseAndNumber,
+                                   boolean addSpaceBetweenEnglishAndNumber,
+                                   boolean addSpaceAroundChinesePunctuation,
+                                   boolean addSpaceAroundEnglishPunctuation,
+                                   boolean convertToFullWidthPunctuation,
+                                   boolean convertToHalfWidthPunctuation) throws IOException {
+        if (text == null || text.length() == 0) {
+            return;
         }
-        
-        return result.toString();
+        createEngine(addSpaceBetweenChineseAndEnglish,
+                     addSpaceBetweenChineseAndNumber,
+                     addSpaceBetweenEnglishAndNumber,
+                     addSpaceAroundChinesePunctuation,
+                     addSpaceAroundEnglishPunctuation,
+                     convertToFullWidthPunctuation,
+                     convertToHalfWidthPunctuation).process(text, out);
     }
     
     /**
@@ -0,0 +1,308 @@
+package edu.software.ergoutree.markdownautoclearup;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Markdown 流式处理器
+ * 通过 Reader 分块读入文本、通过 Writer 写出结果，内存占用只取决于缓冲区大小和最长的行，与文件大小无关。
+ *
+ * 每块文本在词法分析器给出的重置点处切分，剩余部分移到缓冲区开头与后续文本一起处理；
+ * 空格处理引擎在各块之间保持状态，所以跨块的中英文交界、标点空格等与整体处理完全一致。
+ * 围栏代码块、HTML 块、块级公式和头信息可以跨越任意多块。只有单个段落超过缓冲区大小时才会在行尾强制切分，
+ * 此时跨越切分处的行内代码、公式和链接不会被识别。
+ *
+ * 自定义正则表达式规则作用于两个受保护区域之间的整段文本，有自定义规则时优先在块级受保护区域开始处切分，
+ * 结果与整体处理相同；两个受保护区域之间的文本超过缓冲区大小时才退回普通的重置点，规则不能跨越这个位置匹配。
+ *
+ * 块级公式和头信息要找到结束标记才能确定，超过缓冲区大小时先向后查找结束标记，
+ * 查找时读入的文本暂存在临时文件中，得出结论后再从临时文件重新读入处理，内存占用仍然只取决于缓冲区大小。
+ */
+final class MarkdownStreamProcessor {
+
+    // 默认缓冲区大小（字符数）
+    static final int DEFAULT_CAPACITY = 1 << 20;
+
+    // 读写临时文件的缓冲区大小（字节）
+    private static final int SPILL_BUFFER_SIZE = 1 << 16;
+
+    private final SpacingEngine engine;
+    private final CompiledRegexRules customRules;
+    // 单行超过缓冲区大小时扩大，之后不再缩小
+    private char[] buffer;
+
+    /**
+     * 构造函数
+     * @param engine 空格处理引擎
+     * @param customRules 预编译的自定义正则表达式规则，可以为空
+     * @param capacity 缓冲区大小（字符数）
+     */
+    MarkdownStreamProcessor(SpacingEngine engine, CompiledRegexRules customRules, int capacity) {
+        this.engine = engine;
+        this.customRules = customRules;
+        this.buffer = new char[capacity];
+    }
+
+    /**
+     * 处理输入流中的全部文本并写入输出流，不关闭也不刷新输出流
+     * @param reader 输入
+     * @param writer 输出
+     * @throws IOException 读写失败
+     */
+    void process(Reader reader, Writer writer) throws IOException {
+        // 向后查找过结束标记时从临时文件重新读入，之后再接着读原来的输入
+        Reader source = reader;
+        try {
+            int length = 0;
+            boolean endOfInput = false;
+            boolean documentStart = true;
+            MarkdownLexer continued = null;
+
+            while (true) {
+                while (length < buffer.length && !endOfInput) {
+                    int read = source.read(buffer, length, buffer.length - length);
+                    if (read < 0) {
+                        endOfInput = true;
+                    } else {
+                        length += read;
+                    }
+                }
+                if (length == 0) {
+                    return;
+                }
+                if (!endOfInput && lastLineEnd(length) == 0) {
+                    // 单行超过缓冲区大小时扩大缓冲区直到容纳整行，分析器只能正确识别完整的行
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                    continue;
+                }
+
+                // 除最后一块外只分析完整的行，最后一行可能还没有读完
+                int analyzed = analyzedLength(length, endOfInput);
+                MarkdownLexer lexer = MarkdownLexer.lexChunk(CharBuffer.wrap(buffer, 0, analyzed), documentStart, continued);
+
+                if (!endOfInput && lexer.needsLookAhead()) {
+                    // 块开头的公式或头信息超过缓冲区大小，查找结束标记后从同一位置重新读入并按结论分析
+                    source = lookAhead(lexer, source, length, analyzed);
+                    continued = lexer;
+                    length = 0;
+                    continue;
+                }
+
+                int cut;
+                int regionCut = customRules != null ? lastRegionResetPoint(lexer) : 0;
+                if (endOfInput) {
+                    cut = length;
+                    continued = null;
+                } else if (regionCut > 0) {
+                    // 有自定义规则时在块级受保护区域开始处切分，规则作用的文本段不会被拆开
+                    cut = regionCut;
+                    continued = null;
+                } else if (lexer.safeCut() > 0) {
+                    cut = lexer.safeCut();
+                    continued = null;
+                } else {
+                    // 没有重置点，强制切分并让下一块延续分析器的状态
+                    cut = lexer.forcedCut();
+                    continued = lexer;
+                }
+
+                ProtectedRegions regions = lexer.regions();
+                regions.truncate(cut);
+                engine.process(CharBuffer.wrap(buffer, 0, cut), regions, writer, customRules);
+
+                System.arraycopy(buffer, cut, buffer, 0, length - cut);
+                length -= cut;
+                documentStart = false;
+            }
+        } finally {
+            if (source != reader) {
+                source.close();
+            }
+        }
+    }
+
+    /**
+     * 获取最后一个块级受保护区域开始处的重置点
+     * @param lexer 分析当前缓冲区的分析器
+     * @return 重置点位置，没有时为 0
+     */
+    private static int lastRegionResetPoint(MarkdownLexer lexer) {
+        int[] points = lexer.regionResetPoints();
+        return points.length > 0 ? points[points.length - 1] : 0;
+    }
+
+    /**
+     * 向后查找块开头未确定的结构的结束标记，读入的文本连同缓冲区中的文本一起暂存到临时文件
+     * @param lexer 分析当前缓冲区的分析器，查找的结论记录在其中
+     * @param source 当前的输入
+     * @param length 缓冲区中的字符数
+     * @param analyzed 分析器已经分析过的字符数
+     * @return 先读出暂存的文本、再接着读当前输入的新输入
+     * @throws IOException 读写失败
+     */
+    private Reader lookAhead(MarkdownLexer lexer, Reader source, int length, int analyzed) throws IOException {
+        Path file = Files.createTempFile("markdown-stream", ".tmp");
+        SpillReader spilled = null;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            ByteBuffer bytes = ByteBuffer.allocate(SPILL_BUFFER_SIZE);
+            int result = MarkdownLexer.AHEAD_UNKNOWN;
+            boolean endOfInput = false;
+            while (true) {
+                spill(channel, bytes, analyzed);
+                System.arraycopy(buffer, analyzed, buffer, 0, length - analyzed);
+                length -= analyzed;
+                if (result != MarkdownLexer.AHEAD_UNKNOWN) {
+                    break;
+                }
+                while (length < buffer.length && !endOfInput) {
+                    int read = source.read(buffer, length, buffer.length - length);
+                    if (read < 0) {
+                        endOfInput = true;
+                    } else {
+                        length += read;
+                    }
+                }
+                if (length == 0) {
+                    // 到达文档末尾仍未找到结束标记
+                    result = MarkdownLexer.AHEAD_MISSING;
+                    break;
+                }
+                analyzed = analyzedLength(length, endOfInput);
+                result = lexer.lookAhead(CharBuffer.wrap(buffer, 0, analyzed), endOfInput && analyzed == length);
+                if (result == MarkdownLexer.AHEAD_UNKNOWN && endOfInput && analyzed == length) {
+                    result = MarkdownLexer.AHEAD_MISSING;
+                }
+            }
+            // 缓冲区中剩余的文本也暂存起来，之后从临时文件开头按原来的顺序读入
+            spill(channel, bytes, length);
+            flushSpill(channel, bytes);
+            lexer.decide(result == MarkdownLexer.AHEAD_CLOSED);
+            spilled = new SpillReader(file, source);
+            return spilled;
+        } finally {
+            if (spilled == null) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    /**
+     * 把缓冲区开头的一段字符写入临时文件
+     * @param channel 临时文件
+     * @param bytes 写入缓冲区
+     * @param count 字符数
+     * @throws IOException 写入失败
+     */
+    private void spill(FileChannel channel, ByteBuffer bytes, int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            if (bytes.remaining() < Character.BYTES) {
+                flushSpill(channel, bytes);
+            }
+            bytes.putChar(buffer[i]);
+        }
+    }
+
+    private static void flushSpill(FileChannel channel, ByteBuffer bytes) throws IOException {
+        bytes.flip();
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+        bytes.clear();
+    }
+
+    /**
+     * 获取缓冲区中可以分析的字符数：除输入末尾外只取完整的行，向后查找时单行超过缓冲区大小则取到代理对之前
+     * @param length 缓冲区中的字符数
+     * @param endOfInput 是否已到达输入末尾
+     * @return 可以分析的字符数
+     */
+    private int analyzedLength(int length, boolean endOfInput) {
+        if (endOfInput) {
+            return length;
+        }
+        int analyzed = lastLineEnd(length);
+        if (analyzed == 0) {
+            analyzed = Character.isHighSurrogate(buffer[length - 1]) ? length - 1 : length;
+        }
+        return analyzed;
+    }
+
+    /**
+     * 获取缓冲区中最后一个完整行的结束位置
+     * @param length 缓冲区中的字符数
+     * @return 最后一个换行符之后的位置，没有换行符时为 0
+     */
+    private int lastLineEnd(int length) {
+        for (int i = length - 1; i >= 0; i--) {
+            if (buffer[i] == '\n') {
+                return i + 1;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * 先读出临时文件中暂存的文本，再接着读原来的输入；临时文件读完或关闭时删除
+     * 关闭时不关闭原来的输入，只关闭其中同样由本类创建的输入
+     */
+    private static final class SpillReader extends Reader {
+
+        private final Path file;
+        private final Reader rest;
+        private FileChannel channel;
+        private final ByteBuffer bytes = ByteBuffer.allocate(SPILL_BUFFER_SIZE);
+
+        SpillReader(Path file, Reader rest) throws IOException {
+            this.file = file;
+            this.rest = rest;
+            this.channel = FileChannel.open(file, StandardOpenOption.READ);
+            bytes.flip();
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) throws IOException {
+            if (channel != null) {
+                if (bytes.remaining() < Character.BYTES) {
+                    bytes.compact();
+                    int read = channel.read(bytes);
+                    bytes.flip();
+                    if (read < 0 && bytes.remaining() < Character.BYTES) {
+                        closeFile();
+                    }
+                }
+                if (channel != null) {
+                    int count = Math.min(len, bytes.remaining() / Character.BYTES);
+                    for (int i = 0; i < count; i++) {
+                        cbuf[off + i] = bytes.getChar();
+                    }
+                    return count;
+                }
+            }
+            return rest.read(cbuf, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            closeFile();
+            if (rest instanceof SpillReader) {
+                rest.close();
+            }
+        }
+
+        private void closeFile() throws IOException {
+            if (channel != null) {
+                channel.close();
+                channel = null;
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+}
@@ -0,0 +1,289 @@
+package edu.software.ergoutree.markdownautoclearup;
+
+import java.util.BitSet;
+
+/**
+ * 正则表达式的匹配可能包含的字符
+ * 收集正则表达式中所有消耗字符的部分（字面字符、字符类、\d 等）可以匹配的字符，任何匹配中的字符都在这个集合中，
+ * 不在集合中的字符也不会被正则表达式中的任何部分接受。用于判断两条规则的匹配能否重叠、
+ * 一条规则能否匹配另一条规则的替换结果。
+ *
+ * 只分析匹配结果只取决于匹配到的文本本身的正则表达式：使用向前向后查找、\b、$ 等依赖匹配之外文本的写法，
+ * 反向引用，内联标志，以及 .、[^...]、\D 这类可以匹配几乎任何字符的写法时不做分析。
+ * 分析是保守的：字符类的交集按并集计算，得到的集合可能比实际的大。
+ */
+final class MatchAlphabet {
+
+    // \s、\h、\v 和 \R 可以匹配的字符
+    private static final String SPACE_CHARS = " \t\n\u000B\f\r";
+    private static final String HORIZONTAL_SPACE_CHARS = " \t\u00A0\u1680\u180E\u202F\u205F\u3000";
+    private static final String VERTICAL_SPACE_CHARS = "\n\u000B\f\r\u0085\u2028\u2029";
+
+    private MatchAlphabet() {
+    }
+
+    /**
+     * 计算正则表达式的匹配可能包含的字符
+     * @param regex 正则表达式，按默认标志编译
+     * @return 字符集合，按 UTF-16 代码单元记录；无法分析时为空
+     */
+    static BitSet of(String regex) {
+        BitSet chars = new BitSet();
+        int length = regex.length();
+        int i = 0;
+        while (i < length) {
+            char c = regex.charAt(i);
+            switch (c) {
+                case '\\':
+                    i = escape(regex, i, chars, false);
+                    break;
+                case '[':
+                    i = charClass(regex, i, chars);
+                    break;
+                case '(':
+                    if (regex.startsWith("(?", i)) {
+                        // 只允许非捕获分组、命名分组和独立分组，其余是查找或内联标志
+                        if (regex.startsWith("(?:", i) || regex.startsWith("(?>", i)) {
+                            i += 3;
+                        } else if (regex.startsWith("(?<", i) && i + 3 < length
+                                && Character.isLetter(regex.charAt(i + 3))) {
+                            i = regex.indexOf('>', i) + 1;
+                        } else {
+                            return null;
+                        }
+                    } else {
+                        i++;
+                    }
+                    break;
+                case '{':
+                    // 量词
+                    int close = regex.indexOf('}', i);
+                    i = close < 0 ? -1 : close + 1;
+                    break;
+                case ')':
+                case '|':
+                case '*':
+                case '+':
+                case '?':
+                case '^':
+                    // 不带 MULTILINE 标志时 ^ 只匹配文本开头，与其他文本无关
+                    i++;
+                    break;
+                case '.':
+                case '$':
+                    return null;
+                default:
+                    int codePoint = regex.codePointAt(i);
+                    add(chars, codePoint);
+                    i += Character.charCount(codePoint);
+                    break;
+            }
+            if (i <= 0) {
+                return null;
+            }
+        }
+        return chars;
+    }
+
+    /**
+     * 分析一个转义
+     * @param regex 正则表达式
+     * @param i 反斜杠的位置
+     * @param chars 收集的字符
+     * @param inClass 是否在字符类中
+     * @return 转义之后的位置，无法分析时为 -1
+     */
+    private static int escape(String regex, int i, BitSet chars, boolean inClass) {
+        int length = regex.length();
+        if (i + 1 >= length) {
+            return -1;
+        }
+        char escaped = regex.charAt(i + 1);
+        int next = i + 2;
+        switch (escaped) {
+            case 'Q':
+                if (inClass) {
+                    return -1;
+                }
+                int end = regex.indexOf("\\E", next);
+                end = end < 0 ? length : end;
+                regex.substring(next, end).codePoints().forEach(codePoint -> add(chars, codePoint));
+                return Math.min(length, end + 2);
+            case 't':
+                chars.set('\t');
+                return next;
+            case 'n':
+                chars.set('\n');
+                return next;
+            case 'r':
+                chars.set('\r');
+                return next;
+            case 'f':
+                chars.set('\f');
+                return next;
+            case 'a':
+                chars.set('\u0007');
+                return next;
+            case 'e':
+                chars.set('\u001B');
+                return next;
+            case 'd':
+                chars.set('0', '9' + 1);
+                return next;
+            case 'w':
+                chars.set('0', '9' + 1);
+                chars.set('a', 'z' + 1);
+                chars.set('A', 'Z' + 1);
+                chars.set('_');
+                return next;
+            case 's':
+                addAll(chars, SPACE_CHARS);
+                return next;
+            case 'h':
+                addAll(chars, HORIZONTAL_SPACE_CHARS);
+                chars.set('\u2000', '\u200A' + 1);
+                return next;
+            case 'v':
+            case 'R':
+                addAll(chars, VERTICAL_SPACE_CHARS);
+                return next;
+            case 'z':
+            case 'A':
+                // 文本的开头和末尾，与其他文本无关
+                return inClass ? -1 : next;
+            case 'x':
+                if (next < length && regex.charAt(next) == '{') {
+                    int close = regex.indexOf('}', next);
+                    return close < 0 ? -1 : addHex(chars, regex, next + 1, close, close + 1);
+                }
+                return addHex(chars, regex, next, next + 2, next + 2);
+            case 'u':
+                return addHex(chars, regex, next, next + 4, next + 4);
+            case '0':
+                // 八进制：\0n、\0nn 或首位不超过 3 的 \0mnn
+                int value = 0;
+                int j = next;
+                while (j < length && j < next + 3 && regex.charAt(j) >= '0' && regex.charAt(j) <= '7'
+                        && value * 8 + regex.charAt(j) - '0' <= 0377) {
+                    value = value * 8 + regex.charAt(j) - '0';
+                    j++;
+                }
+                if (j == next) {
+                    return -1;
+                }
+                chars.set(value);
+                return j;
+            case 'c':
+                if (next >= length) {
+                    return -1;
+                }
+                chars.set(regex.charAt(next) ^ 64);
+                return next + 1;
+            default:
+                if (Character.isLetterOrDigit(escaped)) {
+                    // \D、\p 等几乎可以匹配任何字符的写法，\b、\G、$ 等依赖之外文本的断言，以及反向引用
+                    return -1;
+                }
+                chars.set(escaped);
+                return next;
+        }
+    }
+
+    /**
+     * 分析一个字符类，包括嵌套的字符类；交集按并集计算
+     * @param regex 正则表达式
+     * @param i 字符类开头的 [ 的位置
+     * @param chars 收集的字符
+     * @return 字符类之后的位置，无法分析时为 -1
+     */
+    private static int charClass(String regex, int i, BitSet chars) {
+        int length = regex.length();
+        int j = i + 1;
+        if (j >= length || regex.charAt(j) == '^' || regex.charAt(j) == ']') {
+            return -1;
+        }
+        // 上一个单独的字符，可以作为范围的起点
+        int previous = -1;
+        while (j < length) {
+            char c = regex.charAt(j);
+            if (c == ']') {
+                return j + 1;
+            }
+            if (c == '[') {
+                j = charClass(regex, j, chars);
+                previous = -1;
+            } else if (c == '&' && regex.startsWith("&&", j)) {
+                j += 2;
+                previous = -1;
+            } else if (c == '-' && previous >= 0 && j + 1 < length && regex.charAt(j + 1) != ']') {
+                // 范围：终点是一个字符或一个表示单个字符的转义
+                int to;
+                if (regex.charAt(j + 1) == '\\') {
+                    BitSet last = new BitSet();
+                    j = escape(regex, j + 1, last, true);
+                    if (j < 0 || last.cardinality() != 1) {
+                        return -1;
+                    }
+                    to = last.nextSetBit(0);
+                } else {
+                    to = regex.codePointAt(j + 1);
+                    j += 1 + Character.charCount(to);
+                }
+                if (to < previous || !Character.isBmpCodePoint(to)) {
+                    return -1;
+                }
+                chars.set(previous, to + 1);
+                previous = -1;
+            } else if (c == '\\') {
+                BitSet single = new BitSet();
+                j = escape(regex, j, single, true);
+                chars.or(single);
+                previous = single.cardinality() == 1 ? single.nextSetBit(0) : -1;
+            } else {
+                int codePoint = regex.codePointAt(j);
+                add(chars, codePoint);
+                previous = Character.isBmpCodePoint(codePoint) ? codePoint : -1;
+                j += Character.charCount(codePoint);
+            }
+            if (j < 0) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 解析十六进制转义并加入对应的字符
+     * @return 转义之后的位置，无效时为 -1
+     */
+    private static int addHex(BitSet chars, String regex, int from, int to, int next) {
+        if (to > regex.length() || from >= to) {
+            return -1;
+        }
+        try {
+            int codePoint = Integer.parseInt(regex.substring(from, to), 16);
+            if (!Character.isValidCodePoint(codePoint)) {
+                return -1;
+            }
+            add(chars, codePoint);
+            return next;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static void add(BitSet chars, int codePoint) {
+        if (Character.isBmpCodePoint(codePoint)) {
+            chars.set(codePoint);
+        } else {
+            chars.set(Character.highSurrogate(codePoint));
+            chars.set(Character.lowSurrogate(codePoint));
+        }
+    }
+
+    private static void addAll(BitSet chars, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            chars.set(text.charAt(i));
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package edu.software.ergoutree.markdownautoclearup;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 段落处理结果缓存
+ * 文档在词法分析器的重置点处切分为若干块（通常是一个或几个段落），每块可以单独处理。
+ * 缓存以（块内容，规则配置，是否在文档开头）为键保存处理结果，重新处理文档时只有改动过的块需要再次处理，
+ * 例如在编辑器中修改一行后重新应用规则，或批量处理绝大部分段落未变化的文件。
+ *
+ * 缓存按条目数限制大小，超过上限时淘汰最久未使用的条目，并统计命中和未命中次数。
+ * 缓存对象可以在多个线程之间共享。
+ */
+public final class ParagraphCache {
+
+    // 默认最大条目数
+    public static final int DEFAULT_MAX_ENTRIES = 16384;
+
+    private final int maxEntries;
+    private final LinkedHashMap<Key, String> entries;
+    private long hits;
+    private long misses;
+
+    /**
+     * 构造函数，使用默认最大条目数
+     */
+    public ParagraphCache() {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * 构造函数
+     * @param maxEntries 最大条目数
+     */
+    public ParagraphCache(int maxEntries) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("maxEntries 必须大于 0: " + maxEntries);
+        }
+        this.maxEntries = maxEntries;
+        // 按访问顺序排列，最久未使用的条目在最前面
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, String> eldest) {
+                return size() > ParagraphCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * 查找一块文本的处理结果
+     * @param block 块内容
+     * @param configuration 规则配置
+     * @param documentStart 块是否在文档开头
+     * @return 处理结果，没有缓存时为空
+     */
+    synchronized String get(String block, RuleConfiguration configuration, boolean documentStart) {
+        String result = entries.get(new Key(block, configuration, documentStart));
+        if (result != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return result;
+    }
+
+    /**
+     * 保存一块文本的处理结果
+     * @param block 块内容
+     * @param configuration 规则配置
+     * @param documentStart 块是否在文档开头
+     * @param result 处理结果
+     */
+    synchronized void put(String block, RuleConfiguration configuration, boolean documentStart, String result) {
+        entries.put(new Key(block, configuration, documentStart), result);
+    }
+
+    /**
+     * 获取命中次数
+     * @return 命中次数
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * 获取未命中次数
+     * @return 未命中次数
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * 获取当前条目数
+     * @return 条目数
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * 获取最大条目数
+     * @return 最大条目数
+     */
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * 清空缓存和统计
+     */
+    public synchronized void clear() {
+        entries.clear();
+        hits = 0;
+        misses = 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "ParagraphCache{" +
+                "size=" + entries.size() +
+                ", maxEntries=" + maxEntries +
+                ", hits=" + hits +
+                ", misses=" + misses +
+                '}';
+    }
+
+    /**
+     * 缓存键：块内容、规则配置和块是否在文档开头
+     */
+    private static final class Key {
+
+        private final String block;
+        private final RuleConfiguration configuration;
+        private final boolean documentStart;
+
+        Key(String block, RuleConfiguration configuration, boolean documentStart) {
+            this.block = block;
+            this.configuration = configuration;
+            this.documentStart = documentStart;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return documentStart == other.documentStart && block.equals(other.block)
+                    && configuration.equals(other.configuration);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * block.hashCode() + configuration.hashCode()) + (documentStart ? 1 : 0);
+        }
+    }
+}
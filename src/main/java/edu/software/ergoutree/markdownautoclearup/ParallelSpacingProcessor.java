@@ -0,0 +1,140 @@
+package edu.software.ergoutree.markdownautoclearup;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * 文档内并行处理
+ * 词法分析器的重置点（空行之后从第 0 列开始的行）处所有块级结构都已结束，分析状态和空格处理引擎的状态
+ * 都与刚处理完一个换行符时相同，所以在重置点切开的各段可以分别分析和处理，按顺序拼接后与整体处理的结果相同。
+ *
+ * 每段的长度随文档长度和线程数调整，使每个线程分到若干段以平衡负载，同时不至于太短而让任务调度开销占主导。
+ * 自定义正则表达式规则作用于两个受保护区域之间的整段文本，可能跨越重置点，
+ * 所以启用自定义规则时只在块级受保护区域开始的重置点切分。
+ */
+final class ParallelSpacingProcessor {
+
+    // 短于此长度的文本直接顺序处理
+    static final int MIN_PARALLEL_LENGTH = 1 << 20;
+
+    // 每段的最小长度
+    static final int MIN_CHUNK_LENGTH = 1 << 16;
+
+    // 每个线程平均分到的段数
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    private final String text;
+    private final SpacingPlan plan;
+    private final CompiledRegexRules customRules;
+
+    /**
+     * 构造函数
+     * @param text 原始文本
+     * @param plan 整个文档的处理计划
+     * @param customRules 预编译的自定义正则表达式规则，可以为空
+     */
+    ParallelSpacingProcessor(String text, SpacingPlan plan, CompiledRegexRules customRules) {
+        this.text = text;
+        this.plan = plan;
+        this.customRules = customRules;
+    }
+
+    /**
+     * 切分文本并在线程池中处理各段
+     * @param pool 线程池
+     * @param minChunkLength 每段的最小长度
+     * @return 处理后的文本
+     */
+    String process(ForkJoinPool pool, int minChunkLength) {
+        int target = Math.max(minChunkLength, text.length() / (pool.getParallelism() * CHUNKS_PER_THREAD));
+        int[] bounds = chunkBounds(candidateCuts(), target);
+        String[] results = new String[bounds.length - 1];
+        if (results.length == 1) {
+            results[0] = processChunk(0, text.length());
+        } else {
+            pool.invoke(new ChunkTask(bounds, results, 0, results.length));
+        }
+
+        int length = 0;
+        for (String result : results) {
+            length += result.length();
+        }
+        StringBuilder result = new StringBuilder(length);
+        for (String chunk : results) {
+            result.append(chunk);
+        }
+        return result.toString();
+    }
+
+    /**
+     * 找出可以切分的位置
+     * @return 按位置排序的候选切分位置
+     */
+    private int[] candidateCuts() {
+        MarkdownLexer blocks = MarkdownLexer.lexBlocks(text);
+        // 有自定义规则时，之前的文本段在块级受保护区域开始处结束，之后的文本段从区域之后开始
+        return customRules == null ? blocks.resetPoints() : blocks.regionResetPoints();
+    }
+
+    /**
+     * 从候选位置中选出各段的边界，使每段不短于目标长度
+     * @param cuts 候选切分位置
+     * @param target 目标长度
+     * @return 各段的边界，第一个为 0，最后一个为文本长度
+     */
+    private int[] chunkBounds(int[] cuts, int target) {
+        int[] bounds = new int[cuts.length + 2];
+        int count = 1;
+        for (int cut : cuts) {
+            // 最后一段过短时并入前一段
+            if (cut - bounds[count - 1] >= target && text.length() - cut >= target / 2) {
+                bounds[count++] = cut;
+            }
+        }
+        bounds[count++] = text.length();
+        return Arrays.copyOf(bounds, count);
+    }
+
+    /**
+     * 处理一段文本
+     * @param start 起点，为 0 或重置点
+     * @param end 终点（不含），为重置点或文本长度
+     * @return 处理后的文本
+     */
+    private String processChunk(int start, int end) {
+        return RulePipeline.processBlock(text.substring(start, end), start == 0,
+                                         plan.createEngine(start, end), customRules);
+    }
+
+    /**
+     * 处理一组相邻的段，超过一段时对半拆分为两个子任务
+     */
+    private final class ChunkTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int[] bounds;
+        private final String[] results;
+        private final int from;
+        private final int to;
+
+        ChunkTask(int[] bounds, String[] results, int from, int to) {
+            this.bounds = bounds;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                results[from] = processChunk(bounds[from], bounds[to]);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new ChunkTask(bounds, results, from, mid),
+                      new ChunkTask(bounds, results, mid, to));
+        }
+    }
+}
@@ -0,0 +1,402 @@
+package edu.software.ergoutree.markdownautoclearup;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.CharBuffer;
+import java.util.Arrays;
+
+/**
+ * 片段表文档
+ * 文档由一串片段组成，每个片段引用原文或新增缓冲区中的一段字符。原文只保存一份且从不修改，
+ * 插入的文本追加到只增不改的新增缓冲区，修改文档只改变片段，不复制整个文本。
+ *
+ * 快照与文档共享原文、新增缓冲区和片段数组，创建快照不复制任何字符。修改总是构建新的片段数组，
+ * 旧的片段数组从不改变，所以之前的快照不受之后修改的影响。
+ * 原文、处理结果和撤销历史都可以是同一份原文上的不同快照，大文件在内存中只保留一份正文。
+ *
+ * 文档实现 CharSequence，可以直接交给流水线处理；{@link #apply(EditList)} 把流水线给出的编辑列表一次写入文档。
+ * 修改之间的短间隔与插入的文本合并为一个片段，片段数量不会随修改数量无限增长。
+ *
+ * 修改文档不是线程安全的；不再修改的快照可以被多个线程同时读取。
+ */
+public final class PieceTable implements CharSequence {
+
+    // 两处修改之间不超过这个长度的原文复制到新增缓冲区，与前后插入的文本合并为一个片段
+    private static final int MERGE_GAP = 64;
+
+    // 片段来源：原文
+    private static final int ORIGINAL = -1;
+
+    private final CharSequence original;
+    private final AddBuffer added;
+
+    // 第 i 个片段引用来源 sources[i]（原文或新增缓冲区的块号）中从 offsets[i] 起的字符，
+    // 在文档中的终点（不含）为 ends[i]，起点为前一个片段的终点
+    private int[] sources;
+    private int[] offsets;
+    private int[] ends;
+    private int count;
+
+    // 最近一次读取的片段，顺序读取时不必每次二分查找；游标不可变，多个线程读取同一快照时互相覆盖只会多查找一次
+    private Cursor cursor = Cursor.EMPTY;
+
+    private PieceTable(CharSequence original, AddBuffer added, int[] sources, int[] offsets, int[] ends, int count) {
+        this.original = original;
+        this.added = added;
+        this.sources = sources;
+        this.offsets = offsets;
+        this.ends = ends;
+        this.count = count;
+    }
+
+    /**
+     * 以一段文本为原文创建文档，不复制文本
+     * @param original 原文，之后不能被修改
+     * @return 文档
+     */
+    public static PieceTable of(CharSequence original) {
+        int length = original.length();
+        int count = length > 0 ? 1 : 0;
+        return new PieceTable(original, new AddBuffer(),
+                              new int[] {ORIGINAL}, new int[] {0}, new int[] {length}, count);
+    }
+
+    /**
+     * 创建快照，与文档共享全部字符，之后对文档或快照的修改互不影响
+     * @return 快照
+     */
+    public PieceTable snapshot() {
+        return new PieceTable(original, added, sources, offsets, ends, count);
+    }
+
+    /**
+     * 获取片段数量
+     * @return 片段数量
+     */
+    public int pieceCount() {
+        return count;
+    }
+
+    @Override
+    public int length() {
+        return count > 0 ? ends[count - 1] : 0;
+    }
+
+    @Override
+    public char charAt(int index) {
+        Cursor current = cursor;
+        if (index < current.start || index >= current.end) {
+            if (index < 0 || index >= length()) {
+                throw new StringIndexOutOfBoundsException("index " + index + ", length " + length());
+            }
+            int piece = pieceAt(index);
+            current = new Cursor(start(piece), ends[piece], offsets[piece] - start(piece),
+                                 sources[piece] == ORIGINAL ? null : added.block(sources[piece]));
+            cursor = current;
+        }
+        return current.chars != null ? current.chars[index + current.shift] : original.charAt(index + current.shift);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        checkRange(start, end);
+        char[] chars = new char[end - start];
+        getChars(start, end, chars, 0);
+        return new String(chars);
+    }
+
+    @Override
+    public String toString() {
+        char[] chars = new char[length()];
+        getChars(0, chars.length, chars, 0);
+        return new String(chars);
+    }
+
+    /**
+     * 复制一段文本到字符数组
+     * @param start 起点
+     * @param end 终点（不含）
+     * @param target 目标数组
+     * @param targetStart 目标数组中的起点
+     */
+    public void getChars(int start, int end, char[] target, int targetStart) {
+        checkRange(start, end);
+        if (start == end) {
+            return;
+        }
+        int piece = pieceAt(start);
+        int position = start;
+        while (position < end) {
+            int to = Math.min(end, ends[piece]);
+            int offset = offsets[piece] + position - start(piece);
+            int length = to - position;
+            if (sources[piece] != ORIGINAL) {
+                System.arraycopy(added.block(sources[piece]), offset, target, targetStart, length);
+            } else if (original instanceof String) {
+                ((String) original).getChars(offset, offset + length, target, targetStart);
+            } else {
+                for (int i = 0; i < length; i++) {
+                    target[targetStart + i] = original.charAt(offset + i);
+                }
+            }
+            targetStart += length;
+            position = to;
+            piece++;
+        }
+    }
+
+    /**
+     * 按片段写出全部文本，不拼接整个文本
+     * @param out 输出目标
+     * @throws IOException 写入输出目标失败
+     */
+    public void writeTo(Appendable out) throws IOException {
+        for (int piece = 0; piece < count; piece++) {
+            int offset = offsets[piece];
+            int length = ends[piece] - start(piece);
+            if (sources[piece] == ORIGINAL) {
+                out.append(original, offset, offset + length);
+            } else if (out instanceof Writer) {
+                ((Writer) out).write(added.block(sources[piece]), offset, length);
+            } else {
+                out.append(CharBuffer.wrap(added.block(sources[piece]), offset, length));
+            }
+        }
+    }
+
+    /**
+     * 把一段文本替换为另一段文本
+     * @param start 起点
+     * @param end 终点（不含）
+     * @param text 替换后的文本
+     */
+    public void replace(int start, int end, CharSequence text) {
+        checkRange(start, end);
+        String inserted = text.toString();
+        apply(new EditList(new int[] {start}, new int[] {end - start}, new int[] {0, inserted.length()}, inserted, 1));
+    }
+
+    /**
+     * 把编辑列表中的全部修改写入文档，只遍历一遍片段
+     * @param edits 以本文档当前内容为原文生成的编辑列表
+     */
+    public void apply(EditList edits) {
+        if (edits.isEmpty()) {
+            return;
+        }
+        int last = edits.size() - 1;
+        if (edits.position(last) + edits.deletedLength(last) > length()) {
+            throw new IndexOutOfBoundsException("编辑列表超出文档长度: " + length());
+        }
+
+        Rebuilder rebuilder = new Rebuilder(count + 2 * edits.size() + 1);
+        String pool = edits.pool();
+        char[] gap = new char[MERGE_GAP];
+        CharBuffer gapText = CharBuffer.wrap(gap);
+        int position = 0;
+        for (int i = 0; i < edits.size(); i++) {
+            int editStart = edits.position(i);
+            if (editStart > position && editStart - position <= MERGE_GAP && rebuilder.endsWithAdded()) {
+                // 短间隔复制到新增缓冲区，与前一次插入合并
+                getChars(position, editStart, gap, 0);
+                rebuilder.insert(gapText, 0, editStart - position);
+            } else {
+                rebuilder.copy(position, editStart);
+            }
+            rebuilder.insert(pool, edits.insertedStart(i), edits.insertedStart(i) + edits.insertedLength(i));
+            position = editStart + edits.deletedLength(i);
+        }
+        rebuilder.copy(position, length());
+
+        sources = rebuilder.sources;
+        offsets = rebuilder.offsets;
+        ends = rebuilder.ends;
+        count = rebuilder.count;
+        cursor = Cursor.EMPTY;
+    }
+
+    /**
+     * 获取片段在文档中的起点
+     * @param piece 片段序号
+     * @return 起点
+     */
+    private int start(int piece) {
+        return piece == 0 ? 0 : ends[piece - 1];
+    }
+
+    /**
+     * 查找包含某个位置的片段
+     * @param index 文档中的位置，必须小于文档长度
+     * @return 片段序号
+     */
+    private int pieceAt(int index) {
+        int found = Arrays.binarySearch(ends, 0, count, index);
+        // 终点恰好等于该位置时属于下一个片段
+        return found >= 0 ? found + 1 : -found - 1;
+    }
+
+    private void checkRange(int start, int end) {
+        if (start < 0 || end > length() || start > end) {
+            throw new StringIndexOutOfBoundsException("begin " + start + ", end " + end + ", length " + length());
+        }
+    }
+
+    /**
+     * 读取游标：一个片段在文档中的范围，以及文档位置到来源位置的偏移
+     */
+    private static final class Cursor {
+
+        static final Cursor EMPTY = new Cursor(0, 0, 0, null);
+
+        final int start;
+        final int end;
+        final int shift;
+        // 新增缓冲区中的块，引用原文时为空
+        final char[] chars;
+
+        Cursor(int start, int end, int shift, char[] chars) {
+            this.start = start;
+            this.end = end;
+            this.shift = shift;
+            this.chars = chars;
+        }
+    }
+
+    /**
+     * 应用修改时构建新的片段数组，旧的片段数组保持不变，可能仍被快照使用
+     */
+    private final class Rebuilder {
+
+        private int[] sources;
+        private int[] offsets;
+        private int[] ends;
+        private int count;
+
+        Rebuilder(int capacity) {
+            sources = new int[capacity];
+            offsets = new int[capacity];
+            ends = new int[capacity];
+        }
+
+        /**
+         * 复制旧文档中一段文本对应的片段
+         * @param from 起点
+         * @param to 终点（不含）
+         */
+        void copy(int from, int to) {
+            if (from == to) {
+                return;
+            }
+            int piece = pieceAt(from);
+            while (from < to) {
+                int end = Math.min(to, PieceTable.this.ends[piece]);
+                add(PieceTable.this.sources[piece], PieceTable.this.offsets[piece] + from - start(piece), end - from);
+                from = end;
+                piece++;
+            }
+        }
+
+        /**
+         * 把一段文本追加到新增缓冲区，并添加引用它的片段
+         * @param text 文本
+         * @param start 起点
+         * @param end 终点（不含）
+         */
+        void insert(CharSequence text, int start, int end) {
+            if (start == end) {
+                return;
+            }
+            long location = added.append(text, start, end);
+            add((int) (location >>> 32), (int) location, end - start);
+        }
+
+        /**
+         * 判断最后一个片段是否引用新增缓冲区
+         * @return 是否引用新增缓冲区
+         */
+        boolean endsWithAdded() {
+            return count > 0 && sources[count - 1] != ORIGINAL;
+        }
+
+        /**
+         * 添加片段，与前一个片段在同一来源中相邻时合并
+         * @param source 来源
+         * @param offset 来源中的起点
+         * @param length 字符数
+         */
+        private void add(int source, int offset, int length) {
+            int documentEnd = (count > 0 ? ends[count - 1] : 0) + length;
+            if (count > 0 && sources[count - 1] == source
+                    && offsets[count - 1] + ends[count - 1] - (count > 1 ? ends[count - 2] : 0) == offset) {
+                ends[count - 1] = documentEnd;
+                return;
+            }
+            if (count == sources.length) {
+                sources = Arrays.copyOf(sources, count * 2);
+                offsets = Arrays.copyOf(offsets, count * 2);
+                ends = Arrays.copyOf(ends, count * 2);
+            }
+            sources[count] = source;
+            offsets[count] = offset;
+            ends[count] = documentEnd;
+            count++;
+        }
+    }
+
+    /**
+     * 新增缓冲区，由文档和它的所有快照共享
+     * 文本按块存放，写入的字符不再改变，块也不会被重新分配，所以已有片段引用的字符始终有效。
+     * 追加需要加锁，读取不加锁：片段总是在它引用的字符写入之后才创建
+     */
+    private static final class AddBuffer {
+
+        // 每块的字符数，更长的文本单独占用一块
+        private static final int BLOCK_SIZE = 1 << 16;
+
+        // 块数组填好新块之后才整体替换，读取方总能看到片段引用的块
+        private volatile char[][] blocks = new char[4][];
+        private int blockCount;
+        // 最后一块已使用的字符数
+        private int used;
+
+        /**
+         * 追加一段文本，文本总是完整地存放在一块中
+         * @param text 文本
+         * @param start 起点
+         * @param end 终点（不含）
+         * @return 块号在高 32 位、块内起点在低 32 位的位置
+         */
+        synchronized long append(CharSequence text, int start, int end) {
+            int length = end - start;
+            char[][] current = blocks;
+            if (blockCount == 0 || used + length > current[blockCount - 1].length) {
+                if (blockCount == current.length) {
+                    current = Arrays.copyOf(current, blockCount * 2);
+                }
+                current[blockCount++] = new char[Math.max(BLOCK_SIZE, length)];
+                used = 0;
+                blocks = current;
+            }
+            char[] block = current[blockCount - 1];
+            if (text instanceof String) {
+                ((String) text).getChars(start, end, block, used);
+            } else {
+                for (int i = start; i < end; i++) {
+                    block[used + i - start] = text.charAt(i);
+                }
+            }
+            long location = (long) (blockCount - 1) << 32 | used;
+            used += length;
+            return location;
+        }
+
+        /**
+         * 获取一块的字符
+         * @param index 块号
+         * @return 块中的字符
+         */
+        char[] block(int index) {
+            return blocks[index];
+        }
+    }
+}
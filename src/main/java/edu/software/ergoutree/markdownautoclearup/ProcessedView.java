@@ -0,0 +1,217 @@
+package edu.software.ergoutree.markdownautoclearup;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 处理后文本的惰性视图
+ * 原文在词法分析器的重置点处切分为块，每块的处理结果与处理整个文本时对应的部分相同。
+ * 视图只在读取到某个位置时才依次处理到该位置所在的块，读取大文件的开头不必先处理整个文件。
+ *
+ * 已确定的块只记录原文和处理结果中的边界，处理结果按块缓存最近读取的若干块，
+ * 被淘汰的块再次读取时重新处理，所以视图的内存占用与文件大小基本无关。
+ * 获取长度需要确定所有块的边界，会处理整个文本一次。
+ *
+ * 视图可以被多个线程同时读取，例如界面线程读取开头时后台线程继续处理其余部分。
+ */
+public final class ProcessedView implements CharSequence {
+
+    // 缓存处理结果的块数
+    private static final int CACHED_BLOCKS = 16;
+
+    private final RulePipeline pipeline;
+    private final CharSequence source;
+
+    // 已确定的块：第 i 块为原文中的 [sourceEnds[i - 1], sourceEnds[i])，
+    // 处理结果为视图中的 [outputEnds[i - 1], outputEnds[i])，第 0 块从 0 开始
+    private int[] sourceEnds = new int[16];
+    private int[] outputEnds = new int[16];
+    private int blockCount;
+
+    private final LinkedHashMap<Integer, String> cache;
+
+    // 最近读取的块，不可变，多个线程读取时互相覆盖只会多查找一次
+    private Cursor cursor = Cursor.EMPTY;
+
+    /**
+     * 构造函数
+     * @param pipeline 处理流水线
+     * @param source 原始文本，之后不能被修改
+     */
+    ProcessedView(RulePipeline pipeline, CharSequence source) {
+        this.pipeline = pipeline;
+        this.source = source;
+        // 按访问顺序排列，最久未读取的块在最前面
+        this.cache = new LinkedHashMap<>(CACHED_BLOCKS * 2, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, String> eldest) {
+                return size() > CACHED_BLOCKS;
+            }
+        };
+    }
+
+    /**
+     * 获取原始文本
+     * @return 原始文本
+     */
+    public CharSequence source() {
+        return source;
+    }
+
+    /**
+     * 依次处理各块，直到处理结果至少有指定长度或整个文本都已处理
+     * @param length 需要的处理结果长度
+     */
+    public synchronized void ensureProcessed(int length) {
+        while (processedLength() < length && !isComplete()) {
+            processNextBlock();
+        }
+    }
+
+    /**
+     * 判断整个文本是否都已处理
+     * @return 是否都已处理
+     */
+    public synchronized boolean isComplete() {
+        return processedSourceLength() == source.length();
+    }
+
+    /**
+     * 获取已处理部分的处理结果长度，已处理部分总是由完整的块组成
+     * @return 处理结果长度
+     */
+    public synchronized int processedLength() {
+        return blockCount > 0 ? outputEnds[blockCount - 1] : 0;
+    }
+
+    /**
+     * 获取已处理部分在原文中的长度，原文从这里开始的其余部分可以接在已处理部分之后得到一个完整的文档
+     * @return 原文长度
+     */
+    public synchronized int processedSourceLength() {
+        return blockCount > 0 ? sourceEnds[blockCount - 1] : 0;
+    }
+
+    @Override
+    public int length() {
+        ensureProcessed(Integer.MAX_VALUE);
+        return processedLength();
+    }
+
+    @Override
+    public char charAt(int index) {
+        Cursor current = cursor;
+        if (index < current.start || index >= current.end) {
+            current = cursorAt(index);
+            cursor = current;
+        }
+        return current.text.charAt(index - current.start);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if (start < 0 || start > end) {
+            throw new StringIndexOutOfBoundsException("begin " + start + ", end " + end);
+        }
+        StringBuilder result = new StringBuilder(end - start);
+        synchronized (this) {
+            ensureProcessed(end);
+            if (end > processedLength()) {
+                throw new StringIndexOutOfBoundsException("begin " + start + ", end " + end + ", length " + processedLength());
+            }
+            int block = blockAt(start);
+            int position = start;
+            while (position < end) {
+                int blockStart = block == 0 ? 0 : outputEnds[block - 1];
+                int to = Math.min(end, outputEnds[block]);
+                result.append(result(block), position - blockStart, to - blockStart);
+                position = to;
+                block++;
+            }
+        }
+        return result.toString();
+    }
+
+    @Override
+    public String toString() {
+        return subSequence(0, length()).toString();
+    }
+
+    /**
+     * 获取包含某个位置的块的读取游标，必要时先处理到该位置
+     * @param index 视图中的位置
+     * @return 游标
+     */
+    private synchronized Cursor cursorAt(int index) {
+        if (index < 0) {
+            throw new StringIndexOutOfBoundsException("index " + index);
+        }
+        ensureProcessed(index + 1);
+        if (index >= processedLength()) {
+            throw new StringIndexOutOfBoundsException("index " + index + ", length " + processedLength());
+        }
+        int block = blockAt(index);
+        return new Cursor(block == 0 ? 0 : outputEnds[block - 1], outputEnds[block], result(block));
+    }
+
+    /**
+     * 查找包含某个位置的已处理块
+     * @param index 视图中的位置，必须小于已处理部分的长度
+     * @return 块序号
+     */
+    private int blockAt(int index) {
+        int found = Arrays.binarySearch(outputEnds, 0, blockCount, index);
+        // 终点恰好等于该位置时属于下一块
+        return found >= 0 ? found + 1 : -found - 1;
+    }
+
+    /**
+     * 获取一块的处理结果，不在缓存中时重新处理
+     * @param block 块序号
+     * @return 处理结果
+     */
+    private String result(int block) {
+        String result = cache.get(block);
+        if (result == null) {
+            result = pipeline.processBlock(source, block == 0 ? 0 : sourceEnds[block - 1], sourceEnds[block]);
+            cache.put(block, result);
+        }
+        return result;
+    }
+
+    /**
+     * 确定并处理下一块
+     */
+    private void processNextBlock() {
+        int start = processedSourceLength();
+        int end = pipeline.nextBlockEnd(source, start);
+        String result = pipeline.processBlock(source, start, end);
+        if (blockCount == sourceEnds.length) {
+            sourceEnds = Arrays.copyOf(sourceEnds, blockCount * 2);
+            outputEnds = Arrays.copyOf(outputEnds, blockCount * 2);
+        }
+        sourceEnds[blockCount] = end;
+        outputEnds[blockCount] = processedLength() + result.length();
+        cache.put(blockCount, result);
+        blockCount++;
+    }
+
+    /**
+     * 读取游标：一块在视图中的范围和它的处理结果
+     */
+    private static final class Cursor {
+
+        static final Cursor EMPTY = new Cursor(0, 0, "");
+
+        final int start;
+        final int end;
+        final String text;
+
+        Cursor(int start, int end, String text) {
+            this.start = start;
+            this.end = end;
+            this.text = text;
+        }
+    }
+}
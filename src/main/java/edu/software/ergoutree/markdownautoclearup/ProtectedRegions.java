@@ -0,0 +1,107 @@
+package edu.software.ergoutree.markdownautoclearup;
+
+import java.util.Arrays;
+
+/**
+ * 受保护区域表
+ * 记录代码块、公式、超链接等不参与空格处理的区域在原文中的位置。
+ * 区域以排序后的基本类型偏移数组保存：bounds[2i] 为第 i 个区域的起点，bounds[2i+1] 为终点（不含），
+ * 处理文本时直接跳过这些区域并原样复制，不再使用占位符替换和恢复。
+ */
+final class ProtectedRegions {
+
+    // 添加阶段：每个区域编码为 (起点 << 32 | 终点)，便于按起点排序
+    private long[] pending = new long[16];
+    private int pendingCount;
+
+    // 整理后的区域边界
+    private int[] bounds = new int[0];
+    private int count;
+
+    /**
+     * 添加一个受保护区域，添加后需调用 {@link #normalize()} 才能查询
+     * @param start 起点
+     * @param end 终点（不含）
+     */
+    void add(int start, int end) {
+        if (start >= end) {
+            return;
+        }
+        if (pendingCount == pending.length) {
+            pending = Arrays.copyOf(pending, pendingCount * 2);
+        }
+        pending[pendingCount++] = ((long) start << 32) | end;
+    }
+
+    /**
+     * 将已添加的区域与现有区域合并，按起点排序并合并重叠的区域
+     */
+    void normalize() {
+        if (pendingCount == 0) {
+            return;
+        }
+        long[] all = Arrays.copyOf(pending, pendingCount + count);
+        for (int i = 0; i < count; i++) {
+            all[pendingCount + i] = ((long) bounds[2 * i] << 32) | bounds[2 * i + 1];
+        }
+        Arrays.sort(all);
+
+        int[] merged = new int[all.length * 2];
+        int mergedCount = 0;
+        for (long span : all) {
+            int start = (int) (span >>> 32);
+            int end = (int) span;
+            if (mergedCount > 0 && start < merged[2 * mergedCount - 1]) {
+                // 与前一个区域重叠（例如超链接中包含公式），合并为一个区域
+                merged[2 * mergedCount - 1] = Math.max(merged[2 * mergedCount - 1], end);
+            } else {
+                merged[2 * mergedCount] = start;
+                merged[2 * mergedCount + 1] = end;
+                mergedCount++;
+            }
+        }
+
+        bounds = merged;
+        count = mergedCount;
+        pendingCount = 0;
+    }
+
+    /**
+     * 获取区域数量
+     * @return 区域数量
+     */
+    int size() {
+        return count;
+    }
+
+    /**
+     * 获取区域起点
+     * @param index 区域索引
+     * @return 起点
+     */
+    int start(int index) {
+        return bounds[2 * index];
+    }
+
+    /**
+     * 获取区域终点
+     * @param index 区域索引
+     * @return 终点（不含）
+     */
+    int end(int index) {
+        return bounds[2 * index + 1];
+    }
+
+    /**
+     * 丢弃从指定位置开始的区域，跨越该位置的区域截断到该位置
+     * @param end 截断位置
+     */
+    void truncate(int end) {
+        while (count > 0 && bounds[2 * count - 2] >= end) {
+            count--;
+        }
+        if (count > 0 && bounds[2 * count - 1] > end) {
+            bounds[2 * count - 1] = end;
+        }
+    }
+}
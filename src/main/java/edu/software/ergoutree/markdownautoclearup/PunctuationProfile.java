@@ -0,0 +1,351 @@
+package edu.software.ergoutree.markdownautoclearup;
+
+import java.util.Arrays;
+
+/**
+ * 标点转换配置
+ * 描述标点转换阶段如何替换字符：逐字符映射、区分开闭的成对引号，以及全角字母数字转为半角。
+ * 构建时编译为覆盖全部 char 值的稠密转换表，转换时每个字符只查一次数组，不装箱也不分配对象。
+ *
+ * 成对引号把同一个源字符依次转换为开引号和闭引号，如 "你好" 转换为 “你好”。
+ * 引号是否配对只看原文：在同一段落内交替，遇到空行（只含空白和引用标记的行）后重新从开引号开始，
+ * 所以文档在词法分析器的重置点处切分后分别处理的结果与整体处理相同。
+ *
+ * 对象创建后不可修改，可以被多个线程和流水线共享。
+ */
+public final class PunctuationProfile {
+
+    // 最多支持的成对引号源字符数，引擎用一个 int 的各位记录每种引号是否等待闭合
+    static final int MAX_PAIRED_QUOTES = 32;
+
+    /**
+     * 半角标点转换为全角，英文双引号按开闭配对转换为中文引号
+     */
+    public static final PunctuationProfile FULL_WIDTH = builder("全角")
+            .map(",.!?;:[]<>()", "，。！？；：【】《》（）")
+            .pairedQuote('"', '“', '”')
+            .build();
+
+    /**
+     * 全角标点转换为半角
+     */
+    public static final PunctuationProfile HALF_WIDTH = builder("半角")
+            .map("，。！？；：“”【】《》（）…", ",.!?;:\"\"[]<>().")
+            .build();
+
+    private final String name;
+    private final char[] table;
+    private final char[] sources;
+    private final char[] quoteSources;
+    private final char[] quoteClose;
+    private final boolean asciiSources;
+    private final int fingerprint;
+
+    private PunctuationProfile(Builder builder) {
+        this.name = builder.name;
+        this.table = builder.table.clone();
+        this.quoteSources = Arrays.copyOf(builder.quoteSources, builder.quoteCount);
+        this.quoteClose = Arrays.copyOf(builder.quoteClose, builder.quoteCount);
+
+        int count = 0;
+        char[] mapped = new char[16];
+        boolean ascii = false;
+        int hash = 0;
+        for (int c = 0; c <= Character.MAX_VALUE; c++) {
+            if (table[c] == c) {
+                continue;
+            }
+            if (count == mapped.length) {
+                mapped = Arrays.copyOf(mapped, count * 2);
+            }
+            mapped[count++] = (char) c;
+            ascii |= c < 0x80;
+            hash = 31 * (31 * hash + c) + table[c];
+        }
+        // 成对引号按相加合并，与添加的顺序无关
+        int quoteHash = 0;
+        for (int i = 0; i < quoteSources.length; i++) {
+            quoteHash += 31 * quoteSources[i] + quoteClose[i];
+        }
+        hash = 31 * hash + quoteHash;
+        this.sources = Arrays.copyOf(mapped, count);
+        this.asciiSources = ascii;
+        this.fingerprint = hash;
+    }
+
+    /**
+     * 创建转换配置构建器，初始时不转换任何字符
+     * @param name 配置名称
+     * @return 构建器
+     */
+    public static Builder builder(String name) {
+        return new Builder(name);
+    }
+
+    /**
+     * 以现有配置为基础创建构建器
+     * @param name 新配置的名称
+     * @return 构建器，含有本配置的全部映射
+     */
+    public Builder toBuilder(String name) {
+        Builder builder = new Builder(name);
+        System.arraycopy(table, 0, builder.table, 0, table.length);
+        for (int i = 0; i < quoteSources.length; i++) {
+            builder.addQuote(quoteSources[i], quoteClose[i]);
+        }
+        return builder;
+    }
+
+    /**
+     * 转换一个字符，成对引号返回开引号
+     * @param c 字符
+     * @return 转换后的字符，不转换时为原字符
+     */
+    public char convert(char c) {
+        return table[c];
+    }
+
+    /**
+     * 判断一个字符是否会被转换
+     * @param c 字符
+     * @return 是否会被转换
+     */
+    public boolean converts(char c) {
+        return table[c] != c;
+    }
+
+    /**
+     * 获取配置名称
+     * @return 名称
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 获取转换指纹，由全部映射计算，在不同运行之间保持不变
+     * 指纹只是 32 位的散列值，不同的转换也可能相同，判断两个配置的转换是否相同使用 {@link #sameConversion}
+     * @return 转换指纹
+     */
+    public int fingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * 判断两个配置对任何文本的转换结果是否相同，不比较名称
+     * @param other 另一个配置
+     * @return 是否相同
+     */
+    boolean sameConversion(PunctuationProfile other) {
+        if (this == other) {
+            return true;
+        }
+        if (fingerprint != other.fingerprint || !Arrays.equals(sources, other.sources)
+                || quoteSources.length != other.quoteSources.length) {
+            return false;
+        }
+        for (char c : sources) {
+            if (table[c] != other.table[c]) {
+                return false;
+            }
+        }
+        // 成对引号的顺序不影响转换结果
+        for (int i = 0; i < quoteSources.length; i++) {
+            int index = other.quoteIndex(quoteSources[i]);
+            if (index < 0 || other.quoteClose[index] != quoteClose[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 获取稠密转换表，下标为原字符，不转换的字符映射到自身
+     * @return 转换表，调用方不能修改
+     */
+    char[] table() {
+        return table;
+    }
+
+    /**
+     * 获取所有会被转换的字符
+     * @return 按字符值排序的源字符，调用方不能修改
+     */
+    char[] sources() {
+        return sources;
+    }
+
+    /**
+     * 判断是否有会被转换的 ASCII 字符
+     * @return 是否有
+     */
+    boolean hasAsciiSources() {
+        return asciiSources;
+    }
+
+    /**
+     * 判断是否有成对引号
+     * @return 是否有
+     */
+    boolean hasPairedQuotes() {
+        return quoteSources.length > 0;
+    }
+
+    /**
+     * 查找成对引号的序号
+     * @param c 原字符
+     * @return 序号，不是成对引号的源字符时为 -1
+     */
+    int quoteIndex(char c) {
+        for (int i = 0; i < quoteSources.length; i++) {
+            if (quoteSources[i] == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 获取成对引号的闭引号
+     * @param index 成对引号序号
+     * @return 闭引号
+     */
+    char closeQuote(int index) {
+        return quoteClose[index];
+    }
+
+    @Override
+    public String toString() {
+        return "PunctuationProfile{" +
+                "name='" + name + '\'' +
+                ", mappings=" + sources.length +
+                ", pairedQuotes=" + quoteSources.length +
+                ", fingerprint=" + Integer.toHexString(fingerprint) +
+                '}';
+    }
+
+    /**
+     * 转换配置构建器，不是线程安全的
+     */
+    public static final class Builder {
+
+        private final String name;
+        private final char[] table = new char[Character.MAX_VALUE + 1];
+        private char[] quoteSources = new char[4];
+        private char[] quoteClose = new char[4];
+        private int quoteCount;
+
+        private Builder(String name) {
+            this.name = name;
+            for (int c = 0; c <= Character.MAX_VALUE; c++) {
+                table[c] = (char) c;
+            }
+        }
+
+        /**
+         * 把一个字符转换为另一个字符，映射到自身时取消转换
+         * @param from 原字符
+         * @param to 转换后的字符
+         * @return 构建器
+         */
+        public Builder map(char from, char to) {
+            if (from == ' ' || to == ' ') {
+                // 空格规则插入的空格不能被转换，编辑记录器也把输出中多出的空格视为插入
+                throw new IllegalArgumentException("空格不能参与转换: " + from + " -> " + to);
+            }
+            removeQuote(from);
+            table[from] = to;
+            return this;
+        }
+
+        /**
+         * 按位置逐个映射两个字符串中的字符
+         * @param from 原字符
+         * @param to 转换后的字符，长度必须与 from 相同
+         * @return 构建器
+         */
+        public Builder map(String from, String to) {
+            if (from.length() != to.length()) {
+                throw new IllegalArgumentException("映射两侧的长度不同: " + from + " -> " + to);
+            }
+            for (int i = 0; i < from.length(); i++) {
+                map(from.charAt(i), to.charAt(i));
+            }
+            return this;
+        }
+
+        /**
+         * 把一个字符按开闭配对转换为开引号和闭引号
+         * @param from 原字符
+         * @param open 开引号，不能与原字符相同
+         * @param close 闭引号
+         * @return 构建器
+         */
+        public Builder pairedQuote(char from, char open, char close) {
+            if (open == from) {
+                throw new IllegalArgumentException("开引号不能与原字符相同: " + from);
+            }
+            map(from, open);
+            if (close == ' ') {
+                throw new IllegalArgumentException("空格不能参与转换: " + from + " -> " + close);
+            }
+            addQuote(from, close);
+            return this;
+        }
+
+        /**
+         * 把全角数字和字母（U+FF10 至 U+FF5A 中的 ０-９、Ａ-Ｚ、ａ-ｚ）转换为对应的 ASCII 字符
+         * @return 构建器
+         */
+        public Builder fullWidthAlphanumericsToAscii() {
+            for (char c = '0'; c <= '9'; c++) {
+                map((char) (c + 0xFEE0), c);
+            }
+            for (char c = 'A'; c <= 'Z'; c++) {
+                map((char) (c + 0xFEE0), c);
+            }
+            for (char c = 'a'; c <= 'z'; c++) {
+                map((char) (c + 0xFEE0), c);
+            }
+            return this;
+        }
+
+        /**
+         * 构建转换配置
+         * @return 转换配置
+         */
+        public PunctuationProfile build() {
+            return new PunctuationProfile(this);
+        }
+
+        private void addQuote(char from, char close) {
+            for (int i = 0; i < quoteCount; i++) {
+                if (quoteSources[i] == from) {
+                    quoteClose[i] = close;
+                    return;
+                }
+            }
+            if (quoteCount == MAX_PAIRED_QUOTES) {
+                throw new IllegalArgumentException("成对引号过多，最多 " + MAX_PAIRED_QUOTES + " 种");
+            }
+            if (quoteCount == quoteSources.length) {
+                quoteSources = Arrays.copyOf(quoteSources, quoteCount * 2);
+                quoteClose = Arrays.copyOf(quoteClose, quoteCount * 2);
+            }
+            quoteSources[quoteCount] = from;
+            quoteClose[quoteCount] = close;
+            quoteCount++;
+        }
+
+        private void removeQuote(char from) {
+            for (int i = 0; i < quoteCount; i++) {
+                if (quoteSources[i] == from) {
+                    quoteCount--;
+                    quoteSources[i] = quoteSources[quoteCount];
+                    quoteClose[i] = quoteClose[quoteCount];
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,418 @@
+package edu.software.ergoutree.markdownautoclearup;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * 合并为一次扫描的正则表达式规则
+ * 多条规则的匹配模式按顺序组成一个选择 (?<customRule0>p0)|(?<customRule1>p1)|...，只扫描一次文本，
+ * 每个匹配交给匹配到的规则的替换内容。替换内容在编译时解析，其中的分组引用换算为合并后的分组序号。
+ * java.util.regex 在每个位置依次尝试每个选择，所以能确定各规则匹配的第一个字符时，
+ * 在选择之前加一个由这些字符组成的字符类的向前查找，大部分位置只检查一次字符类。
+ *
+ * 各规则都在原文上匹配，只有结果一定与逐条应用相同的规则才能加入，见 {@link Builder#add}：
+ * 各规则的匹配可能包含的字符互不相交，所以匹配不会重叠；后面的规则不能匹配前面规则替换内容中的字符，
+ * 前面规则的替换内容也不能为空，所以替换不会为后面的规则造出新的匹配，也不会拆开原有的匹配。
+ * 匹配同样限制步数，上限按规则数量放大，超出时抛出异常，由调用者改为逐条应用。
+ * 对象创建后不可修改，可以被多个线程同时使用。
+ */
+final class RegexUnion {
+
+    // 包裹各规则的命名分组的名称前缀
+    private static final String GROUP_PREFIX = "customRule";
+    // 命名分组的写法，用于查找各规则的分组名称
+    private static final Pattern GROUP_NAME = Pattern.compile("\\(\\?<([a-zA-Z][a-zA-Z0-9]*)>");
+
+    private final Pattern pattern;
+    // 各规则的包裹分组序号
+    private final int[] ruleGroups;
+    // 各规则的替换内容分为若干段，每段是一段字面文本和其后引用的分组，分组序号为 -1 时没有引用或引用命名分组
+    private final String[][] texts;
+    private final int[][] groups;
+    private final String[][] names;
+    // 各规则的匹配必须包含的字面文本，都不出现时不必扫描；有规则无法确定时为空
+    private final String[] requiredLiterals;
+
+    /**
+     * 构造函数
+     * @param regexes 各规则的匹配模式
+     * @param replacements 各规则的替换内容
+     * @throws PatternSyntaxException 合并后的正则表达式无效
+     */
+    private RegexUnion(List<String> regexes, List<String> replacements) {
+        int count = regexes.size();
+        StringBuilder union = new StringBuilder();
+        this.ruleGroups = new int[count];
+        this.texts = new String[count][];
+        this.groups = new int[count][];
+        this.names = new String[count][];
+        String[] literals = new String[count];
+        boolean allLiterals = true;
+        StringBuilder firstChars = new StringBuilder();
+        boolean allFirstChars = true;
+        int group = 1;
+        for (int k = 0; k < count; k++) {
+            String regex = regexes.get(k);
+            if (k > 0) {
+                union.append('|');
+            }
+            union.append("(?<").append(GROUP_PREFIX).append(k).append('>').append(regex).append(')');
+            ruleGroups[k] = group;
+            Pattern rule = Pattern.compile(regex);
+            int groupCount = rule.matcher("").groupCount();
+            parseReplacement(replacements.get(k), groupCount, groupNames(regex), group, k);
+            group += 1 + groupCount;
+            RequiredLiteral analysis = RequiredLiteral.analyze(regex);
+            literals[k] = analysis.literal();
+            allLiterals &= literals[k] != null;
+            if (analysis.firstChars() != null) {
+                firstChars.append(analysis.firstChars());
+            } else {
+                allFirstChars = false;
+            }
+        }
+        if (allFirstChars) {
+            union.insert(0, "(?=[" + firstChars + "])(?:").append(')');
+        }
+        this.pattern = Pattern.compile(union.toString());
+        if (pattern.matcher("").groupCount() != group - 1) {
+            throw new PatternSyntaxException("合并后的分组数量不符", union.toString(), -1);
+        }
+        this.requiredLiterals = allLiterals ? literals : null;
+    }
+
+    /**
+     * 应用所有规则
+     * @param text 要处理的文本
+     * @return 处理后的文本，没有匹配时为原字符串
+     * @throws BudgetedCharSequence.BudgetExceededException 匹配步数超出上限
+     */
+    String apply(String text) {
+        if (requiredLiterals != null && !containsAny(text)) {
+            return text;
+        }
+        // 每个位置依次尝试各规则，步数上限按规则数量放大
+        long budget = BudgetedCharSequence.budget((long) text.length() * ruleGroups.length);
+        Matcher matcher = pattern.matcher(new BudgetedCharSequence(text, budget));
+        if (!matcher.find()) {
+            return text;
+        }
+        StringBuilder result = new StringBuilder(text.length() + 16);
+        int copied = 0;
+        do {
+            int rule = 0;
+            while (matcher.start(ruleGroups[rule]) < 0) {
+                rule++;
+            }
+            result.append(text, copied, matcher.start());
+            String[] ruleTexts = texts[rule];
+            for (int i = 0; i < ruleTexts.length; i++) {
+                result.append(ruleTexts[i]);
+                String value = groups[rule][i] >= 0 ? matcher.group(groups[rule][i])
+                        : names[rule][i] != null ? matcher.group(names[rule][i]) : null;
+                if (value != null) {
+                    result.append(value);
+                }
+            }
+            copied = matcher.end();
+        } while (matcher.find());
+        return result.append(text, copied, text.length()).toString();
+    }
+
+    private boolean containsAny(String text) {
+        for (String literal : requiredLiterals) {
+            if (text.contains(literal)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 解析一条规则的替换内容
+     * @param replacement 替换内容
+     * @param groupCount 规则的分组数量
+     * @param groupNames 规则的命名分组
+     * @param base 规则的包裹分组在合并后的序号，规则的分组 n 对应合并后的 base + n
+     * @param rule 规则序号
+     */
+    private void parseReplacement(String replacement, int groupCount, Set<String> groupNames, int base, int rule) {
+        List<String> ruleTexts = new ArrayList<>();
+        List<Integer> ruleGroupRefs = new ArrayList<>();
+        List<String> ruleNames = new ArrayList<>();
+        parse(replacement, groupCount, groupNames, ruleTexts, ruleGroupRefs, ruleNames);
+        int size = ruleTexts.size();
+        texts[rule] = ruleTexts.toArray(new String[0]);
+        groups[rule] = new int[size];
+        names[rule] = ruleNames.toArray(new String[0]);
+        for (int i = 0; i < size; i++) {
+            int group = ruleGroupRefs.get(i);
+            groups[rule][i] = group >= 0 ? base + group : -1;
+        }
+    }
+
+    /**
+     * 判断替换内容对一条正则表达式规则是否有效，规则与 Matcher.appendReplacement 相同
+     * @param pattern 规则的匹配模式
+     * @param replacement 替换内容
+     * @return 是否有效：没有末尾单独的 \ 或 $，引用的分组都存在
+     */
+    static boolean isValidReplacement(Pattern pattern, String replacement) {
+        return parse(replacement, pattern.matcher("").groupCount(), groupNames(pattern.pattern()),
+                     new ArrayList<>(), new ArrayList<>(), new ArrayList<>());
+    }
+
+    /**
+     * 获取替换内容中的字面文本
+     * @param replacement 替换内容
+     * @param groupCount 规则的分组数量
+     * @param groupNames 规则的命名分组
+     * @return 各段字面文本，替换内容无效时为空
+     */
+    private static List<String> literalPieces(String replacement, int groupCount, Set<String> groupNames) {
+        List<String> pieces = new ArrayList<>();
+        boolean valid = parse(replacement, groupCount, groupNames, pieces, new ArrayList<>(), new ArrayList<>());
+        return valid ? pieces : null;
+    }
+
+    /**
+     * 按 Matcher.appendReplacement 的规则解析替换内容：\ 转义下一个字符，$n 和 ${name} 引用分组，
+     * 多位数字的分组号在分组存在时尽量取长
+     * @param replacement 替换内容
+     * @param groupCount 规则的分组数量
+     * @param groupNames 规则的命名分组
+     * @param texts 各段的字面文本
+     * @param groups 各段之后引用的分组序号，没有时为 -1
+     * @param names 各段之后引用的分组名称，没有时为空
+     * @return 替换内容是否有效
+     */
+    private static boolean parse(String replacement, int groupCount, Set<String> groupNames,
+                                 List<String> texts, List<Integer> groups, List<String> names) {
+        StringBuilder text = new StringBuilder();
+        int i = 0;
+        while (i < replacement.length()) {
+            char c = replacement.charAt(i++);
+            if (c == '\\') {
+                if (i == replacement.length()) {
+                    return false;
+                }
+                text.append(replacement.charAt(i++));
+                continue;
+            }
+            if (c != '$') {
+                text.append(c);
+                continue;
+            }
+            if (i == replacement.length()) {
+                return false;
+            }
+            int group = -1;
+            String name = null;
+            if (replacement.charAt(i) == '{') {
+                int close = replacement.indexOf('}', i);
+                if (close < 0) {
+                    return false;
+                }
+                name = replacement.substring(i + 1, close);
+                if (!groupNames.contains(name)) {
+                    return false;
+                }
+                i = close + 1;
+            } else {
+                group = replacement.charAt(i++) - '0';
+                if (group < 0 || group > 9) {
+                    return false;
+                }
+                while (i < replacement.length()) {
+                    int digit = replacement.charAt(i) - '0';
+                    if (digit < 0 || digit > 9 || group * 10 + digit > groupCount) {
+                        break;
+                    }
+                    group = group * 10 + digit;
+                    i++;
+                }
+                if (group > groupCount) {
+                    return false;
+                }
+            }
+            texts.add(text.toString());
+            groups.add(group);
+            names.add(name);
+            text.setLength(0);
+        }
+        texts.add(text.toString());
+        groups.add(-1);
+        names.add(null);
+        return true;
+    }
+
+    /**
+     * 判断正则表达式是否使用反向引用或 \G，这些写法依赖同一条规则之前的匹配
+     * @param regex 正则表达式
+     * @return 是否使用
+     */
+    private static boolean usesMatchState(String regex) {
+        for (int i = 0; i + 1 < regex.length(); i++) {
+            if (regex.charAt(i) == '\\') {
+                char c = regex.charAt(++i);
+                if ((c >= '1' && c <= '9') || c == 'k' || c == 'G') {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 查找正则表达式中的命名分组，转义的括号也可能被当作分组，只会使检查更保守
+     * @param regex 正则表达式
+     * @return 分组名称
+     */
+    private static Set<String> groupNames(String regex) {
+        Set<String> names = new HashSet<>();
+        Matcher matcher = GROUP_NAME.matcher(regex);
+        while (matcher.find()) {
+            names.add(matcher.group(1));
+        }
+        return names;
+    }
+
+    /**
+     * 合并规则构建器，逐条加入规则，不是线程安全的
+     */
+    static final class Builder {
+
+        private final List<String> ruleNames = new ArrayList<>();
+        private final List<String> regexes = new ArrayList<>();
+        private final List<Pattern> patterns = new ArrayList<>();
+        private final List<String> replacements = new ArrayList<>();
+        // 已加入规则的命名分组
+        private final Set<String> names = new HashSet<>();
+        // 已加入规则的匹配可能包含的字符，以及替换内容中的字面字符
+        private final BitSet matchChars = new BitSet();
+        private final BitSet replacementChars = new BitSet();
+        // 已加入的规则中是否有替换内容可能为空的
+        private boolean emptyReplacement;
+
+        /**
+         * 尝试加入一条规则
+         * 规则的匹配必须一定非空，不能使用反向引用和 \G，替换内容必须有效，命名分组不能与已有规则重复。
+         * 另外合并必须不改变结果：规则的匹配只能包含 {@link MatchAlphabet} 能够分析的字符，
+         * 这些字符不能出现在已有规则的匹配和替换内容中，已有规则的替换内容也不能为空；
+         * 否则规则可能与已有规则的匹配重叠，或者依赖已有规则的结果，需要逐条应用
+         * @param name 规则名称
+         * @param regex 规则的匹配模式
+         * @param pattern 规则编译后的匹配模式
+         * @param replacement 规则的替换内容
+         * @return 是否加入，没有加入时构建器不变
+         */
+        boolean add(String name, String regex, Pattern pattern, String replacement) {
+            if (!RequiredLiteral.analyze(regex).nonEmpty() || usesMatchState(regex)
+                    || regex.lastIndexOf("\\Q") > regex.lastIndexOf("\\E")) {
+                return false;
+            }
+            Set<String> ruleGroupNames = groupNames(regex);
+            for (String groupName : ruleGroupNames) {
+                if (groupName.startsWith(GROUP_PREFIX) || names.contains(groupName)) {
+                    return false;
+                }
+            }
+            List<String> rulePieces = literalPieces(replacement, pattern.matcher("").groupCount(), ruleGroupNames);
+            if (rulePieces == null) {
+                return false;
+            }
+            BitSet alphabet = MatchAlphabet.of(regex);
+            if (alphabet == null || emptyReplacement || alphabet.intersects(matchChars)
+                    || alphabet.intersects(replacementChars)) {
+                return false;
+            }
+            ruleNames.add(name);
+            regexes.add(regex);
+            patterns.add(pattern);
+            replacements.add(replacement);
+            names.addAll(ruleGroupNames);
+            matchChars.or(alphabet);
+            boolean empty = true;
+            for (String piece : rulePieces) {
+                piece.chars().forEach(replacementChars::set);
+                empty &= piece.isEmpty();
+            }
+            // 只由分组引用组成的替换内容在分组为空时也是空的
+            emptyReplacement = empty;
+            return true;
+        }
+
+        /**
+         * 获取已加入的规则数量
+         * @return 规则数量
+         */
+        int size() {
+            return regexes.size();
+        }
+
+        /**
+         * 获取已加入的一条规则的名称
+         * @param index 规则序号
+         * @return 规则名称
+         */
+        String name(int index) {
+            return ruleNames.get(index);
+        }
+
+        /**
+         * 获取已加入的一条规则的匹配模式
+         * @param index 规则序号
+         * @return 编译后的匹配模式
+         */
+        Pattern pattern(int index) {
+            return patterns.get(index);
+        }
+
+        /**
+         * 获取已加入的一条规则的匹配模式原文
+         * @param index 规则序号
+         * @return 匹配模式
+         */
+        String regex(int index) {
+            return regexes.get(index);
+        }
+
+        /**
+         * 获取已加入的一条规则的替换内容
+         * @param index 规则序号
+         * @return 替换内容
+         */
+        String replacement(int index) {
+            return replacements.get(index);
+        }
+
+        /**
+         * 构建合并规则
+         * @return 合并规则
+         * @throws PatternSyntaxException 合并后的正则表达式无效
+         */
+        RegexUnion build() {
+            return new RegexUnion(regexes, replacements);
+        }
+
+        /**
+         * 清除已加入的规则
+         */
+        void clear() {
+            ruleNames.clear();
+            regexes.clear();
+            patterns.clear();
+            replacements.clear();
+            names.clear();
+            matchChars.clear();
+            replacementChars.clear();
+            emptyReplacement = false;
+        }
+    }
+}
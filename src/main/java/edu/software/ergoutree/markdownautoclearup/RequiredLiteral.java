@@ -0,0 +1,369 @@
+package edu.software.ergoutree.markdownautoclearup;
+
+/**
+ * 正则表达式中必须出现的字面文本
+ * 从正则表达式顶层的连接中提取任何匹配都必须包含的一段字面文本，如 C\+\+语言 中的 C++语言。
+ * 应用规则前先用 String.indexOf 查找这段文本，文本中没有时规则不可能匹配，不必调用正则表达式引擎。
+ * 分析时同时判断匹配是否一定非空，即顶层是否有一定会消耗字符的部分，
+ * 以及匹配的第一个字符可能是哪些字符（开头只有零宽断言，之后是一个必须出现的字符或字符类时）。
+ *
+ * 提取是保守的：只收集不在分组和字符类中、没有被量词修饰的字面字符，取其中最长的一段连续文本；
+ * 遇到顶层的选择、反向引用等无法简单判断的写法时放弃，不做预先检查。
+ */
+final class RequiredLiteral {
+
+    // 单独出现时表示字符类或断言、不是字面字符的转义字母
+    private static final String CLASS_ESCAPES = "dDsSwWbBAzZGhHvVRX";
+    // 其中一定消耗一个字符的，其余为 \b、\A 等零宽断言
+    private static final String CONSUMING_ESCAPES = "dDsSwWhHvVRX";
+
+    private static final RequiredLiteral UNKNOWN = new RequiredLiteral(null, false, null);
+
+    private final String literal;
+    private final boolean nonEmpty;
+    private final String firstChars;
+
+    private RequiredLiteral(String literal, boolean nonEmpty, String firstChars) {
+        this.literal = literal;
+        this.nonEmpty = nonEmpty;
+        this.firstChars = firstChars;
+    }
+
+    /**
+     * 提取正则表达式的任何匹配都必须包含的最长一段字面文本
+     * @param regex 正则表达式，按默认标志编译
+     * @return 字面文本，无法确定时为空
+     */
+    static String of(String regex) {
+        return analyze(regex).literal;
+    }
+
+    /**
+     * 分析正则表达式
+     * @param regex 正则表达式，按默认标志编译
+     * @return 分析结果
+     */
+    static RequiredLiteral analyze(String regex) {
+        StringBuilder run = new StringBuilder();
+        String longest = "";
+        // 内联标志会改变之后字面字符的匹配方式，出现后不再提取字面文本
+        boolean literalValid = true;
+        boolean nonEmpty = false;
+        // 到目前为止是否只有零宽断言，以及第一个消耗字符的部分可以匹配的字符
+        boolean leading = true;
+        String firstChars = null;
+        int length = regex.length();
+        int i = 0;
+        while (i < length) {
+            char c = regex.charAt(i);
+            // 本次读到的字面字符在 run 中的起点，后面有量词时去掉；不是字面字符时为 -1
+            int atomStart = -1;
+            boolean consumes = false;
+            boolean zeroWidth = false;
+            // 本次读到的部分可以匹配的字符，写成可以放在字符类中的形式；sourceAtom 表示直接使用原文
+            String first = null;
+            boolean sourceAtom = false;
+            int next;
+            switch (c) {
+                case '\\':
+                    if (i + 1 >= length) {
+                        return UNKNOWN;
+                    }
+                    char escaped = regex.charAt(i + 1);
+                    consumes = true;
+                    if (escaped == 'Q') {
+                        int end = regex.indexOf("\\E", i + 2);
+                        end = end < 0 ? length : end;
+                        if (end == i + 2) {
+                            return UNKNOWN;
+                        }
+                        run.append(regex, i + 2, end);
+                        atomStart = run.length() - Character.charCount(run.codePointBefore(run.length()));
+                        first = hexEscape(regex.codePointAt(i + 2));
+                        next = Math.min(length, end + 2);
+                    } else if (!Character.isLetterOrDigit(escaped)) {
+                        atomStart = run.length();
+                        run.append(escaped);
+                        first = hexEscape(escaped);
+                        next = i + 2;
+                    } else if (CLASS_ESCAPES.indexOf(escaped) >= 0) {
+                        consumes = CONSUMING_ESCAPES.indexOf(escaped) >= 0;
+                        zeroWidth = !consumes;
+                        sourceAtom = consumes;
+                        next = i + 2;
+                    } else if (escaped == 'p' || escaped == 'P') {
+                        sourceAtom = true;
+                        next = skipEscapeArgument(regex, i + 2, 1);
+                    } else if (escaped == 'x') {
+                        sourceAtom = true;
+                        next = skipEscapeArgument(regex, i + 2, 2);
+                    } else if (escaped == 'u') {
+                        sourceAtom = true;
+                        next = i + 6;
+                    } else {
+                        // 反向引用、八进制、控制字符和其他少见的转义
+                        return UNKNOWN;
+                    }
+                    break;
+                case '[':
+                    consumes = true;
+                    sourceAtom = true;
+                    next = skipClass(regex, i);
+                    break;
+                case '(':
+                    if (regex.startsWith("(?", i) && (i + 2 >= length || ":=!<>".indexOf(regex.charAt(i + 2)) < 0)) {
+                        int end = i + 2;
+                        while (end < length && (Character.isLetter(regex.charAt(end)) || regex.charAt(end) == '-')) {
+                            end++;
+                        }
+                        if (end >= length || regex.substring(i + 2, end).indexOf('x') >= 0) {
+                            // 注释模式下空白和 # 有不同的含义
+                            return UNKNOWN;
+                        }
+                        literalValid = false;
+                        zeroWidth = regex.charAt(end) == ')';
+                        next = zeroWidth ? end + 1 : skipGroup(regex, i);
+                        break;
+                    }
+                    zeroWidth = regex.startsWith("(?=", i) || regex.startsWith("(?!", i)
+                            || regex.startsWith("(?<=", i) || regex.startsWith("(?<!", i);
+                    next = skipGroup(regex, i);
+                    break;
+                case '.':
+                    consumes = true;
+                    next = i + 1;
+                    break;
+                case '^':
+                case '$':
+                    zeroWidth = true;
+                    next = i + 1;
+                    break;
+                case '|':
+                case ')':
+                case '*':
+                case '+':
+                case '?':
+                case '{':
+                    return UNKNOWN;
+                default:
+                    atomStart = run.length();
+                    consumes = true;
+                    run.append(c);
+                    first = hexEscape(regex.codePointAt(i));
+                    next = i + 1;
+                    if (Character.isHighSurrogate(c) && next < length && Character.isLowSurrogate(regex.charAt(next))) {
+                        run.append(regex.charAt(next++));
+                    }
+                    break;
+            }
+            if (next < 0 || next > length) {
+                return UNKNOWN;
+            }
+
+            int quantifierEnd = skipQuantifier(regex, next);
+            if (quantifierEnd < 0) {
+                return UNKNOWN;
+            }
+            boolean required = consumes && (quantifierEnd == next || !allowsZero(regex, next));
+            if (required) {
+                nonEmpty = true;
+            }
+            if (leading && !zeroWidth) {
+                leading = false;
+                if (required) {
+                    firstChars = sourceAtom ? regex.substring(i, next) : first;
+                }
+            }
+            if (quantifierEnd > next && atomStart >= 0) {
+                // 量词只修饰最后一个字符，之前的字面文本仍然必须出现
+                run.setLength(atomStart);
+                atomStart = -1;
+            }
+            if (atomStart < 0) {
+                if (run.length() > longest.length()) {
+                    longest = run.toString();
+                }
+                run.setLength(0);
+            }
+            i = quantifierEnd;
+        }
+        if (run.length() > longest.length()) {
+            longest = run.toString();
+        }
+        return new RequiredLiteral(literalValid && !longest.isEmpty() ? longest : null, nonEmpty,
+                                   literalValid ? firstChars : null);
+    }
+
+    /**
+     * 获取任何匹配都必须包含的字面文本
+     * @return 字面文本，无法确定时为空
+     */
+    String literal() {
+        return literal;
+    }
+
+    /**
+     * 判断匹配是否一定非空
+     * @return 是否一定非空，无法确定时为 false
+     */
+    boolean nonEmpty() {
+        return nonEmpty;
+    }
+
+    /**
+     * 获取匹配的第一个字符可以是哪些字符
+     * @return 可以放在字符类中的写法，如 \x{61}、\d 或 [a-z]，无法确定时为空
+     */
+    String firstChars() {
+        return firstChars;
+    }
+
+    /**
+     * 把一个字符写成字符类中的十六进制转义
+     * @param codePoint 字符
+     * @return 转义写法
+     */
+    private static String hexEscape(int codePoint) {
+        return "\\x{" + Integer.toHexString(codePoint) + "}";
+    }
+
+    /**
+     * 判断量词是否允许重复零次
+     * @param regex 正则表达式
+     * @param i 量词的起点
+     * @return 是否允许重复零次
+     */
+    private static boolean allowsZero(String regex, int i) {
+        char c = regex.charAt(i);
+        if (c != '{') {
+            return c != '+';
+        }
+        int min = 0;
+        for (int j = i + 1; j < regex.length() && Character.isDigit(regex.charAt(j)); j++) {
+            min = Math.min(1, min * 10 + regex.charAt(j) - '0');
+        }
+        return min == 0;
+    }
+
+    /**
+     * 跳过一个量词及其后的懒惰或占有修饰
+     * @param regex 正则表达式
+     * @param i 量词可能的起点
+     * @return 量词之后的位置，没有量词时为 i，量词不完整时为 -1
+     */
+    private static int skipQuantifier(String regex, int i) {
+        if (i >= regex.length()) {
+            return i;
+        }
+        char c = regex.charAt(i);
+        int next;
+        if (c == '*' || c == '+' || c == '?') {
+            next = i + 1;
+        } else if (c == '{') {
+            int close = regex.indexOf('}', i);
+            if (close < 0) {
+                return -1;
+            }
+            next = close + 1;
+        } else {
+            return i;
+        }
+        if (next < regex.length() && (regex.charAt(next) == '?' || regex.charAt(next) == '+')) {
+            next++;
+        }
+        return next;
+    }
+
+    /**
+     * 跳过 \p、\x 等转义的参数，参数是花括号包围的一段或固定个数的字符
+     * @param regex 正则表达式
+     * @param i 参数起点
+     * @param fixedLength 没有花括号时参数的长度
+     * @return 参数之后的位置，不完整时为 -1
+     */
+    private static int skipEscapeArgument(String regex, int i, int fixedLength) {
+        if (i < regex.length() && regex.charAt(i) == '{') {
+            int close = regex.indexOf('}', i);
+            return close < 0 ? -1 : close + 1;
+        }
+        return i + fixedLength;
+    }
+
+    /**
+     * 跳过一个字符类，包括嵌套的字符类
+     * @param regex 正则表达式
+     * @param i 字符类开头的 [ 的位置
+     * @return 字符类之后的位置，无法确定终点时为 -1
+     */
+    private static int skipClass(String regex, int i) {
+        int j = i + 1;
+        if (j < regex.length() && regex.charAt(j) == '^') {
+            j++;
+        }
+        if (j < regex.length() && regex.charAt(j) == ']') {
+            return -1;
+        }
+        int depth = 1;
+        while (j < regex.length()) {
+            char c = regex.charAt(j);
+            if (c == '\\') {
+                if (j + 1 < regex.length() && regex.charAt(j + 1) == 'Q') {
+                    return -1;
+                }
+                j += 2;
+            } else if (c == '[') {
+                depth++;
+                j++;
+            } else if (c == ']') {
+                if (--depth == 0) {
+                    return j + 1;
+                }
+                j++;
+            } else {
+                j++;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 跳过一个分组，包括其中嵌套的分组和字符类
+     * @param regex 正则表达式
+     * @param i 分组开头的 ( 的位置
+     * @return 分组之后的位置，无法确定终点时为 -1
+     */
+    private static int skipGroup(String regex, int i) {
+        int depth = 0;
+        int j = i;
+        while (j < regex.length()) {
+            char c = regex.charAt(j);
+            if (c == '\\') {
+                if (j + 1 < regex.length() && regex.charAt(j + 1) == 'Q') {
+                    int end = regex.indexOf("\\E", j + 2);
+                    if (end < 0) {
+                        return -1;
+                    }
+                    j = end + 2;
+                } else {
+                    j += 2;
+                }
+            } else if (c == '[') {
+                j = skipClass(regex, j);
+                if (j < 0) {
+                    return -1;
+                }
+            } else if (c == '(') {
+                depth++;
+                j++;
+            } else if (c == ')') {
+                if (--depth == 0) {
+                    return j + 1;
+                }
+                j++;
+            } else {
+                j++;
+            }
+        }
+        return -1;
+    }
+}
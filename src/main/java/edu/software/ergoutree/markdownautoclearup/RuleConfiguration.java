@@ -0,0 +1,70 @@
+package edu.software.ergoutree.markdownautoclearup;
+
+import java.util.List;
+
+/**
+ * 流水线的规则配置
+ * 由空格规则和标点转换选项、标点转换配置的全部映射，以及按顺序排列的自定义规则（类型、模式、替换内容）
+ * 和是否合并扫描组成。配置相等的两个流水线对任何文本的处理结果相同，所以可以作为段落缓存的键；
+ * 比较的是配置本身而不是散列值，内容不同的配置不会因为散列值相同而被当作相等。
+ * 对象创建后不可修改，可以被多个线程共享。
+ */
+final class RuleConfiguration {
+
+    // 各个选项，每个选项一位
+    private final int options;
+    // 标点转换配置，不转换标点时为空
+    private final PunctuationProfile conversion;
+    // 自定义规则配置，没有自定义规则时为空
+    private final List<String> customRules;
+    private final int hash;
+
+    /**
+     * 构造函数
+     * @param options 各个选项，每个选项一位
+     * @param conversion 标点转换配置，可以为空
+     * @param customRules 自定义规则配置，见 {@link CompiledRegexRules#configuration()}，可以为空
+     */
+    RuleConfiguration(int options, PunctuationProfile conversion, List<String> customRules) {
+        this.options = options;
+        this.conversion = conversion;
+        this.customRules = customRules;
+        int h = options;
+        h = 31 * h + (conversion != null ? conversion.fingerprint() : 0);
+        h = 31 * h + (customRules != null ? customRules.hashCode() : 0);
+        this.hash = h;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof RuleConfiguration)) {
+            return false;
+        }
+        RuleConfiguration other = (RuleConfiguration) o;
+        if (hash != other.hash || options != other.options) {
+            return false;
+        }
+        if (conversion == null ? other.conversion != null
+                : other.conversion == null || !conversion.sameConversion(other.conversion)) {
+            return false;
+        }
+        return customRules == null ? other.customRules == null : customRules.equals(other.customRules);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return "RuleConfiguration{" +
+                "options=" + Integer.toBinaryString(options) +
+                ", conversion=" + (conversion != null ? conversion.getName() : null) +
+                ", customRules=" + customRules +
+                '}';
+    }
+}
@@ -0,0 +1,818 @@
+package edu.software.ergoutree.markdownautoclearup;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * 规则处理流水线
+ * 由一组规则设置一次性构建，构建时确定实际执行的规则和标点转换配置，并编译启用的自定义正则表达式规则。
+ * 流水线构建后不可修改，每次处理都创建独立的空格处理引擎，所以同一个流水线可以被多个线程同时使用，
+ * 批量处理的各个线程和界面共享一个流水线即可，不必为每个文件重新读取设置。
+ *
+ * 构建之后对 CustomRegexManager 中规则的修改不会影响已构建的流水线，规则变化时应重新构建。
+ */
+public final class RulePipeline {
+
+    // 格式化一段范围时，每次向后分析查找重置点的初始长度
+    private static final int RANGE_LOOKAHEAD = 1 << 12;
+
+    // 检查文本和惰性视图中每块的最小长度
+    private static final int SCAN_BLOCK_LENGTH = 1 << 16;
+
+    private final boolean addSpaceBetweenChineseAndEnglish;
+    private final boolean addSpaceBetweenChineseAndNumber;
+    private final boolean addSpaceBetweenEnglishAndNumber;
+    private final boolean addSpaceAroundChinesePunctuation;
+    private final boolean addSpaceAroundEnglishPunctuation;
+    private final boolean convertToFullWidthPunctuation;
+    private final boolean convertToHalfWidthPunctuation;
+    private final PunctuationProfile conversion;
+    private final CompiledRegexRules customRules;
+    private final RuleConfiguration configuration;
+
+    private RulePipeline(Builder builder) {
+        this.addSpaceBetweenChineseAndEnglish = builder.addSpaceBetweenChineseAndEnglish;
+        this.addSpaceBetweenChineseAndNumber = builder.addSpaceBetweenChineseAndNumber;
+        this.addSpaceBetweenEnglishAndNumber = builder.addSpaceBetweenEnglishAndNumber;
+        this.addSpaceAroundChinesePunctuation = builder.addSpaceAroundChinesePunctuation;
+        this.addSpaceAroundEnglishPunctuation = builder.addSpaceAroundEnglishPunctuation;
+        // 同时选择两种转换时只转换为全角
+        this.convertToFullWidthPunctuation = builder.punctuationProfile != null
+                ? builder.punctuationProfile == PunctuationProfile.FULL_WIDTH
+                : builder.convertToFullWidthPunctuation;
+        this.convertToHalfWidthPunctuation = builder.punctuationProfile != null
+                ? builder.punctuationProfile == PunctuationProfile.HALF_WIDTH
+                : builder.convertToHalfWidthPunctuation && !builder.convertToFullWidthPunctuation;
+        // 设置了转换配置时使用该配置，否则按全角、半角选项选择预置配置
+        this.conversion = builder.punctuationProfile != null
+                ? builder.punctuationProfile
+                : MarkdownSpacingProcessor.conversion(convertToFullWidthPunctuation, convertToHalfWidthPunctuation);
+        this.customRules = builder.customRegexManager != null ? builder.customRegexManager.compileRules() : null;
+        this.configuration = computeConfiguration();
+    }
+
+    /**
+     * 创建流水线构建器，默认不启用任何规则
+     * @return 构建器
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * 根据规则设置构建流水线
+     * @param addSpaceBetweenChineseAndEnglish 是否在中英文之间添加空格
+     * @param addSpaceBetweenChineseAndNumber 是否在中文和数字之间添加空格
+     * @param addSpaceBetweenEnglishAndNumber 是否在英文和数字之间添加空格
+     * @param addSpaceAroundChinesePunctuation 是否在中文标点前后添加空格
+     * @param addSpaceAroundEnglishPunctuation 是否在英文标点前后添加空格
+     * @param convertToFullWidthPunctuation 是否将标点转换为全角
+     * @param convertToHalfWidthPunctuation 是否将标点转换为半角
+     * @param customRegexManager 自定义正则表达式管理器，可以为空
+     * @return 流水线
+     */
+    public static RulePipeline of(boolean addSpaceBetweenChineseAndEnglish,
+                                  boolean addSpaceBetweenChineseAndNumber,
+                                  boolean addSpaceBetweenEnglishAndNumber,
+                                  boolean addSpaceAroundChinesePunctuation,
+                                  boolean addSpaceAroundEnglishPunctuation,
+                                  boolean convertToFullWidthPunctuation,
+                                  boolean convertToHalfWidthPunctuation,
+                                  CustomRegexManager customRegexManager) {
+        return builder()
+                .addSpaceBetweenChineseAndEnglish(addSpaceBetweenChineseAndEnglish)
+                .addSpaceBetweenChineseAndNumber(addSpaceBetweenChineseAndNumber)
+                .addSpaceBetweenEnglishAndNumber(addSpaceBetweenEnglishAndNumber)
+                .addSpaceAroundChinesePunctuation(addSpaceAroundChinesePunctuation)
+                .addSpaceAroundEnglishPunctuation(addSpaceAroundEnglishPunctuation)
+                .convertToFullWidthPunctuation(convertToFullWidthPunctuation)
+                .convertToHalfWidthPunctuation(convertToHalfWidthPunctuation)
+                .customRegexManager(customRegexManager)
+                .build();
+    }
+
+    /**
+     * 处理文本，跳过代码块、公式、超链接等特殊元素
+     * @param text 原始文本
+     * @return 处理后的文本
+     */
+    public String apply(String text) {
+        if (text == null || text.isEmpty()) {
+            return text;
+        }
+        StringBuilder result = new StringBuilder(text.length() + (text.length() >> 4) + 16);
+        try {
+            apply(text, result);
+        } catch (IOException e) {
+            // 写入 StringBuilder 不会发生 IO 异常
+            throw new UncheckedIOException(e);
+        }
+        return result.toString();
+    }
+
+    /**
+     * 处理文本，并将结果写入调用方提供的输出目标
+     * 输入可以是 String、StringBuilder、CharBuffer 等任意 CharSequence，
+     * 输出可以是 StringBuilder、Writer 或可复用的 CharBuffer（空间不足时抛出 BufferOverflowException）
+     * @param text 原始文本
+     * @param out 输出目标
+     * @throws IOException 写入输出目标失败
+     */
+    public void apply(CharSequence text, Appendable out) throws IOException {
+        if (text == null || text.length() == 0) {
+            return;
+        }
+
+        // 没有任何规则时原样输出
+        if (!hasRules() && customRules == null) {
+            out.append(text);
+            return;
+        }
+
+        // 先普查文档，关闭不可能改变文档的规则，并找出可以原样复制的纯 ASCII 行
+        SpacingPlan plan = plan(text);
+        if (!plan.hasRules() && customRules == null) {
+            out.append(text);
+            return;
+        }
+
+        // 一次扫描找出特殊元素（代码块、公式、超链接、HTML 等）的位置
+        ProtectedRegions regions = MarkdownLexer.lex(text);
+
+        // 在一次扫描中应用计划中的空格规则和标点转换，跳过特殊元素，
+        // 特殊元素之间的每段文本再应用自定义正则表达式规则
+        plan.createEngine().process(text, regions, out, customRules);
+    }
+
+    /**
+     * 计算处理文本所需的修改，不生成处理后的文本
+     * 修改以基本类型数组和共享的字符串池保存，通常远小于处理结果，编辑器可以只应用这些修改而不替换整个文本。
+     * 有自定义正则表达式规则时，规则改写过的每段文本记录为一处修改
+     * @param text 原始文本
+     * @return 编辑列表，对原文应用后与 apply 的结果相同
+     */
+    public EditList edits(CharSequence text) {
+        return edits(text, Integer.MAX_VALUE);
+    }
+
+    /**
+     * 处理文档，把修改直接写入文档，不生成处理后的文本
+     * 处理之前对文档取快照即可保留原文，快照与处理后的文档共享未修改的部分
+     * @param document 文档
+     * @return 写入文档的修改
+     */
+    public EditList applyInPlace(PieceTable document) {
+        EditList edits = edits(document);
+        document.apply(edits);
+        return edits;
+    }
+
+    /**
+     * 检查文本是否会被改变，不生成处理后的文本，发现第一处需要修改的位置后立即停止
+     * 用于批量检查大量通常已经格式化过的文件
+     * @param text 原始文本
+     * @return 应用规则后文本是否会改变
+     */
+    public boolean wouldChange(CharSequence text) {
+        return !edits(text, 1).isEmpty();
+    }
+
+    /**
+     * 检查文件是否会被改变，文件按 UTF-8 读取
+     * @param file 文件路径
+     * @return 应用规则后文件内容是否会改变
+     * @throws IOException 读取文件失败
+     */
+    public boolean wouldChange(Path file) throws IOException {
+        return wouldChange(Files.readString(file, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 找出文本中不符合规则的位置，不生成处理后的文本，找到指定数量后停止
+     * @param text 原始文本
+     * @param maxCount 最多找出的数量
+     * @return 按位置排序的修改，每处修改的位置即一处违反规则的位置
+     */
+    public EditList violations(CharSequence text, int maxCount) {
+        if (maxCount <= 0) {
+            throw new IllegalArgumentException("maxCount 必须大于 0: " + maxCount);
+        }
+        return edits(text, maxCount);
+    }
+
+    /**
+     * 计算处理文本所需的修改，记录到指定数量时停止扫描
+     * @param text 原始文本
+     * @param limit 最多记录的修改数量
+     * @return 编辑列表
+     */
+    private EditList edits(CharSequence text, int limit) {
+        if (text == null || text.length() == 0 || (!hasRules() && customRules == null)) {
+            return EditList.empty();
+        }
+        EditRecorder recorder = new EditRecorder(text, limit);
+        try {
+            if (limit == Integer.MAX_VALUE) {
+                apply(text, recorder);
+            } else {
+                scanBlocks(text, recorder);
+            }
+        } catch (EditRecorder.LimitReachedException e) {
+            // 已记录到指定数量，剩余的文本不必扫描
+        } catch (IOException e) {
+            // 记录器只在达到上限时抛出异常
+            throw new UncheckedIOException(e);
+        }
+        return recorder.finish();
+    }
+
+    /**
+     * 逐块处理文本并把结果写入编辑记录器
+     * 每次只向后分析到下一个重置点，记录器达到修改数量上限时，之后的文本既不分析也不处理
+     * @param text 原始文本
+     * @param recorder 编辑记录器
+     * @throws IOException 记录器达到修改数量上限
+     */
+    private void scanBlocks(CharSequence text, EditRecorder recorder) throws IOException {
+        int start = 0;
+        while (start < text.length()) {
+            int end = nextBlockEnd(text, start);
+            recorder.startBlock(start);
+            processBlock(text.subSequence(start, end), start == 0, createEngine(), customRules, recorder);
+            start = end;
+        }
+    }
+
+    /**
+     * 创建处理后文本的惰性视图，只在读取时处理被读取的部分
+     * 视图按块处理并缓存最近读取的块，适合先显示大文件的开头，其余部分在后台或需要时再处理
+     * @param text 原始文本，之后不能被修改
+     * @return 处理后文本的视图
+     */
+    public ProcessedView view(CharSequence text) {
+        return new ProcessedView(this, text);
+    }
+
+    /**
+     * 查找从某个重置点开始的一块的终点，块至少有检查文本时的最小长度，除非到达文本末尾
+     * @param text 原始文本
+     * @param start 块起点，文档开头或一个重置点
+     * @return 块终点，为下一个重置点或文本长度
+     */
+    int nextBlockEnd(CharSequence text, int start) {
+        return blockEnd(text, start, Math.min(text.length(), start + SCAN_BLOCK_LENGTH), RANGE_LOOKAHEAD);
+    }
+
+    /**
+     * 单独处理原文中两个重置点之间的一块
+     * @param text 原始文本
+     * @param start 块起点，文档开头或一个重置点
+     * @param end 块终点，一个重置点或文本长度
+     * @return 这一块的处理结果，与处理整个文本时这一块对应的部分相同
+     */
+    String processBlock(CharSequence text, int start, int end) {
+        String block = text.subSequence(start, end).toString();
+        if (!hasRules() && customRules == null) {
+            return block;
+        }
+        return processBlock(block, start == 0, createEngine(), customRules);
+    }
+
+    /**
+     * 计算只格式化文本中一段范围所需的修改
+     * 范围向前后扩展到词法分析器的重置点，只分析和处理扩展后的这一块，范围之外的文本不应用任何规则。
+     * 起点之前的文本只做一次块级扫描（不做行内扫描和空格处理），用于确定范围是否位于代码块、公式块等结构中；
+     * 终点之后只扫描到下一个重置点。范围内的修改与处理整个文档时相同。
+     * 有自定义正则表达式规则时只扩展到块级受保护区域开始的重置点，保证规则作用的文本段完整
+     * @param text 原始文本
+     * @param start 范围起点
+     * @param end 范围终点（不含）
+     * @return 完全位于范围内的修改，位置为原文中的偏移
+     */
+    public EditList editsInRange(CharSequence text, int start, int end) {
+        Objects.checkFromToIndex(start, end, text.length());
+        if (start == end || (!hasRules() && customRules == null)) {
+            return EditList.empty();
+        }
+
+        int blockStart = blockStart(text, start);
+        int blockEnd = blockEnd(text, blockStart, end, Math.max(RANGE_LOOKAHEAD, end - blockStart));
+        CharSequence block = text.subSequence(blockStart, blockEnd);
+        SpacingPlan plan = plan(block);
+        if (!plan.hasRules() && customRules == null) {
+            return EditList.empty();
+        }
+
+        EditRecorder recorder = new EditRecorder(block);
+        try {
+            processBlock(block, blockStart == 0, plan.createEngine(), customRules, recorder);
+        } catch (IOException e) {
+            // 记录器不会发生 IO 异常
+            throw new UncheckedIOException(e);
+        }
+        // 范围延伸到文档末尾时，末尾的插入也属于范围
+        return recorder.finish().select(start - blockStart, end - blockStart,
+                                        end == text.length(), blockStart);
+    }
+
+    /**
+     * 只格式化文本中的一段范围，范围之外的文本保持不变
+     * @param text 原始文本
+     * @param start 范围起点
+     * @param end 范围终点（不含）
+     * @return 处理后的文本
+     */
+    public String applyToRange(String text, int start, int end) {
+        return editsInRange(text, start, end).applyTo(text);
+    }
+
+    /**
+     * 只格式化文本中的若干行，其他行保持不变
+     * @param text 原始文本
+     * @param fromLine 第一行的行号，从 0 开始
+     * @param toLine 最后一行之后的行号（不含），超过总行数时处理到文本末尾
+     * @return 处理后的文本
+     */
+    public String applyToLines(String text, int fromLine, int toLine) {
+        if (fromLine < 0 || fromLine > toLine) {
+            throw new IndexOutOfBoundsException("行号范围无效: " + fromLine + " - " + toLine);
+        }
+        if (text == null || text.isEmpty()) {
+            return text;
+        }
+        int start = lineOffset(text, 0, 0, fromLine);
+        int end = lineOffset(text, start, fromLine, toLine);
+        return applyToRange(text, start, end);
+    }
+
+    /**
+     * 处理文本，并使用段落缓存跳过未改动的部分
+     * 文本在词法分析器的重置点处切分为块，每块的结果以（块内容，流水线的规则配置）为键缓存，
+     * 只有缓存中没有的块需要词法分析和空格处理，结果与不使用缓存时相同。
+     * 有自定义正则表达式规则时，只在块级受保护区域开始的重置点切分，保证规则作用的文本段不会跨越两块，
+     * 规则配置中含有各条自定义规则，规则改变后不会使用之前的结果
+     * @param text 原始文本
+     * @param cache 段落缓存，为空时不使用缓存
+     * @return 处理后的文本
+     */
+    public String apply(String text, ParagraphCache cache) {
+        if (cache == null || text == null || text.isEmpty()) {
+            return apply(text);
+        }
+
+        SpacingPlan plan = plan(text);
+        if (!plan.hasRules() && customRules == null) {
+            return text;
+        }
+
+        // 计划只关闭不会改变结果的规则，所以使用流水线的规则配置，文档其他部分的改动不会使缓存失效
+        MarkdownLexer blocks = MarkdownLexer.lexBlocks(text);
+        int[] resets = customRules == null ? blocks.resetPoints() : blocks.regionResetPoints();
+        StringBuilder result = new StringBuilder(text.length() + (text.length() >> 4) + 16);
+        int start = 0;
+        for (int i = 0; i <= resets.length; i++) {
+            int end = i < resets.length ? resets[i] : text.length();
+            String block = text.substring(start, end);
+            // 文档开头的块可能含有头信息，且之前没有换行符，与其他位置的相同内容分开缓存
+            String processed = cache.get(block, configuration, start == 0);
+            if (processed == null) {
+                processed = processBlock(block, start == 0, plan.createBlockEngine(), customRules);
+                cache.put(block, configuration, start == 0, processed);
+            }
+            result.append(processed);
+            start = end;
+        }
+        return result.toString();
+    }
+
+    /**
+     * 并行处理文本
+     * 文本在词法分析器的重置点处切分为若干段，各段在线程池中同时进行词法分析和空格处理后按顺序拼接，
+     * 结果与 apply 完全相同。有自定义正则表达式规则时，只在块级受保护区域（代码块、公式块等）
+     * 开始的重置点切分，保证规则作用的文本段不会跨越两段。
+     * 文本较短或线程池只有一个线程时直接顺序处理
+     * @param text 原始文本
+     * @param pool 执行处理任务的线程池
+     * @return 处理后的文本
+     */
+    public String applyParallel(String text, ForkJoinPool pool) {
+        if (text == null || text.length() < ParallelSpacingProcessor.MIN_PARALLEL_LENGTH
+                || pool.getParallelism() < 2) {
+            return apply(text);
+        }
+
+        SpacingPlan plan = plan(text);
+        if (!plan.hasRules() && customRules == null) {
+            return text;
+        }
+        return new ParallelSpacingProcessor(text, plan, customRules)
+                .process(pool, ParallelSpacingProcessor.MIN_CHUNK_LENGTH);
+    }
+
+    /**
+     * 流式处理，从输入流分块读取并写入输出流，内存占用只取决于固定大小的缓冲区
+     * 跨块的代码块、公式、超链接和中英文交界与整体处理的结果一致，自定义正则表达式规则按块分别应用
+     * @param reader 输入流
+     * @param writer 输出流，处理完成后不会关闭
+     * @throws IOException 读写失败
+     */
+    public void apply(Reader reader, Writer writer) throws IOException {
+        // 没有任何规则时原样复制
+        if (!hasRules() && customRules == null) {
+            reader.transferTo(writer);
+            writer.flush();
+            return;
+        }
+
+        new MarkdownStreamProcessor(createEngine(), customRules, MarkdownStreamProcessor.DEFAULT_CAPACITY)
+                .process(reader, writer);
+        writer.flush();
+    }
+
+    /**
+     * 处理Markdown文件
+     * 文件按块流式读写，内存占用与文件大小无关；只有交界规则时直接在映射的 UTF-8 字节上处理，不解码为字符。
+     * 输入和输出为同一文件时先写入临时文件再替换
+     * @param inputFile 输入文件路径
+     * @param outputFile 输出文件路径
+     * @return 处理是否成功
+     */
+    public boolean applyToFile(Path inputFile, Path outputFile) {
+        Path target = outputFile;
+        try {
+            boolean inPlace = Files.exists(outputFile) && Files.isSameFile(inputFile, outputFile);
+            if (inPlace) {
+                Path directory = outputFile.toAbsolutePath().getParent();
+                target = Files.createTempFile(directory, outputFile.getFileName().toString(), ".tmp");
+            }
+
+            if (!addSpaceAroundChinesePunctuation && !addSpaceAroundEnglishPunctuation
+                    && conversion == null && customRules == null) {
+                // 只有交界规则：在 UTF-8 字节上处理
+                new Utf8SpacingEngine(addSpaceBetweenChineseAndEnglish,
+                                      addSpaceBetweenChineseAndNumber,
+                                      addSpaceBetweenEnglishAndNumber,
+                                      Utf8SpacingEngine.WINDOW_SIZE).process(inputFile, target);
+            } else {
+                try (Reader reader = Files.newBufferedReader(inputFile, StandardCharsets.UTF_8);
+                     Writer writer = Files.newBufferedWriter(target, StandardCharsets.UTF_8)) {
+                    apply(reader, writer);
+                }
+            }
+
+            if (inPlace) {
+                Files.move(target, outputFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            if (target != outputFile) {
+                try {
+                    Files.deleteIfExists(target);
+                } catch (IOException ignored) {
+                    // 临时文件删除失败不影响结果
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * 普查文本并生成处理计划，用于查看哪些规则会实际执行、哪些行会被原样复制
+     * @param text 原始文本
+     * @return 处理计划
+     */
+    public SpacingPlan plan(CharSequence text) {
+        return SpacingPlan.of(text,
+                              addSpaceBetweenChineseAndEnglish,
+                              addSpaceBetweenChineseAndNumber,
+                              addSpaceBetweenEnglishAndNumber,
+                              addSpaceAroundChinesePunctuation,
+                              addSpaceAroundEnglishPunctuation,
+                              conversion);
+    }
+
+    /**
+     * 单独处理文档中重置点之间的一块文本
+     * @param block 块内容
+     * @param documentStart 是否从文档开头开始
+     * @param engine 根据整个文档的处理计划创建的引擎
+     * @param customRules 预编译的自定义正则表达式规则，可以为空
+     * @return 处理后的文本
+     */
+    static String processBlock(String block, boolean documentStart, SpacingEngine engine,
+                               CompiledRegexRules customRules) {
+        StringBuilder result = new StringBuilder(block.length() + (block.length() >> 4) + 16);
+        try {
+            processBlock(block, documentStart, engine, customRules, result);
+        } catch (IOException e) {
+            // 写入 StringBuilder 不会发生 IO 异常
+            throw new UncheckedIOException(e);
+        }
+        return result.toString();
+    }
+
+    /**
+     * 单独处理文档中重置点之间的一块文本，并将结果写入输出目标
+     * @param block 块内容
+     * @param documentStart 是否从文档开头开始
+     * @param engine 空格处理引擎
+     * @param customRules 预编译的自定义正则表达式规则，可以为空
+     * @param out 输出目标
+     * @throws IOException 写入输出目标失败
+     */
+    static void processBlock(CharSequence block, boolean documentStart, SpacingEngine engine,
+                             CompiledRegexRules customRules, Appendable out) throws IOException {
+        ProtectedRegions regions = documentStart
+                ? MarkdownLexer.lex(block)
+                : MarkdownLexer.lexChunk(block, false, null).regions();
+        if (!documentStart) {
+            // 重置点之前是一个空行
+            engine.startAtLineStart();
+        }
+        engine.process(block, regions, out, customRules);
+    }
+
+    /**
+     * 查找范围所在块的起点：范围所在行之前的最后一个重置点
+     * @param text 原始文本
+     * @param start 范围起点
+     * @return 块起点，没有重置点时为 0
+     */
+    private int blockStart(CharSequence text, int start) {
+        int lineStart = start;
+        while (lineStart > 0 && text.charAt(lineStart - 1) != '\n') {
+            lineStart--;
+        }
+        if (lineStart == 0) {
+            return 0;
+        }
+        // 到某一行末尾为止的文本中找到的重置点与整个文档中的相同
+        MarkdownLexer blocks = MarkdownLexer.lexBlocks(text.subSequence(0, lineStart));
+        if (customRules == null) {
+            return blocks.safeCut();
+        }
+        int[] points = blocks.regionResetPoints();
+        return points.length > 0 ? points[points.length - 1] : 0;
+    }
+
+    /**
+     * 查找范围所在块的终点：范围之后的第一个重置点
+     * 从块起点开始分析逐步加长的一段文本，直到找到重置点或到达文本末尾
+     * @param text 原始文本
+     * @param blockStart 块起点
+     * @param end 范围终点
+     * @param lookahead 第一次向后分析的长度
+     * @return 块终点，没有重置点时为文本长度
+     */
+    private int blockEnd(CharSequence text, int blockStart, int end, int lookahead) {
+        int window = lookahead;
+        while (true) {
+            int limit = (int) Math.min(text.length(), (long) end + window);
+            // 只分析完整的行
+            while (limit < text.length() && text.charAt(limit - 1) != '\n') {
+                limit++;
+            }
+            MarkdownLexer blocks = MarkdownLexer.lexBlocks(text.subSequence(blockStart, limit), blockStart == 0);
+            int[] points = customRules == null ? blocks.resetPoints() : blocks.regionResetPoints();
+            for (int point : points) {
+                if (blockStart + point >= end) {
+                    return blockStart + point;
+                }
+            }
+            if (limit == text.length()) {
+                return limit;
+            }
+            window *= 2;
+        }
+    }
+
+    /**
+     * 从某一行开始向后查找指定行的起点
+     * @param text 原始文本
+     * @param from 起始行的起点
+     * @param fromLine 起始行的行号
+     * @param line 要查找的行号
+     * @return 行起点，超过总行数时为文本长度
+     */
+    private static int lineOffset(String text, int from, int fromLine, int line) {
+        int position = from;
+        for (int i = fromLine; i < line; i++) {
+            int newline = text.indexOf('\n', position);
+            if (newline < 0) {
+                return text.length();
+            }
+            position = newline + 1;
+        }
+        return position;
+    }
+
+    /**
+     * 创建包含全部已选规则的空格处理引擎
+     * @return 空格处理引擎
+     */
+    private SpacingEngine createEngine() {
+        return SpacingEngine.create(addSpaceBetweenChineseAndEnglish,
+                                    addSpaceBetweenChineseAndNumber,
+                                    addSpaceBetweenEnglishAndNumber,
+                                    addSpaceAroundChinesePunctuation,
+                                    addSpaceAroundEnglishPunctuation,
+                                    conversion);
+    }
+
+    /**
+     * 计算规则配置：每条规则对应一位，标点转换配置和自定义规则按内容比较，不压缩成散列值
+     * @return 规则配置
+     */
+    private RuleConfiguration computeConfiguration() {
+        int bits = 0;
+        if (addSpaceBetweenChineseAndEnglish) {
+            bits |= 1;
+        }
+        if (addSpaceBetweenChineseAndNumber) {
+            bits |= 1 << 1;
+        }
+        if (addSpaceBetweenEnglishAndNumber) {
+            bits |= 1 << 2;
+        }
+        if (addSpaceAroundChinesePunctuation) {
+            bits |= 1 << 3;
+        }
+        if (addSpaceAroundEnglishPunctuation) {
+            bits |= 1 << 4;
+        }
+        if (convertToFullWidthPunctuation) {
+            bits |= 1 << 5;
+        }
+        if (convertToHalfWidthPunctuation) {
+            bits |= 1 << 6;
+        }
+        return new RuleConfiguration(bits, conversion, customRules != null ? customRules.configuration() : null);
+    }
+
+    /**
+     * 判断是否选择了任意一条空格规则或标点转换
+     * @return 是否选择了规则
+     */
+    public boolean hasRules() {
+        return addSpaceBetweenChineseAndEnglish || addSpaceBetweenChineseAndNumber || addSpaceBetweenEnglishAndNumber
+                || addSpaceAroundChinesePunctuation || addSpaceAroundEnglishPunctuation || conversion != null;
+    }
+
+    /**
+     * 判断是否有可以应用的自定义正则表达式规则
+     * @return 是否有自定义规则
+     */
+    public boolean hasCustomRules() {
+        return customRules != null;
+    }
+
+    /**
+     * 获取规则配置，规则设置相同的流水线配置相等，可以作为缓存键的一部分
+     * @return 规则配置
+     */
+    RuleConfiguration configuration() {
+        return configuration;
+    }
+
+    public boolean isAddSpaceBetweenChineseAndEnglish() {
+        return addSpaceBetweenChineseAndEnglish;
+    }
+
+    public boolean isAddSpaceBetweenChineseAndNumber() {
+        return addSpaceBetweenChineseAndNumber;
+    }
+
+    public boolean isAddSpaceBetweenEnglishAndNumber() {
+        return addSpaceBetweenEnglishAndNumber;
+    }
+
+    public boolean isAddSpaceAroundChinesePunctuation() {
+        return addSpaceAroundChinesePunctuation;
+    }
+
+    public boolean isAddSpaceAroundEnglishPunctuation() {
+        return addSpaceAroundEnglishPunctuation;
+    }
+
+    public boolean isConvertToFullWidthPunctuation() {
+        return convertToFullWidthPunctuation;
+    }
+
+    public boolean isConvertToHalfWidthPunctuation() {
+        return convertToHalfWidthPunctuation;
+    }
+
+    /**
+     * 获取标点转换配置
+     * @return 转换配置，不转换标点时为空
+     */
+    public PunctuationProfile getPunctuationProfile() {
+        return conversion;
+    }
+
+    @Override
+    public String toString() {
+        return "RulePipeline{" +
+                "addSpaceBetweenChineseAndEnglish=" + addSpaceBetweenChineseAndEnglish +
+                ", addSpaceBetweenChineseAndNumber=" + addSpaceBetweenChineseAndNumber +
+                ", addSpaceBetweenEnglishAndNumber=" + addSpaceBetweenEnglishAndNumber +
+                ", addSpaceAroundChinesePunctuation=" + addSpaceAroundChinesePunctuation +
+                ", addSpaceAroundEnglishPunctuation=" + addSpaceAroundEnglishPunctuation +
+                ", convertToFullWidthPunctuation=" + convertToFullWidthPunctuation +
+                ", convertToHalfWidthPunctuation=" + convertToHalfWidthPunctuation +
+                ", punctuationProfile=" + (conversion != null ? conversion.getName() : null) +
+                ", customRules=" + (customRules != null) +
+                '}';
+    }
+
+    /**
+     * 流水线构建器，不是线程安全的
+     */
+    public static final class Builder {
+
+        private boolean addSpaceBetweenChineseAndEnglish;
+        private boolean addSpaceBetweenChineseAndNumber;
+        private boolean addSpaceBetweenEnglishAndNumber;
+        private boolean addSpaceAroundChinesePunctuation;
+        private boolean addSpaceAroundEnglishPunctuation;
+        private boolean convertToFullWidthPunctuation;
+        private boolean convertToHalfWidthPunctuation;
+        private PunctuationProfile punctuationProfile;
+        private CustomRegexManager customRegexManager;
+
+        private Builder() {
+        }
+
+        public Builder addSpaceBetweenChineseAndEnglish(boolean enabled) {
+            this.addSpaceBetweenChineseAndEnglish = enabled;
+            return this;
+        }
+
+        public Builder addSpaceBetweenChineseAndNumber(boolean enabled) {
+            this.addSpaceBetweenChineseAndNumber = enabled;
+            return this;
+        }
+
+        public Builder addSpaceBetweenEnglishAndNumber(boolean enabled) {
+            this.addSpaceBetweenEnglishAndNumber = enabled;
+            return this;
+        }
+
+        public Builder addSpaceAroundChinesePunctuation(boolean enabled) {
+            this.addSpaceAroundChinesePunctuation = enabled;
+            return this;
+        }
+
+        public Builder addSpaceAroundEnglishPunctuation(boolean enabled) {
+            this.addSpaceAroundEnglishPunctuation = enabled;
+            return this;
+        }
+
+        public Builder convertToFullWidthPunctuation(boolean enabled) {
+            this.convertToFullWidthPunctuation = enabled;
+            return this;
+        }
+
+        public Builder convertToHalfWidthPunctuation(boolean enabled) {
+            this.convertToHalfWidthPunctuation = enabled;
+            return this;
+        }
+
+        /**
+         * 设置标点转换配置，设置后忽略全角和半角转换选项
+         * @param punctuationProfile 标点转换配置，为空时按全角和半角转换选项选择预置配置
+         * @return 构建器
+         */
+        public Builder punctuationProfile(PunctuationProfile punctuationProfile) {
+            this.punctuationProfile = punctuationProfile;
+            return this;
+        }
+
+        /**
+         * 设置自定义正则表达式规则来源，构建时编译其中所有启用的规则
+         * @param customRegexManager 自定义正则表达式管理器，可以为空
+         * @return 构建器
+         */
+        public Builder customRegexManager(CustomRegexManager customRegexManager) {
+            this.customRegexManager = customRegexManager;
+            return this;
+        }
+
+        /**
+         * 构建流水线
+         * @return 流水线
+         */
+        public RulePipeline build() {
+            return new RulePipeline(this);
+        }
+    }
+}
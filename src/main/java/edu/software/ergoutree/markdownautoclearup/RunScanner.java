@@ -0,0 +1,147 @@
+package edu.software.ergoutree.markdownautoclearup;
+
+/**
+ * 惰性字符段扫描器
+ * 文档中的大部分字符不会触发任何规则，例如前后没有英文和数字的成段汉字、长段英文等。
+ * 扫描器从给定位置向后查找下一个可能需要逐字符处理的位置，其间的字符由空格处理引擎整段复制。
+ *
+ * 需要逐字符处理的位置有：
+ * 1. 与前一个字符构成已启用交界规则的字符对（中英文、中文数字、英文数字）；
+ * 2. 快速分类无法确定类别的字符，即常用汉字、假名和谚文音节区间以外的所有非 ASCII 字符，包括中文标点、全角标点和代理对；
+ * 3. 启用英文标点规则或标点转换涉及 ASCII 字符时的 ASCII 标点。
+ *
+ * 运行时存在 jdk.incubator.vector 模块时使用 VectorRunScanner 一次比较多个字符，否则使用本类的逐字符实现，
+ * 两种实现返回的位置完全相同。
+ */
+class RunScanner {
+
+    // 快速分类无法确定类别、必须逐字符处理的字符
+    static final int STOP = 8;
+
+    // 常用汉字区间：从 U+4E00 起连续属于中日韩文字、且不是标点的字符
+    static final char HAN_FIRST = '\u4E00';
+    static final char HAN_LAST = rangeLast(HAN_FIRST);
+
+    // 假名区间：从平假名 U+3041 起连续的平假名和片假名
+    static final char KANA_FIRST = '\u3041';
+    static final char KANA_LAST = rangeLast(KANA_FIRST);
+
+    // 谚文音节区间：从 U+AC00 起连续的谚文音节
+    static final char HANGUL_FIRST = '\uAC00';
+    static final char HANGUL_LAST = rangeLast(HANGUL_FIRST);
+
+    // 当前运行环境下可用的扫描器
+    static final RunScanner INSTANCE = load();
+
+    RunScanner() {
+    }
+
+    /**
+     * 加载扫描器，向量实现不可用时退回逐字符实现
+     * @return 扫描器
+     */
+    private static RunScanner load() {
+        // 模块描述中没有声明对孵化模块的依赖，运行时存在该模块时再让本模块读取它
+        ModuleLayer.boot().findModule("jdk.incubator.vector")
+                .ifPresent(vector -> RunScanner.class.getModule().addReads(vector));
+        try {
+            Class<?> type = Class.forName(RunScanner.class.getPackageName() + ".VectorRunScanner");
+            return (RunScanner) type.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            // 没有 jdk.incubator.vector 模块
+            return new RunScanner();
+        }
+    }
+
+    /**
+     * 计算从给定字符起连续属于中日韩文字、且不是标点的区间的终点
+     * @param first 区间中第一个字符
+     * @return 区间中最后一个字符
+     */
+    private static char rangeLast(char first) {
+        char c = first;
+        while (c < Character.MAX_VALUE && CharClassTable.flags((char) (c + 1)) == CharClassTable.HAN) {
+            c++;
+        }
+        return c;
+    }
+
+    /**
+     * 生成交界规则字符对的位集合
+     * @param chineseEnglish 是否启用中英文空格规则
+     * @param chineseNumber 是否启用中文数字空格规则
+     * @param englishNumber 是否启用英文数字空格规则
+     * @return 以两个字符类别按位或的结果为下标的位集合
+     */
+    static int boundaryPairs(boolean chineseEnglish, boolean chineseNumber, boolean englishNumber) {
+        int pairs = 0;
+        if (chineseEnglish) {
+            pairs |= 1 << (CharClassTable.HAN | CharClassTable.LATIN);
+        }
+        if (chineseNumber) {
+            pairs |= 1 << (CharClassTable.HAN | CharClassTable.DIGIT);
+        }
+        if (englishNumber) {
+            pairs |= 1 << (CharClassTable.LATIN | CharClassTable.DIGIT);
+        }
+        return pairs;
+    }
+
+    /**
+     * 快速分类一个字符
+     * @param c 字符
+     * @param stopPunctuation 是否在 ASCII 标点处停止
+     * @return 交界规则类别，需要逐字符处理时为 STOP
+     */
+    static int classify(char c, boolean stopPunctuation) {
+        if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')) {
+            return CharClassTable.LATIN;
+        }
+        if (c >= '0' && c <= '9') {
+            return CharClassTable.DIGIT;
+        }
+        if (c >= HAN_FIRST && c <= HAN_LAST) {
+            return CharClassTable.HAN;
+        }
+        // 汉字之后依次检查假名和谚文，中文文本不会走到这里
+        if ((c >= KANA_FIRST && c <= KANA_LAST) || (c >= HANGUL_FIRST && c <= HANGUL_LAST)) {
+            return CharClassTable.HAN;
+        }
+        if (c >= 0x80 || (stopPunctuation && c > ' ' && c < 0x7F)) {
+            return STOP;
+        }
+        return 0;
+    }
+
+    /**
+     * 判断一个字符是否需要逐字符处理
+     * @param prevType 前一个码点的类别
+     * @param type 当前字符的快速分类结果
+     * @param pairs 启用的交界规则字符对
+     * @return 是否需要逐字符处理
+     */
+    static boolean stops(int prevType, int type, int pairs) {
+        return type == STOP || ((pairs >>> (prevType | type)) & 1) != 0;
+    }
+
+    /**
+     * 查找下一个需要逐字符处理的位置
+     * @param chars 字符数组
+     * @param from 起点
+     * @param to 终点（不含）
+     * @param prevType 起点之前一个码点的类别
+     * @param pairs 启用的交界规则字符对
+     * @param stopPunctuation 是否在 ASCII 标点处停止
+     * @return 第一个需要逐字符处理的位置，没有时为终点
+     */
+    int skip(char[] chars, int from, int to, int prevType, int pairs, boolean stopPunctuation) {
+        for (int i = from; i < to; i++) {
+            int type = classify(chars[i], stopPunctuation);
+            if (stops(prevType, type, pairs)) {
+                return i;
+            }
+            prevType = type;
+        }
+        return to;
+    }
+}
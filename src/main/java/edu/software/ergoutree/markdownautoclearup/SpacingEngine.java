@@ -0,0 +1,255 @@
+package edu.software.ergoutree.markdownautoclearup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 空格处理引擎
+ * 在一次从左到右的扫描中应用所有启用的空格与标点规则，实现见 FusedSpacingEngine。
+ *
+ * 通过 {@link #create} 创建引擎时，每种规则配置第一次出现时把 FusedSpacingEngine 的字节码定义为一个隐藏类，
+ * 配置作为类数据成为该类的静态常量，JIT 编译时未启用规则的判断和分支被整个消除，热点循环只含实际执行的规则。
+ * 同一配置之后创建的引擎都使用这个隐藏类。运行环境不允许定义隐藏类时退回直接加载的 FusedSpacingEngine，
+ * 它从实例字段读取配置，结果完全相同。
+ *
+ * 引擎对象保存处理状态，不是线程安全的。同一实例依次处理几段文本时，结果与处理它们拼接后的文本相同，
+ * 流式处理依靠这一点在各块之间延续状态；处理互不相关的文本时应创建新实例。
+ */
+abstract class SpacingEngine {
+
+    // 规则配置位
+    static final int CHINESE_ENGLISH = 1;
+    static final int CHINESE_NUMBER = 1 << 1;
+    static final int ENGLISH_NUMBER = 1 << 2;
+    static final int CHINESE_PUNCTUATION = 1 << 3;
+    static final int ENGLISH_PUNCTUATION = 1 << 4;
+    static final int CONVERSION = 1 << 5;
+    // 扫描器需要在 ASCII 标点处停止
+    static final int STOP_PUNCTUATION = 1 << 6;
+    // 使用惰性字符段扫描器：被转换的字符都是快速分类无法确定类别的字符
+    static final int SCAN = 1 << 7;
+    // 标点转换含有成对引号，需要跟踪每种引号是否等待闭合
+    static final int PAIRED_QUOTES = 1 << 8;
+
+    private static final MethodType CONSTRUCTOR = MethodType.methodType(void.class, int.class, PunctuationProfile.class);
+
+    // 各规则配置的特化引擎构造方法
+    private static final ConcurrentHashMap<Integer, MethodHandle> SPECIALIZED = new ConcurrentHashMap<>();
+
+    // 无法定义隐藏类时不再尝试
+    private static volatile boolean specializationUnavailable;
+
+    SpacingEngine() {
+    }
+
+    /**
+     * 创建空格处理引擎，优先使用针对该规则配置特化的实现
+     * @param addSpaceBetweenChineseAndEnglish 是否在中英文之间添加空格
+     * @param addSpaceBetweenChineseAndNumber 是否在中文和数字之间添加空格
+     * @param addSpaceBetweenEnglishAndNumber 是否在英文和数字之间添加空格
+     * @param addSpaceAroundChinesePunctuation 是否在中文标点前后添加空格
+     * @param addSpaceAroundEnglishPunctuation 是否在英文标点前后添加空格
+     * @param conversion 标点转换配置，不转换时为空
+     * @return 空格处理引擎
+     */
+    static SpacingEngine create(boolean addSpaceBetweenChineseAndEnglish,
+                                boolean addSpaceBetweenChineseAndNumber,
+                                boolean addSpaceBetweenEnglishAndNumber,
+                                boolean addSpaceAroundChinesePunctuation,
+                                boolean addSpaceAroundEnglishPunctuation,
+                                PunctuationProfile conversion) {
+        int configuration = configuration(addSpaceBetweenChineseAndEnglish,
+                                          addSpaceBetweenChineseAndNumber,
+                                          addSpaceBetweenEnglishAndNumber,
+                                          addSpaceAroundChinesePunctuation,
+                                          addSpaceAroundEnglishPunctuation,
+                                          conversion);
+        MethodHandle constructor = specializedConstructor(configuration);
+        if (constructor != null) {
+            try {
+                return (SpacingEngine) constructor.invokeExact(configuration, conversion);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                // 构造方法不抛出受检异常
+                throw new IllegalStateException(e);
+            }
+        }
+        return createInterpreted(configuration, conversion);
+    }
+
+    /**
+     * 创建不特化的通用引擎
+     * @param configuration 规则配置
+     * @param conversion 标点转换配置，不转换时为空
+     * @return 空格处理引擎
+     */
+    static SpacingEngine createInterpreted(int configuration, PunctuationProfile conversion) {
+        return new FusedSpacingEngine(configuration, conversion);
+    }
+
+    /**
+     * 根据规则生成配置位
+     * @param addSpaceBetweenChineseAndEnglish 是否在中英文之间添加空格
+     * @param addSpaceBetweenChineseAndNumber 是否在中文和数字之间添加空格
+     * @param addSpaceBetweenEnglishAndNumber 是否在英文和数字之间添加空格
+     * @param addSpaceAroundChinesePunctuation 是否在中文标点前后添加空格
+     * @param addSpaceAroundEnglishPunctuation 是否在英文标点前后添加空格
+     * @param conversion 标点转换配置，不转换时为空
+     * @return 规则配置
+     */
+    static int configuration(boolean addSpaceBetweenChineseAndEnglish,
+                             boolean addSpaceBetweenChineseAndNumber,
+                             boolean addSpaceBetweenEnglishAndNumber,
+                             boolean addSpaceAroundChinesePunctuation,
+                             boolean addSpaceAroundEnglishPunctuation,
+                             PunctuationProfile conversion) {
+        int configuration = 0;
+        if (addSpaceBetweenChineseAndEnglish) {
+            configuration |= CHINESE_ENGLISH;
+        }
+        if (addSpaceBetweenChineseAndNumber) {
+            configuration |= CHINESE_NUMBER;
+        }
+        if (addSpaceBetweenEnglishAndNumber) {
+            configuration |= ENGLISH_NUMBER;
+        }
+        if (addSpaceAroundChinesePunctuation) {
+            configuration |= CHINESE_PUNCTUATION;
+        }
+        if (addSpaceAroundEnglishPunctuation) {
+            configuration |= ENGLISH_PUNCTUATION;
+        }
+
+        // 英文标点规则和 ASCII 标点的转换都要求扫描器在 ASCII 标点处停止
+        if (conversion != null) {
+            configuration |= CONVERSION;
+            if (conversion.hasPairedQuotes()) {
+                configuration |= PAIRED_QUOTES;
+            }
+        }
+        boolean stopPunctuation = addSpaceAroundEnglishPunctuation
+                || (conversion != null && conversion.hasAsciiSources());
+        if (stopPunctuation) {
+            configuration |= STOP_PUNCTUATION;
+        }
+
+        // 被转换的字符必须逐字符处理，扫描器无法在它们处停止时不使用扫描器
+        boolean scannable = true;
+        if (conversion != null) {
+            for (char c : conversion.sources()) {
+                scannable &= RunScanner.classify(c, stopPunctuation) == RunScanner.STOP;
+            }
+        }
+        if (scannable) {
+            configuration |= SCAN;
+        }
+        return configuration;
+    }
+
+    /**
+     * 获取某个规则配置的特化引擎构造方法，第一次使用时定义隐藏类
+     * @param configuration 规则配置
+     * @return 类型为 (int, PunctuationProfile)SpacingEngine 的构造方法，无法特化时为空
+     */
+    private static MethodHandle specializedConstructor(int configuration) {
+        if (specializationUnavailable) {
+            return null;
+        }
+        MethodHandle constructor = SPECIALIZED.get(configuration);
+        if (constructor != null) {
+            return constructor;
+        }
+        try {
+            constructor = SPECIALIZED.computeIfAbsent(configuration, SpacingEngine::defineSpecialized);
+        } catch (UncheckedIOException | IllegalStateException | LinkageError | SecurityException e) {
+            specializationUnavailable = true;
+            System.err.println("无法生成特化的空格处理引擎，使用通用实现: " + e);
+            return null;
+        }
+        return constructor;
+    }
+
+    /**
+     * 以规则配置为类数据，把 FusedSpacingEngine 的字节码定义为隐藏类
+     * @param configuration 规则配置
+     * @return 隐藏类的构造方法
+     */
+    private static MethodHandle defineSpecialized(int configuration) {
+        byte[] bytes;
+        try (InputStream in = FusedSpacingEngine.class.getResourceAsStream("FusedSpacingEngine.class")) {
+            if (in == null) {
+                throw new IllegalStateException("找不到 FusedSpacingEngine.class");
+            }
+            bytes = in.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup()
+                    .defineHiddenClassWithClassData(bytes, configuration, true);
+            return lookup.findConstructor(lookup.lookupClass(), CONSTRUCTOR)
+                    .asType(MethodType.methodType(SpacingEngine.class, int.class, PunctuationProfile.class));
+        } catch (IllegalAccessException | NoSuchMethodException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 设置原样复制的区间
+     * 区间内的字符不会被任何已启用的规则改变，只有第一个字符仍经过各阶段，以处理它与前文之间的交界和标点空格
+     * @param bounds 区间边界，bounds[2i] 为第 i 个区间的起点，bounds[2i+1] 为终点（不含）
+     * @param count 区间数量
+     */
+    abstract void setVerbatim(int[] bounds, int count);
+
+    /**
+     * 把状态设置为刚处理完一个换行符，用于单独处理从文档中间某一行开头开始的文本
+     */
+    abstract void startAtLineStart();
+
+    /**
+     * 处理文本
+     * @param text 原始文本
+     * @return 处理后的文本
+     */
+    String process(CharSequence text) {
+        int length = text.length();
+        // 预留少量空间给插入的空格，避免扩容
+        StringBuilder result = new StringBuilder(length + (length >> 4) + 16);
+        try {
+            process(text, result);
+        } catch (IOException e) {
+            // 写入 StringBuilder 不会发生 IO 异常
+            throw new UncheckedIOException(e);
+        }
+        return result.toString();
+    }
+
+    /**
+     * 处理文本并写入指定的输出目标
+     * @param text 原始文本
+     * @param target 输出目标
+     * @throws IOException 写入输出目标失败
+     */
+    void process(CharSequence text, Appendable target) throws IOException {
+        process(text, null, target, null);
+    }
+
+    /**
+     * 处理文本并写入指定的输出目标，跳过受保护区域
+     * 受保护区域之间的每段文本在应用空格规则后，再单独应用自定义正则表达式规则
+     * @param text 原始文本
+     * @param regions 受保护区域，可以为空
+     * @param target 输出目标
+     * @param customRules 预编译的自定义正则表达式规则，可以为空
+     * @throws IOException 写入输出目标失败
+     */
+    abstract void process(CharSequence text, ProtectedRegions regions, Appendable target,
+                          CompiledRegexRules customRules) throws IOException;
+}
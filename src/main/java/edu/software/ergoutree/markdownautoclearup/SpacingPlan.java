@@ -0,0 +1,384 @@
+package edu.software.ergoutree.markdownautoclearup;
+
+import java.util.Arrays;
+
+/**
+ * 空格处理计划
+ * 应用规则之前先对整个文档做一次普查：是否含有汉字、英文字母、数字、中文标点、英文标点和待转换的标点，
+ * 以及哪些行只含 ASCII 字符。据此：
+ * 1. 关闭不可能改变文档的规则，例如不含汉字的英文文档不需要中英文、中文数字空格规则；
+ * 2. 剩下的规则都不作用于纯 ASCII 文本时，连续的纯 ASCII 行整段原样复制，不再逐字符处理。
+ *
+ * 各条空格规则只插入空格，标点转换是最后一步逐字符映射，所以一条规则能否改变文档只取决于原文中出现的字符。
+ * 通过 MarkdownSpacingProcessor.planText 可以查看某个文档的计划，便于调试。
+ */
+public final class SpacingPlan {
+
+    // 普查结果
+    private final boolean hasHan;
+    private final boolean hasLatin;
+    private final boolean hasDigit;
+    private final boolean hasChinesePunctuation;
+    private final boolean hasEnglishPunctuation;
+    private final boolean hasConvertiblePunctuation;
+    private final int lineCount;
+    private final int asciiLineCount;
+
+    // 实际执行的规则
+    private final boolean addSpaceBetweenChineseAndEnglish;
+    private final boolean addSpaceBetweenChineseAndNumber;
+    private final boolean addSpaceBetweenEnglishAndNumber;
+    private final boolean addSpaceAroundChinesePunctuation;
+    private final boolean addSpaceAroundEnglishPunctuation;
+    private final PunctuationProfile conversion;
+
+    // 原样复制的纯 ASCII 行：bounds[2i] 为第 i 段的起点，bounds[2i+1] 为终点（不含），相邻的行合并为一段
+    private final int[] asciiLines;
+    private final int asciiLineSpans;
+    private final boolean skipAsciiLines;
+
+    private SpacingPlan(Census census,
+                        boolean addSpaceBetweenChineseAndEnglish,
+                        boolean addSpaceBetweenChineseAndNumber,
+                        boolean addSpaceBetweenEnglishAndNumber,
+                        boolean addSpaceAroundChinesePunctuation,
+                        boolean addSpaceAroundEnglishPunctuation,
+                        PunctuationProfile conversion) {
+        this.hasHan = (census.flags & CharClassTable.HAN) != 0;
+        this.hasLatin = (census.flags & CharClassTable.LATIN) != 0;
+        this.hasDigit = (census.flags & CharClassTable.DIGIT) != 0;
+        this.hasChinesePunctuation = (census.flags & CharClassTable.CHINESE_PUNCTUATION) != 0;
+        this.hasEnglishPunctuation = (census.flags & CharClassTable.ENGLISH_PUNCTUATION) != 0;
+        this.hasConvertiblePunctuation = census.convertible;
+        this.lineCount = census.lineCount;
+        this.asciiLineCount = census.asciiLineCount;
+
+        this.addSpaceBetweenChineseAndEnglish = addSpaceBetweenChineseAndEnglish && hasHan && hasLatin;
+        this.addSpaceBetweenChineseAndNumber = addSpaceBetweenChineseAndNumber && hasHan && hasDigit;
+        this.addSpaceBetweenEnglishAndNumber = addSpaceBetweenEnglishAndNumber && hasLatin && hasDigit;
+        this.addSpaceAroundChinesePunctuation = addSpaceAroundChinesePunctuation && hasChinesePunctuation;
+        this.addSpaceAroundEnglishPunctuation = addSpaceAroundEnglishPunctuation && hasEnglishPunctuation;
+        this.conversion = hasConvertiblePunctuation ? conversion : null;
+
+        // 中英文、中文数字交界需要汉字，中文标点和全角标点都不是 ASCII 字符，
+        // 所以只要英文数字、英文标点规则和 ASCII 标点的转换都没有执行，纯 ASCII 行就不会被改变
+        this.asciiLines = census.asciiLines;
+        this.asciiLineSpans = census.asciiLineSpans;
+        this.skipAsciiLines = !this.addSpaceBetweenEnglishAndNumber && !this.addSpaceAroundEnglishPunctuation
+                && !census.asciiConvertible;
+    }
+
+    /**
+     * 普查文档并生成处理计划
+     * @param text 原始文本
+     * @param addSpaceBetweenChineseAndEnglish 是否在中英文之间添加空格
+     * @param addSpaceBetweenChineseAndNumber 是否在中文和数字之间添加空格
+     * @param addSpaceBetweenEnglishAndNumber 是否在英文和数字之间添加空格
+     * @param addSpaceAroundChinesePunctuation 是否在中文标点前后添加空格
+     * @param addSpaceAroundEnglishPunctuation 是否在英文标点前后添加空格
+     * @param conversion 标点转换配置，不转换时为空
+     * @return 处理计划
+     */
+    static SpacingPlan of(CharSequence text,
+                          boolean addSpaceBetweenChineseAndEnglish,
+                          boolean addSpaceBetweenChineseAndNumber,
+                          boolean addSpaceBetweenEnglishAndNumber,
+                          boolean addSpaceAroundChinesePunctuation,
+                          boolean addSpaceAroundEnglishPunctuation,
+                          PunctuationProfile conversion) {
+        return new SpacingPlan(new Census(text, conversion),
+                               addSpaceBetweenChineseAndEnglish,
+                               addSpaceBetweenChineseAndNumber,
+                               addSpaceBetweenEnglishAndNumber,
+                               addSpaceAroundChinesePunctuation,
+                               addSpaceAroundEnglishPunctuation,
+                               conversion);
+    }
+
+    /**
+     * 根据计划创建空格处理引擎，只包含实际执行的规则
+     * @return 空格处理引擎
+     */
+    SpacingEngine createEngine() {
+        SpacingEngine engine = SpacingEngine.create(addSpaceBetweenChineseAndEnglish,
+                                                    addSpaceBetweenChineseAndNumber,
+                                                    addSpaceBetweenEnglishAndNumber,
+                                                    addSpaceAroundChinesePunctuation,
+                                                    addSpaceAroundEnglishPunctuation,
+                                                    conversion);
+        if (skipAsciiLines) {
+            engine.setVerbatim(asciiLines, asciiLineSpans);
+        }
+        return engine;
+    }
+
+    /**
+     * 根据计划创建单独处理文档中一块文本的引擎，纯 ASCII 行的位置相对整个文档，所以不跳过
+     * @return 空格处理引擎
+     */
+    SpacingEngine createBlockEngine() {
+        return SpacingEngine.create(addSpaceBetweenChineseAndEnglish,
+                                    addSpaceBetweenChineseAndNumber,
+                                    addSpaceBetweenEnglishAndNumber,
+                                    addSpaceAroundChinesePunctuation,
+                                    addSpaceAroundEnglishPunctuation,
+                                    conversion);
+    }
+
+    /**
+     * 根据计划创建单独处理文档中一段文本的引擎，纯 ASCII 行的位置换算为相对这段文本
+     * @param from 这段文本在文档中的起点，应位于行首
+     * @param to 这段文本在文档中的终点（不含）
+     * @return 空格处理引擎
+     */
+    SpacingEngine createEngine(int from, int to) {
+        SpacingEngine engine = createBlockEngine();
+        if (!skipAsciiLines) {
+            return engine;
+        }
+        // 二分查找第一个终点在起点之后的区间
+        int low = 0;
+        int high = asciiLineSpans;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (asciiLines[2 * mid + 1] <= from) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        int end = low;
+        while (end < asciiLineSpans && asciiLines[2 * end] < to) {
+            end++;
+        }
+        int[] bounds = new int[2 * (end - low)];
+        for (int i = low; i < end; i++) {
+            bounds[2 * (i - low)] = Math.max(asciiLines[2 * i], from) - from;
+            bounds[2 * (i - low) + 1] = Math.min(asciiLines[2 * i + 1], to) - from;
+        }
+        engine.setVerbatim(bounds, end - low);
+        return engine;
+    }
+
+    /**
+     * 判断是否有规则需要执行
+     * @return 是否有规则需要执行，没有时文档不会被空格规则和标点转换改变
+     */
+    public boolean hasRules() {
+        return addSpaceBetweenChineseAndEnglish || addSpaceBetweenChineseAndNumber || addSpaceBetweenEnglishAndNumber
+                || addSpaceAroundChinesePunctuation || addSpaceAroundEnglishPunctuation || conversion != null;
+    }
+
+    /**
+     * 文档是否含有汉字（包括 CJK 符号和标点）
+     * @return 是否含有汉字
+     */
+    public boolean hasHan() {
+        return hasHan;
+    }
+
+    /**
+     * 文档是否含有英文字母
+     * @return 是否含有英文字母
+     */
+    public boolean hasLatin() {
+        return hasLatin;
+    }
+
+    /**
+     * 文档是否含有数字
+     * @return 是否含有数字
+     */
+    public boolean hasDigit() {
+        return hasDigit;
+    }
+
+    /**
+     * 文档是否含有中文标点规则处理的标点
+     * @return 是否含有中文标点
+     */
+    public boolean hasChinesePunctuation() {
+        return hasChinesePunctuation;
+    }
+
+    /**
+     * 文档是否含有英文标点规则处理的标点
+     * @return 是否含有英文标点
+     */
+    public boolean hasEnglishPunctuation() {
+        return hasEnglishPunctuation;
+    }
+
+    /**
+     * 文档是否含有所选标点转换会转换的标点
+     * @return 是否含有待转换的标点，未选择标点转换时为 false
+     */
+    public boolean hasConvertiblePunctuation() {
+        return hasConvertiblePunctuation;
+    }
+
+    /**
+     * 获取文档行数
+     * @return 行数
+     */
+    public int getLineCount() {
+        return lineCount;
+    }
+
+    /**
+     * 获取只含 ASCII 字符的行数
+     * @return 纯 ASCII 行数
+     */
+    public int getAsciiLineCount() {
+        return asciiLineCount;
+    }
+
+    /**
+     * 纯 ASCII 行是否整段原样复制
+     * @return 是否跳过纯 ASCII 行
+     */
+    public boolean isSkippingAsciiLines() {
+        return skipAsciiLines;
+    }
+
+    /**
+     * 是否执行中英文空格规则
+     * @return 是否执行
+     */
+    public boolean isAddSpaceBetweenChineseAndEnglish() {
+        return addSpaceBetweenChineseAndEnglish;
+    }
+
+    /**
+     * 是否执行中文数字空格规则
+     * @return 是否执行
+     */
+    public boolean isAddSpaceBetweenChineseAndNumber() {
+        return addSpaceBetweenChineseAndNumber;
+    }
+
+    /**
+     * 是否执行英文数字空格规则
+     * @return 是否执行
+     */
+    public boolean isAddSpaceBetweenEnglishAndNumber() {
+        return addSpaceBetweenEnglishAndNumber;
+    }
+
+    /**
+     * 是否执行中文标点空格规则
+     * @return 是否执行
+     */
+    public boolean isAddSpaceAroundChinesePunctuation() {
+        return addSpaceAroundChinesePunctuation;
+    }
+
+    /**
+     * 是否执行英文标点空格规则
+     * @return 是否执行
+     */
+    public boolean isAddSpaceAroundEnglishPunctuation() {
+        return addSpaceAroundEnglishPunctuation;
+    }
+
+    /**
+     * 是否执行标点转换
+     * @return 是否执行
+     */
+    public boolean isConvertingPunctuation() {
+        return conversion != null;
+    }
+
+    @Override
+    public String toString() {
+        return "SpacingPlan{" +
+                "hasHan=" + hasHan +
+                ", hasLatin=" + hasLatin +
+                ", hasDigit=" + hasDigit +
+                ", hasChinesePunctuation=" + hasChinesePunctuation +
+                ", hasEnglishPunctuation=" + hasEnglishPunctuation +
+                ", hasConvertiblePunctuation=" + hasConvertiblePunctuation +
+                ", lines=" + lineCount +
+                ", asciiLines=" + asciiLineCount +
+                ", skipAsciiLines=" + skipAsciiLines +
+                ", chineseEnglish=" + addSpaceBetweenChineseAndEnglish +
+                ", chineseNumber=" + addSpaceBetweenChineseAndNumber +
+                ", englishNumber=" + addSpaceBetweenEnglishAndNumber +
+                ", chinesePunctuation=" + addSpaceAroundChinesePunctuation +
+                ", englishPunctuation=" + addSpaceAroundEnglishPunctuation +
+                ", convertPunctuation=" + (conversion != null) +
+                '}';
+    }
+
+    /**
+     * 文档普查：一次扫描统计出现过的字符类别和纯 ASCII 行
+     */
+    private static final class Census {
+
+        private int flags;
+        private boolean convertible;
+        private boolean asciiConvertible;
+        private int lineCount;
+        private int asciiLineCount;
+        private int[] asciiLines = new int[16];
+        private int asciiLineSpans;
+
+        Census(CharSequence text, PunctuationProfile conversion) {
+            char[] table = conversion != null ? conversion.table() : null;
+
+            int length = text.length();
+            int lineStart = 0;
+            boolean ascii = true;
+            for (int i = 0; i < length; i++) {
+                char c = text.charAt(i);
+                if (c < 0x80) {
+                    flags |= CharClassTable.flags(c);
+                    if (table != null && table[c] != c) {
+                        convertible = true;
+                        asciiConvertible = true;
+                    }
+                    if (c == '\n') {
+                        addLine(lineStart, i + 1, ascii);
+                        lineStart = i + 1;
+                        ascii = true;
+                    }
+                } else {
+                    ascii = false;
+                    convertible |= table != null && table[c] != c;
+                    if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(text.charAt(i + 1))) {
+                        flags |= CharClassTable.flags(Character.toCodePoint(c, text.charAt(++i)));
+                    } else {
+                        flags |= CharClassTable.flags(c);
+                    }
+                }
+            }
+            if (lineStart < length) {
+                addLine(lineStart, length, ascii);
+            }
+        }
+
+        /**
+         * 记录一行
+         * @param start 行首
+         * @param end 下一行行首
+         * @param ascii 是否只含 ASCII 字符
+         */
+        private void addLine(int start, int end, boolean ascii) {
+            lineCount++;
+            if (!ascii) {
+                return;
+            }
+            asciiLineCount++;
+            if (asciiLineSpans > 0 && asciiLines[2 * asciiLineSpans - 1] == start) {
+                asciiLines[2 * asciiLineSpans - 1] = end;
+                return;
+            }
+            if (2 * asciiLineSpans == asciiLines.length) {
+                asciiLines = Arrays.copyOf(asciiLines, asciiLines.length * 2);
+            }
+            asciiLines[2 * asciiLineSpans] = start;
+            asciiLines[2 * asciiLineSpans + 1] = end;
+            asciiLineSpans++;
+        }
+    }
+}
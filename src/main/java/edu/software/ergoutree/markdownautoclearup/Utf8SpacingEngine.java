@@ -0,0 +1,463 @@
+package edu.software.ergoutree.markdownautoclearup;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * UTF-8 字节级空格处理引擎
+ * 用 FileChannel.map 映射输入文件，直接在 UTF-8 字节上识别中文、英文字母和数字的交界，
+ * 插入的空格和原文字节直接写入输出通道，全程不解码为 Java 字符串，也不需要两倍于文件大小的内存。
+ *
+ * 只支持三条交界规则（中英文、中文数字、英文数字），输出与 {@link SpacingEngine} 在相同规则下逐字节一致。
+ * 标点空格和标点转换会改变多字节字符，仍由字符引擎处理。
+ *
+ * 英文数字规则关闭时，连续的 ASCII 字节之间不可能插入空格，只需知道其中最后一个字节的类别，
+ * 因此以 8 字节为单位整块跳过 ASCII 文本（SWAR：一次读取一个 long，检查每个字节的最高位）。
+ *
+ * 文件按窗口映射，每个窗口用 Latin-1 视图交给 {@link MarkdownLexer} 分析受保护区域：
+ * Markdown 语法只由 ASCII 字符组成，非 ASCII 字节不会影响分析结果，区域位置即为字节偏移。
+ * 窗口只包含完整的行，单行超过窗口大小时扩大窗口；窗口在分析器给出的重置点处切分，与流式处理相同；窗口开头的块级公式或头信息超过窗口大小时，
+ * 先映射之后的窗口查找结束标记，再按结论重新分析。不合法的 UTF-8 字节按无类别字符原样复制。
+ */
+final class Utf8SpacingEngine {
+
+    // 映射窗口大小（字节）
+    static final int WINDOW_SIZE = 1 << 22;
+
+    // 输出缓冲区大小（字节）
+    private static final int OUTPUT_SIZE = 1 << 16;
+
+    // 超过这个长度的原文片段直接从映射缓冲区写入输出通道，不经过输出缓冲区
+    private static final int DIRECT_WRITE_THRESHOLD = 1 << 12;
+
+    // decode 的特殊返回值：合法的两字节序列、不合法的序列
+    private static final int TWO_BYTES = -1;
+    private static final int INVALID = -2;
+
+    // 8 个字节的最高位
+    private static final long NON_ASCII_MASK = 0x8080808080808080L;
+
+    private static final int CHINESE_ENGLISH = CharClassTable.HAN | CharClassTable.LATIN;
+    private static final int CHINESE_NUMBER = CharClassTable.HAN | CharClassTable.DIGIT;
+    private static final int ENGLISH_NUMBER = CharClassTable.LATIN | CharClassTable.DIGIT;
+
+    private final boolean addSpaceBetweenChineseAndEnglish;
+    private final boolean addSpaceBetweenChineseAndNumber;
+    private final boolean addSpaceBetweenEnglishAndNumber;
+    private final int windowSize;
+
+    private final ByteBuffer output = ByteBuffer.allocateDirect(OUTPUT_SIZE);
+    private FileChannel channel;
+
+    // 当前窗口中尚未写出的原文片段起点
+    private ByteBuffer window;
+    private int pending;
+
+    // 交界规则状态：上一个码点的类别，以及上一对字符是否已被对应规则匹配
+    private int prevType;
+    private boolean chineseEnglishMatched;
+    private boolean chineseNumberMatched;
+    private boolean englishNumberMatched;
+
+    /**
+     * 构造函数
+     * @param addSpaceBetweenChineseAndEnglish 是否在中英文之间添加空格
+     * @param addSpaceBetweenChineseAndNumber 是否在中文和数字之间添加空格
+     * @param addSpaceBetweenEnglishAndNumber 是否在英文和数字之间添加空格
+     * @param windowSize 映射窗口大小（字节）
+     */
+    Utf8SpacingEngine(boolean addSpaceBetweenChineseAndEnglish,
+                      boolean addSpaceBetweenChineseAndNumber,
+                      boolean addSpaceBetweenEnglishAndNumber,
+                      int windowSize) {
+        this.addSpaceBetweenChineseAndEnglish = addSpaceBetweenChineseAndEnglish;
+        this.addSpaceBetweenChineseAndNumber = addSpaceBetweenChineseAndNumber;
+        this.addSpaceBetweenEnglishAndNumber = addSpaceBetweenEnglishAndNumber;
+        this.windowSize = windowSize;
+    }
+
+    /**
+     * 处理文件
+     * @param inputFile 输入文件路径
+     * @param outputFile 输出文件路径
+     * @throws IOException 读写失败
+     */
+    void process(Path inputFile, Path outputFile) throws IOException {
+        try (FileChannel in = FileChannel.open(inputFile, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(outputFile, StandardOpenOption.WRITE,
+                     StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel = out;
+            long size = in.size();
+            long position = 0;
+            boolean documentStart = true;
+            MarkdownLexer continued = null;
+
+            while (position < size) {
+                int length = (int) Math.min(windowSize, size - position);
+                MappedByteBuffer mapped = in.map(FileChannel.MapMode.READ_ONLY, position, length);
+                while (position + length < size && length < Integer.MAX_VALUE && lastLineEnd(mapped, length) == 0) {
+                    // 单行超过窗口大小时扩大窗口直到包含整行，分析器只能正确识别完整的行
+                    length = (int) Math.min(Math.min(2L * length, Integer.MAX_VALUE), size - position);
+                    mapped = in.map(FileChannel.MapMode.READ_ONLY, position, length);
+                }
+                boolean last = position + length == size;
+
+                // 除最后一个窗口外只分析完整的行；单行超过 2GB 时只能在码点边界处切分
+                int analyzed = analyzedLength(mapped, length, last);
+                MarkdownLexer lexer = MarkdownLexer.lexChunk(new Latin1View(mapped, analyzed), documentStart, continued);
+
+                if (!last && lexer.needsLookAhead()) {
+                    // 窗口开头的公式或头信息超过窗口大小，查找结束标记后按结论重新分析同一窗口
+                    lexer.decide(lookAhead(in, lexer, position + analyzed, size) == MarkdownLexer.AHEAD_CLOSED);
+                    continued = lexer;
+                    continue;
+                }
+
+                int cut;
+                if (last) {
+                    cut = length;
+                    continued = null;
+                } else if (lexer.safeCut() > 0) {
+                    cut = lexer.safeCut();
+                    continued = null;
+                } else {
+                    cut = lexer.forcedCut();
+                    continued = lexer;
+                }
+
+                ProtectedRegions regions = lexer.regions();
+                regions.truncate(cut);
+                processWindow(mapped, cut, regions);
+
+                position += cut;
+                documentStart = false;
+            }
+            flushOutput();
+        } finally {
+            channel = null;
+            window = null;
+        }
+    }
+
+    /**
+     * 映射之后的窗口，查找窗口开头未确定的结构的结束标记
+     * @param in 输入文件
+     * @param lexer 分析当前窗口的分析器
+     * @param position 查找起点
+     * @param size 文件大小
+     * @return AHEAD_CLOSED 或 AHEAD_MISSING
+     * @throws IOException 读取失败
+     */
+    private int lookAhead(FileChannel in, MarkdownLexer lexer, long position, long size) throws IOException {
+        while (position < size) {
+            int length = (int) Math.min(windowSize, size - position);
+            boolean last = position + length == size;
+            MappedByteBuffer mapped = in.map(FileChannel.MapMode.READ_ONLY, position, length);
+            int analyzed = analyzedLength(mapped, length, last);
+            int result = lexer.lookAhead(new Latin1View(mapped, analyzed), last && analyzed == length);
+            if (result != MarkdownLexer.AHEAD_UNKNOWN) {
+                return result;
+            }
+            position += analyzed;
+        }
+        // 到达文件末尾仍未找到结束标记
+        return MarkdownLexer.AHEAD_MISSING;
+    }
+
+    /**
+     * 获取窗口中可以分析的字节数：除最后一个窗口外只取完整的行，单行超过窗口大小时取到码点边界
+     * @param mapped 映射缓冲区
+     * @param length 窗口大小
+     * @param last 是否为最后一个窗口
+     * @return 可以分析的字节数
+     */
+    private static int analyzedLength(ByteBuffer mapped, int length, boolean last) {
+        if (last) {
+            return length;
+        }
+        int analyzed = lastLineEnd(mapped, length);
+        if (analyzed == 0) {
+            analyzed = codePointBoundary(mapped, length);
+        }
+        return analyzed;
+    }
+
+    /**
+     * 处理一个窗口中的 [0, end) 部分，跳过受保护区域
+     * @param mapped 映射缓冲区
+     * @param end 终点（不含）
+     * @param regions 受保护区域
+     * @throws IOException 写入失败
+     */
+    private void processWindow(ByteBuffer mapped, int end, ProtectedRegions regions) throws IOException {
+        window = mapped;
+        pending = 0;
+        int position = 0;
+        for (int r = 0; r < regions.size(); r++) {
+            scan(position, regions.start(r));
+            // 受保护区域相当于一个无类别的字符，区域内容留在待写出的原文片段中
+            prevType = 0;
+            chineseEnglishMatched = false;
+            chineseNumberMatched = false;
+            englishNumberMatched = false;
+            position = regions.end(r);
+        }
+        scan(position, end);
+        writeInput(end);
+    }
+
+    /**
+     * 扫描一段字节，在需要的位置插入空格
+     * @param start 起点
+     * @param end 终点（不含）
+     * @throws IOException 写入失败
+     */
+    private void scan(int start, int end) throws IOException {
+        ByteBuffer in = window;
+        int i = start;
+        while (i < end) {
+            int b = in.get(i);
+            boolean ascii = b >= 0;
+            int type;
+            int next;
+            if (ascii) {
+                type = CharClassTable.flags((char) b) & CharClassTable.BOUNDARY_MASK;
+                next = i + 1;
+            } else {
+                int codePoint = decode(in, i, end, b & 0xFF);
+                if (codePoint >= 0) {
+                    // 三字节序列（中日韩文字、CJK 标点、全角字母数字）和增补平面字符查表分类
+                    type = CharClassTable.flags(codePoint) & CharClassTable.BOUNDARY_MASK;
+                    next = i + (codePoint >= 0x10000 ? 4 : 3);
+                } else {
+                    // 两字节序列不含中文、字母和数字；不合法的字节按无类别字符处理
+                    type = 0;
+                    next = codePoint == TWO_BYTES ? i + 2 : i + 1;
+                }
+            }
+
+            if (boundaryMatches(type)) {
+                writeInput(i);
+                writeSpace();
+            }
+            prevType = type;
+            i = next;
+
+            if (ascii && !addSpaceBetweenEnglishAndNumber) {
+                i = skipAscii(i, end);
+            }
+        }
+    }
+
+    /**
+     * 跳过一个 ASCII 字节之后的连续 ASCII 字节，先以 8 字节为单位跳过，再逐字节处理剩余部分
+     * @param start 起点（前一个字节是 ASCII）
+     * @param end 终点（不含）
+     * @return 第一个非 ASCII 字节的位置或终点
+     */
+    private int skipAscii(int start, int end) {
+        ByteBuffer in = window;
+        int i = start;
+        while (i + 8 <= end && (in.getLong(i) & NON_ASCII_MASK) == 0) {
+            i += 8;
+        }
+        while (i < end && in.get(i) >= 0) {
+            i++;
+        }
+        if (i > start) {
+            // 两个 ASCII 字符之间不会被中文相关的规则匹配，匹配状态全部清除
+            prevType = CharClassTable.flags((char) in.get(i - 1)) & CharClassTable.BOUNDARY_MASK;
+            chineseEnglishMatched = false;
+            chineseNumberMatched = false;
+            englishNumberMatched = false;
+        }
+        return i;
+    }
+
+    /**
+     * 判断上一个码点与当前码点之间是否需要插入空格，并更新各交界规则的匹配状态
+     * @param type 当前码点的类别
+     * @return 是否插入空格
+     */
+    private boolean boundaryMatches(int type) {
+        boolean chineseEnglish = false;
+        boolean chineseNumber = false;
+        boolean englishNumber = false;
+
+        switch (prevType | type) {
+            case CHINESE_ENGLISH:
+                chineseEnglish = addSpaceBetweenChineseAndEnglish && !chineseEnglishMatched;
+                break;
+            case CHINESE_NUMBER:
+                chineseNumber = addSpaceBetweenChineseAndNumber && !chineseNumberMatched;
+                break;
+            case ENGLISH_NUMBER:
+                englishNumber = addSpaceBetweenEnglishAndNumber && !englishNumberMatched;
+                break;
+            default:
+                break;
+        }
+
+        chineseEnglishMatched = chineseEnglish;
+        chineseNumberMatched = chineseNumber;
+        englishNumberMatched = englishNumber;
+        return chineseEnglish || chineseNumber || englishNumber;
+    }
+
+    /**
+     * 写出从上次写出位置到指定位置的原文字节
+     * @param end 终点（不含）
+     * @throws IOException 写入失败
+     */
+    private void writeInput(int end) throws IOException {
+        int length = end - pending;
+        if (length == 0) {
+            return;
+        }
+        ByteBuffer slice = window.slice(pending, length);
+        pending = end;
+        if (length >= DIRECT_WRITE_THRESHOLD) {
+            flushOutput();
+            writeFully(slice);
+        } else {
+            if (length > output.remaining()) {
+                flushOutput();
+            }
+            output.put(slice);
+        }
+    }
+
+    /**
+     * 写出一个空格
+     * @throws IOException 写入失败
+     */
+    private void writeSpace() throws IOException {
+        if (!output.hasRemaining()) {
+            flushOutput();
+        }
+        output.put((byte) ' ');
+    }
+
+    /**
+     * 将输出缓冲区写入输出通道
+     * @throws IOException 写入失败
+     */
+    private void flushOutput() throws IOException {
+        output.flip();
+        writeFully(output);
+        output.clear();
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * 解码一个以非 ASCII 字节开头的 UTF-8 序列
+     * @param in 缓冲区
+     * @param i 首字节位置
+     * @param end 可读取的终点（不含）
+     * @param lead 首字节
+     * @return 三字节或四字节序列的码点；合法的两字节序列返回 TWO_BYTES，不合法时返回 INVALID
+     */
+    private static int decode(ByteBuffer in, int i, int end, int lead) {
+        if (lead >= 0xC2 && lead < 0xE0) {
+            return i + 1 < end && isContinuation(in.get(i + 1)) ? TWO_BYTES : INVALID;
+        }
+        if (lead >= 0xE0 && lead < 0xF0) {
+            if (i + 2 >= end || !isContinuation(in.get(i + 1)) || !isContinuation(in.get(i + 2))) {
+                return INVALID;
+            }
+            int codePoint = ((lead & 0x0F) << 12) | ((in.get(i + 1) & 0x3F) << 6) | (in.get(i + 2) & 0x3F);
+            // 排除超长编码和代理区
+            return codePoint >= 0x800 && !Character.isSurrogate((char) codePoint) ? codePoint : INVALID;
+        }
+        if (lead >= 0xF0 && lead < 0xF5) {
+            if (i + 3 >= end || !isContinuation(in.get(i + 1)) || !isContinuation(in.get(i + 2))
+                    || !isContinuation(in.get(i + 3))) {
+                return INVALID;
+            }
+            int codePoint = ((lead & 0x07) << 18) | ((in.get(i + 1) & 0x3F) << 12)
+                    | ((in.get(i + 2) & 0x3F) << 6) | (in.get(i + 3) & 0x3F);
+            return codePoint >= 0x10000 && codePoint <= Character.MAX_CODE_POINT ? codePoint : INVALID;
+        }
+        return INVALID;
+    }
+
+    private static boolean isContinuation(byte b) {
+        return (b & 0xC0) == 0x80;
+    }
+
+    /**
+     * 获取最后一个完整行的结束位置
+     * @return 最后一个换行符之后的位置，没有换行符时为 0
+     */
+    private static int lastLineEnd(ByteBuffer buffer, int length) {
+        for (int i = length - 1; i >= 0; i--) {
+            if (buffer.get(i) == '\n') {
+                return i + 1;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * 获取不超过指定长度的最后一个码点边界
+     * @return 边界位置
+     */
+    private static int codePointBoundary(ByteBuffer buffer, int length) {
+        // 向前跳过至多三个后续字节，找到最后一个码点的首字节
+        int lead = length - 1;
+        while (lead > 0 && length - lead < 4 && isContinuation(buffer.get(lead))) {
+            lead--;
+        }
+        int b = buffer.get(lead) & 0xFF;
+        int expected = b >= 0xF0 ? 4 : b >= 0xE0 ? 3 : b >= 0xC0 ? 2 : 1;
+        return lead > 0 && lead + expected > length ? lead : length;
+    }
+
+    /**
+     * 把字节缓冲区看作 Latin-1 文本，供词法分析器使用
+     */
+    private static final class Latin1View implements CharSequence {
+        private final ByteBuffer buffer;
+        private final int length;
+
+        Latin1View(ByteBuffer buffer, int length) {
+            this.buffer = buffer;
+            this.length = length;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index >= length) {
+                throw new IndexOutOfBoundsException(index);
+            }
+            return (char) (buffer.get(index) & 0xFF);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new Latin1View(buffer.slice(start, end - start), end - start);
+        }
+
+        @Override
+        public String toString() {
+            byte[] bytes = new byte[length];
+            buffer.get(0, bytes);
+            return new String(bytes, StandardCharsets.ISO_8859_1);
+        }
+    }
+}
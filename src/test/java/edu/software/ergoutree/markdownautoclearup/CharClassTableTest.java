@@ -0,0 +1,35 @@
+package edu.software.ergoutree.markdownautoclearup;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * 字符类别表测试：增补平面的区间表与逐个码点判断的结果相同
+ */
+class CharClassTableTest {
+
+    @Test
+    void supplementaryRangesMatchCodePoints() {
+        // 区间表按运行环境的 Unicode 版本生成，升级 JDK 后此测试失败时需要重新生成
+        for (int codePoint = Character.MIN_SUPPLEMENTARY_CODE_POINT; codePoint <= Character.MAX_CODE_POINT; codePoint++) {
+            int expected = CharClassTable.isCjkCodePoint(codePoint) ? CharClassTable.HAN : 0;
+            if (CharClassTable.flags(codePoint) != expected) {
+                fail("U+" + Integer.toHexString(codePoint).toUpperCase());
+            }
+        }
+    }
+
+    @Test
+    void bmpCharactersUseTheTable() {
+        for (int c = 0; c <= Character.MAX_VALUE; c++) {
+            assertEquals(CharClassTable.flags((char) c), CharClassTable.flags(c));
+        }
+        assertEquals(CharClassTable.HAN | CharClassTable.CHINESE_PUNCTUATION, CharClassTable.flags('。'));
+        assertEquals(CharClassTable.LATIN, CharClassTable.flags('Ａ'));
+        assertEquals(CharClassTable.DIGIT, CharClassTable.flags('９'));
+        assertEquals(CharClassTable.HAN, CharClassTable.flags('ー'));
+        assertEquals(0, CharClassTable.flags('\uD840'));
+    }
+}
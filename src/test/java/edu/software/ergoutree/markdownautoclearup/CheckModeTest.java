@@ -0,0 +1,129 @@
+package edu.software.ergoutree.markdownautoclearup;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 检查模式测试：判断结果与实际处理一致，找到指定数量的违规位置后不再读取剩余的文本
+ */
+class CheckModeTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void wouldChangeSameAsApply() {
+        Random random = new Random(16);
+        for (RulePipeline pipeline : TestDocuments.rulePipelines()) {
+            for (int i = 0; i < 300; i++) {
+                String text = TestDocuments.randomDocument(random, 10);
+                assertEquals(!pipeline.apply(text).equals(text), pipeline.wouldChange(text), text);
+            }
+        }
+    }
+
+    @Test
+    void violationsAreLeadingEdits() {
+        Random random = new Random(17);
+        for (RulePipeline pipeline : TestDocuments.rulePipelines()) {
+            for (int i = 0; i < 200; i++) {
+                String text = TestDocuments.randomDocument(random, 30);
+                EditList edits = pipeline.edits(text);
+                int maxCount = 1 + random.nextInt(4);
+                EditList violations = pipeline.violations(text, maxCount);
+                assertEquals(Math.min(maxCount, edits.size()), violations.size());
+                for (int j = 0; j < violations.size(); j++) {
+                    assertEquals(edits.position(j), violations.position(j));
+                    assertEquals(edits.deletedLength(j), violations.deletedLength(j));
+                    assertEquals(edits.insertedText(j), violations.insertedText(j));
+                }
+            }
+        }
+    }
+
+    @Test
+    void stopsAtFirstViolation() {
+        RulePipeline pipeline = TestDocuments.boundaryPipeline();
+        ReadTracker text = new ReadTracker("中文a\n\n" + "已经 formatted 的段落\n\n".repeat(100_000));
+        assertTrue(pipeline.wouldChange(text));
+        // 第一块之后的文本不再读取
+        assertTrue(text.maxRead < text.length() / 10, "读取到 " + text.maxRead);
+
+        text = new ReadTracker("已经 formatted 的段落\n\n".repeat(100_000) + "中文a\n");
+        assertEquals(1, pipeline.violations(text, 3).size());
+        assertEquals(text.length() - 1, text.maxRead);
+    }
+
+    @Test
+    void checkFiles() throws IOException {
+        RulePipeline pipeline = TestDocuments.boundaryPipeline();
+        Path file = directory.resolve("check.md");
+        Files.writeString(file, "中文a\n", StandardCharsets.UTF_8);
+        assertTrue(pipeline.wouldChange(file));
+        Files.writeString(file, pipeline.apply("中文a\n"), StandardCharsets.UTF_8);
+        assertFalse(pipeline.wouldChange(file));
+    }
+
+    @Test
+    void invalidMaxCount() {
+        assertThrows(IllegalArgumentException.class, () -> TestDocuments.boundaryPipeline().violations("中a", 0));
+    }
+
+    /**
+     * 记录读取过的最大位置的文本
+     */
+    private static final class ReadTracker implements CharSequence {
+
+        private final String text;
+        private final int offset;
+        private final ReadTracker root;
+        private final int length;
+        int maxRead = -1;
+
+        ReadTracker(String text) {
+            this(text, 0, text.length(), null);
+        }
+
+        private ReadTracker(String text, int offset, int length, ReadTracker root) {
+            this.text = text;
+            this.offset = offset;
+            this.length = length;
+            this.root = root != null ? root : this;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            root.maxRead = Math.max(root.maxRead, offset + index);
+            return text.charAt(offset + index);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new ReadTracker(text, offset + start, end - start, root);
+        }
+
+        @Override
+        public String toString() {
+            if (length > 0) {
+                charAt(length - 1);
+            }
+            return text.substring(offset, offset + length);
+        }
+    }
+}
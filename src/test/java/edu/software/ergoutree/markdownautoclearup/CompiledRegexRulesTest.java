@@ -0,0 +1,172 @@
+package edu.software.ergoutree.markdownautoclearup;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 编译后的正则表达式规则与逐条编译、逐条 replaceAll 的结果一致性测试
+ */
+class CompiledRegexRulesTest {
+
+    private static final String[] PATTERNS = {
+            "ab", "a+b", "b(c)", "[ab]c", "c\\d", "\\d+", "(a)(b)?", "x|ab", "a.c", "Java", "Script",
+            "Script语言", "语言", "Java(?=S)", "\\bab", "^a", "c$", "(?<word>[a-z]+)语言", "C\\+\\+语言",
+    };
+
+    private static final String[] REPLACEMENTS = {
+            "X", "$1", "", "ab", "JavaScript", "b", "\\$", "[$0]", "S", "c", "${word} 语言",
+    };
+
+    private static final String TEXT_CHARS = "abcxJavScript语言C+12 \n";
+
+    @Test
+    void sameAsChain() {
+        Random random = new Random(21);
+        for (int i = 0; i < 2000; i++) {
+            List<CustomRegexRule> rules = randomRules(random);
+            CompiledRegexRules compiled = CompiledRegexRules.compile(rules, false);
+            for (int j = 0; j < 5; j++) {
+                String text = randomText(random);
+                assertEquals(chain(rules, text), apply(compiled, text), rules + " on " + text);
+            }
+        }
+    }
+
+    @Test
+    void singleScanSameAsChain() {
+        Random random = new Random(24);
+        for (int i = 0; i < 2000; i++) {
+            List<CustomRegexRule> rules = randomRules(random);
+            CompiledRegexRules compiled = CompiledRegexRules.compile(rules, true);
+            for (int j = 0; j < 5; j++) {
+                String text = randomText(random);
+                assertEquals(chain(rules, text), apply(compiled, text), rules + " on " + text);
+            }
+        }
+    }
+
+    @Test
+    void singleScanOverlappingMatches() {
+        // 后面的规则的匹配与前面规则的匹配重叠
+        assertSingleScanSameAsChain("aY", "abc", rule("bc", "Y"), rule("ab", "X"));
+    }
+
+    @Test
+    void singleScanMatchCreatedByReplacement() {
+        // 前面规则的替换内容与原文一起组成后面规则的匹配
+        assertSingleScanSameAsChain("c", "ab", rule("a", "b"), rule("bb", "c"));
+        assertSingleScanSameAsChain("JavaS", "Java语言", rule("Java", "JavaScript"), rule("Script语言", "S"));
+    }
+
+    @Test
+    void singleScanMatchJoinedByEmptyReplacement() {
+        assertSingleScanSameAsChain("c", "bab", rule("a", ""), rule("bb", "c"));
+    }
+
+    @Test
+    void singleScanMergesIndependentRules() {
+        List<CustomRegexRule> rules = List.of(rule("a+", "A"), rule("[0-9]", "#"), rule("[xy]", "-"));
+        RegexUnion.Builder union = new RegexUnion.Builder();
+        for (CustomRegexRule rule : rules) {
+            assertTrue(union.add(rule.getName(), rule.getPattern(), rule.getCompiledPattern(), rule.getReplacement()));
+        }
+        assertEquals("A-A#A#-", union.build().apply("aaxa1a2y"));
+        assertSingleScanSameAsChain("A-A#A#-", "aaxa1a2y", rules.toArray(new CustomRegexRule[0]));
+    }
+
+    @Test
+    void singleScanKeepsDependentRulesChained() {
+        assertFalse(mergeable(rule("bc", "Y"), rule("ab", "X")));
+        assertFalse(mergeable(rule("a", "b"), rule("bb", "c")));
+        assertFalse(mergeable(rule("Java", "JavaScript"), rule("Script语言", "S")));
+        assertFalse(mergeable(rule("a", ""), rule("bb", "c")));
+        assertFalse(mergeable(rule("a", "b"), rule("c$", "d")));
+    }
+
+    private static boolean mergeable(CustomRegexRule first, CustomRegexRule second) {
+        RegexUnion.Builder union = new RegexUnion.Builder();
+        assertTrue(union.add(first.getName(), first.getPattern(), first.getCompiledPattern(), first.getReplacement()));
+        return union.add(second.getName(), second.getPattern(), second.getCompiledPattern(), second.getReplacement());
+    }
+
+    @Test
+    void abortedRuleLeavesOnlyThatTextUnchanged() {
+        // 一长串 a 之后没有 b 时 a+a+a+a+b 要尝试的拆分数量是长度的四次方
+        String backtracking = "a".repeat(100) + "!b c";
+        List<CustomRegexRule> rules = List.of(rule("a+a+a+a+b", "X"), rule("c", "C"));
+        List<CustomRegexRule> withoutAborted = rules.subList(1, 2);
+        for (boolean singleScan : new boolean[]{false, true}) {
+            List<String> aborted = new ArrayList<>();
+            CompiledRegexRules compiled = CompiledRegexRules.compile(rules, singleScan, aborted::add);
+
+            assertEquals(chain(withoutAborted, backtracking), compiled.apply(backtracking));
+            assertEquals(List.of("a+a+a+a+b"), aborted);
+            // 规则在其他文本上照常应用，同一段文本每次的结果相同
+            assertEquals(chain(rules, "aab c"), compiled.apply("aab c"));
+            assertEquals(chain(withoutAborted, backtracking), compiled.apply(backtracking));
+            assertEquals(List.of("a+a+a+a+b", "a+a+a+a+b"), aborted);
+        }
+    }
+
+    private static void assertSingleScanSameAsChain(String expected, String text, CustomRegexRule... rules) {
+        List<CustomRegexRule> list = List.of(rules);
+        assertEquals(expected, chain(list, text));
+        assertEquals(expected, CompiledRegexRules.compile(list, true).apply(text));
+    }
+
+    private static CustomRegexRule rule(String pattern, String replacement) {
+        return new CustomRegexRule(pattern, pattern, replacement, true);
+    }
+
+    static String apply(CompiledRegexRules compiled, String text) {
+        // 没有启用的规则时编译结果为空
+        return compiled == null ? text : compiled.apply(text);
+    }
+
+    /**
+     * 逐条编译、逐条应用启用的规则，替换内容无效的规则保持文本不变
+     */
+    static String chain(List<CustomRegexRule> rules, String text) {
+        String result = text;
+        for (CustomRegexRule rule : rules) {
+            if (!rule.isEnabled()) {
+                continue;
+            }
+            try {
+                result = Pattern.compile(rule.getPattern()).matcher(result).replaceAll(rule.getReplacement());
+            } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+                // 替换内容中引用了不存在的分组等
+            }
+        }
+        return result;
+    }
+
+    static List<CustomRegexRule> randomRules(Random random) {
+        List<CustomRegexRule> rules = new ArrayList<>();
+        int count = 1 + random.nextInt(5);
+        for (int i = 0; i < count; i++) {
+            rules.add(new CustomRegexRule("rule" + i,
+                                          PATTERNS[random.nextInt(PATTERNS.length)],
+                                          REPLACEMENTS[random.nextInt(REPLACEMENTS.length)],
+                                          random.nextInt(8) != 0));
+        }
+        return rules;
+    }
+
+    static String randomText(Random random) {
+        StringBuilder text = new StringBuilder();
+        int length = random.nextInt(40);
+        for (int i = 0; i < length; i++) {
+            text.append(TEXT_CHARS.charAt(random.nextInt(TEXT_CHARS.length())));
+        }
+        return text.toString();
+    }
+}
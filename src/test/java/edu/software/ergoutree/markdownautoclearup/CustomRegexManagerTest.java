@@ -0,0 +1,55 @@
+package edu.software.ergoutree.markdownautoclearup;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 规则管理器测试：单次扫描选项与规则一起保存，旧版本保存的文件仍能加载
+ */
+class CustomRegexManagerTest {
+
+    // 测试时用户目录在 target/test-home 下，见 pom.xml 中的 surefire 配置
+    private static final Path CONFIG_FILE = Path.of(System.getProperty("user.home"),
+            ".markdown_auto_clearup", "custom_regex_rules.dat");
+
+    @Test
+    void singleScanIsSavedWithRules() {
+        CustomRegexManager manager = TestDocuments.manager(new CustomRegexRule("版本号", "version(\\d+)", "v$1", true));
+        try {
+            manager.setSingleScan(true);
+            CustomRegexManager loaded = new CustomRegexManager();
+            assertTrue(loaded.isSingleScan());
+            assertEquals(1, loaded.getRules().size());
+
+            loaded.setSingleScan(false);
+            assertFalse(new CustomRegexManager().isSingleScan());
+        } finally {
+            manager.setSingleScan(false);
+        }
+    }
+
+    @Test
+    void filesWithoutSingleScanLoad() throws IOException {
+        // 旧版本只保存规则列表
+        List<CustomRegexRule> rules = new ArrayList<>();
+        rules.add(new CustomRegexRule("Java语言", "Java语言", "Java 语言", true, true));
+        Files.createDirectories(CONFIG_FILE.getParent());
+        try (ObjectOutputStream out = new ObjectOutputStream(Files.newOutputStream(CONFIG_FILE))) {
+            out.writeObject(rules);
+        }
+        CustomRegexManager manager = new CustomRegexManager();
+        assertFalse(manager.isSingleScan());
+        assertEquals(1, manager.getRules().size());
+        assertEquals("Java 语言", manager.applyRules("Java语言"));
+    }
+}
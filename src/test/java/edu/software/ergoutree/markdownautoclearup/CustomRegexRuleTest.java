@@ -0,0 +1,92 @@
+package edu.software.ergoutree.markdownautoclearup;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 规则测试：编译结果的缓存和序列化，以及匹配模式和替换内容的检查
+ */
+class CustomRegexRuleTest {
+
+    @Test
+    void compiledPatternIsCached() {
+        CustomRegexRule rule = new CustomRegexRule("版本号", "version(\\d+)", "v$1", true);
+        assertSame(rule.getCompiledPattern(), rule.getCompiledPattern());
+    }
+
+    @Test
+    void changingPatternRecompiles() {
+        CustomRegexRule rule = new CustomRegexRule("C++", "C++", "C++ ", true, true);
+        Pattern literal = rule.getCompiledPattern();
+        assertEquals(Pattern.quote("C++"), literal.pattern());
+
+        rule.setLiteral(false);
+        rule.setPattern("C\\+\\+");
+        assertEquals("C\\+\\+", rule.getCompiledPattern().pattern());
+    }
+
+    @Test
+    void compiledPatternIsNotSerialized() throws IOException, ClassNotFoundException {
+        CustomRegexRule rule = new CustomRegexRule("版本号", "version(\\d+)", "v$1", true);
+        Pattern compiled = rule.getCompiledPattern();
+
+        CustomRegexRule copy = roundTrip(rule);
+        assertEquals(rule.getName(), copy.getName());
+        assertEquals(rule.getPattern(), copy.getPattern());
+        assertEquals(rule.getReplacement(), copy.getReplacement());
+        assertEquals(rule.isEnabled(), copy.isEnabled());
+        assertEquals(rule.isLiteral(), copy.isLiteral());
+        // 反序列化后第一次使用时重新编译
+        assertNotSame(compiled, copy.getCompiledPattern());
+        assertEquals(compiled.pattern(), copy.getCompiledPattern().pattern());
+    }
+
+    @Test
+    void replacementsAreValidatedAgainstThePattern() {
+        assertTrue(new CustomRegexRule("分组", "version(\\d+)", "v$1", true).isValid());
+        assertTrue(new CustomRegexRule("命名分组", "(?<word>[a-z]+)语言", "${word} 语言", true).isValid());
+        assertTrue(new CustomRegexRule("转义", "a", "\\$1", true).isValid());
+        assertFalse(new CustomRegexRule("没有分组", "version\\d+", "v$1", true).isValid());
+        assertFalse(new CustomRegexRule("没有命名分组", "[a-z]+语言", "${word}", true).isValid());
+        assertFalse(new CustomRegexRule("末尾转义", "a", "b\\", true).isValid());
+        assertFalse(new CustomRegexRule("无效模式", "(a", "b", true).isValid());
+        // 按字面匹配时替换内容按字面插入
+        assertTrue(new CustomRegexRule("字面", "a", "$1", true, true).isValid());
+    }
+
+    @Test
+    void invalidRulesAreRejectedAndSkipped() {
+        CustomRegexRule invalid = new CustomRegexRule("没有分组", "a", "$1", true);
+        CustomRegexManager manager = TestDocuments.manager();
+        assertFalse(manager.addRule(invalid));
+        assertFalse(manager.addRules(List.of(invalid)));
+        assertTrue(manager.getRules().isEmpty());
+
+        CompiledRegexRules compiled = CompiledRegexRules.compile(
+                List.of(invalid, new CustomRegexRule("有效", "b", "c", true)), false);
+        assertEquals("ac", compiled.apply("ab"));
+    }
+
+    private static CustomRegexRule roundTrip(CustomRegexRule rule) throws IOException, ClassNotFoundException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(rule);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            return (CustomRegexRule) in.readObject();
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package edu.software.ergoutree.markdownautoclearup;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 编辑列表测试：记录器给出的修改应用到原文后与直接处理的结果相同
+ */
+class EditListTest {
+
+    @Test
+    void editsSameAsApply() throws IOException {
+        Random random = new Random(14);
+        for (RulePipeline pipeline : TestDocuments.rulePipelines()) {
+            for (int i = 0; i < 300; i++) {
+                String text = TestDocuments.randomDocument(random, 30);
+                String expected = pipeline.apply(text);
+                EditList edits = pipeline.edits(text);
+                assertEquals(expected, edits.applyTo(text), pipeline + " on " + text);
+                assertEquals(expected.length() - text.length(), edits.lengthDelta());
+
+                StringWriter writer = new StringWriter();
+                edits.applyTo(text, writer);
+                assertEquals(expected, writer.toString());
+                assertOrdered(edits, text.length());
+            }
+        }
+    }
+
+    @Test
+    void insertionsAndReplacements() {
+        RulePipeline pipeline = RulePipeline.of(true, false, false, false, false, true, false, null);
+        // 中英文之间的空格各是一处插入，位置为原文中的偏移
+        EditList edits = pipeline.edits("中a中b");
+        assertEquals(2, edits.size());
+        assertEquals(1, edits.position(0));
+        assertEquals(0, edits.deletedLength(0));
+        assertEquals(" ", edits.insertedText(0));
+        assertEquals(3, edits.position(1));
+
+        // 标点转换是替换一个字符
+        edits = pipeline.edits("中,a");
+        assertEquals(1, edits.size());
+        assertEquals(1, edits.position(0));
+        assertEquals(1, edits.deletedLength(0));
+        assertEquals("，", edits.insertedText(0));
+    }
+
+    @Test
+    void customRulesRecordTrimmedReplacement() {
+        RulePipeline pipeline = RulePipeline.builder().customRegexManager(TestDocuments.manager(
+                new CustomRegexRule("版本号", "version(\\d+)", "v$1", true))).build();
+        EditList edits = pipeline.edits("版本 version2 版本");
+        // 规则改写的一段文本去掉首尾相同的部分后只剩被删除的 "ersion"
+        assertEquals(1, edits.size());
+        assertEquals("版本 v".length(), edits.position(0));
+        assertEquals("ersion".length(), edits.deletedLength(0));
+        assertEquals("", edits.insertedText(0));
+    }
+
+    @Test
+    void noChanges() {
+        assertTrue(TestDocuments.boundaryPipeline().edits("").isEmpty());
+        assertTrue(TestDocuments.boundaryPipeline().edits("中 a 中").isEmpty());
+        assertTrue(RulePipeline.builder().build().edits("中a中").isEmpty());
+        assertEquals("原文", EditList.empty().applyTo("原文"));
+        assertThrows(IndexOutOfBoundsException.class, () -> EditList.empty().position(0));
+    }
+
+    /**
+     * 修改按位置升序排列、互不重叠，且都在原文范围内
+     */
+    static void assertOrdered(EditList edits, int length) {
+        int end = 0;
+        for (int i = 0; i < edits.size(); i++) {
+            assertTrue(edits.position(i) >= end, "修改重叠: " + i);
+            assertTrue(edits.deletedLength(i) > 0 || edits.insertedLength(i) > 0, "空修改: " + i);
+            end = edits.position(i) + edits.deletedLength(i);
+        }
+        assertTrue(end <= length);
+    }
+}
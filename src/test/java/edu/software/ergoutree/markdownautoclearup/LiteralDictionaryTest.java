@@ -0,0 +1,90 @@
+package edu.software.ergoutree.markdownautoclearup;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 字面词典测试：最左最长匹配、重叠和重复的词条、替换结果不再匹配，以及与正则表达式规则混合时的顺序
+ */
+class LiteralDictionaryTest {
+
+    @Test
+    void leftmostLongest() {
+        LiteralDictionary dictionary = dictionary("ab", "1", "abc", "2", "bcd", "3", "d", "4");
+        // 起点最靠前的匹配优先，起点相同时取最长的
+        assertEquals("24", dictionary.apply("abcd"));
+        assertEquals("x1x", dictionary.apply("xabx"));
+        assertEquals("3", dictionary.apply("bcd"));
+    }
+
+    @Test
+    void overlappingKeys() {
+        LiteralDictionary dictionary = dictionary("he", "1", "she", "2", "hers", "3", "his", "4");
+        assertEquals("u2rs", dictionary.apply("ushers"));
+        assertEquals("3", dictionary.apply("hers"));
+        assertEquals("4h1", dictionary.apply("hishhe"));
+        // 较长的词条匹配失败后，经失败转移找到其中较短的词条
+        assertEquals("h4", dictionary.apply("hhis"));
+    }
+
+    @Test
+    void duplicateKeysUseFirstReplacement() {
+        assertEquals("1b1", dictionary("a", "1", "b", "b", "a", "2").apply("aba"));
+    }
+
+    @Test
+    void emptyKeysAreIgnored() {
+        assertEquals("x1y", dictionary("", "空", "a", "1").apply("xay"));
+    }
+
+    @Test
+    void replacementsAreNotRescanned() {
+        assertEquals("bc", dictionary("a", "b", "b", "c").apply("ab"));
+        assertEquals("aa", dictionary("a", "aa").apply("a"));
+        // 替换结果与之后的原文拼起来组成的词条也不匹配
+        assertEquals("abc", dictionary("x", "a", "ab", "Z").apply("xbc"));
+    }
+
+    @Test
+    void literalAndRegexRulesApplyInOrder() {
+        // 正则表达式规则把字面规则分成两个词典，之后的词典作用于之前各步的结果
+        CompiledRegexRules compiled = CompiledRegexRules.compile(List.of(
+                new CustomRegexRule("字面1", "a", "b", true, true),
+                new CustomRegexRule("正则", "b+", "X", true),
+                new CustomRegexRule("字面2", "X", "Y", true, true),
+                new CustomRegexRule("字面3", "c", "a", true, true)), false);
+        assertEquals("Ya", compiled.apply("abc"));
+
+        CompiledRegexRules regexFirst = CompiledRegexRules.compile(List.of(
+                new CustomRegexRule("正则", "[0-9]+", "N", true),
+                new CustomRegexRule("字面", "N+", "M", true, true)), false);
+        assertEquals("MN", regexFirst.apply("N+12"));
+    }
+
+    @Test
+    void defaultRulesSameAsRegexRules() {
+        List<CustomRegexRule> regexRules = List.of(
+                new CustomRegexRule("C++语言", "C\\+\\+语言", "C++ 语言", true),
+                new CustomRegexRule("Java语言", "Java语言", "Java 语言", true),
+                new CustomRegexRule("Python语言", "Python语言", "Python 语言", true));
+        CompiledRegexRules defaults = CompiledRegexRules.compile(CustomRegexManager.defaultRules(), false);
+        for (String text : new String[]{
+                "C++语言和Java语言", "JavaPython语言", "C++语言语言", "C++ 语言", "Python语言Java语言C++语言", ""}) {
+            assertEquals(CompiledRegexRulesTest.chain(regexRules, text), CompiledRegexRulesTest.apply(defaults, text));
+        }
+    }
+
+    private static LiteralDictionary dictionary(String... keysAndReplacements) {
+        List<String> keys = new ArrayList<>();
+        List<String> replacements = new ArrayList<>();
+        for (int i = 0; i < keysAndReplacements.length; i += 2) {
+            keys.add(keysAndReplacements[i]);
+            replacements.add(keysAndReplacements[i + 1]);
+        }
+        return new LiteralDictionary(keys, replacements);
+    }
+}
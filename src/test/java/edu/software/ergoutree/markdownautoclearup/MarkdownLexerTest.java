@@ -0,0 +1,95 @@
+package edu.software.ergoutree.markdownautoclearup;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 词法分析器测试：各种结构识别出的受保护区域，以区域覆盖的原文表示
+ */
+class MarkdownLexerTest {
+
+    @Test
+    void fencedCode() {
+        assertRegions("前文\n```java\n代码code\n```\n后文\n", "```java\n代码code\n```");
+        // ~~~ 围栏只由 ~~~ 结束，其中的 ``` 是内容
+        assertRegions("~~~\n代码\n```\n仍是代码\n~~~\n后文\n", "~~~\n代码\n```\n仍是代码\n~~~");
+        // 未闭合的围栏延续到文档末尾，空行不结束围栏
+        assertRegions("```\n未闭合代码\n\n仍是代码\n", "```\n未闭合代码\n\n仍是代码\n");
+        assertRegions("> ```\n> 引用code\n> ```\n正文\n", "```\n> 引用code\n> ```");
+    }
+
+    @Test
+    void indentedCode() {
+        assertRegions("    缩进代码\n正文\n", "缩进代码");
+        // 列表项中的缩进代码从列表内容的缩进再加 4 列开始
+        assertRegions("- 列表项\n\n      缩进代码\n\n正文\n", "缩进代码");
+        assertRegions("- 列表项\n\n  续段落text\n");
+    }
+
+    @Test
+    void math() {
+        assertRegions("公式$x^2$与$$y$$中文\n", "$x^2$", "$$y$$");
+        assertRegions("$$\nE=mc^2\n$$\n正文\n", "$$\nE=mc^2\n$$");
+        // 没有结束标记的 $$ 不是块级公式
+        assertRegions("$$\n没有结束\n\n正文\n");
+        assertRegions("转义\\$不是公式$\n");
+    }
+
+    @Test
+    void htmlBlocksAndComments() {
+        assertRegions("<div>\n块text\n</div>\n\n正文\n", "<div>\n块text\n</div>");
+        assertRegions("<!-- 注释\n多行 -->\n正文\n", "<!-- 注释\n多行 -->");
+        // 原样保留的标签直到结束标签，空行不结束
+        assertRegions("<script>\na\n\nb\n</script>\n正文\n", "<script>\na\n\nb\n</script>");
+        assertRegions("文字<span>标签</span>文字\n", "<span>", "</span>");
+    }
+
+    @Test
+    void tagNamesFoldOnlyAsciiLetters() {
+        assertRegions("<SCRIPT>\na\n\nb\n</Script>\n", "<SCRIPT>\na\n\nb\n</Script>");
+        // 'İ' 的小写是 'i'，但不是 <script> 标签
+        assertRegions("<scrİpt>\n中a\n</script>\n\n中a\n", "</script>");
+    }
+
+    @Test
+    void linksAndAutolinks() {
+        assertRegions("访问<https://example.com>和<user@example.com>\n",
+                "<https://example.com>", "<user@example.com>");
+        assertRegions("[链接](http://a.com/路径)和![图](b.png)\n", "[", "](http://a.com/路径)", "![", "](b.png)");
+    }
+
+    @Test
+    void linkReferenceDefinitions() {
+        assertRegions("[标签]: https://example.com \"标题\"\n正文\n", "[标签]: https://example.com \"标题\"");
+        // 链接引用定义不能打断段落
+        assertRegions("段落\n[标签]: https://example.com\n");
+    }
+
+    @Test
+    void frontMatter() {
+        assertRegions("---\ntitle: 标题\n---\n正文\n", "---\ntitle: 标题\n---");
+        // 只在文档开头识别，且必须有结束行
+        assertRegions("正文\n---\ntitle: 标题\n---\n");
+        assertRegions("---\ntitle: 未结束\n\n正文\n");
+    }
+
+    @Test
+    void escapes() {
+        assertRegions("转义\\`不是代码`\n");
+        // 行内代码中的反斜杠不转义
+        assertRegions("代码`a\\`b`后\n", "`a\\`");
+    }
+
+    private static void assertRegions(String text, String... expected) {
+        ProtectedRegions regions = MarkdownLexer.lex(text);
+        List<String> actual = new ArrayList<>();
+        for (int i = 0; i < regions.size(); i++) {
+            actual.add(text.substring(regions.start(i), regions.end(i)));
+        }
+        assertEquals(List.of(expected), actual, text);
+    }
+}
@@ -0,0 +1,97 @@
+package edu.software.ergoutree.markdownautoclearup;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 流式处理与整体处理结果一致性测试，缓冲区远小于文档以覆盖跨块的各种结构
+ * 随机文档中的行内结构都不跨行：段落超过缓冲区大小时跨越强制切分处的行内结构本来就不会被识别
+ */
+class MarkdownStreamProcessorTest {
+
+    private static final int[] CAPACITIES = {16, 37, 64, 256};
+
+    private final RulePipeline pipeline = TestDocuments.boundaryPipeline();
+
+    @Test
+    void mathBlockLargerThanBuffer() throws IOException {
+        assertSameAsText("正文English\n$$\n" + repeat("a中文b\n", 40) + "$$\n之后after\n");
+    }
+
+    @Test
+    void unclosedMathBlockLargerThanBuffer() throws IOException {
+        assertSameAsText("正文English\n$$\n" + repeat("a中文b\n", 40) + "\n之后after\n");
+        assertSameAsText("$$\n" + repeat("a中文b\n", 40));
+    }
+
+    @Test
+    void mathBlocksOneAfterAnother() throws IOException {
+        assertSameAsText("$$\n公式$x^2$中文\n- 列表item中文\n$$\n$$\n> 引用quote中文\n");
+    }
+
+    @Test
+    void frontMatterLargerThanBuffer() throws IOException {
+        assertSameAsText("---\n" + repeat("title: 标题Title\n", 30) + "---\n正文English\n");
+        assertSameAsText("---\n" + repeat("title: 标题Title\n", 30) + "...\n正文English\n");
+    }
+
+    @Test
+    void unclosedFrontMatterLargerThanBuffer() throws IOException {
+        assertSameAsText("---\n" + repeat("title: 标题Title\n", 30) + "\n正文English\n");
+        assertSameAsText("---\n" + repeat("title: 标题Title\n", 30));
+    }
+
+    @Test
+    void lookAheadLinesLongerThanBuffer() throws IOException {
+        String line = "链接[文字text](http://example.com/路径)后";
+        assertSameAsText("$$\n" + line + "\n$$\n");
+        assertSameAsText("$$\n" + line + "\n" + " ".repeat(60) + "\n" + line + "\n");
+        assertSameAsText("$$\n" + line + "x".repeat(60) + "$$\n之后after\n");
+        assertSameAsText("---\n" + line + "\n---" + " ".repeat(60) + "\n正文English\n");
+        assertSameAsText("---\n" + line + "\n---" + " ".repeat(60) + "x\n" + "\n正文English\n");
+    }
+
+    @Test
+    void customRulesSpanParagraphsBetweenBlocks() throws IOException {
+        // 规则跨越两个段落之间的空行匹配，只能在代码块开始处切分
+        CompiledRegexRules rules = CompiledRegexRules.compile(
+                List.of(new CustomRegexRule("空行", "落\\n\\n第", "落\n\n-第", true)), false);
+        String text = repeat("第一段落\n\n第二段落\n\n```\ncode\n```\n\n", 8);
+        String expected = pipeline.apply(text).replace("落\n\n第", "落\n\n-第");
+        for (int capacity : CAPACITIES) {
+            StringWriter writer = new StringWriter();
+            new MarkdownStreamProcessor(SpacingEngine.create(true, true, true, false, false, null), rules, capacity)
+                    .process(new StringReader(text), writer);
+            assertEquals(expected, writer.toString(), "capacity " + capacity);
+        }
+    }
+
+    @Test
+    void randomDocuments() throws IOException {
+        Random random = new Random(42);
+        for (int i = 0; i < 2000; i++) {
+            assertSameAsText(TestDocuments.randomDocument(random, 40));
+        }
+    }
+
+    private void assertSameAsText(String text) throws IOException {
+        String expected = pipeline.apply(text);
+        for (int capacity : CAPACITIES) {
+            StringWriter writer = new StringWriter();
+            new MarkdownStreamProcessor(SpacingEngine.create(true, true, true, false, false, null), null, capacity)
+                    .process(new StringReader(text), writer);
+            assertEquals(expected, writer.toString(), "capacity " + capacity + ": " + text);
+        }
+    }
+
+    private static String repeat(String line, int count) {
+        return line.repeat(count);
+    }
+}
@@ -0,0 +1,77 @@
+package edu.software.ergoutree.markdownautoclearup;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.BitSet;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 正则表达式的匹配可能包含的字符的分析测试
+ */
+class MatchAlphabetTest {
+
+    private static final String[] ANALYZED = {
+            "ab", "a+b", "b(c)", "[ab]c", "c\\d", "\\d+", "(a)(b)?", "x|ab", "C\\+\\+语言", "^a", "\\Aa\\z",
+            "(?<word>[a-z]+)语言", "[a-c&&b]x", "\\Q.*\\E", "\\x41\\u0042\\x{43}", "[\\t-\\r]", "\\s\\h\\v",
+            "(?:ab){2,3}", "[\\w-]",
+    };
+
+    private static final String TEXT_CHARS = "abcxyzABC语言.*+-_019 \t\n\r　";
+
+    @Test
+    void alphabets() {
+        assertEquals(chars("ab"), MatchAlphabet.of("a+b"));
+        assertEquals(chars("abc"), MatchAlphabet.of("[ab]c"));
+        assertEquals(chars("C+语言"), MatchAlphabet.of("C\\+\\+语言"));
+        assertEquals(chars(".*"), MatchAlphabet.of("\\Q.*\\E"));
+        assertEquals(chars("ABC"), MatchAlphabet.of("\\x41\\u0042\\x{43}"));
+        assertEquals(chars("a"), MatchAlphabet.of("^a"));
+    }
+
+    @Test
+    void contextSensitiveOrUnboundedRegexes() {
+        String[] regexes = {
+                "a.c", "c$", "\\bab", "Java(?=S)", "(?<=a)b", "(?i)ab", "(a)\\1", "\\D", "[^a]", "\\p{L}", "\\Gab",
+                "a\\Z",
+        };
+        for (String regex : regexes) {
+            assertNull(MatchAlphabet.of(regex), regex);
+        }
+    }
+
+    @Test
+    void matchesStayInsideAlphabet() {
+        Random random = new Random(24);
+        for (String regex : ANALYZED) {
+            BitSet alphabet = MatchAlphabet.of(regex);
+            Pattern pattern = Pattern.compile(regex);
+            for (int i = 0; i < 500; i++) {
+                Matcher matcher = pattern.matcher(randomText(random));
+                while (matcher.find()) {
+                    matcher.group().chars().forEach(c -> assertTrue(alphabet.get(c), regex + " matched " + matcher.group()));
+                }
+            }
+        }
+    }
+
+    private static BitSet chars(String text) {
+        BitSet chars = new BitSet();
+        text.chars().forEach(chars::set);
+        return chars;
+    }
+
+    private static String randomText(Random random) {
+        StringBuilder text = new StringBuilder();
+        int length = random.nextInt(30);
+        for (int i = 0; i < length; i++) {
+            text.append(TEXT_CHARS.charAt(random.nextInt(TEXT_CHARS.length())));
+        }
+        return text.toString();
+    }
+}
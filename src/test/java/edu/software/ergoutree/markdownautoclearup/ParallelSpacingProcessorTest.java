@@ -0,0 +1,96 @@
+package edu.software.ergoutree.markdownautoclearup;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static edu.software.ergoutree.markdownautoclearup.TestDocuments.FRAGMENTS;
+import static edu.software.ergoutree.markdownautoclearup.TestDocuments.manager;
+import static edu.software.ergoutree.markdownautoclearup.TestDocuments.pipeline;
+import static edu.software.ergoutree.markdownautoclearup.TestDocuments.randomDocument;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 并行处理与顺序处理结果一致性测试
+ */
+class ParallelSpacingProcessorTest {
+
+    private static ForkJoinPool pool;
+
+    @BeforeAll
+    static void createPool() {
+        pool = new ForkJoinPool(4);
+    }
+
+    @AfterAll
+    static void shutdownPool() {
+        pool.shutdown();
+    }
+
+    @Test
+    void sameAsSequential() {
+        RulePipeline pipeline = pipeline(null);
+        Random random = new Random(11);
+        for (int i = 0; i < 200; i++) {
+            assertSameAsSequential(pipeline, null, randomDocument(random, 200));
+        }
+    }
+
+    @Test
+    void sameAsSequentialWithCustomRules() {
+        CustomRegexManager manager = manager(
+                new CustomRegexRule("Java语言", "Java语言", "Java 语言", true, true),
+                new CustomRegexRule("版本号", "version(\\d+)", "v$1", true),
+                new CustomRegexRule("跨行", "续行\\s+", "", true));
+        RulePipeline pipeline = pipeline(manager);
+        Random random = new Random(13);
+        for (int i = 0; i < 200; i++) {
+            assertSameAsSequential(pipeline, manager.compileRules(), randomDocument(random, 200));
+        }
+    }
+
+    @Test
+    void sameAsSequentialWithAbortedRule() {
+        // q+q+q+q+z 在一长串 q 之后没有 z 时匹配超出步数上限，其他地方不会匹配
+        CustomRegexRule versions = new CustomRegexRule("版本号", "version(\\d+)", "v$1", true);
+        CustomRegexManager manager = manager(new CustomRegexRule("回溯", "q+q+q+q+z", "Z", true), versions);
+        RulePipeline pipeline = pipeline(manager);
+        RulePipeline withoutAborted = pipeline(manager(versions));
+        ParagraphCache cache = new ParagraphCache();
+        Random random = new Random(25);
+        for (int i = 0; i < 5; i++) {
+            StringBuilder text = new StringBuilder(randomDocument(random, 40));
+            text.append("q".repeat(100)).append("!z\n").append(randomDocument(random, 40));
+            String document = text.toString();
+            String expected = withoutAborted.apply(document);
+
+            assertEquals(expected, pipeline.apply(document), document);
+            assertEquals(expected, pipeline.apply(document, cache), document);
+            assertEquals(expected, new ParallelSpacingProcessor(document, pipeline.plan(document),
+                                                                manager.compileRules()).process(pool, 16), document);
+        }
+        assertEquals(List.of("回溯"), manager.pollAbortedRules());
+        assertEquals(List.of(), manager.pollAbortedRules());
+    }
+
+    @Test
+    void applyParallelOnLargeDocument() {
+        RulePipeline pipeline = pipeline(null);
+        Random random = new Random(17);
+        StringBuilder text = new StringBuilder();
+        while (text.length() < ParallelSpacingProcessor.MIN_PARALLEL_LENGTH * 2) {
+            text.append(FRAGMENTS[random.nextInt(FRAGMENTS.length)]);
+        }
+        assertEquals(pipeline.apply(text.toString()), pipeline.applyParallel(text.toString(), pool));
+    }
+
+    private static void assertSameAsSequential(RulePipeline pipeline, CompiledRegexRules customRules, String text) {
+        // 每段最短 16 个字符，几乎每个候选切分位置都会切开
+        String actual = new ParallelSpacingProcessor(text, pipeline.plan(text), customRules).process(pool, 16);
+        assertEquals(pipeline.apply(text), actual, text);
+    }
+}
@@ -0,0 +1,146 @@
+package edu.software.ergoutree.markdownautoclearup;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * 片段表测试：应用编辑列表与 EditList.applyTo 结果一致，快照不受之后修改的影响，读取可以跨越片段边界
+ */
+class PieceTableTest {
+
+    private static final String CHARS = "ab中文 \n12";
+
+    @Test
+    void applySameAsApplyTo() {
+        Random random = new Random(19);
+        for (int i = 0; i < 200; i++) {
+            String expected = randomText(random, random.nextInt(60));
+            PieceTable document = PieceTable.of(expected);
+            for (int round = 0; round < 10; round++) {
+                EditList edits = randomEdits(random, expected.length());
+                expected = edits.applyTo(expected);
+                document.apply(edits);
+                assertEquals(expected, document.toString());
+                assertEquals(expected.length(), document.length());
+            }
+        }
+    }
+
+    @Test
+    void applyPipelineEdits() {
+        RulePipeline pipeline = TestDocuments.boundaryPipeline();
+        Random random = new Random(20);
+        for (int i = 0; i < 100; i++) {
+            String text = TestDocuments.randomDocument(random, 20);
+            PieceTable document = PieceTable.of(text);
+            pipeline.applyInPlace(document);
+            assertEquals(pipeline.apply(text), document.toString());
+        }
+    }
+
+    @Test
+    void snapshotsAreNotAffectedByLaterEdits() {
+        Random random = new Random(21);
+        String text = randomText(random, 200);
+        PieceTable document = PieceTable.of(text);
+        List<PieceTable> snapshots = new ArrayList<>();
+        List<String> contents = new ArrayList<>();
+        for (int round = 0; round < 30; round++) {
+            snapshots.add(document.snapshot());
+            contents.add(text);
+            EditList edits = randomEdits(random, text.length());
+            text = edits.applyTo(text);
+            document.apply(edits);
+            // 修改快照也不影响文档
+            snapshots.get(round).replace(0, 0, "快照");
+            contents.set(round, "快照" + contents.get(round));
+        }
+        for (int i = 0; i < snapshots.size(); i++) {
+            assertEquals(contents.get(i), snapshots.get(i).toString());
+        }
+        assertEquals(text, document.toString());
+    }
+
+    @Test
+    void readsAcrossPieceBoundaries() throws IOException {
+        Random random = new Random(22);
+        String text = randomText(random, 300);
+        PieceTable document = PieceTable.of(text);
+        for (int round = 0; round < 20; round++) {
+            EditList edits = randomEdits(random, text.length());
+            text = edits.applyTo(text);
+            document.apply(edits);
+        }
+        for (int i = 0; i < text.length(); i++) {
+            assertEquals(text.charAt(i), document.charAt(i));
+        }
+        // 倒序读取时游标需要向前移动
+        for (int i = text.length() - 1; i >= 0; i--) {
+            assertEquals(text.charAt(i), document.charAt(i));
+        }
+        for (int i = 0; i < 500; i++) {
+            int start = random.nextInt(text.length() + 1);
+            int end = start + random.nextInt(text.length() - start + 1);
+            assertEquals(text.substring(start, end), document.subSequence(start, end).toString());
+            char[] target = new char[end - start + 2];
+            document.getChars(start, end, target, 1);
+            assertEquals(text.substring(start, end), new String(target, 1, end - start));
+        }
+        StringWriter writer = new StringWriter();
+        document.writeTo(writer);
+        assertEquals(text, writer.toString());
+    }
+
+    @Test
+    void rangesAreChecked() {
+        PieceTable document = PieceTable.of("abc");
+        assertThrows(IndexOutOfBoundsException.class, () -> document.charAt(3));
+        assertThrows(IndexOutOfBoundsException.class, () -> document.subSequence(2, 4));
+        assertThrows(IndexOutOfBoundsException.class, () -> document.replace(2, 1, "x"));
+        assertThrows(IndexOutOfBoundsException.class,
+                () -> document.apply(new EditList(new int[] {2}, new int[] {2}, new int[] {0, 0}, "", 1)));
+        assertEquals("abc", document.toString());
+    }
+
+    /**
+     * 生成按位置升序、互不重叠的随机编辑列表
+     */
+    private static EditList randomEdits(Random random, int length) {
+        int count = random.nextInt(6);
+        int[] positions = new int[count];
+        int[] deleted = new int[count];
+        int[] bounds = new int[count + 1];
+        StringBuilder pool = new StringBuilder();
+        int position = 0;
+        int size = 0;
+        for (int i = 0; i < count && position <= length; i++) {
+            positions[i] = position + random.nextInt(length - position + 1);
+            deleted[i] = random.nextInt(Math.min(4, length - positions[i]) + 1);
+            pool.append(randomText(random, random.nextInt(5)));
+            bounds[i + 1] = pool.length();
+            position = positions[i] + deleted[i];
+            size++;
+            if (deleted[i] == 0) {
+                // 同一位置只插入一次
+                position++;
+            }
+        }
+        return new EditList(positions, deleted, bounds, pool.toString(), size);
+    }
+
+    private static String randomText(Random random, int length) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            text.append(CHARS.charAt(random.nextInt(CHARS.length())));
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,90 @@
+package edu.software.ergoutree.markdownautoclearup;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 标点转换配置测试：构建时的校验、成对引号的配对规则，以及默认配置的输出
+ */
+class PunctuationProfileTest {
+
+    // 只转换成对引号的配置，不转换 > 等其他标点
+    private static final PunctuationProfile QUOTES = PunctuationProfile.builder("引号")
+            .pairedQuote('"', '“', '”')
+            .build();
+
+    @Test
+    void defaultProfiles() {
+        assertEquals("“你好”，世界。", MarkdownSpacingProcessor.convertPunctuation("\"你好\",世界.", PunctuationProfile.FULL_WIDTH));
+        assertEquals("“一”和“二”", MarkdownSpacingProcessor.convertPunctuation("\"一\"和\"二\"", PunctuationProfile.FULL_WIDTH));
+        assertEquals("【注】《书》（括号）！？；：",
+                MarkdownSpacingProcessor.convertPunctuation("[注]<书>(括号)!?;:", PunctuationProfile.FULL_WIDTH));
+        assertEquals("\"你好\",世界..",
+                MarkdownSpacingProcessor.convertPunctuation("“你好”，世界。…", PunctuationProfile.HALF_WIDTH));
+        assertEquals('“', PunctuationProfile.FULL_WIDTH.convert('"'));
+        assertFalse(PunctuationProfile.FULL_WIDTH.converts('a'));
+        assertFalse(PunctuationProfile.HALF_WIDTH.converts(','));
+    }
+
+    @Test
+    void invalidMappingsThrow() {
+        assertThrows(IllegalArgumentException.class, () -> PunctuationProfile.builder("空格").map(' ', '　'));
+        assertThrows(IllegalArgumentException.class, () -> PunctuationProfile.builder("空格").map('　', ' '));
+        assertThrows(IllegalArgumentException.class, () -> PunctuationProfile.builder("长度").map(",.", "，"));
+        assertThrows(IllegalArgumentException.class, () -> PunctuationProfile.builder("引号").pairedQuote('"', '"', '”'));
+        assertThrows(IllegalArgumentException.class, () -> PunctuationProfile.builder("引号").pairedQuote('"', '“', ' '));
+    }
+
+    @Test
+    void atMost32PairedQuotes() {
+        PunctuationProfile.Builder builder = PunctuationProfile.builder("引号");
+        for (int i = 0; i < PunctuationProfile.MAX_PAIRED_QUOTES; i++) {
+            builder.pairedQuote((char) ('A' + i), '「', '」');
+        }
+        // 重新设置已有的源字符不增加数量
+        builder.pairedQuote('A', '『', '』');
+        assertThrows(IllegalArgumentException.class, () -> builder.pairedQuote('~', '「', '」'));
+        // 改为普通映射后腾出一个位置
+        builder.map('A', 'a');
+        builder.pairedQuote('~', '「', '」');
+        PunctuationProfile profile = builder.build();
+        assertEquals("a「中」", MarkdownSpacingProcessor.convertPunctuation("AB中B", profile));
+        assertEquals("「x」", MarkdownSpacingProcessor.convertPunctuation("~x~", profile.toBuilder("副本").build()));
+    }
+
+    @Test
+    void quotesAlternateWithinParagraph() {
+        RulePipeline pipeline = RulePipeline.builder().punctuationProfile(QUOTES).build();
+        assertEquals("说“开\n继续”", pipeline.apply("说\"开\n继续\""));
+        // 空行后重新从开引号开始
+        assertEquals("“未闭合\n\n“新段”", pipeline.apply("\"未闭合\n\n\"新段\""));
+        assertEquals("“未闭合\n  \t\n“新段”", pipeline.apply("\"未闭合\n  \t\n\"新段\""));
+        // 只含引用标记和空白的行也是空行
+        assertEquals("> “引用\n> \n> “新”", pipeline.apply("> \"引用\n> \n> \"新\""));
+        assertEquals("> “引用\n> ”继续“", pipeline.apply("> \"引用\n> \"继续\""));
+    }
+
+    @Test
+    void quotesInCodeSpansAreSkipped() {
+        RulePipeline pipeline = RulePipeline.builder().punctuationProfile(QUOTES).build();
+        // 行内代码中的引号既不转换也不参与配对
+        assertEquals("“a `\"` b”", pipeline.apply("\"a `\"` b\""));
+        assertEquals("“a\n```\n\"\n```\nb”", pipeline.apply("\"a\n```\n\"\n```\nb\""));
+    }
+
+    @Test
+    void fullWidthAlphanumericsToAscii() {
+        PunctuationProfile profile = PunctuationProfile.builder("字母数字").fullWidthAlphanumericsToAscii().build();
+        assertEquals("AZaz09中文，", MarkdownSpacingProcessor.convertPunctuation("ＡＺａｚ０９中文，", profile));
+        assertTrue(profile.converts('Ｍ'));
+        // 范围内的全角标点不转换
+        assertFalse(profile.converts('！'));
+        assertFalse(profile.converts('＠'));
+        assertEquals("A“x”", MarkdownSpacingProcessor.convertPunctuation("Ａ\"x\"",
+                PunctuationProfile.FULL_WIDTH.toBuilder("全角加字母").fullWidthAlphanumericsToAscii().build()));
+    }
+}
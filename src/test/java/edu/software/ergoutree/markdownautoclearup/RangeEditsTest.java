@@ -0,0 +1,109 @@
+package edu.software.ergoutree.markdownautoclearup;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 范围格式化测试：范围从 0 开始、不含终点，范围内的修改与处理整个文档时完全相同
+ */
+class RangeEditsTest {
+
+    private static final String DOCUMENT = "前文a中\n\n"
+            + "```\n中a代码\n中b\n```\n\n"
+            + "$$\n中c\n公式d中\n$$\n"
+            + "后文e中\n";
+
+    @Test
+    void rangeEditsAreFullEditsInRange() {
+        Random random = new Random(15);
+        for (RulePipeline pipeline : TestDocuments.rulePipelines()) {
+            for (int i = 0; i < 200; i++) {
+                String text = TestDocuments.randomDocument(random, 30);
+                EditList full = pipeline.edits(text);
+                for (int j = 0; j < 5; j++) {
+                    int start = random.nextInt(text.length() + 1);
+                    int end = start + random.nextInt(text.length() - start + 1);
+                    assertEquals(describe(full, start, end, text.length()),
+                                 describe(pipeline.editsInRange(text, start, end)),
+                                 "[" + start + ", " + end + ") of " + text);
+                }
+            }
+        }
+    }
+
+    @Test
+    void rangeStartingInsideFenceOrMath() {
+        RulePipeline pipeline = TestDocuments.boundaryPipeline();
+        int fence = DOCUMENT.indexOf("中b");
+        int math = DOCUMENT.indexOf("公式");
+        int after = DOCUMENT.indexOf("后文");
+        // 范围起点之前的文本确定范围位于代码块或公式块中
+        assertTrue(pipeline.editsInRange(DOCUMENT, fence, fence + 3).isEmpty());
+        assertTrue(pipeline.editsInRange(DOCUMENT, math, math + 4).isEmpty());
+        assertEquals(describe(pipeline.edits(DOCUMENT), fence, DOCUMENT.length(), DOCUMENT.length()),
+                     describe(pipeline.editsInRange(DOCUMENT, fence, DOCUMENT.length())));
+        assertEquals(List.of((after + 2) + ":0: "),
+                     describe(pipeline.editsInRange(DOCUMENT, fence, DOCUMENT.length())));
+    }
+
+    @Test
+    void insertionsAtRangeEnd() {
+        RulePipeline pipeline = RulePipeline.builder().customRegexManager(TestDocuments.manager(
+                new CustomRegexRule("句号", "尾$", "尾。", true))).build();
+        String text = "段落结尾";
+        // 位置恰好为终点的插入属于之后的文本，只有范围到达文本末尾时才属于范围
+        assertEquals(List.of("4:0:。"), describe(pipeline.editsInRange(text, 0, 4)));
+        assertEquals(List.of("4:0:。"), describe(pipeline.editsInRange(text, 3, 4)));
+        assertTrue(pipeline.editsInRange(text, 0, 3).isEmpty());
+        assertTrue(pipeline.editsInRange(text, 4, 4).isEmpty());
+    }
+
+    @Test
+    void applyToLines() {
+        RulePipeline pipeline = TestDocuments.boundaryPipeline();
+        String[] lines = {"第1行a中", "第2行b中", "第3行c中"};
+        String text = String.join("\n", lines);
+        assertEquals(lines[0] + "\n" + pipeline.apply(lines[1]) + "\n" + lines[2], pipeline.applyToLines(text, 1, 2));
+        assertEquals(pipeline.apply(lines[0]) + "\n" + lines[1] + "\n" + lines[2], pipeline.applyToLines(text, 0, 1));
+        // 终点超过总行数时处理到文本末尾
+        assertEquals(lines[0] + "\n" + lines[1] + "\n" + pipeline.apply(lines[2]), pipeline.applyToLines(text, 2, 10));
+        assertEquals(pipeline.apply(text), pipeline.applyToLines(text, 0, 3));
+        assertEquals(text, pipeline.applyToLines(text, 1, 1));
+        assertEquals(text, pipeline.applyToLines(text, 5, 6));
+    }
+
+    @Test
+    void invalidRangesThrow() {
+        RulePipeline pipeline = TestDocuments.boundaryPipeline();
+        assertThrows(IndexOutOfBoundsException.class, () -> pipeline.applyToLines("a\nb", -1, 1));
+        assertThrows(IndexOutOfBoundsException.class, () -> pipeline.applyToLines("a\nb", 2, 1));
+        assertThrows(IndexOutOfBoundsException.class, () -> pipeline.editsInRange("abc", -1, 2));
+        assertThrows(IndexOutOfBoundsException.class, () -> pipeline.editsInRange("abc", 2, 1));
+        assertThrows(IndexOutOfBoundsException.class, () -> pipeline.editsInRange("abc", 0, 4));
+    }
+
+    /**
+     * 以 "位置:删除数:插入文本" 表示完全位于 [start, end) 内的修改，位置为 end 的插入只在 end 为文本末尾时计入
+     */
+    private static List<String> describe(EditList edits, int start, int end, int length) {
+        List<String> result = new ArrayList<>();
+        for (int i = 0; i < edits.size(); i++) {
+            int position = edits.position(i);
+            if (position >= start && position + edits.deletedLength(i) <= end && (position < end || end == length)) {
+                result.add(position + ":" + edits.deletedLength(i) + ":" + edits.insertedText(i));
+            }
+        }
+        return result;
+    }
+
+    private static List<String> describe(EditList edits) {
+        return describe(edits, 0, Integer.MAX_VALUE, Integer.MAX_VALUE);
+    }
+}
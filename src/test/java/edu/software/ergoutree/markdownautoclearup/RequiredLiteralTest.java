@@ -0,0 +1,61 @@
+package edu.software.ergoutree.markdownautoclearup;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 必须出现的字面文本提取测试
+ */
+class RequiredLiteralTest {
+
+    private static final String[] PATTERNS = {
+            "C\\+\\+语言", "a|b", "(ab)c", "version(\\d+)", "ab*c", "\\Qa.b\\E语言", "[ab]语言", "x?yz",
+            "\\d+元", "\\bJava\\b", "a{2}bc", "Script语言", "(?<word>[a-z]+)语言", "Java(?=S)",
+    };
+
+    @Test
+    void extractsLiteral() {
+        assertEquals("C++语言", RequiredLiteral.of("C\\+\\+语言"));
+        assertEquals("version", RequiredLiteral.of("version(\\d+)"));
+        assertEquals("a.b语言", RequiredLiteral.of("\\Qa.b\\E语言"));
+        assertEquals("语言", RequiredLiteral.of("[ab]语言"));
+        assertEquals("yz", RequiredLiteral.of("x?yz"));
+        assertEquals("a", RequiredLiteral.of("ab*c"));
+        assertNull(RequiredLiteral.of("a|b"));
+    }
+
+    @Test
+    void everyMatchContainsLiteral() {
+        Random random = new Random(23);
+        String chars = "abcxyzJavScript语言元C+.12 ";
+        for (String regex : PATTERNS) {
+            String literal = RequiredLiteral.of(regex);
+            if (literal == null) {
+                continue;
+            }
+            Pattern pattern = Pattern.compile(regex);
+            for (int i = 0; i < 2000; i++) {
+                StringBuilder text = new StringBuilder();
+                int length = random.nextInt(16);
+                for (int j = 0; j < length; j++) {
+                    text.append(chars.charAt(random.nextInt(chars.length())));
+                }
+                // 按原样插入字面文本，保证有一部分文本能匹配
+                if (random.nextBoolean()) {
+                    text.insert(random.nextInt(text.length() + 1), literal);
+                }
+                Matcher matcher = pattern.matcher(text);
+                while (matcher.find()) {
+                    assertTrue(matcher.group().contains(literal), regex + " matched " + matcher.group());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package edu.software.ergoutree.markdownautoclearup;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 规则配置相等性测试：按内容比较，散列值相同的不同配置不相等
+ */
+class RuleConfigurationTest {
+
+    @Test
+    void sameSettingsAreEqual() {
+        RuleConfiguration first = configuration(PunctuationProfile.FULL_WIDTH, List.of("chained", "regex", "a", "b"));
+        RuleConfiguration second = configuration(PunctuationProfile.FULL_WIDTH, List.of("chained", "regex", "a", "b"));
+        assertEquals(first, second);
+        assertEquals(first.hashCode(), second.hashCode());
+    }
+
+    @Test
+    void collidingCustomRulesAreNotEqual() {
+        // "Aa" 和 "BB" 的 hashCode 相同
+        assertEquals("Aa".hashCode(), "BB".hashCode());
+        RuleConfiguration first = configuration(null, List.of("chained", "regex", "Aa", "X"));
+        RuleConfiguration second = configuration(null, List.of("chained", "regex", "BB", "X"));
+        assertEquals(first.hashCode(), second.hashCode());
+        assertNotEquals(first, second);
+    }
+
+    @Test
+    void ruleTypeAndSingleScanAreCompared() {
+        assertNotEquals(configuration(null, List.of("chained", "regex", "a", "b")),
+                        configuration(null, List.of("chained", "literal", "a", "b")));
+        assertNotEquals(configuration(null, List.of("chained", "regex", "a", "b")),
+                        configuration(null, List.of("singleScan", "regex", "a", "b")));
+        assertNotEquals(configuration(null, null), configuration(null, List.of("chained")));
+    }
+
+    @Test
+    void profilesAreComparedByConversion() {
+        PunctuationProfile quotes = PunctuationProfile.builder("引号")
+                .pairedQuote('"', '“', '”').pairedQuote('\'', '‘', '’').build();
+        PunctuationProfile reordered = PunctuationProfile.builder("另一个名称")
+                .pairedQuote('\'', '‘', '’').pairedQuote('"', '“', '”').build();
+        PunctuationProfile different = PunctuationProfile.builder("引号")
+                .pairedQuote('"', '“', '”').pairedQuote('\'', '「', '」').build();
+
+        assertTrue(quotes.sameConversion(reordered));
+        assertEquals(configuration(quotes, null), configuration(reordered, null));
+        assertNotEquals(configuration(quotes, null), configuration(different, null));
+        assertNotEquals(configuration(quotes, null), configuration(null, null));
+    }
+
+    @Test
+    void pipelinesWithEditedRulesHaveDifferentConfigurations() {
+        RulePipeline first = RulePipeline.builder().customRegexManager(TestDocuments.manager(
+                new CustomRegexRule("规则", "Aa", "X", true))).build();
+        RulePipeline second = RulePipeline.builder().customRegexManager(TestDocuments.manager(
+                new CustomRegexRule("规则", "BB", "X", true))).build();
+        RulePipeline same = RulePipeline.builder().customRegexManager(TestDocuments.manager(
+                new CustomRegexRule("改名", "BB", "X", true))).build();
+        assertNotEquals(first.configuration(), second.configuration());
+        assertEquals(second.configuration(), same.configuration());
+    }
+
+    private static RuleConfiguration configuration(PunctuationProfile conversion, List<String> customRules) {
+        return new RuleConfiguration(0b101, conversion, customRules);
+    }
+}
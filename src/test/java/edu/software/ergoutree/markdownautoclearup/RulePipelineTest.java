@@ -0,0 +1,68 @@
+package edu.software.ergoutree.markdownautoclearup;
+
+import org.junit.jupiter.api.Test;
+
+import static edu.software.ergoutree.markdownautoclearup.TestDocuments.manager;
+import static edu.software.ergoutree.markdownautoclearup.TestDocuments.pipeline;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+/**
+ * 流水线测试：使用段落缓存时与不使用缓存的结果一致
+ */
+class RulePipelineTest {
+
+    private static final String DOCUMENT = "Java语言和Python语言\n\n"
+            + "```\nJava语言 in code\n```\n\n"
+            + "中文English混排，C++语言\n"
+            + "第二行Java语言\n\n"
+            + "$$\nPython语言\n$$\n\n"
+            + "结尾version2版本\n";
+
+    @Test
+    void cacheWithCustomRules() {
+        RulePipeline pipeline = pipeline(manager(
+                new CustomRegexRule("Java语言", "Java语言", "Java 语言", true, true),
+                new CustomRegexRule("版本号", "version(\\d+)", "v$1", true)));
+        ParagraphCache cache = new ParagraphCache();
+
+        String expected = pipeline.apply(DOCUMENT);
+        assertEquals(expected, pipeline.apply(DOCUMENT, cache));
+        long misses = cache.getMisses();
+        assertEquals(0, cache.getHits());
+
+        // 再次处理时每块都命中缓存
+        assertEquals(expected, pipeline.apply(DOCUMENT, cache));
+        assertEquals(misses, cache.getMisses());
+        assertEquals(misses, cache.getHits());
+
+        // 只改动一块时只有这一块未命中
+        String edited = DOCUMENT.replace("结尾version2版本", "结尾version3版本");
+        assertEquals(pipeline.apply(edited), pipeline.apply(edited, cache));
+        assertEquals(misses + 1, cache.getMisses());
+    }
+
+    @Test
+    void cacheKeyIncludesCustomRules() {
+        RulePipeline first = pipeline(manager(new CustomRegexRule("和", "和", "与", true, true)));
+        RulePipeline second = pipeline(manager(new CustomRegexRule("和", "和", "及", true, true)));
+        ParagraphCache cache = new ParagraphCache();
+
+        assertEquals(first.apply(DOCUMENT), first.apply(DOCUMENT, cache));
+        assertEquals(second.apply(DOCUMENT), second.apply(DOCUMENT, cache));
+        assertNotEquals(first.apply(DOCUMENT), second.apply(DOCUMENT));
+    }
+
+    @Test
+    void cacheKeyComparesRulesNotHashes() {
+        // "Aa" 和 "BB" 的 hashCode 相同，编辑规则后按散列值比较会取到编辑前的结果
+        assertEquals("Aa".hashCode(), "BB".hashCode());
+        RulePipeline before = pipeline(manager(new CustomRegexRule("规则", "Aa", "X", true)));
+        RulePipeline after = pipeline(manager(new CustomRegexRule("规则", "BB", "X", true)));
+        ParagraphCache cache = new ParagraphCache();
+
+        assertEquals("X BB", before.apply("Aa BB", cache));
+        assertEquals("Aa X", after.apply("Aa BB", cache));
+        assertEquals(0, cache.getHits());
+    }
+}
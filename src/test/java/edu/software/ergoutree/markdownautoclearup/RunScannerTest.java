@@ -0,0 +1,74 @@
+package edu.software.ergoutree.markdownautoclearup;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+
+/**
+ * 惰性字符段扫描器测试：向量实现与逐字符实现返回的位置完全相同
+ */
+class RunScannerTest {
+
+    // 各类别区间边界两侧的字符，以及 ASCII 标点、空白、中文标点和代理对
+    private static final char[] CHARS = {
+            'a', 'z', 'A', 'Z', '@', '[', '`', '{', '0', '9', '/', ':',
+            ' ', '\t', '\n', '\u007F', '\u0080', ',', '"', '~',
+            RunScanner.HAN_FIRST, (char) (RunScanner.HAN_FIRST - 1), RunScanner.HAN_LAST, (char) (RunScanner.HAN_LAST + 1),
+            RunScanner.KANA_FIRST, (char) (RunScanner.KANA_FIRST - 1), RunScanner.KANA_LAST, (char) (RunScanner.KANA_LAST + 1),
+            RunScanner.HANGUL_FIRST, (char) (RunScanner.HANGUL_FIRST - 1), RunScanner.HANGUL_LAST,
+            (char) (RunScanner.HANGUL_LAST + 1),
+            '中', '文', 'あ', 'ン', '한', '，', '。', 'Ａ', '\uD840', '\uDC00', '￿',
+    };
+
+    private static final int[] PREVIOUS_TYPES = {
+            0, CharClassTable.HAN, CharClassTable.LATIN, CharClassTable.DIGIT, RunScanner.STOP,
+    };
+
+    @Test
+    void vectorSameAsScalar() {
+        RunScanner vector = RunScanner.INSTANCE;
+        RunScanner scalar = new RunScanner();
+        // 测试运行时加载了 jdk.incubator.vector，见 pom.xml 中的 surefire 配置
+        assertNotSame(RunScanner.class, vector.getClass());
+        Random random = new Random(8);
+        for (int i = 0; i < 3000; i++) {
+            char[] chars = randomRuns(random, random.nextInt(300));
+            int from = random.nextInt(chars.length + 1);
+            int to = from + random.nextInt(chars.length - from + 1);
+            int prevType = PREVIOUS_TYPES[random.nextInt(PREVIOUS_TYPES.length)];
+            int pairs = RunScanner.boundaryPairs(random.nextBoolean(), random.nextBoolean(), random.nextBoolean());
+            boolean stopPunctuation = random.nextBoolean();
+            // 从每个停止位置的下一个字符继续扫描，与引擎的用法相同
+            while (from < to) {
+                int expected = scalar.skip(chars, from, to, prevType, pairs, stopPunctuation);
+                assertEquals(expected, vector.skip(chars, from, to, prevType, pairs, stopPunctuation),
+                             "[" + from + ", " + to + ") pairs=" + pairs + " stop=" + stopPunctuation);
+                if (expected == to) {
+                    break;
+                }
+                prevType = RunScanner.classify(chars[expected], stopPunctuation);
+                from = expected + 1;
+            }
+        }
+    }
+
+    /**
+     * 生成由长短不一的同类字符段组成的字符数组，使扫描既经过整段向量也经过段之间的交界
+     */
+    private static char[] randomRuns(Random random, int length) {
+        char[] chars = new char[length];
+        int i = 0;
+        while (i < length) {
+            int run = Math.min(length - i, random.nextInt(4) == 0 ? 1 + random.nextInt(80) : 1 + random.nextInt(3));
+            boolean single = random.nextBoolean();
+            char c = CHARS[random.nextInt(CHARS.length)];
+            for (int j = 0; j < run; j++) {
+                chars[i++] = single ? c : CHARS[random.nextInt(CHARS.length)];
+            }
+        }
+        return chars;
+    }
+}
@@ -0,0 +1,225 @@
+package edu.software.ergoutree.markdownautoclearup;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 空格处理引擎测试：一趟扫描的结果与原先逐条执行的正则表达式链逐字符相同，特化引擎与通用引擎的结果相同
+ */
+class SpacingEngineTest {
+
+    // 两种实现对字符分类一致的字符：汉字（含增补平面）、CJK 符号和标点、ASCII 字母数字和标点、中文标点、空白。
+    // 假名、谚文和全角字母数字是之后新增的类别，不在其中
+    private static final String[] CHARS = {
+            "中", "文", "字", "、", "〇", "「", "」", "𠀀", "𪜀",
+            "a", "Z", "x", "0", "7",
+            ",", ".", "!", "?", ";", ":", "\"", "'", "[", "]", "(", ")", "<", ">", "\\", "-", "_", "$", "#",
+            "，", "。", "！", "？", "；", "：", "“", "”", "【", "】", "《", "》", "…", "（", "）",
+            " ", " ", "\n", "\t",
+    };
+
+    // 原先的全角转换把英文双引号一律转换为开引号，不配对
+    private static final PunctuationProfile UNPAIRED_FULL_WIDTH = PunctuationProfile.builder("不配对的全角")
+            .map(",.!?;:\"[]<>()", "，。！？；：“【】《》（）")
+            .build();
+
+    @Test
+    void sameAsRegexChain() {
+        Random random = new Random(1);
+        for (int rules = 0; rules < 1 << 7; rules++) {
+            boolean fullWidth = (rules & 32) != 0;
+            boolean halfWidth = (rules & 64) != 0;
+            PunctuationProfile conversion = fullWidth ? UNPAIRED_FULL_WIDTH : halfWidth ? PunctuationProfile.HALF_WIDTH : null;
+            for (int i = 0; i < 100; i++) {
+                String text = randomText(random, random.nextInt(40));
+                String expected = RegexChain.apply(text, rules);
+                SpacingEngine engine = SpacingEngine.create((rules & 1) != 0, (rules & 2) != 0, (rules & 4) != 0,
+                        (rules & 8) != 0, (rules & 16) != 0, conversion);
+                assertEquals(expected, engine.process(text), "规则 " + rules + ": " + text);
+            }
+        }
+    }
+
+    @Test
+    void singleRulesSameAsRegexChain() {
+        Random random = new Random(2);
+        for (int i = 0; i < 500; i++) {
+            String text = randomText(random, 1 + random.nextInt(40));
+            assertEquals(RegexChain.apply(text, 1), MarkdownSpacingProcessor.addSpaceBetweenChineseAndEnglish(text), text);
+            assertEquals(RegexChain.apply(text, 2), MarkdownSpacingProcessor.addSpaceBetweenChineseAndNumber(text), text);
+            assertEquals(RegexChain.apply(text, 4), MarkdownSpacingProcessor.addSpaceBetweenEnglishAndNumber(text), text);
+            assertEquals(RegexChain.apply(text, 8), MarkdownSpacingProcessor.addSpaceAroundChinesePunctuation(text), text);
+            assertEquals(RegexChain.apply(text, 16), MarkdownSpacingProcessor.addSpaceAroundEnglishPunctuation(text), text);
+            assertEquals(RegexChain.apply(text, 64), MarkdownSpacingProcessor.convertToHalfWidthPunctuation(text), text);
+        }
+    }
+
+    @Test
+    void overlappingBoundaries() {
+        // 正则表达式的匹配互不重叠，已经匹配过的字符不再参与下一对
+        for (String text : new String[] {"中a中", "a中a", "中1a中", "a1b2c", "中。中", "a,b,c", "中,a"}) {
+            for (int rules = 0; rules < 1 << 6; rules++) {
+                SpacingEngine engine = SpacingEngine.create((rules & 1) != 0, (rules & 2) != 0, (rules & 4) != 0,
+                        (rules & 8) != 0, (rules & 16) != 0, (rules & 32) != 0 ? UNPAIRED_FULL_WIDTH : null);
+                assertEquals(RegexChain.apply(text, rules), engine.process(text), "规则 " + rules + ": " + text);
+            }
+        }
+    }
+
+    @Test
+    void specializedSameAsInterpreted() throws IOException {
+        PunctuationProfile[] conversions = {
+                null,
+                PunctuationProfile.FULL_WIDTH,
+                PunctuationProfile.HALF_WIDTH,
+                PunctuationProfile.FULL_WIDTH.toBuilder("全角加字母").fullWidthAlphanumericsToAscii().build(),
+        };
+        Random random = new Random(13);
+        for (PunctuationProfile conversion : conversions) {
+            for (int rules = 0; rules < 1 << 5; rules++) {
+                boolean[] enabled = new boolean[5];
+                for (int bit = 0; bit < 5; bit++) {
+                    enabled[bit] = (rules & 1 << bit) != 0;
+                }
+                int configuration = SpacingEngine.configuration(enabled[0], enabled[1], enabled[2], enabled[3], enabled[4],
+                                                                conversion);
+                for (int i = 0; i < 20; i++) {
+                    String text = random.nextBoolean()
+                            ? TestDocuments.randomDocument(random, 20)
+                            : randomText(random, random.nextInt(60));
+                    ProtectedRegions regions = MarkdownLexer.lex(text);
+                    SpacingEngine specialized = SpacingEngine.create(enabled[0], enabled[1], enabled[2], enabled[3],
+                                                                     enabled[4], conversion);
+                    // 特化引擎是以配置为类数据定义的隐藏类
+                    assertTrue(specialized.getClass().isHidden(), specialized.getClass().getName());
+                    StringBuilder expected = new StringBuilder();
+                    SpacingEngine.createInterpreted(configuration, conversion).process(text, regions, expected, null);
+                    StringBuilder actual = new StringBuilder();
+                    specialized.process(text, regions, actual, null);
+                    assertEquals(expected.toString(), actual.toString(), "配置 " + configuration + ": " + text);
+                }
+            }
+        }
+    }
+
+    static String randomText(Random random, int length) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            text.append(CHARS[random.nextInt(CHARS.length)]);
+        }
+        return text.toString();
+    }
+
+    /**
+     * 原先逐条执行的规则链，每一步都处理前一步的完整输出。
+     * 规则位依次为中英文、中文数字、英文数字、中文标点、英文标点、全角转换、半角转换
+     */
+    private static final class RegexChain {
+
+        private static final Pattern CHINESE_ENGLISH_BOUNDARY = Pattern.compile(
+                "([\\p{script=Han}\\p{InCJK_Symbols_and_Punctuation}])([a-zA-Z])|"
+                        + "([a-zA-Z])([\\p{script=Han}\\p{InCJK_Symbols_and_Punctuation}])");
+
+        private static final Pattern CHINESE_NUMBER_BOUNDARY = Pattern.compile(
+                "([\\p{script=Han}\\p{InCJK_Symbols_and_Punctuation}])([0-9])|"
+                        + "([0-9])([\\p{script=Han}\\p{InCJK_Symbols_and_Punctuation}])");
+
+        private static final Pattern ENGLISH_NUMBER_BOUNDARY = Pattern.compile(
+                "([a-zA-Z])([0-9])|"
+                        + "([0-9])([a-zA-Z])");
+
+        private static final String CHINESE_PUNCTUATION = "，。！？；：“”【】《》……";
+
+        private static final String ENGLISH_PUNCTUATION = ",.!?;:\"\"[]()''\\-_";
+
+        private static final Map<Character, Character> FULL_TO_HALF = new HashMap<>();
+
+        private static final Map<Character, Character> HALF_TO_FULL = new HashMap<>();
+
+        static {
+            String full = "，。！？；：“”【】《》（）…";
+            String half = ",.!?;:\"\"[]<>().";
+            for (int i = 0; i < full.length(); i++) {
+                FULL_TO_HALF.put(full.charAt(i), half.charAt(i));
+            }
+            half = ",.!?;:\"[]<>()";
+            full = "，。！？；：“【】《》（）";
+            for (int i = 0; i < half.length(); i++) {
+                HALF_TO_FULL.put(half.charAt(i), full.charAt(i));
+            }
+        }
+
+        static String apply(String text, int rules) {
+            if ((rules & 1) != 0) {
+                text = boundary(text, CHINESE_ENGLISH_BOUNDARY);
+            }
+            if ((rules & 2) != 0) {
+                text = boundary(text, CHINESE_NUMBER_BOUNDARY);
+            }
+            if ((rules & 4) != 0) {
+                text = boundary(text, ENGLISH_NUMBER_BOUNDARY);
+            }
+            if ((rules & 8) != 0) {
+                text = around(text, CHINESE_PUNCTUATION);
+            }
+            if ((rules & 16) != 0) {
+                text = around(text, ENGLISH_PUNCTUATION);
+            }
+            if ((rules & 32) != 0) {
+                text = convert(text, HALF_TO_FULL);
+            } else if ((rules & 64) != 0) {
+                text = convert(text, FULL_TO_HALF);
+            }
+            return text;
+        }
+
+        private static String boundary(String text, Pattern pattern) {
+            Matcher matcher = pattern.matcher(text);
+            StringBuilder result = new StringBuilder();
+            while (matcher.find()) {
+                String replacement = matcher.group(1) != null
+                        ? matcher.group(1) + " " + matcher.group(2)
+                        : matcher.group(3) + " " + matcher.group(4);
+                matcher.appendReplacement(result, Matcher.quoteReplacement(replacement));
+            }
+            matcher.appendTail(result);
+            return result.toString();
+        }
+
+        private static String around(String text, String punctuation) {
+            StringBuilder result = new StringBuilder();
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (punctuation.indexOf(c) >= 0) {
+                    if (i > 0 && text.charAt(i - 1) != ' ') {
+                        result.append(' ');
+                    }
+                    result.append(c);
+                    if (i < text.length() - 1 && text.charAt(i + 1) != ' ') {
+                        result.append(' ');
+                    }
+                } else {
+                    result.append(c);
+                }
+            }
+            return result.toString();
+        }
+
+        private static String convert(String text, Map<Character, Character> map) {
+            StringBuilder result = new StringBuilder();
+            for (int i = 0; i < text.length(); i++) {
+                result.append(map.getOrDefault(text.charAt(i), text.charAt(i)));
+            }
+            return result.toString();
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package edu.software.ergoutree.markdownautoclearup;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 测试共用的随机 Markdown 文档、规则管理器和流水线
+ * 文档由若干行片段随机拼接而成，行片段覆盖代码块、公式块、头信息、HTML 块、引用、列表和行内结构的开头、
+ * 内容和结尾，拼接后会出现未闭合、相邻和嵌套的各种组合。片段中的行内结构都不跨行。
+ */
+final class TestDocuments {
+
+    static final String[] FRAGMENTS = {
+            "中文English混排\n",
+            "数字123和中文\n",
+            "\n",
+            "$$\n",
+            "E=mc^2中文\n",
+            "---\n",
+            "...\n",
+            "title: 标题Title\n",
+            "```\n",
+            "代码code\n",
+            "<div>\n",
+            "HTML中文abc\n",
+            "> 引用quote中文\n",
+            "- 列表item中文\n",
+            "公式$x^2$中文\n",
+            "`行内code`中文\n",
+            "中文English混排，标点,测试\n",
+            "  续行text\n",
+            "链接[文字text](http://example.com/路径)后\n",
+            "Java语言和version2版本\n",
+    };
+
+    private TestDocuments() {
+    }
+
+    /**
+     * 生成随机文档
+     * @param random 随机数生成器
+     * @param maxLines 最大行数（不含）
+     * @return 文档
+     */
+    static String randomDocument(Random random, int maxLines) {
+        StringBuilder text = new StringBuilder();
+        int lines = random.nextInt(maxLines);
+        for (int i = 0; i < lines; i++) {
+            text.append(FRAGMENTS[random.nextInt(FRAGMENTS.length)]);
+        }
+        return text.toString();
+    }
+
+    /**
+     * 只含三条交界空格规则的流水线，与只处理交界的引擎对应
+     * @return 流水线
+     */
+    static RulePipeline boundaryPipeline() {
+        return RulePipeline.builder()
+                .addSpaceBetweenChineseAndEnglish(true)
+                .addSpaceBetweenChineseAndNumber(true)
+                .addSpaceBetweenEnglishAndNumber(true)
+                .build();
+    }
+
+    /**
+     * 创建只含给定规则的规则管理器，测试时规则保存在构建目录下的用户目录中
+     * @param rules 规则
+     * @return 规则管理器
+     */
+    static CustomRegexManager manager(CustomRegexRule... rules) {
+        CustomRegexManager manager = new CustomRegexManager();
+        while (!manager.getRules().isEmpty()) {
+            manager.deleteRule(0);
+        }
+        manager.addRules(List.of(rules));
+        // 单次扫描选项与规则一起保存，不沿用其他测试的设置
+        manager.setSingleScan(false);
+        return manager;
+    }
+
+    /**
+     * 含有交界空格规则、英文标点空格规则和给定自定义规则的流水线
+     * @param manager 规则管理器，可以为空
+     * @return 流水线
+     */
+    static RulePipeline pipeline(CustomRegexManager manager) {
+        return RulePipeline.builder()
+                .addSpaceBetweenChineseAndEnglish(true)
+                .addSpaceBetweenChineseAndNumber(true)
+                .addSpaceBetweenEnglishAndNumber(true)
+                .addSpaceAroundEnglishPunctuation(true)
+                .customRegexManager(manager)
+                .build();
+    }
+
+    /**
+     * 覆盖各类规则的几个流水线：只有交界规则、全部空格规则加全角标点、半角标点、自定义规则
+     * @return 流水线列表
+     */
+    static List<RulePipeline> rulePipelines() {
+        return List.of(
+                boundaryPipeline(),
+                RulePipeline.of(true, true, true, true, true, true, false, null),
+                RulePipeline.of(true, false, true, false, true, false, true, null),
+                pipeline(manager(
+                        new CustomRegexRule("Java语言", "Java语言", "Java 语言", true, true),
+                        new CustomRegexRule("版本号", "version(\\d+)", "v$1", true))));
+    }
+}
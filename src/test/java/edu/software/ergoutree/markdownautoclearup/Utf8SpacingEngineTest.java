@@ -0,0 +1,73 @@
+package edu.software.ergoutree.markdownautoclearup;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * UTF-8 字节级处理与整体处理结果一致性测试，映射窗口远小于文件以覆盖跨窗口的各种结构
+ */
+class Utf8SpacingEngineTest {
+
+    private static final int[] WINDOW_SIZES = {16, 41, 128};
+
+    private final RulePipeline pipeline = TestDocuments.boundaryPipeline();
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void mathBlockLargerThanWindow() throws IOException {
+        assertSameAsText("正文English\n$$\n" + "a中文b\n".repeat(40) + "$$\n之后after\n");
+        assertSameAsText("正文English\n$$\n" + "a中文b\n".repeat(40) + "\n之后after\n");
+    }
+
+    @Test
+    void frontMatterLargerThanWindow() throws IOException {
+        assertSameAsText("---\n" + "title: 标题Title\n".repeat(30) + "---\n正文English\n");
+        assertSameAsText("---\n" + "title: 标题Title\n".repeat(30) + "\n正文English\n");
+    }
+
+    @Test
+    void lookAheadLinesLongerThanWindow() throws IOException {
+        String line = "链接[文字text](http://example.com/路径)后";
+        assertSameAsText("$$\n" + line + "\n$$\n");
+        assertSameAsText("$$\n" + line + "\n" + " ".repeat(60) + "\n" + line + "\n");
+        assertSameAsText("$$\n" + line + "x".repeat(60) + "$$\n之后after\n");
+        assertSameAsText("---\n" + line + "\n---" + " ".repeat(60) + "\n正文English\n");
+        assertSameAsText("---\n" + line + "\n---" + " ".repeat(60) + "x\n" + "\n正文English\n");
+    }
+
+    @Test
+    void nonAsciiLettersDoNotMatchHtmlTags() throws IOException {
+        // 'İ' 转为小写后是 'i'，不能被当作 <script> 标签
+        assertSameAsText("<scr\u0130pt>\n中a\n</script>\n\n中a\n");
+        assertSameAsText("<SCRIPT>\n中a\n</Script>\n\n中a\n");
+    }
+
+    @Test
+    void randomDocuments() throws IOException {
+        Random random = new Random(7);
+        for (int i = 0; i < 500; i++) {
+            assertSameAsText(TestDocuments.randomDocument(random, 40));
+        }
+    }
+
+    private void assertSameAsText(String text) throws IOException {
+        String expected = pipeline.apply(text);
+        Path input = directory.resolve("input.md");
+        Path output = directory.resolve("output.md");
+        Files.writeString(input, text, StandardCharsets.UTF_8);
+        for (int windowSize : WINDOW_SIZES) {
+            new Utf8SpacingEngine(true, true, true, windowSize).process(input, output);
+            assertEquals(expected, Files.readString(output, StandardCharsets.UTF_8), "window " + windowSize + ": " + text);
+        }
+    }
+}